@@ -0,0 +1,197 @@
+package com.eliberty.cordova.plugin.epsonusb;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Vérification octet par octet des commandes ESC/POS (mode "escpos") par rapport aux fichiers de référence
+ *
+ * Chaque ticket est compilé puis encodé (EscPosEncoder) et comparé à golden/<nom>.hex (hexadécimal,
+ * 32 octets par ligne). Le rapport est envoyé en continu par parties de 1 Ko : ses parties sont encodées
+ * bout à bout. Un écart fait échouer la tâche avec le premier octet différent ; après une modification
+ * volontaire de l'encodage, relancer avec "update" pour régénérer les fichiers, puis relire le diff avant
+ * de le committer.
+ *
+ * Les tickets longs (rapport, toutes les balises répétées) sont aussi envoyés en continu avec plusieurs tailles
+ * de parties : leurs parties mises bout à bout doivent être identiques au ticket encodé en un seul envoi.
+ *
+ * Paramètres : dir=<répertoire des fichiers de référence> (golden par défaut), update
+ */
+public final class GoldenCheck {
+
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    private static final int BYTES_PER_LINE = 32;
+    // Taille des parties du rapport envoyé en continu (minimum accepté par configureCommands)
+    private static final int REPORT_CHUNK_BYTES = 1024;
+    // Tailles des parties comparées au ticket encodé d'un bloc (minimum, intermédiaire, défaut documenté)
+    private static final int[] STREAM_CHUNK_BYTES = {1024, 4096, 16384};
+
+    // Toutes les commandes de l'encodeur hors images (leur trame est vérifiée par RasterImage) :
+    // styles, polices, tailles, alignements, accents, avances, logo NV, QR code et code-barres de chaque format
+    static final String FEATURES =
+            "<ALIGN LEFT>Texte par défaut\n"
+            + "<BOLD>Gras</BOLD> <UNDERLINE>Souligné</UNDERLINE> <BOLD><UNDERLINE>les deux</UNDERLINE></BOLD>\n"
+            + "<FONT B>Police B</FONT> <FONT C>Police C</FONT>\n"
+            + "<SIZE 2>Double</SIZE> <SIZE 3 1>Large</SIZE> <SIZE 1 4>Haut</SIZE>\n"
+            + "Accents : éèêàçù ÉÀ € œ « » °\n"
+            + "</ALIGN><ALIGN RIGHT>À droite</ALIGN>\n"
+            + "<FEED 3><LOGO LG>\n"
+            + "<QRCODE>https://tickets.example.com/p/été?k=1</QRCODE>\n"
+            + "<BARCODE CODE128>CMD2024000123</BARCODE>\n"
+            + "<BARCODE CODE128>{C123456</BARCODE>\n"
+            + "<BARCODE CODE39>ABC-123</BARCODE>\n"
+            + "<BARCODE EAN13>3760123456789</BARCODE>\n"
+            + "<BARCODE EAN8>12345670</BARCODE>\n"
+            + "<BARCODE UPC_A>012345678905</BARCODE>\n"
+            + "<BARCODE ITF>12345678</BARCODE>\n"
+            + "Fin\n";
+
+    private GoldenCheck() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        File dir = new File("golden");
+        boolean update = false;
+        for (String arg : args) {
+            if (arg.equals("update")) {
+                update = true;
+            } else if (arg.startsWith("dir=")) {
+                dir = new File(arg.substring(4));
+            } else {
+                throw new IllegalArgumentException(arg);
+            }
+        }
+
+        Map<String, String> receipts = new LinkedHashMap<String, String>();
+        receipts.put("short", Receipts.SHORT);
+        receipts.put("long", Receipts.LONG);
+        receipts.put("qrHeavy", Receipts.QR_HEAVY);
+        receipts.put("features", FEATURES);
+        receipts.put("reportChunks", Receipts.buildReport(60));
+
+        int failures = 0;
+        for (Map.Entry<String, String> entry : receipts.entrySet()) {
+            Receipt receipt = Receipt.fromMarkup(entry.getValue());
+            byte[] actual = entry.getKey().equals("reportChunks") ? encodeChunks(receipt, REPORT_CHUNK_BYTES)
+                    : CompiledReceipt.compile(receipt, null).withRaw().raw;
+            File file = new File(dir, entry.getKey() + ".hex");
+            if (update) {
+                dir.mkdirs();
+                Files.write(file.toPath(), toHex(actual).getBytes(ASCII));
+                System.out.printf("%-12s %6d octets  écrit%n", entry.getKey(), actual.length);
+                continue;
+            }
+            if (!file.exists()) {
+                System.out.printf("%-12s absent : %s (relancer avec update)%n", entry.getKey(), file.getPath());
+                failures++;
+                continue;
+            }
+            byte[] expected = fromHex(new String(Files.readAllBytes(file.toPath()), ASCII));
+            int mismatch = firstMismatch(expected, actual);
+            if (mismatch < 0) {
+                System.out.printf("%-12s %6d octets  identique%n", entry.getKey(), actual.length);
+            } else {
+                System.out.printf("%-12s différent à l'octet %d : attendu %s, obtenu %s (%d octets attendus, %d obtenus)%n",
+                        entry.getKey(), mismatch, byteAt(expected, mismatch), byteAt(actual, mismatch),
+                        expected.length, actual.length);
+                failures++;
+            }
+        }
+        if (!update) {
+            failures += checkStreamed();
+        }
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Compare les parties de l'envoi en continu, mises bout à bout, au ticket encodé en un seul envoi
+     * @return nombre d'écarts
+     */
+    private static int checkStreamed() throws MarkupException {
+        StringBuilder features = new StringBuilder();
+        for (int i = 0; i < 80; i++) {
+            features.append(FEATURES);
+        }
+        Map<String, String> receipts = new LinkedHashMap<String, String>();
+        receipts.put("report", Receipts.buildReport(2000));
+        receipts.put("features", features.toString());
+
+        int failures = 0;
+        for (Map.Entry<String, String> entry : receipts.entrySet()) {
+            byte[] whole = CompiledReceipt.compile(Receipt.fromMarkup(entry.getValue()), null).withRaw().raw;
+            for (int chunkBytes : STREAM_CHUNK_BYTES) {
+                String name = entry.getKey() + "/" + chunkBytes;
+                byte[] streamed = encodeChunks(Receipt.fromMarkup(entry.getValue()), chunkBytes);
+                int mismatch = firstMismatch(whole, streamed);
+                if (mismatch < 0) {
+                    System.out.printf("%-15s %6d octets  parties identiques au ticket entier%n", name, streamed.length);
+                } else {
+                    System.out.printf("%-15s parties différentes du ticket entier à l'octet %d : attendu %s, obtenu %s%n",
+                            name, mismatch, byteAt(whole, mismatch), byteAt(streamed, mismatch));
+                    failures++;
+                }
+            }
+        }
+        return failures;
+    }
+
+    private static byte[] encodeChunks(Receipt receipt, int chunkBytes) throws MarkupException {
+        ReceiptStream stream = ReceiptStream.open(receipt, null, chunkBytes, true);
+        if (stream == null) {
+            throw new IllegalStateException("Ticket non découpé");
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (CompiledReceipt chunk = stream.next(); chunk != null; chunk = stream.next()) {
+            out.write(chunk.raw, 0, chunk.raw.length);
+        }
+        return out.toByteArray();
+    }
+
+    private static int firstMismatch(byte[] expected, byte[] actual) {
+        int length = Math.min(expected.length, actual.length);
+        for (int i = 0; i < length; i++) {
+            if (expected[i] != actual[i]) {
+                return i;
+            }
+        }
+        return expected.length == actual.length ? -1 : length;
+    }
+
+    private static String byteAt(byte[] bytes, int index) {
+        if (index >= bytes.length) {
+            return "fin";
+        }
+        return new String(new char[]{HEX_DIGITS[(bytes[index] >> 4) & 0xF], HEX_DIGITS[bytes[index] & 0xF]});
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2 + bytes.length / BYTES_PER_LINE + 1);
+        for (int i = 0; i < bytes.length; i++) {
+            sb.append(HEX_DIGITS[(bytes[i] >> 4) & 0xF]).append(HEX_DIGITS[bytes[i] & 0xF]);
+            if (i % BYTES_PER_LINE == BYTES_PER_LINE - 1 || i == bytes.length - 1) {
+                sb.append('\n');
+            }
+        }
+        return sb.toString();
+    }
+
+    private static byte[] fromHex(String hex) throws IOException {
+        String digits = hex.replaceAll("\\s", "");
+        if (digits.length() % 2 != 0) {
+            throw new IOException("Fichier de référence invalide");
+        }
+        byte[] bytes = new byte[digits.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(digits.substring(2 * i, 2 * i + 2), 16);
+        }
+        return bytes;
+    }
+}
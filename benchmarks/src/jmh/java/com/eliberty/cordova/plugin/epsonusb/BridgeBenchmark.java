@@ -0,0 +1,103 @@
+package com.eliberty.cordova.plugin.epsonusb;
+
+import android.util.Base64;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Lecture des arguments reçus du pont Cordova (chaîne JSON analysée par org.json dans CordovaPlugin.execute)
+ * json : printText et printImage (texte échappé, image en base64 dans le JSON) ;
+ * binary : printBinary (ArrayBuffer converti en base64 par le pont, extrait sans org.json, puis BinaryJob)
+ */
+@State(Scope.Thread)
+public class BridgeBenchmark {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    // Fichier image simulé (contenu incompressible, comme un PNG)
+    private static final int IMAGE_BYTES = 48 * 1024;
+
+    @Param({"long", "report"})
+    public String receipt;
+
+    private String jsonText;
+    private String binaryText;
+    private String jsonImage;
+    private String binaryImage;
+    private final TemplateCache templates = new TemplateCache(1);
+
+    @Setup
+    public void setup() throws JSONException, IOException {
+        String markup = Receipts.get(receipt);
+        jsonText = new JSONArray().put(new JSONObject().put("text", markup).put("jobId", "job-1")).toString();
+        binaryText = binaryArgs(BinaryJob.TEXT, markup.getBytes(UTF_8));
+
+        byte[] image = new byte[IMAGE_BYTES];
+        new Random(42).nextBytes(image);
+        String base64 = java.util.Base64.getEncoder().encodeToString(image);
+        jsonImage = new JSONArray().put(new JSONObject().put("image", base64).put("jobId", "job-1")).toString();
+        byte[] imageRecord = new byte[4 + image.length];
+        imageRecord[1] = ReceiptSegment.ALIGN_CENTER;
+        System.arraycopy(image, 0, imageRecord, 4, image.length);
+        binaryImage = binaryArgs(BinaryJob.IMAGE, imageRecord);
+    }
+
+    private static String binaryArgs(int type, byte[] record) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(record.length + 9);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeBytes("EPJ");
+        out.writeByte(1);
+        out.writeByte(type);
+        out.writeInt(record.length);
+        out.write(record);
+        String payload = java.util.Base64.getEncoder().encodeToString(bytes.toByteArray());
+        return new JSONArray().put(payload).put(new JSONObject().put("jobId", "job-1")).toString();
+    }
+
+    @Benchmark
+    public Receipt jsonText() throws JSONException {
+        return Receipt.fromMarkup(new JSONArray(jsonText).getJSONObject(0).getString("text"));
+    }
+
+    @Benchmark
+    public List<Receipt> binaryText() throws Exception {
+        return parseBinary(binaryText);
+    }
+
+    @Benchmark
+    public byte[] jsonImage() throws JSONException {
+        // Décodage de getRaster, avant BitmapFactory
+        return Base64.decode(new JSONArray(jsonImage).getJSONObject(0).getString("image"), Base64.DEFAULT);
+    }
+
+    @Benchmark
+    public byte[] binaryImage() throws Exception {
+        return parseBinary(binaryImage).get(0).imageData();
+    }
+
+    /**
+     * Même lecture que EpsonPrinterPlugin.execute : charge utile extraite, options analysées par org.json
+     */
+    private List<Receipt> parseBinary(String rawArgs) throws Exception {
+        int end = BinaryJob.payloadEnd(rawArgs);
+        JSONObject options = new JSONArray("[" + rawArgs.substring(rawArgs.indexOf(',', end) + 1)).optJSONObject(0);
+        if (options == null) {
+            throw new IllegalStateException("Options absentes");
+        }
+        return BinaryJob.parse(Base64.decode(rawArgs.substring(2, end), Base64.DEFAULT), templates);
+    }
+}
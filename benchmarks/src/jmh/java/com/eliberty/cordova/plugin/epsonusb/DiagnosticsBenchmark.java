@@ -0,0 +1,52 @@
+package com.eliberty.cordova.plugin.epsonusb;
+
+import android.content.Context;
+import android.hardware.usb.UsbDevice;
+import android.hardware.usb.UsbManager;
+
+import org.json.JSONObject;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Diagnostic USB joint aux erreurs et identifiant d'imprimante (manifeste des logos)
+ */
+@State(Scope.Thread)
+public class DiagnosticsBenchmark {
+
+    // Nombre de périphériques USB branchés, dont l'imprimante Epson
+    @Param({"1", "6"})
+    public int devices;
+
+    private UsbDeviceRegistry registry;
+
+    @Setup
+    public void setup() {
+        UsbManager usbManager = new UsbManager();
+        for (int i = 1; i < devices; i++) {
+            usbManager.attach(new UsbDevice("/dev/bus/usb/001/" + (100 + i), 0x1A86 + i, 0x7523, null));
+        }
+        usbManager.attach(new UsbDevice("/dev/bus/usb/001/002", UsbDeviceRegistry.EPSON_VENDOR_ID, 0x0E28, "J2KF012345"));
+        registry = new UsbDeviceRegistry();
+        registry.register(new Context(usbManager));
+    }
+
+    @Benchmark
+    public JSONObject buildDiagnostics() {
+        return registry.buildDiagnostics();
+    }
+
+    @Benchmark
+    public String buildDiagnosticsSerialized() {
+        return registry.buildDiagnostics().toString();
+    }
+
+    @Benchmark
+    public String printerId() {
+        return registry.getPrinterId();
+    }
+}
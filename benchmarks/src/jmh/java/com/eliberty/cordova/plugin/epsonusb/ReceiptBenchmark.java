@@ -0,0 +1,94 @@
+package com.eliberty.cordova.plugin.epsonusb;
+
+import com.epson.epos2.Epos2Exception;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+
+/**
+ * Analyse du balisage et construction des commandes d'un ticket
+ * compile : étape hors verrou (pool de compilation) ; replay : étape sous le verrou de l'imprimante
+ * encode : encodage ESC/POS (mode "escpos", hors verrou, une fois par ticket mis en cache) ; replayRaw : son replay
+ */
+@State(Scope.Thread)
+public class ReceiptBenchmark {
+
+    @Param({"short", "long", "qrHeavy"})
+    public String receipt;
+
+    private String markup;
+    private List<ReceiptSegment> segments;
+    private CompiledReceipt compiled;
+    private CompiledReceipt encoded;
+    private final CommandBuilder builder = new CommandBuilder();
+    // Pilote simulé non connecté : seule la taille du buffer est comptée
+    private final SimulatedPrinter printer = new SimulatedPrinter(new SimulatedPrinter.Config());
+    private final SimulatedPrinterDriver driver = new SimulatedPrinterDriver(printer);
+
+    @Setup
+    public void setup() throws MarkupException {
+        markup = Receipts.get(receipt);
+        segments = MarkupTokenizer.parse(markup);
+        compiled = compile();
+        encoded = compiled.withRaw();
+    }
+
+    @Benchmark
+    public List<ReceiptSegment> parse() throws MarkupException {
+        return MarkupTokenizer.parse(markup);
+    }
+
+    @Benchmark
+    public long build() throws Epos2Exception {
+        return addCommands(segments);
+    }
+
+    @Benchmark
+    public CompiledReceipt compile() throws MarkupException {
+        return CompiledReceipt.compile(Receipt.fromMarkup(markup), null);
+    }
+
+    @Benchmark
+    public long replay() throws Epos2Exception {
+        driver.clearCommandBuffer();
+        builder.reset(driver);
+        builder.replay(compiled);
+        return driver.getBufferBytes();
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return EscPosEncoder.encode(compiled);
+    }
+
+    @Benchmark
+    public long replayRaw() throws Epos2Exception {
+        driver.clearCommandBuffer();
+        builder.reset(driver);
+        builder.replay(encoded);
+        return driver.getBufferBytes();
+    }
+
+    /**
+     * Chemin complet d'un ticket non mis en cache : analyse puis construction
+     */
+    @Benchmark
+    public long parseAndBuild() throws MarkupException, Epos2Exception {
+        return addCommands(MarkupTokenizer.parse(markup));
+    }
+
+    private long addCommands(List<ReceiptSegment> receiptSegments) throws Epos2Exception {
+        driver.clearCommandBuffer();
+        builder.reset(driver);
+        for (int i = 0; i < receiptSegments.size(); i++) {
+            builder.add(receiptSegments.get(i));
+        }
+        builder.addCut();
+        return driver.getBufferBytes();
+    }
+}
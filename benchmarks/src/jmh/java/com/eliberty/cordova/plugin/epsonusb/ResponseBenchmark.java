@@ -0,0 +1,75 @@
+package com.eliberty.cordova.plugin.epsonusb;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Construction des réponses JSON renvoyées au JavaScript
+ */
+@State(Scope.Thread)
+public class ResponseBenchmark {
+
+    private int code = 0;
+    private JSONObject diagnostics;
+    private JSONObject printed;
+
+    @Setup
+    public void setup() throws JSONException {
+        diagnostics = new JSONObject();
+        diagnostics.put("epsonDetected", true);
+        diagnostics.put("usbPermission", true);
+        diagnostics.put("usbDevices", "[VID:04B8 PID:0E28] [VID:1A86 PID:7523] ");
+        diagnostics.put("usbDeviceCount", 2);
+        diagnostics.put("epsonProductId", "0x0E28");
+        diagnostics.put("epsonDeviceName", "/dev/bus/usb/001/002");
+        diagnostics.put("isKnownTmT88", true);
+        printed = new JSONObject();
+        printed.put("status", "printed");
+        printed.put("printJobId", "");
+    }
+
+    /**
+     * Code suivant, pour parcourir tous les messages (y compris "Erreur inconnue")
+     */
+    private int nextCode() {
+        code = code == 17 ? 0 : code + 1;
+        return code;
+    }
+
+    @Benchmark
+    public String errorMessage() {
+        return PrinterResponses.getEpsonErrorMessage(nextCode());
+    }
+
+    @Benchmark
+    public JSONObject errorResponse() {
+        return PrinterResponses.createErrorResponse(nextCode(), "sendData");
+    }
+
+    @Benchmark
+    public JSONObject mergeDiagnostics() {
+        JSONObject error = PrinterResponses.createErrorResponse(PrinterResponses.ERR_CONNECT, "connect");
+        PrinterResponses.mergeJson(error, diagnostics);
+        return error;
+    }
+
+    /**
+     * Réponse d'erreur complète telle que transmise par Cordova (sérialisée)
+     */
+    @Benchmark
+    public String errorWithDiagnosticsSerialized() {
+        JSONObject error = PrinterResponses.createErrorResponse(PrinterResponses.ERR_CONNECT, "connect");
+        PrinterResponses.mergeJson(error, diagnostics);
+        return error.toString();
+    }
+
+    @Benchmark
+    public String printedSerialized() {
+        return printed.toString();
+    }
+}
@@ -0,0 +1,427 @@
+package com.eliberty.cordova.plugin.epsonusb;
+
+import android.app.Activity;
+import android.content.Context;
+import android.hardware.usb.UsbDevice;
+import android.hardware.usb.UsbManager;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.CordovaInterface;
+import org.apache.cordova.CordovaPlugin;
+import org.apache.cordova.PluginResult;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Test de charge du plugin sur une imprimante simulée
+ *
+ * Des clients concurrents appellent execute("printText") comme le pool de threads Cordova, chacun
+ * attendant la réponse de son ticket avant d'envoyer le suivant (charge en boucle fermée). Le travail
+ * traverse le chemin réel du plugin : file d'attente, thread de dispatch, sémaphore, sendData et
+ * attente du callback. Affiche le débit, la latence de bout en bout et les résultats par contexte.
+ * Avec printers > 1, les travaux sont répartis à tour de rôle entre plusieurs imprimantes simulées
+ * (option "printer"), chacune avec sa file et son verrou.
+ *
+ * Avec events=true, les travaux demandent les événements de progression (queued, position, connecting, sent).
+ * Avec durable=true, chaque travail est spoolé (journal sur disque) et l'état du spool est affiché.
+ * Avec adaptive=false, le timeout du callback reste fixe au lieu de suivre les durées observées.
+ * Avec unplugMs > 0, la première imprimante est débranchée unplugAtMs après le début du test pendant
+ * unplugMs (durées réelles) : le disjoncteur fait échouer les travaux sans attendre le timeout de connexion.
+ * Avec warmUp (préférence EpsonWarmUp : none, driver, connect) et startDelayMs (attente avant le premier
+ * travail, comme une application ouverte avant la première vente), la latence du premier travail est affichée
+ * à part : avec warmUp=connect, il ne paie plus la connexion.
+ * Avec commands=escpos (préférence EpsonCommandMode), chaque ticket part en un seul addCommand ESC/POS
+ * et les tickets réimprimés à l'identique sont pris dans le cache (getCommandStats affiché).
+ * Avec mix=report (tickets de 2000 lignes) et streamChunkBytes > 0 (0 par défaut, comme le plugin), les tickets
+ * dépassant streamChunkBytes sont envoyés en continu :
+ * avec events=true, le délai avant le premier envoi (début d'impression) est affiché à part, et chaque simulateur
+ * affiche le plus gros envoi reçu (mémoire du buffer de commandes).
+ * Avec binary=true, les travaux passent par printBinary (format binaire de BinaryJob, arguments bruts du pont
+ * Cordova) au lieu de printText et printBatch.
+ * Avec retryRate > 0, chaque travail porte une clé d'idempotence et une part des travaux est renvoyée
+ * une seconde fois avec la même clé (résultats "retry:...") : les doublons ne doivent pas imprimer.
+ *
+ * Paramètres (clé=valeur) : jobs, clients, batch (tickets par printBatch, 0 = printText), printers,
+ * events, durable, binary, retryRate, adaptive, keepAlive, warmUp, commands, mix, streamChunkBytes, startDelayMs, timeScale, connectMs, sdkLoadMs, firstConnectMs, statusMs, printMs, paperMmPerSecond, connectErrorRate,
+ * dropCallbackRate, offlineRate, offlineMs, unplugAtMs, unplugMs, seed
+ */
+public final class LoadTest {
+
+    private static final String DEFAULT_MIX = "short,short,short,long,qrHeavy";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private LoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> params = new TreeMap<String, String>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq <= 0) {
+                throw new IllegalArgumentException("Paramètre attendu sous la forme clé=valeur : " + arg);
+            }
+            params.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+        int jobs = intParam(params, "jobs", 2000);
+        int clients = intParam(params, "clients", 8);
+        int batch = intParam(params, "batch", 0);
+        int printerCount = intParam(params, "printers", 1);
+        final boolean events = Boolean.parseBoolean(stringParam(params, "events", "false"));
+        final boolean binary = Boolean.parseBoolean(stringParam(params, "binary", "false"));
+        boolean durable = Boolean.parseBoolean(stringParam(params, "durable", "false"));
+        final double retryRate = doubleParam(params, "retryRate", 0);
+        boolean adaptive = Boolean.parseBoolean(stringParam(params, "adaptive", "true"));
+        boolean keepAlive = Boolean.parseBoolean(stringParam(params, "keepAlive", "true"));
+        String warmUp = stringParam(params, "warmUp", "driver");
+        long startDelayMs = intParam(params, "startDelayMs", 0);
+        String commands = stringParam(params, "commands", "sdk");
+        final String[] mix = stringParam(params, "mix", DEFAULT_MIX).split(",");
+        int streamChunkBytes = intParam(params, "streamChunkBytes", EpsonPrinterPlugin.DEFAULT_STREAM_CHUNK_BYTES);
+
+        SimulatedPrinter.Config config = new SimulatedPrinter.Config();
+        config.timeScale = doubleParam(params, "timeScale", 0.1);
+        config.connectLatencyMs = intParam(params, "connectMs", (int) config.connectLatencyMs);
+        config.sdkLoadMs = intParam(params, "sdkLoadMs", (int) config.sdkLoadMs);
+        config.firstConnectMs = intParam(params, "firstConnectMs", (int) config.firstConnectMs);
+        config.statusLatencyMs = intParam(params, "statusMs", (int) config.statusLatencyMs);
+        config.printLatencyMs = intParam(params, "printMs", (int) config.printLatencyMs);
+        config.paperMmPerSecond = doubleParam(params, "paperMmPerSecond", config.paperMmPerSecond);
+        config.connectErrorRate = doubleParam(params, "connectErrorRate", 0.01);
+        config.dropCallbackRate = doubleParam(params, "dropCallbackRate", 0.001);
+        config.offlineRate = doubleParam(params, "offlineRate", 0.002);
+        config.offlineDurationMs = intParam(params, "offlineMs", (int) config.offlineDurationMs);
+        final long unplugAtMs = intParam(params, "unplugAtMs", 2000);
+        final long unplugMs = intParam(params, "unplugMs", 0);
+        config.seed = intParam(params, "seed", 42);
+
+        // Une imprimante simulée par périphérique USB ; la première répond aussi à la cible "USB:"
+        UsbManager usbManager = new UsbManager();
+        final Activity activity = new Activity(usbManager);
+        Map<String, SimulatedPrinter> byTarget = new LinkedHashMap<String, SimulatedPrinter>();
+        List<SimulatedPrinter> simulated = new ArrayList<SimulatedPrinter>();
+        final String[] printerNames = new String[printerCount];
+        // Logo des tickets longs déjà enregistré sur chaque imprimante simulée
+        JSONObject logos = new JSONObject().put("LG", "simulated");
+        long seed = config.seed;
+        for (int i = 0; i < printerCount; i++) {
+            String serial = String.format("SIM%04d", i + 1);
+            String deviceName = String.format("/dev/bus/usb/001/%03d", i + 2);
+            usbManager.attach(new UsbDevice(deviceName, UsbDeviceRegistry.EPSON_VENDOR_ID, 0x0E28, serial));
+            activity.getSharedPreferences("EpsonPrinterPlugin.nvLogos", Context.MODE_PRIVATE).edit()
+                    .putString("04B8:0E28:" + serial, logos.toString()).apply();
+            config.seed = seed + i;
+            SimulatedPrinter printer = new SimulatedPrinter(config);
+            byTarget.put("USB:" + deviceName, printer);
+            simulated.add(printer);
+            printerNames[i] = i == 0 ? PrinterPool.DEFAULT_NAME : "printer" + (i + 1);
+        }
+        config.seed = seed;
+
+        final EpsonPrinterPlugin plugin = new EpsonPrinterPlugin();
+        plugin.cordova = new CordovaInterface() {
+            @Override
+            public Activity getActivity() {
+                return activity;
+            }
+
+            @Override
+            public ExecutorService getThreadPool() {
+                return null;
+            }
+
+            @Override
+            public void requestPermissions(CordovaPlugin plugin, int requestCode, String[] permissions) {
+            }
+
+            @Override
+            public boolean hasPermission(String permission) {
+                return true;
+            }
+        };
+        plugin.setDriverFactory(SimulatedPrinter.factory(byTarget));
+        plugin.preferences.set("EpsonWarmUp", warmUp);
+        plugin.preferences.set("EpsonCommandMode", commands);
+        plugin.pluginInitialize();
+        // Timeout de sécurité du callback (30 s, de 5 à 120 s) à la même échelle que le reste du scénario
+        call(plugin, "configureTimeouts", new JSONObject().put("callback", new JSONObject()
+                .put("adaptive", adaptive)
+                .put("defaultMs", Math.max(100, (long) (30000 * config.timeScale)))
+                .put("floorMs", Math.max(10, (long) (5000 * config.timeScale)))
+                .put("ceilingMs", Math.max(100, (long) (120000 * config.timeScale)))));
+        call(plugin, "configureQueue", new JSONObject().put("maxQueueDepth", clients * 2));
+        call(plugin, "configureSession", new JSONObject().put("keepAlive", keepAlive));
+        call(plugin, "configureSpool", new JSONObject().put("enabled", durable));
+        call(plugin, "configureCommands", new JSONObject().put("streamChunkBytes", streamChunkBytes));
+        // L'imprimante par défaut garde la cible "USB:" ; les suivantes sont désignées par leur périphérique
+        List<String> targets = new ArrayList<String>(byTarget.keySet());
+        for (int i = 1; i < printerCount; i++) {
+            call(plugin, "configurePrinter", new JSONObject().put("name", printerNames[i]).put("target", targets.get(i)));
+        }
+
+        System.out.println("Scénario : " + jobs + " travaux, " + clients + " clients, "
+                + (batch > 0 ? "lots de " + batch + " tickets" : "printText") + ", " + printerCount + " imprimante(s), keepAlive=" + keepAlive + ", durable=" + durable + ", adaptive=" + adaptive + ", warmUp=" + warmUp + ", commands=" + commands + ", binary=" + binary + ", mix=" + Arrays.toString(mix) + ", streamChunkBytes=" + streamChunkBytes
+                + ", timeScale=" + config.timeScale + ", seed=" + config.seed);
+
+        final Histogram latency = new Histogram();
+        final Histogram firstSent = new Histogram();
+        final Map<String, AtomicInteger> outcomes = new TreeMap<String, AtomicInteger>();
+        final AtomicInteger eventCount = new AtomicInteger(0);
+        final AtomicInteger next = new AtomicInteger(0);
+        final long[] firstJobMicros = {0};
+        Thread.sleep(startDelayMs);
+        ExecutorService pool = Executors.newFixedThreadPool(clients);
+        ScheduledExecutorService unplugger = Executors.newSingleThreadScheduledExecutor();
+        if (unplugMs > 0) {
+            final SimulatedPrinter first = simulated.get(0);
+            unplugger.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    first.unplug();
+                }
+            }, unplugAtMs, TimeUnit.MILLISECONDS);
+            unplugger.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    first.plug();
+                }
+            }, unplugAtMs + unplugMs, TimeUnit.MILLISECONDS);
+        }
+        long start = System.nanoTime();
+        for (int c = 0; c < clients; c++) {
+            final int total = jobs;
+            final int receiptsPerJob = batch;
+            pool.execute(new Runnable() {
+                @Override
+                public void run() {
+                    int index;
+                    while ((index = next.getAndIncrement()) < total) {
+                        try {
+                            long submitted = System.nanoTime();
+                            String key = retryRate > 0 ? "load-" + index : null;
+                            Result result = submit(plugin, mix, index, receiptsPerJob, printerNames[index % printerNames.length], events, binary, key);
+                            latency.record((System.nanoTime() - submitted) / 1000);
+                            if (result.firstSentNanos > 0) {
+                                firstSent.record((result.firstSentNanos - submitted) / 1000);
+                            }
+                            if (index == 0) {
+                                firstJobMicros[0] = (System.nanoTime() - submitted) / 1000;
+                            }
+                            count(outcomes, result.outcome());
+                            eventCount.addAndGet(result.events.get());
+                            if (key != null && (index * 7919) % 1000 < retryRate * 1000) {
+                                // Nouvelle tentative du même travail (réponse perdue côté JavaScript)
+                                Result retry = submit(plugin, mix, index, receiptsPerJob, printerNames[index % printerNames.length], events, binary, key);
+                                count(outcomes, "retry:" + (retry.isDuplicate() ? "duplicate" : retry.outcome()));
+                            }
+                        } catch (Exception e) {
+                            count(outcomes, "exception:" + e.getClass().getSimpleName());
+                        }
+                    }
+                }
+            });
+        }
+        pool.shutdown();
+        pool.awaitTermination(1, TimeUnit.DAYS);
+        unplugger.shutdownNow();
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        long dots = 0;
+        for (SimulatedPrinter printer : simulated) {
+            dots += printer.dotsPrinted.get();
+        }
+        System.out.println();
+        System.out.println(String.format("Durée            %.2f s", seconds));
+        System.out.println(String.format("Débit            %.1f travaux/s", jobs / seconds));
+        System.out.println(String.format("Papier           %.0f mm imprimés, %.1f mm/s (maximum simulé %.0f mm/s)",
+                dots / (double) SimulatedPrinter.DOTS_PER_MM,
+                dots / (double) SimulatedPrinter.DOTS_PER_MM / seconds,
+                printerCount * config.paperMmPerSecond / config.timeScale));
+        System.out.println("Latence (ms)     " + latency.toJson(1000.0));
+        System.out.println(String.format("Premier travail  %.1f ms", firstJobMicros[0] / 1000.0));
+        System.out.println("Résultats        " + outcomes);
+        if (events) {
+            System.out.println(String.format("Événements       %d (%.1f par travail)", eventCount.get(), eventCount.get() / (double) jobs));
+            System.out.println("Premier envoi    " + firstSent.toJson(1000.0));
+        }
+        for (int i = 0; i < simulated.size(); i++) {
+            SimulatedPrinter printer = simulated.get(i);
+            System.out.println(String.format("Simulateur %-6s", i + 1) + "imprimés=" + printer.jobsPrinted.get() + " refusés hors ligne=" + printer.jobsFailed.get()
+                    + " erreurs de connexion=" + printer.connectErrors.get() + " callbacks perdus=" + printer.droppedCallbacks.get()
+                    + " épisodes hors ligne=" + printer.offlineEpisodes.get() + " plus gros envoi=" + printer.maxSendBytes.get() + " o");
+        }
+        System.out.println("getPrinters      " + call(plugin, "getPrinters", null).toString(2));
+        System.out.println("getMetrics       " + call(plugin, "getMetrics", null).toString(2));
+        System.out.println("getCommandStats  " + call(plugin, "getCommandStats", null).toString(2));
+        System.out.println("getTimeouts      " + call(plugin, "getTimeouts", null).toString(2));
+        if (durable) {
+            // Travaux en erreur conservés pour un rejeu : seul leur nombre est affiché
+            JSONObject spool = call(plugin, "getSpool", null);
+            spool.put("pending", spool.getJSONArray("pending").length());
+            System.out.println("getSpool         " + spool.toString(2));
+        }
+
+        plugin.onDestroy();
+        for (SimulatedPrinter printer : simulated) {
+            printer.shutdown();
+        }
+    }
+
+    /**
+     * Envoie un travail et attend sa réponse
+     */
+    private static Result submit(EpsonPrinterPlugin plugin, String[] mix, int index, int batch, String printer, boolean events, boolean binary, String idempotencyKey) throws JSONException, InterruptedException {
+        Result result = new Result();
+        JSONObject options = new JSONObject();
+        options.put("printer", printer);
+        options.put("events", events);
+        if (idempotencyKey != null) {
+            options.put("idempotencyKey", idempotencyKey);
+        }
+        if (binary) {
+            List<String> markups = new ArrayList<String>();
+            for (int i = 0; i < Math.max(batch, 1); i++) {
+                markups.add(Receipts.get(mix[(index + i) % mix.length]));
+            }
+            // Arguments tels que transmis par le pont : ArrayBuffer en base64, puis les options
+            String payload = java.util.Base64.getEncoder().encodeToString(encodeJob(markups));
+            plugin.execute("printBinary", new JSONArray().put(payload).put(options).toString(), result);
+        } else if (batch > 0) {
+            JSONArray receipts = new JSONArray();
+            for (int i = 0; i < batch; i++) {
+                receipts.put(Receipts.get(mix[(index + i) % mix.length]));
+            }
+            options.put("receipts", receipts);
+            plugin.execute("printBatch", new JSONArray().put(options), result);
+        } else {
+            options.put("text", Receipts.get(mix[index % mix.length]));
+            plugin.execute("printText", new JSONArray().put(options), result);
+        }
+        result.latch.await();
+        return result;
+    }
+
+    /**
+     * Travail binaire de tickets texte, comme encodeJob dans www/epsonPrinter.js
+     */
+    private static byte[] encodeJob(List<String> markups) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeBytes("EPJ");
+            out.writeByte(1);
+            for (String markup : markups) {
+                byte[] text = markup.getBytes(UTF_8);
+                out.writeByte(BinaryJob.TEXT);
+                out.writeInt(text.length);
+                out.write(text);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static JSONObject call(EpsonPrinterPlugin plugin, String action, JSONObject options) throws Exception {
+        Result result = new Result();
+        JSONArray args = new JSONArray();
+        if (options != null) {
+            args.put(options);
+        }
+        plugin.execute(action, args, result);
+        result.latch.await();
+        return new JSONObject(result.message);
+    }
+
+    private static void count(Map<String, AtomicInteger> outcomes, String key) {
+        synchronized (outcomes) {
+            AtomicInteger counter = outcomes.get(key);
+            if (counter == null) {
+                counter = new AtomicInteger();
+                outcomes.put(key, counter);
+            }
+            counter.incrementAndGet();
+        }
+    }
+
+    private static String stringParam(Map<String, String> params, String key, String defaultValue) {
+        String value = params.get(key);
+        return value != null ? value : defaultValue;
+    }
+
+    private static int intParam(Map<String, String> params, String key, int defaultValue) {
+        return Integer.parseInt(stringParam(params, key, String.valueOf(defaultValue)));
+    }
+
+    private static double doubleParam(Map<String, String> params, String key, double defaultValue) {
+        return Double.parseDouble(stringParam(params, key, String.valueOf(defaultValue)));
+    }
+
+    /**
+     * Réponse finale d'un appel (les résultats intermédiaires keepCallback sont seulement comptés)
+     */
+    private static final class Result extends CallbackContext {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicInteger events = new AtomicInteger(0);
+        // Premier événement "sent" : l'imprimante commence à imprimer
+        volatile long firstSentNanos = 0;
+        volatile boolean ok;
+        volatile String message;
+
+        Result() {
+            super("loadTest", null);
+        }
+
+        @Override
+        public void sendPluginResult(PluginResult pluginResult) {
+            if (pluginResult.getKeepCallback()) {
+                if (events.incrementAndGet() > 0 && firstSentNanos == 0 && pluginResult.getMessage().contains("\"sent\"")) {
+                    firstSentNanos = System.nanoTime();
+                }
+                return;
+            }
+            if (latch.getCount() == 0) {
+                return;
+            }
+            ok = pluginResult.getStatus() == PluginResult.Status.OK.ordinal();
+            message = pluginResult.getMessage();
+            latch.countDown();
+        }
+
+        boolean isDuplicate() throws JSONException {
+            return new JSONObject(message).optBoolean("duplicate", false);
+        }
+
+        /**
+         * "printed" ou "error:<contexte>" (lot : "batch:<statut>")
+         */
+        String outcome() throws JSONException {
+            JSONObject json = new JSONObject(message);
+            if (ok) {
+                return json.optString("status", "ok");
+            }
+            if (json.has("tickets")) {
+                return "batch:" + json.optString("status", "error");
+            }
+            String reason = json.optString("reason", "");
+            return "error:" + json.optString("context", "?") + (reason.isEmpty() ? "" : "/" + reason);
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package com.eliberty.cordova.plugin.epsonusb;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Vérification de la reprise du spool persistant (PrintSpool) après un arrêt brutal
+ *
+ * Chaque scénario écrit un journal dans un répertoire temporaire, l'abîme comme le ferait une coupure
+ * d'alimentation (fin d'enregistrement tronquée, octet corrompu), puis le relit avec une nouvelle instance :
+ * les travaux valides doivent être retrouvés à l'identique, le reste ignoré et le journal rester utilisable.
+ * Vérifie aussi la compaction, l'état incertain (rejeu explicite seulement) et les tickets binaires.
+ */
+public final class SpoolRecoveryCheck {
+
+    private static final long MAX_AGE_MS = PrintSpool.DEFAULT_MAX_AGE_MS;
+
+    private static int failures = 0;
+
+    private SpoolRecoveryCheck() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        File root = Files.createTempDirectory("spool-check").toFile();
+        try {
+            roundTrip(new File(root, "roundTrip"));
+            tornTail(new File(root, "tornTail"));
+            corruptedRecord(new File(root, "crc"));
+            compaction(new File(root, "compaction"));
+            uncertain(new File(root, "uncertain"));
+        } finally {
+            delete(root);
+        }
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Tickets balisés, compilés (modèle) et binaires relus à l'identique ; un travail terminé n'est pas relu
+     */
+    private static void roundTrip(File dir) throws Exception {
+        PrintSpool spool = open(dir);
+        ReceiptSegment image = new ReceiptSegment(ReceiptSegment.IMAGE, "", false, false, ReceiptSegment.ALIGN_RIGHT, 1, 1,
+                ReceiptSegment.FONT_A, ReceiptSegment.imageArg(ImageRasterizer.DITHER_ORDERED, 200));
+        List<Receipt> receipts = Arrays.asList(
+                Receipt.fromMarkup("<BOLD>Été</BOLD> €\n"),
+                new ReceiptTemplate("t", "1", "Forfait {{type}}\n").render(new org.json.JSONObject().put("type", "Journée")),
+                Receipt.fromImage(image, new byte[]{1, 2, 3}),
+                Receipt.fromRaster(image, new RasterImage(16, 2, new byte[]{(byte) 0xFF, 0, 0, (byte) 0xFF})));
+        long kept = spool.append(job("kept", receipts), "default", "USB:");
+        long done = spool.append(job("done", receipts.subList(0, 1)), "default", "USB:");
+        spool.complete(done);
+        spool.retain(kept, null, false);
+        spool.shutdown();
+
+        List<PrintSpool.Entry> entries = replayable(dir);
+        boolean ok = entries.size() == 1 && entries.get(0).id == kept && entries.get(0).jobId.equals("kept");
+        if (ok) {
+            List<Receipt> read = entries.get(0).receipts;
+            ok = read.size() == 4
+                    && "<BOLD>Été</BOLD> €\n".equals(read.get(0).markup())
+                    && "Forfait Journée\n".equals(text(read.get(1)))
+                    && Arrays.equals(new byte[]{1, 2, 3}, read.get(2).imageData())
+                    && read.get(2).segments().get(0).imageWidth() == 200
+                    && read.get(2).segments().get(0).align == ReceiptSegment.ALIGN_RIGHT
+                    && read.get(3).raster() != null && read.get(3).raster().height == 2
+                    && Arrays.equals(read.get(3).raster().bits, new byte[]{(byte) 0xFF, 0, 0, (byte) 0xFF});
+        }
+        report("roundTrip", ok, entries.size() + " travail(aux) relu(s)");
+    }
+
+    /**
+     * Dernier enregistrement à moitié écrit : ignoré, journal coupé à la fin du précédent et toujours utilisable
+     */
+    private static void tornTail(File dir) throws Exception {
+        PrintSpool spool = open(dir);
+        spool.append(job("first", text("Premier\n")), "default", "USB:");
+        spool.shutdown();
+        long validLength = journal(dir).length();
+        spool = open(dir);
+        spool.append(job("torn", text("Tronqué\n")), "default", "USB:");
+        spool.shutdown();
+        truncate(journal(dir), journal(dir).length() - 3);
+
+        spool = open(dir);
+        boolean truncated = journal(dir).length() == validLength;
+        spool.append(job("after", text("Après\n")), "default", "USB:");
+        spool.shutdown();
+        List<String> jobIds = jobIds(replayable(dir));
+        report("tornTail", truncated && jobIds.equals(Arrays.asList("first", "after")), "relus : " + jobIds);
+    }
+
+    /**
+     * Octet corrompu dans un enregistrement : le CRC l'écarte, ainsi que tout ce qui le suit
+     */
+    private static void corruptedRecord(File dir) throws Exception {
+        PrintSpool spool = open(dir);
+        spool.append(job("first", text("Premier\n")), "default", "USB:");
+        spool.shutdown();
+        long corruptAt = journal(dir).length() + 20;
+        spool = open(dir);
+        spool.append(job("corrupt", text("Corrompu\n")), "default", "USB:");
+        spool.append(job("following", text("Suivant\n")), "default", "USB:");
+        spool.shutdown();
+        RandomAccessFile file = new RandomAccessFile(journal(dir), "rw");
+        try {
+            file.seek(corruptAt);
+            int b = file.read();
+            file.seek(corruptAt);
+            file.write(b ^ 0x55);
+        } finally {
+            file.close();
+        }
+
+        List<String> jobIds = jobIds(replayable(dir));
+        report("crc", jobIds.equals(Collections.singletonList("first")), "relus : " + jobIds);
+    }
+
+    /**
+     * Journal majoritairement terminé : réécrit avec les seules entrées vivantes, relues ensuite
+     */
+    private static void compaction(File dir) throws Exception {
+        PrintSpool spool = open(dir);
+        StringBuilder line = new StringBuilder();
+        while (line.length() < 8 * 1024) {
+            line.append("Ligne de rapport 0123456789\n");
+        }
+        List<Receipt> large = text(line.toString());
+        long kept = 0;
+        for (int i = 0; i < 60; i++) {
+            long id = spool.append(job("job-" + i, large), "default", "USB:");
+            if (i == 59) {
+                kept = id;
+            } else {
+                spool.complete(id);
+            }
+            // Un lot d'écriture par travail, comme des impressions successives
+            Thread.sleep(25);
+        }
+        spool.shutdown();
+        long compactions = spool.toJson().getLong("compactions");
+        long length = journal(dir).length();
+
+        List<PrintSpool.Entry> entries = replayable(dir);
+        // Sans compaction, le journal contiendrait les 60 travaux
+        boolean ok = compactions > 0 && length < 60L * line.length() / 2 && entries.size() == 1 && entries.get(0).id == kept
+                && line.toString().equals(entries.get(0).receipts.get(0).markup());
+        report("compaction", ok, compactions + " compaction(s), journal de " + length + " octets");
+    }
+
+    /**
+     * Travail peut-être imprimé : conservé après relecture, rejoué par replaySpool seulement
+     */
+    private static void uncertain(File dir) throws Exception {
+        PrintSpool spool = open(dir);
+        long id = spool.append(job("uncertain", text("Peut-être imprimé\n")), "default", "USB:");
+        spool.append(job("certain", text("Non imprimé\n")), "default", "USB:");
+        spool.retain(id, null, true);
+        spool.shutdown();
+
+        spool = open(dir);
+        List<String> automatic = jobIds(spool.takeReplayable(MAX_AGE_MS, false));
+        List<String> explicit = jobIds(spool.takeReplayable(MAX_AGE_MS, true));
+        boolean ok = automatic.equals(Arrays.asList("certain")) && explicit.equals(Arrays.asList("uncertain"));
+        spool.shutdown();
+        report("uncertain", ok, "automatique : " + automatic + ", replaySpool : " + explicit);
+    }
+
+    private static PrintSpool open(File dir) throws InterruptedException {
+        PrintSpool spool = new PrintSpool(dir);
+        final CountDownLatch loaded = new CountDownLatch(1);
+        spool.start(new Runnable() {
+            @Override
+            public void run() {
+                loaded.countDown();
+            }
+        });
+        if (!loaded.await(5, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("Journal non chargé");
+        }
+        return spool;
+    }
+
+    /**
+     * Relit le journal et retourne les travaux rejoués automatiquement
+     */
+    private static List<PrintSpool.Entry> replayable(File dir) throws InterruptedException {
+        PrintSpool spool = open(dir);
+        try {
+            return spool.takeReplayable(MAX_AGE_MS, false);
+        } finally {
+            spool.shutdown();
+        }
+    }
+
+    private static PrintJob job(String id, List<Receipt> receipts) {
+        return new PrintJob(id, receipts, receipts.size() > 1, null, 0, 0, false, null);
+    }
+
+    private static List<Receipt> text(String markup) {
+        return Collections.singletonList(Receipt.fromMarkup(markup));
+    }
+
+    private static String text(Receipt receipt) throws MarkupException {
+        StringBuilder sb = new StringBuilder();
+        for (ReceiptSegment segment : receipt.segments()) {
+            sb.append(segment.text);
+        }
+        return sb.toString();
+    }
+
+    private static List<String> jobIds(List<PrintSpool.Entry> entries) {
+        List<String> ids = new ArrayList<String>();
+        for (PrintSpool.Entry entry : entries) {
+            ids.add(entry.jobId);
+        }
+        return ids;
+    }
+
+    private static File journal(File dir) {
+        return new File(dir, "journal.bin");
+    }
+
+    private static void truncate(File file, long length) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(length);
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static void report(String name, boolean ok, String detail) {
+        System.out.printf("%-12s %s  %s%n", name, ok ? "ok" : "ÉCHEC", detail);
+        if (!ok) {
+            failures++;
+        }
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
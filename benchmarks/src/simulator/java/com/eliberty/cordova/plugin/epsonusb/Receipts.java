@@ -0,0 +1,94 @@
+package com.eliberty.cordova.plugin.epsonusb;
+
+/**
+ * Tickets représentatifs utilisés par les benchmarks
+ */
+final class Receipts {
+
+    // Ticket de caisse courant : en-tête, quelques lignes, total, code-barres
+    static final String SHORT =
+            "<BOLD><SIZE 2>Station des Arcs</SIZE></BOLD>\n"
+            + "Caisse 3 - 14/02/2024 10:42\n"
+            + "<ALIGN LEFT>Forfait journée adulte    52,00 EUR\n"
+            + "Assurance neige            3,50 EUR\n"
+            + "<BOLD>Total                     55,50 EUR</BOLD></ALIGN>\n"
+            + "<FEED 1><BARCODE EAN13>3760123456789</BARCODE>\n"
+            + "Merci de votre visite\n";
+
+    // Récapitulatif de commande : 60 lignes, changements de style fréquents
+    static final String LONG = buildLong(60);
+
+    // Forfaits famille : un QR code par forfait
+    static final String QR_HEAVY = buildQrHeavy(8);
+
+    // Rapport de fin de journée : 2000 lignes de passages (environ 90 Ko), envoyé en continu
+    static final String REPORT = buildReport(2000);
+
+    private Receipts() {
+    }
+
+    static String get(String name) {
+        if ("short".equals(name)) {
+            return SHORT;
+        }
+        if ("long".equals(name)) {
+            return LONG;
+        }
+        if ("qrHeavy".equals(name)) {
+            return QR_HEAVY;
+        }
+        if ("report".equals(name)) {
+            return REPORT;
+        }
+        throw new IllegalArgumentException(name);
+    }
+
+    private static String buildLong(int lines) {
+        StringBuilder sb = new StringBuilder(lines * 64);
+        sb.append("<LOGO LG>\n<BOLD><SIZE 2>Récapitulatif de commande</SIZE></BOLD>\n");
+        sb.append("<FONT B>Commande n° 2024-000123 - Client 98765</FONT>\n<FEED 1>");
+        sb.append("<ALIGN LEFT>");
+        for (int i = 1; i <= lines; i++) {
+            if (i % 10 == 1) {
+                sb.append("<UNDERLINE>Jour ").append(i / 10 + 1).append("</UNDERLINE>\n");
+            }
+            sb.append("Forfait ").append(i % 3 == 0 ? "enfant " : "adulte ").append(i);
+            sb.append("          ");
+            if (i % 4 == 0) {
+                sb.append("<BOLD>").append(40 + i % 7).append(",00 EUR</BOLD>\n");
+            } else {
+                sb.append(40 + i % 7).append(",00 EUR\n");
+            }
+        }
+        sb.append("</ALIGN><FEED 1><ALIGN RIGHT><BOLD><SIZE 2 1>Total 2 760,00 EUR</SIZE></BOLD></ALIGN>\n");
+        sb.append("<FEED 2><BARCODE CODE128>CMD2024000123</BARCODE>\n");
+        return sb.toString();
+    }
+
+    private static String buildQrHeavy(int passes) {
+        StringBuilder sb = new StringBuilder(passes * 160);
+        sb.append("<BOLD><SIZE 2>Forfaits famille</SIZE></BOLD>\n");
+        for (int i = 1; i <= passes; i++) {
+            sb.append("<ALIGN LEFT>Forfait ").append(i).append(" - 6 jours</ALIGN>\n");
+            sb.append("<QRCODE>https://tickets.example.com/p/2024/");
+            sb.append(1000000 + i * 7919).append("?k=").append(Integer.toHexString(i * 0x9E3779B1));
+            sb.append("</QRCODE>\n<FEED 1>");
+        }
+        sb.append("Présentez ce QR code à la borne\n");
+        return sb.toString();
+    }
+
+    static String buildReport(int lines) {
+        StringBuilder sb = new StringBuilder(lines * 48);
+        sb.append("<BOLD><SIZE 2>Rapport de passages</SIZE></BOLD>\n<ALIGN LEFT>");
+        for (int i = 1; i <= lines; i++) {
+            if (i % 100 == 1) {
+                sb.append("<FEED 1><UNDERLINE>Remontée ").append(i / 100 + 1).append("</UNDERLINE>\n");
+            }
+            sb.append(String.format("%02d:%02d  Forfait %07d  ", 8 + i / 240 % 10, i % 60, 1000000 + i * 37));
+            sb.append(i % 9 == 0 ? "<BOLD>refusé</BOLD>\n" : "validé\n");
+        }
+        sb.append("</ALIGN><FEED 1><BOLD>").append(lines).append(" passages</BOLD>\n");
+        return sb.toString();
+    }
+}
@@ -0,0 +1,297 @@
+package com.eliberty.cordova.plugin.epsonusb;
+
+import android.content.Context;
+
+import com.epson.epos2.Epos2Exception;
+import com.epson.epos2.printer.Printer;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Imprimante TM-T88 simulée sur la JVM (tests de charge, aucun appareil ni SDK)
+ *
+ * Représente l'appareil physique, partagé par les pilotes successifs (SimulatedPrinterDriver) :
+ * port USB exclusif, papier qui avance à vitesse constante, épisodes hors ligne (capot ouvert).
+ * Le résultat d'un sendData est rendu sur un thread du simulateur, comme le SDK.
+ * Les tirages aléatoires utilisent un seul Random initialisé par Config.seed.
+ */
+final class SimulatedPrinter {
+
+    // Code Epos2CallbackCode.CODE_ERR_COVER_OPEN rendu pour une impression pendant un épisode hors ligne
+    static final int CODE_ERR_COVER_OPEN = 4;
+    // Résolution de la TM-T88 (203 dpi)
+    static final int DOTS_PER_MM = 8;
+    // Cible du SDK désignant la première imprimante USB
+    static final String DEFAULT_TARGET = "USB:";
+    static final PrinterDriver.Status DISCONNECTED = new PrinterDriver.Status(Printer.FALSE, Printer.FALSE, Printer.UNKNOWN, Printer.UNKNOWN);
+
+    /**
+     * Paramètres du scénario (durées en millisecondes avant application de timeScale)
+     */
+    static final class Config {
+        long connectLatencyMs = 40;
+        // Démarrage à froid : chargement de libepos2 à la création du premier pilote,
+        // puis première connexion à l'imprimante (ouverture du périphérique USB)
+        long sdkLoadMs = 300;
+        long firstConnectMs = 1000;
+        long statusLatencyMs = 5;
+        long transactionLatencyMs = 1;
+        // Délai fixe entre sendData et le début de l'avance du papier
+        long printLatencyMs = 30;
+        // Vitesse d'impression (TM-T88VI : 350 mm/s)
+        double paperMmPerSecond = 350;
+        // Probabilité qu'un connect échoue avec ERR_CONNECT
+        double connectErrorRate = 0;
+        // Probabilité qu'un sendData ne rende jamais son résultat
+        double dropCallbackRate = 0;
+        // Probabilité, à chaque lecture du statut, que l'imprimante passe hors ligne (capot ouvert)
+        double offlineRate = 0;
+        long offlineDurationMs = 2000;
+        // Durée d'un connect qui échoue sur une imprimante débranchée (timeout de connexion du SDK)
+        long unpluggedConnectMs = 5000;
+        // Multiplie toutes les durées (0.1 : scénario 10 fois plus rapide)
+        double timeScale = 1.0;
+        long seed = 42;
+    }
+
+    private final Config config;
+    private final Random random;
+    private final ScheduledExecutorService callbackExecutor;
+
+    // Pilote connecté (port USB exclusif)
+    private SimulatedPrinterDriver owner = null;
+    private long paperBusyUntilNanos = 0;
+    private long offlineUntilNanos = 0;
+    // Imprimante débranchée (unplug) : toute connexion échoue après unpluggedConnectMs
+    private volatile boolean unplugged = false;
+    private boolean connectedOnce = false;
+
+    final AtomicLong jobsPrinted = new AtomicLong(0);
+    final AtomicLong jobsFailed = new AtomicLong(0);
+    final AtomicLong dotsPrinted = new AtomicLong(0);
+    final AtomicLong connectErrors = new AtomicLong(0);
+    final AtomicLong droppedCallbacks = new AtomicLong(0);
+    final AtomicLong offlineEpisodes = new AtomicLong(0);
+    // Plus gros buffer de commandes reçu en un sendData (octets)
+    final AtomicLong maxSendBytes = new AtomicLong(0);
+
+    SimulatedPrinter(Config config) {
+        this.config = config;
+        this.random = new Random(config.seed);
+        this.callbackExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "SimulatedPrinter");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    PrinterDriver.Factory factory() {
+        return new PrinterDriver.Factory() {
+            @Override
+            public PrinterDriver create(Context context) {
+                return new SimulatedPrinterDriver(SimulatedPrinter.this);
+            }
+        };
+    }
+
+    /**
+     * Pilotes de plusieurs imprimantes simulées, choisies par cible à la connexion
+     */
+    static PrinterDriver.Factory factory(final Map<String, SimulatedPrinter> printers) {
+        final AtomicBoolean sdkLoaded = new AtomicBoolean(false);
+        return new PrinterDriver.Factory() {
+            @Override
+            public PrinterDriver create(Context context) {
+                if (sdkLoaded.compareAndSet(false, true)) {
+                    SimulatedPrinter first = printers.values().iterator().next();
+                    first.pause(first.config.sdkLoadMs);
+                }
+                return new SimulatedPrinterDriver(printers);
+            }
+        };
+    }
+
+    void shutdown() {
+        callbackExecutor.shutdownNow();
+    }
+
+    private synchronized boolean draw(double rate) {
+        return rate > 0 && random.nextDouble() < rate;
+    }
+
+    private long scaledNanos(double millis) {
+        return (long) (millis * config.timeScale * 1000000L);
+    }
+
+    /**
+     * Attente bloquante (appels synchrones du SDK : connect, getStatus...)
+     */
+    void pause(long millis) {
+        long nanos = scaledNanos(millis);
+        if (nanos <= 0) {
+            return;
+        }
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    long transactionLatencyMs() {
+        return config.transactionLatencyMs;
+    }
+
+    /**
+     * Débranche l'imprimante : la connexion en cours est perdue, les suivantes échouent
+     */
+    synchronized void unplug() {
+        unplugged = true;
+        owner = null;
+    }
+
+    synchronized void plug() {
+        unplugged = false;
+    }
+
+    void connect(SimulatedPrinterDriver driver) throws Epos2Exception {
+        if (unplugged) {
+            pause(config.unpluggedConnectMs);
+            connectErrors.incrementAndGet();
+            throw new Epos2Exception(PrinterResponses.ERR_CONNECT);
+        }
+        pause(config.connectLatencyMs);
+        synchronized (this) {
+            if (!connectedOnce) {
+                connectedOnce = true;
+                pause(config.firstConnectMs);
+            }
+        }
+        if (draw(config.connectErrorRate)) {
+            connectErrors.incrementAndGet();
+            throw new Epos2Exception(PrinterResponses.ERR_CONNECT);
+        }
+        synchronized (this) {
+            if (owner == driver) {
+                throw new Epos2Exception(PrinterResponses.ERR_ALREADY_OPENED);
+            }
+            if (owner != null) {
+                throw new Epos2Exception(PrinterResponses.ERR_IN_USE);
+            }
+            owner = driver;
+        }
+    }
+
+    synchronized void disconnect(SimulatedPrinterDriver driver) {
+        if (owner == driver) {
+            owner = null;
+        }
+    }
+
+    synchronized boolean isConnected(SimulatedPrinterDriver driver) {
+        return owner == driver;
+    }
+
+    private synchronized boolean isOffline() {
+        return System.nanoTime() < offlineUntilNanos;
+    }
+
+    /**
+     * Statut lu par le pilote ; peut déclencher un épisode hors ligne
+     */
+    PrinterDriver.Status readStatus(SimulatedPrinterDriver driver) {
+        pause(config.statusLatencyMs);
+        if (!isConnected(driver)) {
+            return DISCONNECTED;
+        }
+        if (!isOffline() && draw(config.offlineRate)) {
+            startOfflineEpisode();
+        }
+        boolean offline = isOffline();
+        return new PrinterDriver.Status(Printer.TRUE, offline ? Printer.FALSE : Printer.TRUE,
+                offline ? Printer.TRUE : Printer.FALSE, Printer.PAPER_OK);
+    }
+
+    private void startOfflineEpisode() {
+        synchronized (this) {
+            offlineUntilNanos = System.nanoTime() + scaledNanos(config.offlineDurationMs);
+        }
+        offlineEpisodes.incrementAndGet();
+        notifyStatus(Printer.EVENT_COVER_OPEN, Printer.EVENT_OFFLINE);
+        callbackExecutor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                notifyStatus(Printer.EVENT_COVER_CLOSE, Printer.EVENT_ONLINE);
+            }
+        }, scaledNanos(config.offlineDurationMs), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Événements du moniteur, transmis au pilote connecté s'il surveille l'imprimante
+     */
+    private void notifyStatus(final int first, final int second) {
+        final SimulatedPrinterDriver driver;
+        synchronized (this) {
+            driver = owner;
+        }
+        if (driver == null || !driver.isMonitoring()) {
+            return;
+        }
+        callbackExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                driver.deliverStatusChange(first);
+                driver.deliverStatusChange(second);
+            }
+        });
+    }
+
+    /**
+     * Imprime le buffer : le papier avance après les impressions précédentes, puis le résultat est rendu
+     */
+    void print(final SimulatedPrinterDriver driver, long dots) {
+        long bytes = driver.getBufferBytes();
+        long max;
+        while (bytes > (max = maxSendBytes.get()) && !maxSendBytes.compareAndSet(max, bytes)) {
+            // Nouvelle tentative
+        }
+        if (draw(config.dropCallbackRate)) {
+            // Résultat jamais rendu : le plugin doit tomber sur son timeout de sécurité
+            droppedCallbacks.incrementAndGet();
+            return;
+        }
+        final boolean offline = isOffline();
+        long now = System.nanoTime();
+        long done;
+        synchronized (this) {
+            long start = Math.max(now, paperBusyUntilNanos) + scaledNanos(config.printLatencyMs);
+            long paperNanos = offline ? 0 : scaledNanos(dots * 1000.0 / (config.paperMmPerSecond * DOTS_PER_MM));
+            done = start + paperNanos;
+            paperBusyUntilNanos = done;
+        }
+        if (offline) {
+            jobsFailed.incrementAndGet();
+        } else {
+            jobsPrinted.incrementAndGet();
+            dotsPrinted.addAndGet(dots);
+        }
+        final PrinterDriver.Status status = new PrinterDriver.Status(Printer.TRUE, offline ? Printer.FALSE : Printer.TRUE,
+                offline ? Printer.TRUE : Printer.FALSE, Printer.PAPER_OK);
+        callbackExecutor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                driver.deliverReceive(offline ? CODE_ERR_COVER_OPEN : 0, status);
+            }
+        }, done - now, TimeUnit.NANOSECONDS);
+    }
+}
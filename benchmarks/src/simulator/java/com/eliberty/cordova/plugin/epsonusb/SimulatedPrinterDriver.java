@@ -0,0 +1,311 @@
+package com.eliberty.cordova.plugin.epsonusb;
+
+import com.epson.epos2.Epos2Exception;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Pilote d'une imprimante simulée (SimulatedPrinter), même contrat que EpsonPrinterDriver
+ * L'imprimante est choisie à la connexion d'après la cible, parmi les imprimantes simulées branchées
+ *
+ * Le buffer de commandes n'est pas conservé : seuls sa taille et la longueur de papier
+ * correspondante (en points) sont comptées.
+ */
+final class SimulatedPrinterDriver implements PrinterDriver {
+
+    // Hauteur d'une ligne de texte en police A avec l'interligne par défaut (en points)
+    private static final int LINE_DOTS = 30;
+    private static final int CHAR_DOTS = 24;
+    // Avance jusqu'au massicot avant la coupe
+    private static final int CUT_FEED_DOTS = 96;
+    // Hauteur supposée d'un logo NV (inconnue du pilote)
+    private static final int LOGO_DOTS = 120;
+    // Octets par ligne d'une trame pleine largeur (512 points)
+    private static final int RASTER_ROW_BYTES = 64;
+    private static final int BARCODE_HRI_DOTS = 30;
+    // Capacité en octets d'un QR code niveau L, par version
+    private static final int[] QR_CAPACITY_L = {17, 32, 53, 78, 106, 134, 154, 192, 230, 271, 321, 367, 425, 458, 520, 586, 644, 718, 792, 858};
+
+    // Imprimantes simulées par cible du SDK ("USB:" : la première)
+    private final Map<String, SimulatedPrinter> printers;
+    private volatile SimulatedPrinter printer = null;
+    private volatile Listener listener = null;
+    private volatile boolean monitoring = false;
+    private boolean inTransaction = false;
+
+    private long bufferBytes = 0;
+    private long bufferDots = 0;
+    private int textHeight = 1;
+
+    SimulatedPrinterDriver(SimulatedPrinter printer) {
+        this(Collections.singletonMap(SimulatedPrinter.DEFAULT_TARGET, printer));
+    }
+
+    SimulatedPrinterDriver(Map<String, SimulatedPrinter> printers) {
+        this.printers = printers;
+    }
+
+    boolean isMonitoring() {
+        return monitoring;
+    }
+
+    /**
+     * Taille du buffer de commandes en octets (benchmarks de construction des commandes)
+     */
+    long getBufferBytes() {
+        return bufferBytes;
+    }
+
+    void deliverReceive(int code, Status status) {
+        Listener current = listener;
+        if (current != null) {
+            current.onReceive(code, status, "");
+        }
+    }
+
+    void deliverStatusChange(int eventType) {
+        Listener current = listener;
+        if (current != null) {
+            current.onStatusChange(eventType);
+        }
+    }
+
+    @Override
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public void connect(String target, int timeout) throws Epos2Exception {
+        SimulatedPrinter device = printers.get(target);
+        if (device == null && SimulatedPrinter.DEFAULT_TARGET.equals(target) && !printers.isEmpty()) {
+            device = printers.values().iterator().next();
+        }
+        if (device == null) {
+            throw new Epos2Exception(PrinterResponses.ERR_CONNECT);
+        }
+        if (printer != null && printer != device && printer.isConnected(this)) {
+            throw new Epos2Exception(PrinterResponses.ERR_ILLEGAL);
+        }
+        device.connect(this);
+        printer = device;
+    }
+
+    @Override
+    public void disconnect() throws Epos2Exception {
+        requireConnected();
+        monitoring = false;
+        printer.disconnect(this);
+    }
+
+    @Override
+    public Status getStatus() {
+        SimulatedPrinter device = printer;
+        if (device == null) {
+            return SimulatedPrinter.DISCONNECTED;
+        }
+        return device.readStatus(this);
+    }
+
+    @Override
+    public void startMonitor() throws Epos2Exception {
+        requireConnected();
+        monitoring = true;
+    }
+
+    @Override
+    public void stopMonitor() throws Epos2Exception {
+        monitoring = false;
+    }
+
+    @Override
+    public void beginTransaction() throws Epos2Exception {
+        requireConnected();
+        if (inTransaction) {
+            throw new Epos2Exception(PrinterResponses.ERR_ILLEGAL);
+        }
+        printer.pause(printer.transactionLatencyMs());
+        inTransaction = true;
+    }
+
+    @Override
+    public void endTransaction() throws Epos2Exception {
+        if (!inTransaction) {
+            throw new Epos2Exception(PrinterResponses.ERR_ILLEGAL);
+        }
+        printer.pause(printer.transactionLatencyMs());
+        inTransaction = false;
+    }
+
+    @Override
+    public void forceRecover(int timeout) throws Epos2Exception {
+        requireConnected();
+    }
+
+    private void requireConnected() throws Epos2Exception {
+        if (printer == null || !printer.isConnected(this)) {
+            throw new Epos2Exception(PrinterResponses.ERR_ILLEGAL);
+        }
+    }
+
+    @Override
+    public void clearCommandBuffer() {
+        bufferBytes = 0;
+        bufferDots = 0;
+        textHeight = 1;
+    }
+
+    @Override
+    public void addText(String data) throws Epos2Exception {
+        bufferBytes += data.length();
+        int lines = 0;
+        for (int i = 0; i < data.length(); i++) {
+            if (data.charAt(i) == '\n') {
+                lines++;
+            }
+        }
+        bufferDots += lines * (CHAR_DOTS * textHeight + LINE_DOTS - CHAR_DOTS);
+    }
+
+    @Override
+    public void addTextStyle(int reverse, int ul, int em, int color) throws Epos2Exception {
+        bufferBytes += 6;
+    }
+
+    @Override
+    public void addTextAlign(int align) throws Epos2Exception {
+        bufferBytes += 3;
+    }
+
+    @Override
+    public void addTextSize(int width, int height) throws Epos2Exception {
+        bufferBytes += 3;
+        textHeight = height;
+    }
+
+    @Override
+    public void addTextFont(int font) throws Epos2Exception {
+        bufferBytes += 3;
+    }
+
+    @Override
+    public void addFeedLine(int line) throws Epos2Exception {
+        bufferBytes += 3;
+        bufferDots += line * LINE_DOTS;
+    }
+
+    @Override
+    public void addSymbol(String data, int type, int level, int width, int height, int size) throws Epos2Exception {
+        bufferBytes += data.length() + 25;
+        int version = 1;
+        while (version < QR_CAPACITY_L.length && QR_CAPACITY_L[version - 1] < data.length()) {
+            version++;
+        }
+        // Modules du symbole plus la zone blanche, de "width" points chacun
+        bufferDots += (17 + 4 * version + 8) * width;
+    }
+
+    @Override
+    public void addBarcode(String data, int type, int hri, int font, int width, int height) throws Epos2Exception {
+        bufferBytes += data.length() + 16;
+        bufferDots += height + BARCODE_HRI_DOTS;
+    }
+
+    @Override
+    public void addLogo(int key1, int key2) throws Epos2Exception {
+        bufferBytes += 6;
+        bufferDots += LOGO_DOTS;
+    }
+
+    @Override
+    public void addCommand(byte[] data) throws Epos2Exception {
+        bufferBytes += data.length;
+        bufferDots += commandDots(data);
+    }
+
+    /**
+     * Longueur de papier des commandes ESC/POS brutes (trames, tickets du mode "escpos") : les commandes
+     * produites par le plugin sont interprétées ; une commande inconnue compte comme une trame
+     */
+    private long commandDots(byte[] data) {
+        long dots = 0;
+        int height = textHeight;
+        int barcodeHeight = 162;
+        int i = 0;
+        while (i < data.length) {
+            int b = data[i] & 0xFF;
+            if (b == 0x0A) {
+                dots += CHAR_DOTS * height + LINE_DOTS - CHAR_DOTS;
+                i++;
+            } else if (b == 0x1B && i + 1 < data.length) {
+                int command = data[i + 1];
+                if (command == '@') {
+                    height = 1;
+                    i += 2;
+                } else if (command == 'd' && i + 2 < data.length) {
+                    dots += (data[i + 2] & 0xFF) * LINE_DOTS;
+                    i += 3;
+                } else {
+                    // ESC t, E, -, M, a : un paramètre
+                    i += 3;
+                }
+            } else if (b == 0x1D && i + 1 < data.length) {
+                int command = data[i + 1];
+                if (command == '!' && i + 2 < data.length) {
+                    height = (data[i + 2] & 0x0F) + 1;
+                    i += 3;
+                } else if (command == 'h' && i + 2 < data.length) {
+                    barcodeHeight = data[i + 2] & 0xFF;
+                    i += 3;
+                } else if (command == 'k' && i + 3 < data.length) {
+                    dots += barcodeHeight + BARCODE_HRI_DOTS;
+                    i += 4 + (data[i + 3] & 0xFF);
+                } else if (command == 'V') {
+                    dots += CUT_FEED_DOTS;
+                    i += 4;
+                } else if (command == 'v' && i + 7 < data.length) {
+                    int widthBytes = (data[i + 4] & 0xFF) | (data[i + 5] & 0xFF) << 8;
+                    int rows = (data[i + 6] & 0xFF) | (data[i + 7] & 0xFF) << 8;
+                    dots += rows;
+                    i += 8 + widthBytes * rows;
+                } else if (command == '(' && i + 6 < data.length) {
+                    int length = (data[i + 3] & 0xFF) | (data[i + 4] & 0xFF) << 8;
+                    if (data[i + 2] == 'k' && data[i + 6] == 0x50) {
+                        // Stockage des données du QR code (module 9, comme addSymbol)
+                        int version = 1;
+                        while (version < QR_CAPACITY_L.length && QR_CAPACITY_L[version - 1] < length - 3) {
+                            version++;
+                        }
+                        dots += (17 + 4 * version + 8) * 9;
+                    } else if (data[i + 2] == 'L' && data[i + 6] == 0x45) {
+                        dots += LOGO_DOTS;
+                    }
+                    i += 5 + length;
+                } else if (command == '8' && i + 6 < data.length) {
+                    long length = (data[i + 3] & 0xFFL) | (data[i + 4] & 0xFFL) << 8 | (data[i + 5] & 0xFFL) << 16 | (data[i + 6] & 0xFFL) << 24;
+                    i += 7 + (int) length;
+                } else if (command == 'H' || command == 'f' || command == 'w') {
+                    i += 3;
+                } else {
+                    return data.length / RASTER_ROW_BYTES;
+                }
+            } else {
+                i++;
+            }
+        }
+        return dots;
+    }
+
+    @Override
+    public void addCut(int type) throws Epos2Exception {
+        bufferBytes += 4;
+        bufferDots += CUT_FEED_DOTS;
+    }
+
+    @Override
+    public void sendData(int timeout) throws Epos2Exception {
+        requireConnected();
+        printer.print(this, bufferDots);
+    }
+}
@@ -0,0 +1,13 @@
+package android;
+
+/**
+ * Bouchon Android (benchmarks uniquement)
+ */
+public final class Manifest {
+
+    public static final class permission {
+        public static final String ACCESS_FINE_LOCATION = "android.permission.ACCESS_FINE_LOCATION";
+        public static final String BLUETOOTH_SCAN = "android.permission.BLUETOOTH_SCAN";
+        public static final String BLUETOOTH_CONNECT = "android.permission.BLUETOOTH_CONNECT";
+    }
+}
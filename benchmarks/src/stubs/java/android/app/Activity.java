@@ -0,0 +1,14 @@
+package android.app;
+
+import android.content.Context;
+import android.hardware.usb.UsbManager;
+
+/**
+ * Bouchon Android (benchmarks uniquement)
+ */
+public class Activity extends Context {
+
+    public Activity(UsbManager usbManager) {
+        super(usbManager);
+    }
+}
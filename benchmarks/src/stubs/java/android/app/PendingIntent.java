@@ -0,0 +1,16 @@
+package android.app;
+
+import android.content.Context;
+import android.content.Intent;
+
+/**
+ * Bouchon Android (benchmarks uniquement)
+ */
+public class PendingIntent {
+
+    public static final int FLAG_MUTABLE = 0x02000000;
+
+    public static PendingIntent getBroadcast(Context context, int requestCode, Intent intent, int flags) {
+        return new PendingIntent();
+    }
+}
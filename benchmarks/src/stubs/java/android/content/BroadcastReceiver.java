@@ -0,0 +1,9 @@
+package android.content;
+
+/**
+ * Bouchon Android (benchmarks uniquement)
+ */
+public abstract class BroadcastReceiver {
+
+    public abstract void onReceive(Context context, Intent intent);
+}
@@ -0,0 +1,74 @@
+package android.content;
+
+import android.content.pm.PackageManager;
+import android.hardware.usb.UsbManager;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Bouchon du contexte Android (benchmarks uniquement) : UsbManager, préférences en mémoire
+ * et répertoire de fichiers temporaire
+ */
+public class Context {
+
+    public static final String USB_SERVICE = "usb";
+    public static final int MODE_PRIVATE = 0;
+    public static final int RECEIVER_NOT_EXPORTED = 4;
+
+    private final UsbManager usbManager;
+    private final Map<String, SharedPreferences> preferences = new HashMap<String, SharedPreferences>();
+    private File filesDir = null;
+
+    public Context(UsbManager usbManager) {
+        this.usbManager = usbManager;
+    }
+
+    public String getPackageName() {
+        return "com.eliberty.cordova.plugin.epsonusb.benchmarks";
+    }
+
+    public Context getApplicationContext() {
+        return this;
+    }
+
+    public Object getSystemService(String name) {
+        return USB_SERVICE.equals(name) ? usbManager : null;
+    }
+
+    public synchronized SharedPreferences getSharedPreferences(String name, int mode) {
+        SharedPreferences prefs = preferences.get(name);
+        if (prefs == null) {
+            prefs = new SharedPreferences();
+            preferences.put(name, prefs);
+        }
+        return prefs;
+    }
+
+    public synchronized File getFilesDir() {
+        if (filesDir == null) {
+            filesDir = new File(System.getProperty("java.io.tmpdir"), "epson-files-" + System.nanoTime());
+            filesDir.mkdirs();
+        }
+        return filesDir;
+    }
+
+    public Intent registerReceiver(BroadcastReceiver receiver, IntentFilter filter) {
+        return null;
+    }
+
+    public Intent registerReceiver(BroadcastReceiver receiver, IntentFilter filter, int flags) {
+        return null;
+    }
+
+    public void unregisterReceiver(BroadcastReceiver receiver) {
+    }
+
+    /**
+     * Toutes les permissions sont accordées
+     */
+    public int checkSelfPermission(String permission) {
+        return PackageManager.PERMISSION_GRANTED;
+    }
+}
@@ -0,0 +1,40 @@
+package android.content;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Bouchon Android (benchmarks uniquement)
+ */
+public class Intent {
+
+    private final String action;
+    private final Map<String, Object> extras = new HashMap<String, Object>();
+
+    public Intent(String action) {
+        this.action = action;
+    }
+
+    public String getAction() {
+        return action;
+    }
+
+    public Intent putExtra(String name, Object value) {
+        extras.put(name, value);
+        return this;
+    }
+
+    public Intent setPackage(String packageName) {
+        return this;
+    }
+
+    public boolean getBooleanExtra(String name, boolean defaultValue) {
+        Object value = extras.get(name);
+        return value instanceof Boolean ? (Boolean) value : defaultValue;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T getParcelableExtra(String name) {
+        return (T) extras.get(name);
+    }
+}
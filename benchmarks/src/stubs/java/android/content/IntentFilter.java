@@ -0,0 +1,10 @@
+package android.content;
+
+/**
+ * Bouchon Android (benchmarks uniquement)
+ */
+public class IntentFilter {
+
+    public void addAction(String action) {
+    }
+}
@@ -0,0 +1,36 @@
+package android.content;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Bouchon Android (benchmarks uniquement) : chaînes en mémoire
+ * Interface dans Android, classe ici pour éviter une implémentation séparée
+ */
+public class SharedPreferences {
+
+    private final ConcurrentHashMap<String, String> values = new ConcurrentHashMap<String, String>();
+
+    public String getString(String key, String defValue) {
+        String value = values.get(key);
+        return value != null ? value : defValue;
+    }
+
+    public Editor edit() {
+        return new Editor();
+    }
+
+    public class Editor {
+
+        public Editor putString(String key, String value) {
+            values.put(key, value);
+            return this;
+        }
+
+        public void apply() {
+        }
+
+        public boolean commit() {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package android.graphics;
+
+/**
+ * Bouchon Android (benchmarks uniquement) : aucune image n'est décodée sur la JVM
+ */
+public class Bitmap {
+
+    public int getWidth() {
+        return 0;
+    }
+
+    public int getHeight() {
+        return 0;
+    }
+
+    public void getPixels(int[] pixels, int offset, int stride, int x, int y, int width, int height) {
+    }
+
+    public void recycle() {
+    }
+}
@@ -0,0 +1,26 @@
+package android.graphics;
+
+/**
+ * Bouchon Android (benchmarks uniquement) : le décodage échoue toujours (null, comme une image invalide)
+ */
+public class BitmapFactory {
+
+    public static class Options {
+        public boolean inJustDecodeBounds;
+        public int inSampleSize;
+        public int outWidth;
+        public int outHeight;
+    }
+
+    public static Bitmap decodeByteArray(byte[] data, int offset, int length) {
+        return null;
+    }
+
+    public static Bitmap decodeByteArray(byte[] data, int offset, int length, Options options) {
+        if (options != null) {
+            options.outWidth = -1;
+            options.outHeight = -1;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,35 @@
+package android.hardware.usb;
+
+/**
+ * Bouchon Android (benchmarks uniquement)
+ */
+public class UsbDevice {
+
+    private final String deviceName;
+    private final int vendorId;
+    private final int productId;
+    private final String serialNumber;
+
+    public UsbDevice(String deviceName, int vendorId, int productId, String serialNumber) {
+        this.deviceName = deviceName;
+        this.vendorId = vendorId;
+        this.productId = productId;
+        this.serialNumber = serialNumber;
+    }
+
+    public String getDeviceName() {
+        return deviceName;
+    }
+
+    public int getVendorId() {
+        return vendorId;
+    }
+
+    public int getProductId() {
+        return productId;
+    }
+
+    public String getSerialNumber() {
+        return serialNumber;
+    }
+}
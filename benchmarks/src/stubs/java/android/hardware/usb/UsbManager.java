@@ -0,0 +1,32 @@
+package android.hardware.usb;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+
+/**
+ * Bouchon Android (benchmarks uniquement) : liste de périphériques fixée par le benchmark
+ */
+public class UsbManager {
+
+    public static final String ACTION_USB_DEVICE_ATTACHED = "android.hardware.usb.action.USB_DEVICE_ATTACHED";
+    public static final String ACTION_USB_DEVICE_DETACHED = "android.hardware.usb.action.USB_DEVICE_DETACHED";
+    public static final String EXTRA_DEVICE = "device";
+    public static final String EXTRA_PERMISSION_GRANTED = "permission";
+
+    private final HashMap<String, UsbDevice> devices = new LinkedHashMap<String, UsbDevice>();
+
+    public void attach(UsbDevice device) {
+        devices.put(device.getDeviceName(), device);
+    }
+
+    public HashMap<String, UsbDevice> getDeviceList() {
+        return new LinkedHashMap<String, UsbDevice>(devices);
+    }
+
+    public boolean hasPermission(UsbDevice device) {
+        return true;
+    }
+
+    public void requestPermission(UsbDevice device, android.app.PendingIntent intent) {
+    }
+}
@@ -0,0 +1,13 @@
+package android.util;
+
+/**
+ * Bouchon Android (benchmarks uniquement), délègue à java.util.Base64
+ */
+public class Base64 {
+
+    public static final int DEFAULT = 0;
+
+    public static byte[] decode(String str, int flags) {
+        return java.util.Base64.getMimeDecoder().decode(str);
+    }
+}
@@ -0,0 +1,22 @@
+package com.eliberty.cordova.plugin.epsonusb;
+
+import android.content.Context;
+
+import com.epson.epos2.Epos2Exception;
+
+/**
+ * Bouchon du pilote du SDK Epson (benchmarks uniquement) : sans SDK, aucune imprimante réelle
+ * Le harnais installe l'imprimante simulée avec EpsonPrinterPlugin.setDriverFactory
+ */
+final class EpsonPrinterDriver {
+
+    static final PrinterDriver.Factory FACTORY = new PrinterDriver.Factory() {
+        @Override
+        public PrinterDriver create(Context context) throws Epos2Exception {
+            throw new Epos2Exception(PrinterResponses.ERR_UNSUPPORTED);
+        }
+    };
+
+    private EpsonPrinterDriver() {
+    }
+}
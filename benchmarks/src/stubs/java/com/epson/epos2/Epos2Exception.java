@@ -0,0 +1,17 @@
+package com.epson.epos2;
+
+/**
+ * Bouchon de l'exception du SDK Epson (benchmarks uniquement)
+ */
+public class Epos2Exception extends Exception {
+
+    private final int errorStatus;
+
+    public Epos2Exception(int errorStatus) {
+        this.errorStatus = errorStatus;
+    }
+
+    public int getErrorStatus() {
+        return errorStatus;
+    }
+}
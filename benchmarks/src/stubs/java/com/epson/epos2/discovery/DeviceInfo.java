@@ -0,0 +1,27 @@
+package com.epson.epos2.discovery;
+
+/**
+ * Bouchon d'une imprimante trouvée par la recherche du SDK Epson (benchmarks uniquement)
+ */
+public class DeviceInfo {
+
+    public String getTarget() {
+        return null;
+    }
+
+    public String getDeviceName() {
+        return null;
+    }
+
+    public String getIpAddress() {
+        return null;
+    }
+
+    public String getMacAddress() {
+        return null;
+    }
+
+    public String getBdAddress() {
+        return null;
+    }
+}
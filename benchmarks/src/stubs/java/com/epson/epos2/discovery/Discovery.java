@@ -0,0 +1,23 @@
+package com.epson.epos2.discovery;
+
+import android.content.Context;
+
+import com.epson.epos2.Epos2Exception;
+
+/**
+ * Bouchon de la recherche d'imprimantes du SDK Epson (benchmarks uniquement) : ne trouve aucune imprimante
+ */
+public class Discovery {
+
+    public static final int TYPE_PRINTER = 1;
+    public static final int PORTTYPE_ALL = 0;
+    public static final int PORTTYPE_TCP = 1;
+    public static final int PORTTYPE_USB = 3;
+    public static final int FILTER_NAME = 0;
+
+    public static synchronized void start(Context context, FilterOption filter, DiscoveryListener listener) throws Epos2Exception {
+    }
+
+    public static synchronized void stop() throws Epos2Exception {
+    }
+}
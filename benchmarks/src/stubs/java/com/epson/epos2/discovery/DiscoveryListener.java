@@ -0,0 +1,8 @@
+package com.epson.epos2.discovery;
+
+/**
+ * Bouchon du listener de recherche du SDK Epson (benchmarks uniquement)
+ */
+public interface DiscoveryListener {
+    void onDiscovery(DeviceInfo deviceInfo);
+}
@@ -0,0 +1,16 @@
+package com.epson.epos2.discovery;
+
+/**
+ * Bouchon du filtre de recherche du SDK Epson (benchmarks uniquement)
+ */
+public class FilterOption {
+
+    public void setPortType(int portType) {
+    }
+
+    public void setDeviceType(int deviceType) {
+    }
+
+    public void setEpsonFilter(int epsonFilter) {
+    }
+}
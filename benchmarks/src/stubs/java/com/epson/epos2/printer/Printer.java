@@ -0,0 +1,46 @@
+package com.epson.epos2.printer;
+
+/**
+ * Bouchon de l'imprimante du SDK Epson (benchmarks uniquement)
+ *
+ * Seules les constantes utilisées par le plugin sont reprises (mêmes valeurs que le SDK) :
+ * les appels à l'imprimante passent par PrinterDriver.
+ */
+public class Printer {
+
+    public static final int TRUE = 1;
+    public static final int FALSE = 0;
+    public static final int UNKNOWN = -3;
+    public static final int PARAM_DEFAULT = -2;
+    public static final int ALIGN_LEFT = 0;
+    public static final int ALIGN_CENTER = 1;
+    public static final int ALIGN_RIGHT = 2;
+    public static final int FONT_A = 0;
+    public static final int FONT_B = 1;
+    public static final int FONT_C = 2;
+    public static final int COLOR_1 = 1;
+    public static final int BARCODE_UPC_A = 0;
+    public static final int BARCODE_EAN13 = 2;
+    public static final int BARCODE_EAN8 = 4;
+    public static final int BARCODE_CODE39 = 6;
+    public static final int BARCODE_ITF = 7;
+    public static final int BARCODE_CODE128 = 10;
+    public static final int HRI_BELOW = 2;
+    public static final int SYMBOL_QRCODE_MODEL_2 = 3;
+    public static final int LEVEL_L = 9;
+    public static final int CUT_FEED = 1;
+    public static final int PAPER_OK = 0;
+    public static final int PAPER_NEAR_END = 1;
+    public static final int PAPER_EMPTY = 2;
+    public static final int EVENT_ONLINE = 0;
+    public static final int EVENT_OFFLINE = 1;
+    public static final int EVENT_POWER_OFF = 2;
+    public static final int EVENT_COVER_CLOSE = 3;
+    public static final int EVENT_COVER_OPEN = 4;
+    public static final int EVENT_PAPER_OK = 5;
+    public static final int EVENT_PAPER_NEAR_END = 6;
+    public static final int EVENT_PAPER_EMPTY = 7;
+
+    private Printer() {
+    }
+}
@@ -0,0 +1,19 @@
+package org.apache.cordova;
+
+import android.app.Activity;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Bouchon Cordova (benchmarks uniquement)
+ */
+public interface CordovaInterface {
+
+    Activity getActivity();
+
+    ExecutorService getThreadPool();
+
+    void requestPermissions(CordovaPlugin plugin, int requestCode, String[] permissions);
+
+    boolean hasPermission(String permission);
+}
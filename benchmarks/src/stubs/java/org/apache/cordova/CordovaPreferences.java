@@ -0,0 +1,22 @@
+package org.apache.cordova;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Bouchon Cordova (benchmarks uniquement) : préférences de config.xml renseignées par le harnais
+ */
+public class CordovaPreferences {
+
+    private final Map<String, String> values = new HashMap<String, String>();
+
+    public void set(String name, String value) {
+        values.put(name.toLowerCase(Locale.ENGLISH), value);
+    }
+
+    public String getString(String name, String defaultValue) {
+        String value = values.get(name.toLowerCase(Locale.ENGLISH));
+        return value != null ? value : defaultValue;
+    }
+}
@@ -0,0 +1,7 @@
+package org.apache.cordova;
+
+/**
+ * Bouchon Cordova (benchmarks uniquement)
+ */
+public interface CordovaWebView {
+}
@@ -0,0 +1,119 @@
+// Vérifie la partie JavaScript du plugin (www/epsonPrinter.js) avec un cordova.exec simulé :
+// options transmises au natif et ré-enregistrement des modèles évincés
+//
+//   node wrapperCheck.js ../../../www/epsonPrinter.js   (ou gradle checkWrapper)
+"use strict";
+
+var fs = require("fs");
+var path = require("path");
+var vm = require("vm");
+var assert = require("assert");
+
+var source = path.resolve(process.argv[2] || path.join(__dirname, "../../../www/epsonPrinter.js"));
+
+/**
+ * Charge le plugin avec un cordova.exec qui enregistre les appels et répond avec handler(action, args)
+ * handler rend { ok: réponse } ou { error: erreur }
+ */
+function load(handler) {
+  var calls = [];
+  var cordova = {
+    exec: function (success, fail, service, action, args) {
+      calls.push({ action: action, args: args });
+      var result = handler(action, args, calls);
+      if (result.error !== undefined) {
+        fail(result.error);
+      } else {
+        success(result.ok);
+      }
+    },
+  };
+  var window = { cordova: cordova };
+  vm.runInNewContext(fs.readFileSync(source, "utf8"), { window: window });
+  return { printer: window.EpsonPrinter, calls: calls };
+}
+
+var checks = [];
+
+function check(name, run) {
+  checks.push({ name: name, run: run });
+}
+
+check("printTemplate retenté après templateMissing garde idempotencyKey et durable", function () {
+  var prints = 0;
+  var plugin = load(function (action) {
+    if (action === "printTemplate") {
+      prints++;
+      return prints === 1 ? { error: { code: "ERR_PRINT", context: "templateMissing" } } : { ok: { printed: true } };
+    }
+    return { ok: {} };
+  });
+  plugin.printer.registerTemplate(function () {}, assert.fail, { name: "forfait", version: "3", markup: "{{code}}" });
+  var result = null;
+  plugin.printer.printTemplate(function (res) {
+    result = res;
+  }, assert.fail, {
+    name: "forfait",
+    data: { code: "A1" },
+    jobId: "job-1",
+    idempotencyKey: "vente-42",
+    durable: false,
+    priority: "high",
+  });
+  assert.deepStrictEqual(result, { printed: true });
+  var actions = plugin.calls.map(function (call) {
+    return call.action;
+  });
+  assert.deepStrictEqual(actions, ["registerTemplate", "printTemplate", "registerTemplate", "printTemplate"]);
+  [plugin.calls[1], plugin.calls[3]].forEach(function (call) {
+    var options = call.args[0];
+    assert.strictEqual(options.idempotencyKey, "vente-42");
+    assert.strictEqual(options.durable, false);
+    assert.strictEqual(options.jobId, "job-1");
+    assert.strictEqual(options.priority, "high");
+    assert.strictEqual(options.version, "3");
+    assert.deepStrictEqual(options.data, { code: "A1" });
+    assert.strictEqual(options.markup, undefined);
+  });
+  assert.strictEqual(plugin.calls[2].args[0].markup, "{{code}}");
+});
+
+check("registerTemplate refusé par le natif n'est pas conservé pour le ré-enregistrement", function () {
+  var plugin = load(function (action, args) {
+    if (action === "registerTemplate") {
+      return args[0].markup === "<BOLD>" ? { error: { code: 1, context: "registerTemplate" } } : { ok: {} };
+    }
+    return { error: { code: "ERR_PRINT", context: "templateMissing" } };
+  });
+  plugin.printer.registerTemplate(function () {}, function () {}, { name: "forfait", version: "1", markup: "{{code}}" });
+  var rejected = null;
+  plugin.printer.registerTemplate(assert.fail, function (err) {
+    rejected = err;
+  }, { name: "forfait", version: "2", markup: "<BOLD>" });
+  assert.strictEqual(rejected.context, "registerTemplate");
+  assert.strictEqual(plugin.printer.templates.forfait.markup, "{{code}}");
+  assert.strictEqual(plugin.printer.templates.forfait.version, "1");
+
+  plugin.calls.length = 0;
+  plugin.printer.printTemplate(assert.fail, function () {}, { name: "forfait", data: {} });
+  var registrations = plugin.calls.filter(function (call) {
+    return call.action === "registerTemplate";
+  });
+  assert.strictEqual(registrations.length, 1);
+  assert.strictEqual(registrations[0].args[0].markup, "{{code}}");
+});
+
+var failed = 0;
+checks.forEach(function (c) {
+  try {
+    c.run();
+    console.log("ok      " + c.name);
+  } catch (e) {
+    failed++;
+    console.log("ÉCHEC   " + c.name + "\n        " + e.message);
+  }
+});
+if (failed > 0) {
+  console.log(failed + " vérification(s) en échec");
+  process.exit(1);
+}
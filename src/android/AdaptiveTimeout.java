@@ -0,0 +1,161 @@
+package com.eliberty.cordova.plugin.epsonusb;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Timeout d'une phase (attente du callback d'impression, connexion), calculé pour chaque travail
+ * d'après les durées observées sur l'imprimante (Model), borné par floorMs et ceilingMs
+ * Sans assez de mesures pour la taille du travail, la valeur par défaut (defaultMs) s'applique
+ */
+class AdaptiveTimeout {
+
+    final String phase;
+    private volatile long defaultMs;
+    private volatile long floorMs;
+    private volatile long ceilingMs;
+    private volatile boolean adaptive = true;
+
+    AdaptiveTimeout(String phase, long defaultMs, long floorMs, long ceilingMs) {
+        this.phase = phase;
+        this.defaultMs = defaultMs;
+        this.floorMs = floorMs;
+        this.ceilingMs = ceilingMs;
+    }
+
+    /**
+     * Timeout pour un envoi de "size" octets sur l'imprimante dont "model" décrit les durées
+     */
+    long timeoutMs(Model model, long size) {
+        long estimate = adaptive && model != null ? model.estimateMs(size) : -1;
+        long value = estimate >= 0 ? estimate : defaultMs;
+        return Math.max(floorMs, Math.min(ceilingMs, value));
+    }
+
+    /**
+     * Options : { adaptive: boolean, defaultMs, floorMs, ceilingMs }
+     * @return false si les valeurs sont incohérentes (rien n'est modifié)
+     */
+    synchronized boolean configure(JSONObject options) {
+        long newDefault = options.optLong("defaultMs", defaultMs);
+        long newFloor = options.optLong("floorMs", floorMs);
+        long newCeiling = options.optLong("ceilingMs", ceilingMs);
+        if (newFloor <= 0 || newCeiling < newFloor || newDefault <= 0) {
+            return false;
+        }
+        defaultMs = newDefault;
+        floorMs = newFloor;
+        ceilingMs = newCeiling;
+        adaptive = options.optBoolean("adaptive", adaptive);
+        return true;
+    }
+
+    JSONObject toJson() {
+        JSONObject json = new JSONObject();
+        try {
+            json.put("adaptive", adaptive);
+            json.put("defaultMs", defaultMs);
+            json.put("floorMs", floorMs);
+            json.put("ceilingMs", ceilingMs);
+        } catch (JSONException e) {
+            // Ignore JSON error
+        }
+        return json;
+    }
+
+    /**
+     * Durées observées d'une phase sur une imprimante, par classe de taille d'envoi
+     * Pour chaque classe : moyenne lissée (EWMA) et écart moyen lissé, comme le RTO de TCP :
+     * estimation = moyenne + 4 × écart, doublée après chaque timeout jusqu'à la prochaine mesure
+     */
+    static class Model {
+
+        // Mesures nécessaires avant de remplacer la valeur par défaut
+        static final int MIN_SAMPLES = 5;
+        private static final double MEAN_GAIN = 0.125;
+        private static final double DEVIATION_GAIN = 0.25;
+        private static final int DEVIATION_FACTOR = 4;
+        // Doublements successifs au plus après des timeouts
+        private static final int MAX_BACKOFF = 4;
+        // Classes de taille : moins de 1 Ko, 2 Ko, 4 Ko... 64 Ko et plus
+        private static final int BUCKETS = 8;
+        private static final int FIRST_BUCKET_BYTES = 1024;
+
+        private final double[] mean = new double[BUCKETS];
+        private final double[] deviation = new double[BUCKETS];
+        private final int[] samples = new int[BUCKETS];
+        private final int[] backoff = new int[BUCKETS];
+
+        private static int bucketOf(long size) {
+            int bucket = 0;
+            long limit = FIRST_BUCKET_BYTES;
+            while (bucket < BUCKETS - 1 && size >= limit) {
+                bucket++;
+                limit <<= 1;
+            }
+            return bucket;
+        }
+
+        /**
+         * Durée d'une phase terminée normalement
+         */
+        synchronized void record(long size, long elapsedMs) {
+            int bucket = bucketOf(size);
+            if (samples[bucket] == 0) {
+                mean[bucket] = elapsedMs;
+                deviation[bucket] = elapsedMs / 2.0;
+            } else {
+                deviation[bucket] += DEVIATION_GAIN * (Math.abs(elapsedMs - mean[bucket]) - deviation[bucket]);
+                mean[bucket] += MEAN_GAIN * (elapsedMs - mean[bucket]);
+            }
+            samples[bucket]++;
+            backoff[bucket] = 0;
+        }
+
+        /**
+         * Phase interrompue par son timeout : la durée réelle est inconnue, l'estimation est doublée
+         */
+        synchronized void recordTimeout(long size) {
+            int bucket = bucketOf(size);
+            backoff[bucket] = Math.min(MAX_BACKOFF, backoff[bucket] + 1);
+        }
+
+        /**
+         * Estimation pour cette taille, -1 sans assez de mesures
+         * Une classe sans mesures emprunte l'estimation de la plus proche classe supérieure (plus prudente)
+         */
+        synchronized long estimateMs(long size) {
+            int requested = bucketOf(size);
+            for (int bucket = requested; bucket < BUCKETS; bucket++) {
+                if (samples[bucket] >= MIN_SAMPLES) {
+                    double estimate = mean[bucket] + DEVIATION_FACTOR * deviation[bucket];
+                    return (long) Math.ceil(estimate) << backoff[requested];
+                }
+            }
+            return -1;
+        }
+
+        synchronized JSONArray toJson() {
+            JSONArray json = new JSONArray();
+            try {
+                long limit = FIRST_BUCKET_BYTES;
+                for (int bucket = 0; bucket < BUCKETS; bucket++, limit <<= 1) {
+                    if (samples[bucket] == 0 && backoff[bucket] == 0) {
+                        continue;
+                    }
+                    JSONObject item = new JSONObject();
+                    item.put("maxBytes", bucket < BUCKETS - 1 ? limit : JSONObject.NULL);
+                    item.put("samples", samples[bucket]);
+                    item.put("meanMs", Math.round(mean[bucket]));
+                    item.put("deviationMs", Math.round(deviation[bucket]));
+                    item.put("backoff", backoff[bucket]);
+                    json.put(item);
+                }
+            } catch (JSONException e) {
+                // Ignore JSON error
+            }
+            return json;
+        }
+    }
+}
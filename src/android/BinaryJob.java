@@ -0,0 +1,181 @@
+package com.eliberty.cordova.plugin.epsonusb;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Travail d'impression au format binaire (printBinary), transmis en ArrayBuffer par le pont Cordova
+ * Le texte n'est ni échappé ni analysé par org.json, les images ne passent pas par le base64 du balisage.
+ *
+ * En-tête "EPJ" puis version (4 octets), suivi d'enregistrements : type (1 octet), longueur (4 octets), données.
+ * Entiers en big-endian, chaînes en UTF-8. Chaque enregistrement est un ticket du travail :
+ *   TEXT      texte balisé (mêmes balises que printText)
+ *   IMAGE     tramage (0 : floyd, 1 : ordered), alignement (0 : gauche, 1 : centre, 2 : droite),
+ *             largeur en points sur 2 octets (0 : automatique), puis le fichier PNG ou JPEG
+ *   RASTER    alignement, 1 octet réservé, largeur et hauteur en points sur 2 octets chacune,
+ *             puis la trame 1 bit ligne par ligne (bit de poids fort à gauche, 1 = noir)
+ *   TEMPLATE  nom, version (chaînes préfixées par leur longueur sur 4 octets), nombre de champs sur 2 octets,
+ *             puis chaque champ : clé et valeur (chaînes)
+ * Même format dans www/epsonPrinter.js (encodeJob)
+ */
+final class BinaryJob {
+
+    static final int TEXT = 1;
+    static final int IMAGE = 2;
+    static final int RASTER = 3;
+    static final int TEMPLATE = 4;
+
+    private static final int MAGIC = 0x45504A01;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Modèle absent du cache (évincé ou d'une autre version) : à ré-enregistrer par le JavaScript
+     */
+    static final class TemplateMissingException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        final String name;
+        final String version;
+
+        TemplateMissingException(String name, String version) {
+            super(name);
+            this.name = name;
+            this.version = version;
+        }
+    }
+
+    private BinaryJob() {
+    }
+
+    /**
+     * Fin de la charge utile dans les arguments bruts du pont Cordova ["<base64>", {options}] : l'alphabet
+     * base64 ne contient aucun caractère échappé en JSON, la chaîne est donc extraite sans org.json
+     * (une chaîne qui ne serait pas du base64 est rejetée au décodage)
+     * @return index du guillemet fermant, -1 si les arguments n'ont pas cette forme
+     */
+    static int payloadEnd(String rawArgs) {
+        if (!rawArgs.startsWith("[\"")) {
+            return -1;
+        }
+        return rawArgs.indexOf('"', 2);
+    }
+
+    /**
+     * Tickets du travail, dans l'ordre des enregistrements
+     * @throws IllegalArgumentException si le format est invalide (message en clair pour le JavaScript)
+     * @throws TemplateMissingException si un modèle n'est pas enregistré
+     */
+    static List<Receipt> parse(byte[] payload, TemplateCache templates) throws TemplateMissingException {
+        ByteBuffer in = ByteBuffer.wrap(payload);
+        List<Receipt> receipts = new ArrayList<Receipt>();
+        try {
+            if (in.getInt() != MAGIC) {
+                throw new IllegalArgumentException("en-tête EPJ version 1 attendu");
+            }
+            while (in.hasRemaining()) {
+                int type = in.get() & 0xFF;
+                long length = in.getInt() & 0xFFFFFFFFL;
+                if (length > in.remaining()) {
+                    throw new IllegalArgumentException("enregistrement tronqué");
+                }
+                ByteBuffer record = in.slice();
+                record.limit((int) length);
+                in.position(in.position() + (int) length);
+                receipts.add(parseRecord(type, record, templates));
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("enregistrement tronqué");
+        }
+        if (receipts.isEmpty()) {
+            throw new IllegalArgumentException("aucun ticket");
+        }
+        return receipts;
+    }
+
+    private static Receipt parseRecord(int type, ByteBuffer record, TemplateCache templates) throws TemplateMissingException {
+        switch (type) {
+            case TEXT:
+                return Receipt.fromMarkup(readRemaining(record));
+            case IMAGE: {
+                int dither = record.get() == 1 ? ImageRasterizer.DITHER_ORDERED : ImageRasterizer.DITHER_FLOYD_STEINBERG;
+                int align = readAlign(record);
+                int widthDots = record.getShort() & 0xFFFF;
+                if (widthDots != 0 && (widthDots < ImageRasterizer.MIN_WIDTH_DOTS || widthDots > ImageRasterizer.MAX_WIDTH_DOTS)) {
+                    throw new IllegalArgumentException("largeur d'image invalide : " + widthDots);
+                }
+                byte[] data = new byte[record.remaining()];
+                record.get(data);
+                return Receipt.fromImage(imageSegment(align, ReceiptSegment.imageArg(dither, widthDots)), data);
+            }
+            case RASTER: {
+                int align = readAlign(record);
+                record.get();
+                int width = record.getShort() & 0xFFFF;
+                int height = record.getShort() & 0xFFFF;
+                int bytesPerRow = (width + 7) >> 3;
+                if (width == 0 || width > ImageRasterizer.MAX_WIDTH_DOTS || height == 0 || record.remaining() != bytesPerRow * height) {
+                    throw new IllegalArgumentException("trame invalide : " + width + "x" + height + ", " + record.remaining() + " octets");
+                }
+                byte[] bits = new byte[record.remaining()];
+                record.get(bits);
+                return Receipt.fromRaster(imageSegment(align, ReceiptSegment.imageArg(ImageRasterizer.DITHER_FLOYD_STEINBERG, width)),
+                        new RasterImage(width, height, bits));
+            }
+            case TEMPLATE: {
+                String name = readString(record);
+                String version = readString(record);
+                int fields = record.getShort() & 0xFFFF;
+                JSONObject data = new JSONObject();
+                for (int i = 0; i < fields; i++) {
+                    String key = readString(record);
+                    try {
+                        data.put(key, readString(record));
+                    } catch (JSONException e) {
+                        throw new IllegalArgumentException("champ de modèle invalide : " + key);
+                    }
+                }
+                ReceiptTemplate template = templates.get(name, version);
+                if (template == null) {
+                    throw new TemplateMissingException(name, version);
+                }
+                return template.render(data);
+            }
+            default:
+                throw new IllegalArgumentException("type d'enregistrement inconnu : " + type);
+        }
+    }
+
+    private static ReceiptSegment imageSegment(int align, int arg) {
+        return new ReceiptSegment(ReceiptSegment.IMAGE, "", false, false, align, 1, 1, ReceiptSegment.FONT_A, arg);
+    }
+
+    private static int readAlign(ByteBuffer record) {
+        int align = record.get();
+        if (align < ReceiptSegment.ALIGN_LEFT || align > ReceiptSegment.ALIGN_RIGHT) {
+            throw new IllegalArgumentException("alignement invalide : " + align);
+        }
+        return align;
+    }
+
+    private static String readString(ByteBuffer record) {
+        int length = record.getInt();
+        if (length < 0 || length > record.remaining()) {
+            throw new IllegalArgumentException("chaîne tronquée");
+        }
+        String value = new String(record.array(), record.arrayOffset() + record.position(), length, UTF_8);
+        record.position(record.position() + length);
+        return value;
+    }
+
+    private static String readRemaining(ByteBuffer record) {
+        String value = new String(record.array(), record.arrayOffset() + record.position(), record.remaining(), UTF_8);
+        record.position(record.limit());
+        return value;
+    }
+}
@@ -0,0 +1,49 @@
+package com.eliberty.cordova.plugin.epsonusb;
+
+import android.Manifest;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.os.Build;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Permissions d'exécution nécessaires au Bluetooth, à accorder par l'utilisateur
+ * Android 12 et plus : BLUETOOTH_SCAN pour la recherche, BLUETOOTH_CONNECT pour la connexion.
+ * Android 6 à 11 : ACCESS_FINE_LOCATION pour la recherche ; BLUETOOTH et BLUETOOTH_ADMIN (connexion)
+ * sont accordées à l'installation, comme toutes les permissions avant Android 6.
+ */
+final class BluetoothPermissions {
+
+    private BluetoothPermissions() {
+    }
+
+    /**
+     * Permissions nécessaires
+     * @param scan true pour une recherche (discover), false pour une connexion à une cible "BT:"
+     */
+    static String[] required(boolean scan) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
+            return scan ? new String[]{Manifest.permission.BLUETOOTH_SCAN, Manifest.permission.BLUETOOTH_CONNECT}
+                    : new String[]{Manifest.permission.BLUETOOTH_CONNECT};
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M && scan) {
+            return new String[]{Manifest.permission.ACCESS_FINE_LOCATION};
+        }
+        return new String[0];
+    }
+
+    /**
+     * Permissions nécessaires pas encore accordées (tableau vide si aucune)
+     */
+    static String[] missing(Context context, boolean scan) {
+        List<String> missing = new ArrayList<String>(2);
+        for (String permission : required(scan)) {
+            if (context.checkSelfPermission(permission) != PackageManager.PERMISSION_GRANTED) {
+                missing.add(permission);
+            }
+        }
+        return missing.toArray(new String[missing.size()]);
+    }
+}
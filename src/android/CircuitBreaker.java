@@ -0,0 +1,130 @@
+package com.eliberty.cordova.plugin.epsonusb;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Random;
+
+/**
+ * Disjoncteur des connexions d'une cible : après FAILURE_THRESHOLD échecs de connexion consécutifs
+ * (ERR_CONNECT, ERR_TIMEOUT), les travaux échouent immédiatement au lieu d'attendre chacun le timeout
+ * de connexion. Passé un délai exponentiel avec gigue, une seule tentative d'essai est autorisée
+ * (demi-ouvert) : un succès referme le disjoncteur, un échec le rouvre pour un délai doublé.
+ */
+class CircuitBreaker {
+
+    static final int STATE_CLOSED = 0;
+    static final int STATE_OPEN = 1;
+    static final int STATE_HALF_OPEN = 2;
+    private static final String[] STATE_NAMES = {"closed", "open", "halfOpen"};
+
+    static final int FAILURE_THRESHOLD = 3;
+    private static final long BASE_OPEN_MS = 1000;
+    private static final long MAX_OPEN_MS = 60000;
+
+    private final Random random = new Random();
+    private int state = STATE_CLOSED;
+    // Échecs consécutifs (disjoncteur fermé)
+    private int failures = 0;
+    // Ouvertures consécutives sans succès : exposant du délai
+    private int opens = 0;
+    private long openUntil = 0;
+    // Tentative d'essai en cours (demi-ouvert)
+    private boolean trialInFlight = false;
+    private int lastErrorCode = PrinterResponses.ERR_SUCCESS;
+
+    /**
+     * Délai avant la tentative "attempt" (à partir de 1) : base × 2^(attempt-1), plafonné,
+     * tiré entre la moitié et la totalité de cette valeur pour désynchroniser les tentatives
+     */
+    static long backoffMs(Random random, int attempt, long baseMs, long maxMs) {
+        long delay = Math.min(maxMs, baseMs << Math.min(attempt - 1, 20));
+        return delay / 2 + (long) (random.nextDouble() * (delay / 2 + 1));
+    }
+
+    /**
+     * Une connexion peut-elle être tentée ? En demi-ouvert, seule la première demande est autorisée
+     */
+    synchronized boolean allowAttempt() {
+        switch (state) {
+            case STATE_OPEN:
+                if (System.currentTimeMillis() < openUntil) {
+                    return false;
+                }
+                state = STATE_HALF_OPEN;
+                trialInFlight = true;
+                return true;
+            case STATE_HALF_OPEN:
+                if (trialInFlight) {
+                    return false;
+                }
+                trialInFlight = true;
+                return true;
+            default:
+                return true;
+        }
+    }
+
+    synchronized void recordSuccess() {
+        state = STATE_CLOSED;
+        failures = 0;
+        opens = 0;
+        trialInFlight = false;
+        lastErrorCode = PrinterResponses.ERR_SUCCESS;
+    }
+
+    /**
+     * Connexion échouée ; seules les erreurs de joignabilité comptent (une imprimante occupée ou en erreur répond)
+     */
+    synchronized void recordFailure(int errorCode) {
+        if (errorCode != PrinterResponses.ERR_CONNECT && errorCode != PrinterResponses.ERR_TIMEOUT) {
+            if (state == STATE_HALF_OPEN) {
+                trialInFlight = false;
+            }
+            return;
+        }
+        lastErrorCode = errorCode;
+        if (state == STATE_HALF_OPEN || ++failures >= FAILURE_THRESHOLD) {
+            open();
+        }
+    }
+
+    private void open() {
+        opens++;
+        state = STATE_OPEN;
+        trialInFlight = false;
+        failures = 0;
+        openUntil = System.currentTimeMillis() + backoffMs(random, opens, BASE_OPEN_MS, MAX_OPEN_MS);
+    }
+
+    /**
+     * Cible changée ou imprimante rebranchée : l'historique des échecs ne s'applique plus
+     */
+    synchronized void reset() {
+        recordSuccess();
+    }
+
+    synchronized boolean isClosed() {
+        return state == STATE_CLOSED && failures == 0;
+    }
+
+    synchronized long retryInMs() {
+        return state == STATE_OPEN ? Math.max(0, openUntil - System.currentTimeMillis()) : 0;
+    }
+
+    synchronized JSONObject toJson() {
+        JSONObject json = new JSONObject();
+        try {
+            json.put("state", STATE_NAMES[state]);
+            json.put("failures", failures);
+            json.put("opens", opens);
+            json.put("retryInMs", retryInMs());
+            if (lastErrorCode != PrinterResponses.ERR_SUCCESS) {
+                json.put("lastErrorCode", lastErrorCode);
+            }
+        } catch (JSONException e) {
+            // Ignore JSON error
+        }
+        return json;
+    }
+}
@@ -0,0 +1,257 @@
+package com.eliberty.cordova.plugin.epsonusb;
+
+import com.epson.epos2.Epos2Exception;
+import com.epson.epos2.printer.Printer;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Couche entre les segments analysés et le buffer de commandes du SDK Epson
+ *
+ * Mémorise l'état courant de l'imprimante (style, alignement, taille, police) pour n'émettre
+ * que les changements, et regroupe les textes consécutifs de même style en un seul addText.
+ * Utilisé uniquement par le thread de dispatch, sémaphore de l'imprimante acquis : les tickets y arrivent
+ * déjà compilés (CompiledReceipt), seuls les appels au SDK restent sous le verrou.
+ */
+class CommandBuilder {
+
+    private static final int UNKNOWN = -1;
+
+    private PrinterDriver printer;
+
+    // État connu de l'imprimante (UNKNOWN après un vidage du buffer)
+    private int bold = UNKNOWN;
+    private int underline = UNKNOWN;
+    private int align = UNKNOWN;
+    private int width = UNKNOWN;
+    private int height = UNKNOWN;
+    private int font = UNKNOWN;
+
+    // Texte en attente (pendingStyle.text), fusionné avec les segments suivants de même style
+    // dans pendingText, qui reste vide tant qu'il n'y a qu'un segment
+    private final StringBuilder pendingText = new StringBuilder();
+    private ReceiptSegment pendingStyle = null;
+
+    // Compteurs cumulés (lus depuis d'autres threads)
+    private final AtomicLong emitted = new AtomicLong(0);
+    private final AtomicLong suppressed = new AtomicLong(0);
+
+    /**
+     * À appeler après chaque clearCommandBuffer : l'état de l'imprimante redevient inconnu
+     */
+    void reset(PrinterDriver printer) {
+        this.printer = printer;
+        bold = UNKNOWN;
+        underline = UNKNOWN;
+        align = UNKNOWN;
+        width = UNKNOWN;
+        height = UNKNOWN;
+        font = UNKNOWN;
+        pendingText.setLength(0);
+        pendingStyle = null;
+    }
+
+    /**
+     * Rejoue un ticket compilé, terminé par une coupe (sauf partie non finale d'un ticket envoyé en continu)
+     * En mode "escpos" (receipt.raw), le ticket entier part en un seul addCommand ; il commence par ESC @
+     * (la première partie seulement d'un ticket envoyé en continu), l'état de l'imprimante redevient inconnu
+     * pour le ticket suivant du même buffer
+     */
+    void replay(CompiledReceipt receipt) throws Epos2Exception {
+        if (receipt.raw != null) {
+            flush();
+            printer.addCommand(receipt.raw);
+            emitted.incrementAndGet();
+            suppressed.addAndGet(receipt.mergedTexts + receipt.commands.size());
+            reset(printer);
+            return;
+        }
+        suppressed.addAndGet(receipt.mergedTexts);
+        List<ReceiptSegment> commands = receipt.commands;
+        for (int i = 0; i < commands.size(); i++) {
+            ReceiptSegment command = commands.get(i);
+            if (command.type == ReceiptSegment.IMAGE) {
+                addImage(receipt.images[i], command.align);
+            } else {
+                add(command);
+            }
+        }
+        if (receipt.cut) {
+            addCut();
+        } else {
+            // Partie d'un ticket envoyé en continu : la suite arrive dans le prochain envoi
+            flush();
+        }
+    }
+
+    /**
+     * Ajoute un segment de ticket
+     */
+    void add(ReceiptSegment segment) throws Epos2Exception {
+        switch (segment.type) {
+            case ReceiptSegment.QRCODE:
+                flush();
+                applyAlign(segment.align);
+                printer.addSymbol(segment.text, Printer.SYMBOL_QRCODE_MODEL_2, Printer.LEVEL_L, 9, 1, 0);
+                emitted.incrementAndGet();
+                break;
+            case ReceiptSegment.BARCODE:
+                flush();
+                applyAlign(segment.align);
+                printer.addBarcode(segment.text, toPrinterBarcode(segment.arg), Printer.HRI_BELOW, Printer.FONT_A, 2, 100);
+                emitted.incrementAndGet();
+                break;
+            case ReceiptSegment.FEED:
+                flush();
+                printer.addFeedLine(segment.arg);
+                emitted.incrementAndGet();
+                break;
+            case ReceiptSegment.LOGO:
+                // Logo de la mémoire NV : quelques octets au lieu de la trame complète
+                flush();
+                applyAlign(segment.align);
+                printer.addLogo(segment.text.charAt(0), segment.text.charAt(1));
+                emitted.incrementAndGet();
+                break;
+            default:
+                if (pendingStyle != null && !pendingStyle.sameTextStyle(segment)) {
+                    flush();
+                }
+                if (pendingStyle != null) {
+                    // Même style que le texte en attente : un addText économisé
+                    suppressed.incrementAndGet();
+                    if (pendingText.length() == 0) {
+                        pendingText.append(pendingStyle.text);
+                    }
+                    pendingText.append(segment.text);
+                } else {
+                    pendingStyle = segment;
+                }
+                break;
+        }
+    }
+
+    /**
+     * Ajoute une image déjà convertie en trame (commandes GS v 0 brutes)
+     */
+    void addImage(RasterImage raster, int imageAlign) throws Epos2Exception {
+        flush();
+        applyAlign(imageAlign);
+        printer.addCommand(raster.command);
+        emitted.incrementAndGet();
+    }
+
+    /**
+     * Coupe le papier (fin de ticket)
+     */
+    void addCut() throws Epos2Exception {
+        flush();
+        printer.addCut(Printer.CUT_FEED);
+        emitted.incrementAndGet();
+    }
+
+    /**
+     * Émet le texte en attente avec les seuls changements d'état nécessaires
+     */
+    void flush() throws Epos2Exception {
+        if (pendingStyle == null) {
+            return;
+        }
+        ReceiptSegment style = pendingStyle;
+        pendingStyle = null;
+
+        int newBold = style.bold ? Printer.TRUE : Printer.FALSE;
+        int newUnderline = style.underline ? Printer.TRUE : Printer.FALSE;
+        if (newBold != bold || newUnderline != underline) {
+            printer.addTextStyle(Printer.FALSE, newUnderline, newBold, Printer.COLOR_1);
+            bold = newBold;
+            underline = newUnderline;
+            emitted.incrementAndGet();
+        } else {
+            suppressed.incrementAndGet();
+        }
+        if (style.font != font) {
+            printer.addTextFont(toPrinterFont(style.font));
+            font = style.font;
+            emitted.incrementAndGet();
+        } else {
+            suppressed.incrementAndGet();
+        }
+        if (style.width != width || style.height != height) {
+            printer.addTextSize(style.width, style.height);
+            width = style.width;
+            height = style.height;
+            emitted.incrementAndGet();
+        } else {
+            suppressed.incrementAndGet();
+        }
+        applyAlign(style.align);
+
+        printer.addText(pendingText.length() > 0 ? pendingText.toString() : style.text);
+        pendingText.setLength(0);
+        emitted.incrementAndGet();
+    }
+
+    private void applyAlign(int newAlign) throws Epos2Exception {
+        if (newAlign != align) {
+            printer.addTextAlign(toPrinterAlign(newAlign));
+            align = newAlign;
+            emitted.incrementAndGet();
+        } else {
+            suppressed.incrementAndGet();
+        }
+    }
+
+    long getEmittedCount() {
+        return emitted.get();
+    }
+
+    long getSuppressedCount() {
+        return suppressed.get();
+    }
+
+    void resetCounters() {
+        emitted.set(0);
+        suppressed.set(0);
+    }
+
+    private static int toPrinterAlign(int align) {
+        switch (align) {
+            case ReceiptSegment.ALIGN_LEFT:
+                return Printer.ALIGN_LEFT;
+            case ReceiptSegment.ALIGN_RIGHT:
+                return Printer.ALIGN_RIGHT;
+            default:
+                return Printer.ALIGN_CENTER;
+        }
+    }
+
+    private static int toPrinterFont(int font) {
+        switch (font) {
+            case ReceiptSegment.FONT_B:
+                return Printer.FONT_B;
+            case ReceiptSegment.FONT_C:
+                return Printer.FONT_C;
+            default:
+                return Printer.FONT_A;
+        }
+    }
+
+    private static int toPrinterBarcode(int type) {
+        switch (type) {
+            case ReceiptSegment.BARCODE_UPC_A:
+                return Printer.BARCODE_UPC_A;
+            case ReceiptSegment.BARCODE_EAN13:
+                return Printer.BARCODE_EAN13;
+            case ReceiptSegment.BARCODE_EAN8:
+                return Printer.BARCODE_EAN8;
+            case ReceiptSegment.BARCODE_CODE39:
+                return Printer.BARCODE_CODE39;
+            case ReceiptSegment.BARCODE_ITF:
+                return Printer.BARCODE_ITF;
+            default:
+                return Printer.BARCODE_CODE128;
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package com.eliberty.cordova.plugin.epsonusb;
+
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Ticket compilé hors du verrou de l'imprimante (pool de compilation) : balisage analysé, textes consécutifs
+ * de même style fusionnés en un seul addText et images converties en trame
+ * Immuable : le thread de dispatch le rejoue tel quel dans le buffer du SDK (CommandBuilder.replay)
+ */
+final class CompiledReceipt {
+
+    /**
+     * Trame des segments IMAGE (cache du plugin)
+     */
+    interface ImageSource {
+        /**
+         * @throws IllegalArgumentException si l'image est illisible
+         */
+        RasterImage raster(ReceiptSegment segment);
+
+        /**
+         * Trame d'une image transmise en binaire (fichier PNG ou JPEG)
+         * @throws IllegalArgumentException si l'image est illisible
+         */
+        RasterImage raster(ReceiptSegment segment, byte[] data);
+    }
+
+    // Surcoût estimé d'une commande hors texte (style, symbole, avance) et de la coupe
+    private static final int COMMAND_BYTES = 16;
+    static final int CUT_BYTES = 4;
+
+    // Commandes du ticket dans l'ordre (hors coupe finale)
+    final List<ReceiptSegment> commands;
+    // Trame de chaque commande IMAGE (même indice), null si le ticket n'a pas d'image
+    final RasterImage[] images;
+    // addText économisés par la fusion des textes
+    final int mergedTexts;
+    // Clés des logos NV utilisés, vérifiées sur l'imprimante au moment de l'impression
+    final List<String> logos;
+    // Erreur de compilation (balisage, image) : le ticket n'est pas imprimé
+    final JSONObject error;
+    // Mode "escpos" : commandes ESC/POS du ticket entier, coupe comprise, envoyées en un seul addCommand
+    // (null en mode SDK)
+    final byte[] raw;
+    // Ticket long envoyé en continu : parties compilées à la demande pendant l'impression, envoyées chacune
+    // par un sendData (null si le ticket part en un seul envoi)
+    final ReceiptStream stream;
+    // false pour toutes les parties d'un ticket envoyé en continu sauf la dernière : pas de coupe
+    final boolean cut;
+    // Taille estimée des commandes dans le buffer du SDK (timeout du callback)
+    final int estimatedBytes;
+
+    private CompiledReceipt(List<ReceiptSegment> commands, RasterImage[] images, int mergedTexts, List<String> logos,
+                            JSONObject error, byte[] raw, ReceiptStream stream, boolean cut) {
+        this.commands = commands;
+        this.images = images;
+        this.mergedTexts = mergedTexts;
+        this.logos = logos;
+        this.error = error;
+        this.raw = raw;
+        this.stream = stream;
+        this.cut = cut;
+        int bytes = CUT_BYTES;
+        if (raw != null) {
+            bytes = raw.length;
+        } else {
+            for (int i = 0; i < commands.size(); i++) {
+                bytes += commandBytes(commands.get(i), images != null ? images[i] : null);
+            }
+        }
+        this.estimatedBytes = bytes;
+    }
+
+    static CompiledReceipt failed(JSONObject error) {
+        return new CompiledReceipt(Collections.<ReceiptSegment>emptyList(), null, 0, Collections.<String>emptyList(), error, null, null, true);
+    }
+
+    /**
+     * Partie d'un ticket envoyé en continu (ReceiptStream), sans coupe sauf la dernière
+     */
+    static CompiledReceipt part(List<ReceiptSegment> commands, RasterImage[] images, int mergedTexts, boolean cut) {
+        return new CompiledReceipt(commands, images, mergedTexts, Collections.<String>emptyList(), null, null, null, cut);
+    }
+
+    /**
+     * Ticket envoyé en continu : ses parties sont demandées au flux au moment de l'impression
+     */
+    static CompiledReceipt streaming(ReceiptStream stream) {
+        return new CompiledReceipt(Collections.<ReceiptSegment>emptyList(), null, 0, stream.logos, null, null, stream, true);
+    }
+
+    /**
+     * Même ticket encodé en ESC/POS (mode "escpos") ; réutilisable tel quel d'une impression à l'autre
+     * Un ticket envoyé en continu encode ses parties lui-même, au fur et à mesure (ReceiptStream)
+     */
+    CompiledReceipt withRaw() {
+        if (error != null || raw != null || stream != null) {
+            return this;
+        }
+        return new CompiledReceipt(commands, images, mergedTexts, logos, null, EscPosEncoder.encode(this), null, cut);
+    }
+
+    /**
+     * Partie d'un ticket envoyé en continu encodée en ESC/POS à la suite des précédentes (même encodeur)
+     */
+    CompiledReceipt withRaw(EscPosEncoder encoder) {
+        return new CompiledReceipt(commands, images, mergedTexts, logos, null, encoder.encodePart(this), null, cut);
+    }
+
+    /**
+     * Taille estimée d'une commande dans le buffer du SDK
+     */
+    static int commandBytes(ReceiptSegment command, RasterImage image) {
+        switch (command.type) {
+            case ReceiptSegment.TEXT:
+                return command.text.length();
+            case ReceiptSegment.IMAGE:
+                return image != null ? image.command.length : COMMAND_BYTES;
+            default:
+                return command.text.length() + COMMAND_BYTES;
+        }
+    }
+
+    /**
+     * Compile un ticket ; le balisage n'est analysé qu'une fois par ticket (Receipt)
+     * @throws MarkupException si le balisage est invalide
+     * @throws IllegalArgumentException si une image est illisible
+     */
+    static CompiledReceipt compile(Receipt receipt, ImageSource imageSource) throws MarkupException {
+        List<ReceiptSegment> segments = receipt.segments();
+        List<ReceiptSegment> commands = new ArrayList<ReceiptSegment>(segments.size());
+        List<String> logos = Collections.emptyList();
+        int merged = 0;
+        int runStart = -1;
+        StringBuilder run = null;
+        for (ReceiptSegment segment : segments) {
+            if (segment.type == ReceiptSegment.TEXT && runStart >= 0 && commands.get(runStart).sameTextStyle(segment)) {
+                // Même style que le texte précédent : fusionné au lieu d'un addText de plus
+                if (run == null) {
+                    run = new StringBuilder(commands.get(runStart).text);
+                }
+                run.append(segment.text);
+                merged++;
+                continue;
+            }
+            if (run != null) {
+                commands.set(runStart, commands.get(runStart).withText(run.toString()));
+                run = null;
+            }
+            runStart = segment.type == ReceiptSegment.TEXT ? commands.size() : -1;
+            if (segment.type == ReceiptSegment.LOGO) {
+                if (logos.isEmpty()) {
+                    logos = new ArrayList<String>(2);
+                }
+                logos.add(segment.text);
+            }
+            commands.add(segment);
+        }
+        if (run != null) {
+            commands.set(runStart, commands.get(runStart).withText(run.toString()));
+        }
+
+        RasterImage[] images = null;
+        for (int i = 0; i < commands.size(); i++) {
+            if (commands.get(i).type != ReceiptSegment.IMAGE) {
+                continue;
+            }
+            if (images == null) {
+                images = new RasterImage[commands.size()];
+            }
+            if (receipt.raster() != null) {
+                images[i] = receipt.raster();
+            } else if (receipt.imageData() != null) {
+                images[i] = imageSource.raster(commands.get(i), receipt.imageData());
+            } else {
+                images[i] = imageSource.raster(commands.get(i));
+            }
+        }
+        return new CompiledReceipt(Collections.unmodifiableList(commands), images, merged, logos, null, null, null, true);
+    }
+}
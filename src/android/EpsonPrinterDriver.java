@@ -0,0 +1,189 @@
+package com.eliberty.cordova.plugin.epsonusb;
+
+import android.content.Context;
+
+import com.epson.epos2.ConnectionListener;
+import com.epson.epos2.Epos2Exception;
+import com.epson.epos2.printer.Printer;
+import com.epson.epos2.printer.PrinterStatusInfo;
+import com.epson.epos2.printer.ReceiveListener;
+import com.epson.epos2.printer.StatusChangeListener;
+
+/**
+ * Pilote de l'imprimante TM-T88 par le SDK Epson ePOS2
+ * Transmet les appels tels quels et traduit les listeners du SDK en PrinterDriver.Listener
+ */
+class EpsonPrinterDriver implements PrinterDriver, ReceiveListener, StatusChangeListener, ConnectionListener {
+
+    static final Factory FACTORY = new Factory() {
+        @Override
+        public PrinterDriver create(Context context) throws Epos2Exception {
+            return new EpsonPrinterDriver(new Printer(Printer.TM_T88, Printer.MODEL_ANK, context));
+        }
+    };
+
+    private final Printer printer;
+    private volatile Listener listener = null;
+
+    EpsonPrinterDriver(Printer printer) {
+        this.printer = printer;
+    }
+
+    /**
+     * Les listeners du SDK sont enregistrés AVANT toute opération et retirés avec le listener
+     */
+    @Override
+    public void setListener(Listener listener) {
+        this.listener = listener;
+        if (listener != null) {
+            printer.setReceiveEventListener(this);
+            printer.setStatusChangeEventListener(this);
+            printer.setConnectionEventListener(this);
+        } else {
+            printer.setReceiveEventListener(null);
+            printer.setStatusChangeEventListener(null);
+            printer.setConnectionEventListener(null);
+        }
+    }
+
+    @Override
+    public void onPtrReceive(Printer printer, int code, PrinterStatusInfo status, String printJobId) {
+        Listener current = listener;
+        if (current != null) {
+            current.onReceive(code, toStatus(status), printJobId);
+        }
+    }
+
+    @Override
+    public void onPtrStatusChange(Printer printer, int eventType) {
+        Listener current = listener;
+        if (current != null) {
+            current.onStatusChange(eventType);
+        }
+    }
+
+    @Override
+    public void onConnection(Object deviceObj, int eventType) {
+        Listener current = listener;
+        if (current == null) {
+            return;
+        }
+        if (eventType == ConnectionListener.EVENT_DISCONNECT) {
+            current.onConnectionChange(false);
+        } else if (eventType == ConnectionListener.EVENT_RECONNECT) {
+            current.onConnectionChange(true);
+        }
+    }
+
+    private static Status toStatus(PrinterStatusInfo status) {
+        if (status == null) {
+            return null;
+        }
+        return new Status(status.getConnection(), status.getOnline(), status.getCoverOpen(), status.getPaper());
+    }
+
+    @Override
+    public void connect(String target, int timeout) throws Epos2Exception {
+        printer.connect(target, timeout);
+    }
+
+    @Override
+    public void disconnect() throws Epos2Exception {
+        printer.disconnect();
+    }
+
+    @Override
+    public Status getStatus() {
+        return toStatus(printer.getStatus());
+    }
+
+    @Override
+    public void startMonitor() throws Epos2Exception {
+        printer.startMonitor();
+    }
+
+    @Override
+    public void stopMonitor() throws Epos2Exception {
+        printer.stopMonitor();
+    }
+
+    @Override
+    public void beginTransaction() throws Epos2Exception {
+        printer.beginTransaction();
+    }
+
+    @Override
+    public void endTransaction() throws Epos2Exception {
+        printer.endTransaction();
+    }
+
+    @Override
+    public void forceRecover(int timeout) throws Epos2Exception {
+        printer.forceRecover(timeout);
+    }
+
+    @Override
+    public void clearCommandBuffer() {
+        printer.clearCommandBuffer();
+    }
+
+    @Override
+    public void addText(String data) throws Epos2Exception {
+        printer.addText(data);
+    }
+
+    @Override
+    public void addTextStyle(int reverse, int ul, int em, int color) throws Epos2Exception {
+        printer.addTextStyle(reverse, ul, em, color);
+    }
+
+    @Override
+    public void addTextAlign(int align) throws Epos2Exception {
+        printer.addTextAlign(align);
+    }
+
+    @Override
+    public void addTextSize(int width, int height) throws Epos2Exception {
+        printer.addTextSize(width, height);
+    }
+
+    @Override
+    public void addTextFont(int font) throws Epos2Exception {
+        printer.addTextFont(font);
+    }
+
+    @Override
+    public void addFeedLine(int line) throws Epos2Exception {
+        printer.addFeedLine(line);
+    }
+
+    @Override
+    public void addSymbol(String data, int type, int level, int width, int height, int size) throws Epos2Exception {
+        printer.addSymbol(data, type, level, width, height, size);
+    }
+
+    @Override
+    public void addBarcode(String data, int type, int hri, int font, int width, int height) throws Epos2Exception {
+        printer.addBarcode(data, type, hri, font, width, height);
+    }
+
+    @Override
+    public void addLogo(int key1, int key2) throws Epos2Exception {
+        printer.addLogo(key1, key2);
+    }
+
+    @Override
+    public void addCommand(byte[] data) throws Epos2Exception {
+        printer.addCommand(data);
+    }
+
+    @Override
+    public void addCut(int type) throws Epos2Exception {
+        printer.addCut(type);
+    }
+
+    @Override
+    public void sendData(int timeout) throws Epos2Exception {
+        printer.sendData(timeout);
+    }
+}
@@ -2,133 +2,2114 @@ package com.eliberty.cordova.plugin.epsonusb;
 
 import com.epson.epos2.printer.Printer;
 import com.epson.epos2.Epos2Exception;
-import com.epson.epos2.printer.ReceiveListener;
-import com.epson.epos2.printer.PrinterStatusInfo;
 
 import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
 import android.hardware.usb.UsbDevice;
-import android.hardware.usb.UsbManager;
+import android.util.Base64;
 
 import org.apache.cordova.*;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import java.util.concurrent.Semaphore;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.atomic.AtomicBoolean;
 
-public class EpsonPrinterPlugin extends CordovaPlugin implements ReceiveListener {
+public class EpsonPrinterPlugin extends CordovaPlugin {
 
-    private static final int EPSON_VENDOR_ID = 0x04B8;
-    private static final int EPSON_PRODUCT_ID = 0x0202;
-    
-    // Product IDs connus pour les imprimantes TM-T88
-    private static final int[] KNOWN_TM_T88_PIDS = {0x0202, 0x0e03, 0x0e15, 0x0e27, 0x0e28, 0x0e2a};
-
-    // Instance unique de l'imprimante pour éviter les conflits
-    private Printer mPrinter = null;
-    // Sémaphore pour synchroniser l'accès à l'imprimante (1 seul permit = mutex)
-    // Contrairement à ReentrantLock, un Semaphore peut être libéré par n'importe quel thread
-    private final Semaphore printerSemaphore = new Semaphore(1, true);
-    // Callback en attente pour la réponse asynchrone
-    private volatile CallbackContext pendingCallbackContext = null;
-    // Indicateur d'état de connexion
-    private volatile boolean isConnected = false;
-    // Indicateur de transaction en cours
-    private volatile boolean isTransactionActive = false;
-    // Indicateur que le sémaphore doit être libéré dans onPtrReceive
-    private volatile boolean shouldReleaseSemaphoreInCallback = false;
-    // Timeout pour acquérir le verrou (en secondes)
-    private static final int LOCK_TIMEOUT_SECONDS = 30;
+    // Périphériques USB branchés, mis à jour par les broadcasts de branchement/débranchement
+    private final UsbDeviceRegistry usbRegistry = new UsbDeviceRegistry();
+
+    // Imprimantes trouvées sur le réseau, en Bluetooth et en USB (discover), en cache
+    private final PrinterDiscovery discovery = new PrinterDiscovery();
+    // Demande des permissions Bluetooth d'exécution (onRequestPermissionResult) : une seule affichée à la fois,
+    // les appels discover qui en dépendent attendent la réponse de l'utilisateur
+    private static final int REQUEST_BLUETOOTH_PERMISSIONS = 1;
+    private final List<PendingDiscover> pendingDiscovers = new ArrayList<PendingDiscover>();
+    private boolean bluetoothRequestPending = false;
+    // Travaux conservés sur disque jusqu'à leur impression, rejoués au redémarrage ou au rebranchement
+    // de l'imprimante (créé dans pluginInitialize)
+    private PrintSpool spool = null;
+    // Valeur par défaut de l'option durable des impressions (configureSpool)
+    private volatile boolean spoolEnabled = false;
+    // Âge maximal d'un travail spoolé : au-delà, il n'est plus rejoué
+    private volatile long spoolMaxAgeMs = PrintSpool.DEFAULT_MAX_AGE_MS;
+    // Imprimantes nommées : chacune a son pilote, son sémaphore, sa file et son thread de dispatch
+    // C'est le thread de dispatch (et non le pool Cordova) qui attend l'imprimante
+    private final PrinterPool printerPool = new PrinterPool();
+    // Création du pilote : SDK Epson, remplacé par le simulateur dans les tests de charge
+    private volatile PrinterDriver.Factory driverFactory = EpsonPrinterDriver.FACTORY;
+    // Profondeur maximale de la file de chaque imprimante (configureQueue)
+    private volatile int maxQueueDepth = PrintJobQueue.DEFAULT_MAX_DEPTH;
+    // Modèles de tickets enregistrés et déjà compilés
+    private final TemplateCache templateCache = new TemplateCache(TemplateCache.DEFAULT_MAX_TEMPLATES);
+    // Images déjà converties en trame, indexées par empreinte du contenu
+    private final RasterCache rasterCache = new RasterCache(RasterCache.DEFAULT_MAX_IMAGES, RasterCache.DEFAULT_MAX_BYTES);
+    // Pool de conversion des images : une bande d'image par cœur
+    private static final int RASTER_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors());
+    private final ExecutorService rasterExecutor = Executors.newFixedThreadPool(RASTER_THREADS);
+    // Pool de compilation des tickets (analyse du balisage, trames) pendant leur attente en file :
+    // le ticket suivant est prêt pendant que l'imprimante imprime le précédent
+    // (pool distinct : une compilation attend les bandes d'image du pool de conversion)
+    private static final int COMPILE_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors());
+    private final ExecutorService compileExecutor = Executors.newFixedThreadPool(COMPILE_THREADS);
+    private final CompiledReceipt.ImageSource imageSource = new CompiledReceipt.ImageSource() {
+        @Override
+        public RasterImage raster(ReceiptSegment segment) {
+            return getRaster(segment.text, segment.imageDither(), segment.imageWidth());
+        }
+
+        @Override
+        public RasterImage raster(ReceiptSegment segment, byte[] data) {
+            return getRaster(data, segment.imageDither(), segment.imageWidth());
+        }
+    };
+    // Commandes envoyées au SDK (préférence EpsonCommandMode, configureCommands) : "sdk" (un appel par texte,
+    // style, symbole et coupe) ou "escpos" (ticket entier encodé en ESC/POS, un seul addCommand, mis en cache)
+    static final String COMMANDS_SDK = "sdk";
+    static final String COMMANDS_ESCPOS = "escpos";
+    private volatile String commandMode = COMMANDS_SDK;
+    // Envoi en continu des tickets longs (configureCommands) : un ticket plus gros que streamChunkBytes est
+    // compilé partie par partie, coupé en début de ligne, et envoyé dans la même transaction.
+    // Désactivé par défaut (0) : l'imprimante marque une pause entre deux parties
+    static final int DEFAULT_STREAM_CHUNK_BYTES = 0;
+    private static final int MIN_STREAM_CHUNK_BYTES = 1024;
+    private volatile int streamChunkBytes = DEFAULT_STREAM_CHUNK_BYTES;
+    // Tickets déjà encodés en ESC/POS, indexés par texte balisé
+    private final EscPosCache escPosCache = new EscPosCache(EscPosCache.DEFAULT_MAX_RECEIPTS, EscPosCache.DEFAULT_MAX_BYTES);
+    // Résultats des impressions par clé d'idempotence : une nouvelle tentative n'imprime pas deux fois
+    private final IdempotencyCache idempotencyCache = new IdempotencyCache(IdempotencyCache.DEFAULT_MAX_KEYS, IdempotencyCache.DEFAULT_TTL_MS);
+    // Latences par phase et compteurs d'erreurs (getMetrics)
+    private final PrintMetrics metrics = new PrintMetrics();
+    // Logos enregistrés dans la mémoire NV de chaque imprimante (créé dans pluginInitialize)
+    private NvLogoManifest logoManifest = null;
     // Timeout de sécurité pour le callback (en secondes) - Recommandation Epson
+    // Valeur par défaut tant que l'imprimante n'a pas assez de mesures pour la taille de l'envoi
     private static final int CALLBACK_TIMEOUT_SECONDS = 30;
-    // Executor pour le timeout de sécurité
+    private final AdaptiveTimeout callbackTimeout = new AdaptiveTimeout("callback", CALLBACK_TIMEOUT_SECONDS * 1000L, 5000, 120000);
+    // Timeout de chaque tentative de connexion (borné par le SDK entre 1 et 300 s)
+    private final AdaptiveTimeout connectTimeout = new AdaptiveTimeout("connect", 15000, 3000, 30000);
+    // Executor pour les tâches différées (dates limites)
     private ScheduledExecutorService timeoutExecutor = Executors.newSingleThreadScheduledExecutor();
-    // Future pour annuler le timeout si le callback arrive à temps
-    private volatile ScheduledFuture<?> callbackTimeoutFuture = null;
-    // Indicateur que le callback a été reçu (pour éviter double nettoyage)
-    private final AtomicBoolean callbackReceived = new AtomicBoolean(false);
-    // Timestamp du dernier sendData
-    private volatile long lastSendDataTimestamp = 0;
-
-    // Codes d'erreur Epson ePOS2 SDK
-    private static final int ERR_SUCCESS = 0;
-    private static final int ERR_PARAM = 1;
-    private static final int ERR_CONNECT = 2;
-    private static final int ERR_TIMEOUT = 3;
-    private static final int ERR_MEMORY = 4;
-    private static final int ERR_ILLEGAL = 5;
-    private static final int ERR_PROCESSING = 6;
-    private static final int ERR_NOT_FOUND = 7;
-    private static final int ERR_IN_USE = 8;
-    private static final int ERR_TYPE_INVALID = 9;
-    private static final int ERR_DISCONNECT = 10;
-    private static final int ERR_ALREADY_OPENED = 11;
-    private static final int ERR_ALREADY_USED = 12;
-    private static final int ERR_BOX_COUNT_OVER = 13;
-    private static final int ERR_BOX_CLIENT_OVER = 14;
-    private static final int ERR_UNSUPPORTED = 15;
-    private static final int ERR_FAILURE = 16;
-
-    /**
-     * Convertit un code d'erreur Epson en message compréhensible
-     */
-    private String getEpsonErrorMessage(int errorCode) {
-        switch (errorCode) {
-            case ERR_SUCCESS:
-                return "Opération réussie";
-            case ERR_PARAM:
-                return "Paramètre invalide : un des paramètres passés à la fonction est incorrect";
-            case ERR_CONNECT:
-                return "Erreur de connexion : impossible de se connecter à l'imprimante. Vérifiez que l'imprimante est allumée, connectée via USB et que les permissions USB sont accordées";
-            case ERR_TIMEOUT:
-                return "Délai d'attente dépassé : l'imprimante n'a pas répondu dans le temps imparti. Vérifiez la connexion et réessayez";
-            case ERR_MEMORY:
-                return "Mémoire insuffisante : l'appareil n'a pas assez de mémoire disponible pour effectuer l'opération";
-            case ERR_ILLEGAL:
-                return "État illégal : une opération a été appelée dans un ordre incorrect (ex: impression sans connexion préalable)";
-            case ERR_PROCESSING:
-                return "Traitement en cours : une autre opération est déjà en cours d'exécution. Attendez la fin de l'opération précédente";
-            case ERR_NOT_FOUND:
-                return "Imprimante non trouvée : aucune imprimante Epson compatible n'a été détectée sur le port USB";
-            case ERR_IN_USE:
-                return "Imprimante occupée : l'imprimante est déjà utilisée par une autre application ou un autre processus";
-            case ERR_TYPE_INVALID:
-                return "Type d'imprimante invalide : le modèle d'imprimante spécifié n'est pas compatible";
-            case ERR_DISCONNECT:
-                return "Erreur de déconnexion : impossible de fermer proprement la connexion avec l'imprimante";
-            case ERR_ALREADY_OPENED:
-                return "Déjà connecté : une connexion avec l'imprimante est déjà établie";
-            case ERR_ALREADY_USED:
-                return "Déjà utilisé : la ressource demandée est déjà en cours d'utilisation";
-            case ERR_BOX_COUNT_OVER:
-                return "Limite de boîtes dépassée : le nombre maximum de boîtes de connexion est atteint";
-            case ERR_BOX_CLIENT_OVER:
-                return "Limite de clients dépassée : le nombre maximum de clients connectés est atteint";
-            case ERR_UNSUPPORTED:
-                return "Fonctionnalité non supportée : cette fonction n'est pas disponible sur ce modèle d'imprimante";
-            case ERR_FAILURE:
-                return "Échec général : une erreur interne s'est produite. Redémarrez l'imprimante et l'application";
-            default:
-                return "Erreur inconnue (code: " + errorCode + ")";
-        }
-    }
-
-    /**
-     * Crée un objet JSON d'erreur détaillé
-     */
-    private JSONObject createErrorResponse(int errorCode, String context) {
+    // Taille maximale estimée des commandes envoyées en un seul sendData (lot de tickets)
+    private static final int MAX_SEND_DATA_BYTES = 64 * 1024;
+    // Surcoût estimé des commandes de style, d'alignement et de coupe d'un ticket
+    private static final int RECEIPT_COMMAND_OVERHEAD_BYTES = 256;
+
+    // Mode session persistante : la connexion USB est conservée entre deux impressions
+    // (toujours conservée pour une imprimante réseau ou Bluetooth, sauf keepAlive: false dans configurePrinter)
+    private volatile boolean keepAliveEnabled = false;
+    // Délai d'inactivité avant déconnexion automatique en mode session persistante (en millisecondes)
+    private static final long DEFAULT_IDLE_TIMEOUT_MS = 60000;
+    private volatile long idleTimeoutMs = DEFAULT_IDLE_TIMEOUT_MS;
+
+    // Préparation des imprimantes au démarrage et à la reprise de l'application (préférence EpsonWarmUp) :
+    // "none", "driver" (SDK chargé, pilote créé, permission USB demandée) ou "connect" (connexion ouverte en plus)
+    static final String WARM_UP_NONE = "none";
+    static final String WARM_UP_DRIVER = "driver";
+    static final String WARM_UP_CONNECT = "connect";
+    private volatile String warmUp = WARM_UP_DRIVER;
+    // Sessions ouvertes à la mise en pause (préférence EpsonPauseSession) : "keep" (délai d'inactivité habituel)
+    // ou "release" (fermées dès que l'imprimante est libre, rouvertes par la préparation à la reprise)
+    static final String PAUSE_KEEP = "keep";
+    static final String PAUSE_RELEASE = "release";
+    private volatile String pauseSession = PAUSE_KEEP;
+
+    // Durée de validité du statut en cache lorsque le moniteur n'est pas actif (en millisecondes)
+    private static final long STATUS_CACHE_TTL_MS = 5000;
+
+    /**
+     * Remplace le pilote de l'imprimante (simulateur des tests de charge) ; à appeler avant pluginInitialize
+     */
+    void setDriverFactory(PrinterDriver.Factory factory) {
+        this.driverFactory = factory;
+    }
+
+    /**
+     * Marque le travail comme terminé, met à jour la durée moyenne d'un ticket et les métriques
+     * @return true si le résultat doit être notifié au JavaScript (première terminaison)
+     */
+    private boolean finishJob(PooledPrinter printer, PrintJob job, boolean success) {
+        if (job == null || !job.markDone()) {
+            return false;
+        }
+        if (job.getStartedAt() > 0) {
+            printer.jobQueue.recordServiceTime(System.currentTimeMillis() - job.getStartedAt());
+        }
+        job.addTiming(PrintMetrics.PHASE_TOTAL, job.enqueuedNanos);
+        metrics.recordJob(job.timings, job.bytes, success);
+        return true;
+    }
+
+    /**
+     * Compte une erreur retournée au JavaScript (par code et par contexte)
+     */
+    private void recordError(JSONObject error) {
+        metrics.recordError(error.optInt("code", PrinterResponses.ERR_FAILURE), error.optString("context", null));
+    }
+
+    /**
+     * Termine un travail en erreur avant tout envoi à l'imprimante
+     */
+    private void failJob(PooledPrinter printer, PrintJob job, JSONObject error) {
+        if (finishJob(printer, job, false)) {
+            recordError(error);
+            try {
+                error.put("jobId", job.id);
+            } catch (JSONException e) {
+                // Ignore JSON error
+            }
+            discardSpooled(job);
+            job.callbackContext.error(error);
+        }
+    }
+
+    /**
+     * Retire le travail du spool : imprimé, annulé ou refusé définitivement
+     */
+    private void discardSpooled(PrintJob job) {
+        if (job.spoolId != 0 && spool != null) {
+            spool.complete(job.spoolId);
+        }
+    }
+
+
+    @Override
+    public boolean execute(String action, String rawArgs, CallbackContext callbackContext) throws JSONException {
+        int payloadEnd = action.equals("printBinary") ? BinaryJob.payloadEnd(rawArgs) : -1;
+        if (payloadEnd > 0) {
+            // Charge utile extraite telle quelle : seules les options passent par org.json
+            int comma = rawArgs.indexOf(',', payloadEnd);
+            JSONObject options = comma > 0 ? new JSONArray("[" + rawArgs.substring(comma + 1)).optJSONObject(0) : null;
+            this.printBinary(callbackContext, rawArgs, 2, payloadEnd, options);
+            return true;
+        }
+        return super.execute(action, rawArgs, callbackContext);
+    }
+
+    @Override
+    public boolean execute(String action, JSONArray args, CallbackContext callbackContext) throws JSONException {
+        if (action.equals("printText")) {
+            JSONObject options = args.getJSONObject(0);
+            String toPrint = options.getString("text");
+            this.enqueueJob(callbackContext, Collections.singletonList(Receipt.fromMarkup(toPrint)), false, options);
+            return true;
+        }
+        if (action.equals("printBatch")) {
+            JSONObject options = args.getJSONObject(0);
+            JSONArray receipts = options.getJSONArray("receipts");
+            List<Receipt> texts = new ArrayList<Receipt>(receipts.length());
+            for (int i = 0; i < receipts.length(); i++) {
+                Object receipt = receipts.get(i);
+                texts.add(Receipt.fromMarkup(receipt instanceof JSONObject ? ((JSONObject) receipt).getString("text") : receipts.getString(i)));
+            }
+            if (texts.isEmpty()) {
+                callbackContext.error(PrinterResponses.createErrorResponse(PrinterResponses.ERR_PARAM, "printBatch"));
+                return true;
+            }
+            this.enqueueJob(callbackContext, texts, true, options);
+            return true;
+        }
+        if (action.equals("printImage")) {
+            JSONObject options = args.getJSONObject(0);
+            this.printImage(callbackContext, options);
+            return true;
+        }
+        if (action.equals("printBinary")) {
+            // ArrayBuffer converti en base64 par le pont Cordova (voir CordovaArgs.getArrayBuffer) ;
+            // normalement extrait des arguments bruts, sans passer par ici (execute ci-dessus)
+            String payload = args.getString(0);
+            this.printBinary(callbackContext, payload, 0, payload.length(), args.optJSONObject(1));
+            return true;
+        }
+        if (action.equals("uploadLogo")) {
+            JSONObject options = args.getJSONObject(0);
+            this.uploadLogo(callbackContext, options);
+            return true;
+        }
+        if (action.equals("listLogos")) {
+            this.listLogos(callbackContext, args.optJSONObject(0));
+            return true;
+        }
+        if (action.equals("registerTemplate")) {
+            JSONObject options = args.getJSONObject(0);
+            this.registerTemplate(callbackContext, options.getString("name"), options.optString("version", ""), options.optString("markup", null));
+            return true;
+        }
+        if (action.equals("printTemplate")) {
+            JSONObject options = args.getJSONObject(0);
+            this.printTemplate(callbackContext, options);
+            return true;
+        }
+        if (action.equals("getCommandStats")) {
+            this.getCommandStats(callbackContext);
+            return true;
+        }
+        if (action.equals("getMetrics")) {
+            callbackContext.success(getMetrics());
+            return true;
+        }
+        if (action.equals("resetMetrics")) {
+            // Retourne les métriques de la période écoulée avant de les remettre à zéro
+            JSONObject previous = getMetrics();
+            metrics.reset();
+            idempotencyCache.reset();
+            for (PooledPrinter printer : printerPool.all()) {
+                printer.resetUtilization();
+            }
+            callbackContext.success(previous);
+            return true;
+        }
+        if (action.equals("getQueue")) {
+            this.getQueue(callbackContext, args.optJSONObject(0));
+            return true;
+        }
+        if (action.equals("cancelJob")) {
+            JSONObject options = args.optJSONObject(0);
+            this.cancelJob(callbackContext, options != null ? options.optString("jobId", "") : "");
+            return true;
+        }
+        if (action.equals("configureQueue")) {
+            JSONObject options = args.optJSONObject(0);
+            this.configureQueue(callbackContext, options != null ? options : new JSONObject());
+            return true;
+        }
+        if (action.equals("isPrinterAvailable")) {
+            this.isPrinterAvailable(callbackContext, args.optJSONObject(0));
+            return true;
+        }
+        if (action.equals("subscribeStatus")) {
+            this.subscribeStatus(callbackContext, args.optJSONObject(0));
+            return true;
+        }
+        if (action.equals("unsubscribeStatus")) {
+            this.unsubscribeStatus(callbackContext);
+            return true;
+        }
+        if (action.equals("getDiagnostics")) {
+            callbackContext.success(getUsbDiagnostics());
+            return true;
+        }
+        if (action.equals("configureSession")) {
+            JSONObject options = args.optJSONObject(0);
+            this.configureSession(callbackContext, options != null ? options : new JSONObject());
+            return true;
+        }
+        if (action.equals("configureCommands")) {
+            JSONObject options = args.optJSONObject(0);
+            this.configureCommands(callbackContext, options != null ? options : new JSONObject());
+            return true;
+        }
+        if (action.equals("configurePrinter")) {
+            JSONObject options = args.getJSONObject(0);
+            this.configurePrinter(callbackContext, options);
+            return true;
+        }
+        if (action.equals("removePrinter")) {
+            JSONObject options = args.getJSONObject(0);
+            this.removePrinter(callbackContext, options.optString("name", ""));
+            return true;
+        }
+        if (action.equals("getPrinters")) {
+            this.getPrinters(callbackContext);
+            return true;
+        }
+        if (action.equals("discover")) {
+            JSONObject options = args.optJSONObject(0);
+            if (options == null) {
+                options = new JSONObject();
+            }
+            String port = options.optString("port", "");
+            if (!port.isEmpty() && PrinterPool.portOf(port + ":") == null) {
+                callbackContext.error(PrinterResponses.createErrorResponse(PrinterResponses.ERR_PARAM, "discover"));
+                return true;
+            }
+            PendingDiscover request = new PendingDiscover(callbackContext, port, options.optBoolean("refresh", false),
+                    options.optLong("maxAgeMs", PrinterDiscovery.DEFAULT_MAX_AGE_MS));
+            // Recherche Bluetooth : les permissions d'exécution sont demandées avant la recherche
+            if ((port.isEmpty() || "BT".equals(port))
+                    && BluetoothPermissions.missing(cordova.getActivity().getApplicationContext(), true).length > 0) {
+                synchronized (pendingDiscovers) {
+                    pendingDiscovers.add(request);
+                }
+                requestBluetoothPermissions();
+                return true;
+            }
+            discovery.discover(callbackContext, port, request.refresh, request.maxAgeMs);
+            return true;
+        }
+        if (action.equals("configureTimeouts")) {
+            JSONObject options = args.optJSONObject(0);
+            this.configureTimeouts(callbackContext, options != null ? options : new JSONObject());
+            return true;
+        }
+        if (action.equals("getTimeouts")) {
+            callbackContext.success(timeoutsJson());
+            return true;
+        }
+        if (action.equals("configureSpool")) {
+            JSONObject options = args.optJSONObject(0);
+            this.configureSpool(callbackContext, options != null ? options : new JSONObject());
+            return true;
+        }
+        if (action.equals("getSpool")) {
+            callbackContext.success(spoolJson());
+            return true;
+        }
+        if (action.equals("replaySpool")) {
+            JSONObject response = new JSONObject();
+            try {
+                response.put("replayed", replaySpool(true));
+            } catch (JSONException e) {
+                // Ignore JSON error
+            }
+            callbackContext.success(response);
+            return true;
+        }
+        if (action.equals("clearSpool")) {
+            JSONObject response = new JSONObject();
+            try {
+                response.put("cleared", spool != null ? spool.clear() : 0);
+            } catch (JSONException e) {
+                // Ignore JSON error
+            }
+            callbackContext.success(response);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Métriques d'impression, avec l'occupation de chaque imprimante sur la même période
+     */
+    private JSONObject getMetrics() {
+        JSONObject json = metrics.toJson();
+        try {
+            JSONObject printers = new JSONObject();
+            for (PooledPrinter printer : printerPool.all()) {
+                printers.put(printer.name, printer.utilizationJson());
+            }
+            json.put("printers", printers);
+            json.put("idempotency", idempotencyCache.toJson());
+        } catch (JSONException e) {
+            // Ignore JSON error
+        }
+        return json;
+    }
+
+    /**
+     * Ajoute une imprimante nommée au pool, ou change sa cible
+     * Options : { name: string, target: "USB:", "USB:/dev/bus/usb/001/002", "TCP:192.168.1.20", "BT:00:01:90:C2:A1:3F"...,
+     *             keepAlive: boolean }
+     */
+    private void configurePrinter(CallbackContext callbackContext, JSONObject options) {
+        String name = options.optString("name", "");
+        String target = options.optString("target", "");
+        if (name.isEmpty() || PrinterPool.isTarget(name) || !PrinterPool.isTarget(target)) {
+            callbackContext.error(PrinterResponses.createErrorResponse(PrinterResponses.ERR_PARAM, "configurePrinter"));
+            return;
+        }
+        boolean added = printerPool.resolve(name) == null;
+        PooledPrinter printer = printerPool.configure(name, target);
+        if (printer == null) {
+            callbackContext.error(createPrinterPoolError(name, true));
+            return;
+        }
+        if (options.has("keepAlive")) {
+            printer.keepAlive = options.isNull("keepAlive") ? null : Boolean.valueOf(options.optBoolean("keepAlive"));
+            if (!isKeepAlive(printer)) {
+                printer.disconnectIdleSessionLater();
+            }
+        }
+        startDispatch(printer);
+        warmUpLater(printer);
+        callbackContext.success(printerJson(printer));
+        if (added) {
+            // Travaux spoolés pour cette imprimante avant le redémarrage de l'application
+            replaySpool(false);
+        }
+    }
+
+    /**
+     * Session persistante pour cette imprimante : réglage de configurePrinter, sinon toujours pour une cible
+     * réseau ou Bluetooth (connexion de plusieurs secondes), sinon le réglage de configureSession
+     */
+    private boolean isKeepAlive(PooledPrinter printer) {
+        Boolean keepAlive = printer.keepAlive;
+        if (keepAlive != null) {
+            return keepAlive;
+        }
+        return keepAliveEnabled || PrinterPool.isNetworkTarget(printer.getTarget());
+    }
+
+    private JSONObject printerJson(PooledPrinter printer) {
+        JSONObject json = printer.toJson();
+        try {
+            json.put("keepAlive", isKeepAlive(printer));
+        } catch (JSONException e) {
+            // Ignore JSON error
+        }
+        return json;
+    }
+
+    /**
+     * Retire une imprimante du pool : les travaux en attente sont rejetés,
+     * le travail en cours se termine puis la connexion est fermée
+     */
+    private void removePrinter(CallbackContext callbackContext, String name) {
+        PooledPrinter printer = printerPool.remove(name);
+        if (printer == null) {
+            JSONObject error = PrinterResponses.createErrorResponse(PrinterResponses.ERR_PARAM, "removePrinter");
+            try {
+                error.put("printer", name);
+            } catch (JSONException e) {
+                // Ignore JSON error
+            }
+            callbackContext.error(error);
+            return;
+        }
+        List<PrintJob> pending = printer.close();
+        for (PrintJob job : pending) {
+            if (job.markDone()) {
+                JSONObject error = new JSONObject();
+                try {
+                    error.put("code", -1);
+                    error.put("message", "Imprimante retirée du pool avant l'impression");
+                    error.put("context", "printerRemoved");
+                    error.put("jobId", job.id);
+                    error.put("printer", name);
+                } catch (JSONException e) {
+                    // Ignore JSON error
+                }
+                recordError(error);
+                discardSpooled(job);
+                job.callbackContext.error(error);
+            }
+        }
+        if (!printer.isDispatchStarted()) {
+            printer.retire();
+        }
+        JSONObject response = new JSONObject();
+        try {
+            response.put("name", name);
+            response.put("removed", true);
+            response.put("rejectedJobs", pending.size());
+        } catch (JSONException e) {
+            // Ignore JSON error
+        }
+        callbackContext.success(response);
+    }
+
+    /**
+     * Imprimantes du pool : cible, connexion, file et occupation depuis le dernier resetMetrics
+     */
+    private void getPrinters(CallbackContext callbackContext) {
+        JSONArray printers = new JSONArray();
+        for (PooledPrinter printer : printerPool.all()) {
+            printers.put(printerJson(printer));
+        }
+        JSONObject response = new JSONObject();
+        try {
+            response.put("printers", printers);
+            response.put("maxPrinters", PrinterPool.MAX_PRINTERS);
+        } catch (JSONException e) {
+            // Ignore JSON error
+        }
+        callbackContext.success(response);
+    }
+
+    /**
+     * Imprimante désignée par l'option "printer" (imprimante par défaut si absente)
+     * @return null si elle est inconnue ou si le pool est plein : l'erreur a déjà été envoyée
+     */
+    private PooledPrinter resolvePrinter(JSONObject options, CallbackContext callbackContext) {
+        String key = options != null ? options.optString("printer", "") : "";
+        PooledPrinter printer = printerPool.resolve(key);
+        if (printer == null) {
+            // Une cible n'est refusée que si le pool est plein
+            callbackContext.error(createPrinterPoolError(key, PrinterPool.isTarget(key)));
+            return null;
+        }
+        startDispatch(printer);
+        return printer;
+    }
+
+    private JSONObject createPrinterPoolError(String key, boolean poolFull) {
         JSONObject error = new JSONObject();
         try {
-            error.put("code", errorCode);
-            error.put("message", getEpsonErrorMessage(errorCode));
-            error.put("context", context);
+            error.put("code", PrinterResponses.ERR_PARAM);
+            if (poolFull) {
+                error.put("message", "Pool d'imprimantes plein (" + PrinterPool.MAX_PRINTERS + " au maximum) : retirez une imprimante avec removePrinter");
+                error.put("context", "printerPoolFull");
+            } else {
+                error.put("message", "Imprimante inconnue : déclarez-la avec configurePrinter");
+                error.put("context", "unknownPrinter");
+            }
+            error.put("printer", key);
+        } catch (JSONException e) {
+            // Ignore JSON error
+        }
+        return error;
+    }
+
+    /**
+     * Démarre le thread de dispatch d'une imprimante à sa première utilisation
+     */
+    private void startDispatch(final PooledPrinter printer) {
+        if (printer.isDispatchStarted()) {
+            return;
+        }
+        printer.jobQueue.setMaxDepth(maxQueueDepth);
+        printer.startDispatch(new Runnable() {
+            @Override
+            public void run() {
+                dispatchLoop(printer);
+            }
+        });
+    }
+
+    private static String parseWarmUp(String value, String fallback) {
+        if (WARM_UP_NONE.equals(value) || WARM_UP_DRIVER.equals(value) || WARM_UP_CONNECT.equals(value)) {
+            return value;
+        }
+        return fallback;
+    }
+
+    private static String parsePauseSession(String value, String fallback) {
+        if (PAUSE_KEEP.equals(value) || PAUSE_RELEASE.equals(value)) {
+            return value;
+        }
+        return fallback;
+    }
+
+    private static String parseCommandMode(String value, String fallback) {
+        if (COMMANDS_SDK.equals(value) || COMMANDS_ESCPOS.equals(value)) {
+            return value;
+        }
+        return fallback;
+    }
+
+    /**
+     * Prépare l'imprimante en arrière-plan (thread de session de l'imprimante) selon le réglage warmUp
+     */
+    private void warmUpLater(final PooledPrinter printer) {
+        final String level = warmUp;
+        if (WARM_UP_NONE.equals(level)) {
+            return;
+        }
+        try {
+            printer.sessionExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        warmUp(printer, level);
+                    } catch (Exception e) {
+                        // La première impression refera la préparation
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Plugin détruit ou imprimante retirée du pool
+        }
+    }
+
+    /**
+     * Ce que la première impression ferait : demande de permission USB, chargement du SDK (libepos2)
+     * et création du pilote, puis, avec "connect", ouverture de la connexion
+     * Une connexion ouverte ici est fermée après le délai d'inactivité si aucune impression ne la reprend
+     */
+    private void warmUp(PooledPrinter printer, String level) {
+        Context context = cordova.getActivity().getApplicationContext();
+        String target = printer.getTarget();
+        boolean waitingPermission = false;
+        if ("USB".equals(PrinterPool.portOf(target))) {
+            UsbDevice device = usbRegistry.findEpsonDevice(target.substring(target.indexOf(':') + 1));
+            if (device != null && !usbRegistry.hasPermission(device)) {
+                // La boîte de dialogue apparaît maintenant plutôt qu'au premier ticket ;
+                // l'accord relance la préparation (voir l'écouteur de branchement)
+                usbRegistry.requestPermission(context, device);
+                waitingPermission = true;
+            }
+        }
+        // Impression en cours : l'imprimante est déjà prête
+        if (!printer.semaphore.tryAcquire()) {
+            return;
+        }
+        try {
+            if (!printer.initialize(driverFactory, context) || !WARM_UP_CONNECT.equals(level)
+                    || waitingPermission || printer.isConnected) {
+                return;
+            }
+            // Imprimante absente ou disjoncteur ouvert : pas de connexion
+            if (checkConnectable(printer, "warmUp") != null) {
+                return;
+            }
+            if (printer.connect(discovery.resolveTarget(target), (int) connectTimeout.timeoutMs(printer.connectModel, 0))) {
+                if (isKeepAlive(printer)) {
+                    printer.startStatusMonitor();
+                }
+                printer.scheduleIdleDisconnect(idleTimeoutMs);
+            } else {
+                printer.release();
+            }
+        } finally {
+            printer.semaphore.release();
+        }
+    }
+
+    /**
+     * Configure le mode session persistante (keep-alive) et la préparation des imprimantes
+     * Options : { keepAlive: boolean, idleTimeoutMs: number, warmUp: "none" | "driver" | "connect",
+     *             pauseSession: "keep" | "release" }
+     */
+    private void configureSession(CallbackContext callbackContext, JSONObject options) {
+        long timeout = options.optLong("idleTimeoutMs", idleTimeoutMs);
+        String newWarmUp = parseWarmUp(options.optString("warmUp", warmUp), null);
+        String newPauseSession = parsePauseSession(options.optString("pauseSession", pauseSession), null);
+        if (timeout <= 0 || newWarmUp == null || newPauseSession == null) {
+            callbackContext.error(PrinterResponses.createErrorResponse(PrinterResponses.ERR_PARAM, "configureSession"));
+            return;
+        }
+        idleTimeoutMs = timeout;
+        pauseSession = newPauseSession;
+        if (!newWarmUp.equals(warmUp)) {
+            warmUp = newWarmUp;
+            for (PooledPrinter printer : printerPool.all()) {
+                warmUpLater(printer);
+            }
+        }
+        if (options.has("keepAlive")) {
+            boolean wasEnabled = keepAliveEnabled;
+            keepAliveEnabled = options.optBoolean("keepAlive", false);
+            // Seulement si le mode était actif : la connexion ouverte par la préparation est conservée
+            if (wasEnabled && !keepAliveEnabled) {
+                // Fermer les sessions ouvertes dès que chaque imprimante est libre
+                // (sauf celles qui conservent leur session : imprimantes réseau, keepAlive de configurePrinter)
+                for (PooledPrinter printer : printerPool.all()) {
+                    if (!isKeepAlive(printer)) {
+                        printer.disconnectIdleSessionLater();
+                    }
+                }
+            }
+        }
+
+        boolean connected = false;
+        for (PooledPrinter printer : printerPool.all()) {
+            connected |= printer.isConnected;
+        }
+        JSONObject response = new JSONObject();
+        try {
+            response.put("keepAlive", keepAliveEnabled);
+            response.put("idleTimeoutMs", idleTimeoutMs);
+            response.put("warmUp", warmUp);
+            response.put("pauseSession", pauseSession);
+            response.put("connected", connected);
+        } catch (JSONException e) {
+            // Ignore JSON error
+        }
+        callbackContext.success(response);
+    }
+
+    /**
+     * Choisit les commandes envoyées au SDK et l'envoi en continu pour les tickets compilés à partir de maintenant
+     * Options : { mode: "sdk" | "escpos", streamChunkBytes: number (0 : pas d'envoi en continu, sinon 1024 au moins) }
+     * Le cache ESC/POS est vidé au retour en mode SDK et au changement de taille des parties
+     */
+    private void configureCommands(CallbackContext callbackContext, JSONObject options) {
+        String mode = parseCommandMode(options.optString("mode", commandMode), null);
+        int chunkBytes = options.optInt("streamChunkBytes", streamChunkBytes);
+        if (mode == null || chunkBytes < 0 || (chunkBytes > 0 && chunkBytes < MIN_STREAM_CHUNK_BYTES)) {
+            callbackContext.error(PrinterResponses.createErrorResponse(PrinterResponses.ERR_PARAM, "configureCommands"));
+            return;
+        }
+        if (COMMANDS_SDK.equals(mode) || chunkBytes != streamChunkBytes) {
+            escPosCache.clear();
+        }
+        commandMode = mode;
+        streamChunkBytes = chunkBytes;
+        JSONObject response = new JSONObject();
+        try {
+            response.put("mode", commandMode);
+            response.put("streamChunkBytes", streamChunkBytes);
+        } catch (JSONException e) {
+            // Ignore JSON error
+        }
+        callbackContext.success(response);
+    }
+
+    /**
+     * Collecte les informations de diagnostic USB depuis le registre des périphériques
+     * Uniquement pour les réponses en erreur ou sur demande (getDiagnostics)
+     */
+    private JSONObject getUsbDiagnostics() {
+        return usbRegistry.buildDiagnostics();
+    }
+
+    /**
+     * Informations de diagnostic jointes aux erreurs d'une imprimante : périphériques USB,
+     * ou ce que la dernière recherche sait d'une imprimante réseau ou Bluetooth
+     */
+    private JSONObject getDiagnostics(PooledPrinter printer) {
+        if (PrinterPool.isNetworkTarget(printer.getTarget())) {
+            return discovery.describe(printer.getTarget());
+        }
+        return getUsbDiagnostics();
+    }
+
+    /**
+     * Démarre le thread de dispatch de l'imprimante par défaut et la prépare (voir warmUpLater)
+     * Les autres imprimantes du pool démarrent le leur à leur première utilisation
+     */
+    @Override
+    protected void pluginInitialize() {
+        super.pluginInitialize();
+        usbRegistry.register(cordova.getActivity().getApplicationContext());
+        discovery.setContext(cordova.getActivity().getApplicationContext());
+        logoManifest = new NvLogoManifest(cordova.getActivity().getApplicationContext());
+        warmUp = parseWarmUp(preferences.getString("EpsonWarmUp", WARM_UP_DRIVER), WARM_UP_DRIVER);
+        pauseSession = parsePauseSession(preferences.getString("EpsonPauseSession", PAUSE_KEEP), PAUSE_KEEP);
+        commandMode = parseCommandMode(preferences.getString("EpsonCommandMode", COMMANDS_SDK), COMMANDS_SDK);
+        startDispatch(printerPool.getDefault());
+        // La première impression ne paie ni le chargement du SDK ni la demande de permission USB
+        warmUpLater(printerPool.getDefault());
+
+        // Rejouer les travaux spoolés une fois le journal relu, puis à chaque branchement d'une imprimante Epson
+        spool = new PrintSpool(new File(cordova.getActivity().getApplicationContext().getFilesDir(), "epson-spool"));
+        spool.start(new Runnable() {
+            @Override
+            public void run() {
+                replaySpool(false);
+            }
+        });
+        usbRegistry.setAttachListener(new UsbDeviceRegistry.AttachListener() {
+            @Override
+            public void onPrinterAttached(UsbDevice device) {
+                // Imprimante rebranchée : les échecs de connexion passés ne comptent plus
+                for (PooledPrinter printer : printerPool.all()) {
+                    if ("USB".equals(PrinterPool.portOf(printer.getTarget()))) {
+                        printer.breaker.reset();
+                        warmUpLater(printer);
+                    }
+                }
+                replaySpool(false);
+            }
+        });
+    }
+
+    /**
+     * Boucle du thread de dispatch d'une imprimante : un seul travail à la fois détient cette imprimante
+     * Le thread attend lui-même onPtrReceive, le pool Cordova n'est jamais bloqué
+     */
+    private void dispatchLoop(PooledPrinter printer) {
+        while (!Thread.currentThread().isInterrupted()) {
+            PrintJob job;
+            try {
+                job = printer.jobQueue.take();
+                if (job == null) {
+                    // File fermée par removePrinter : libérer l'imprimante après le dernier travail
+                    printer.retire();
+                    return;
+                }
+                printer.currentJob = job;
+                job.addTiming(PrintMetrics.PHASE_QUEUE_WAIT, job.enqueuedNanos);
+                notifyQueuePositions(printer);
+                // Tickets compilés avant de prendre l'imprimante : seuls les appels au SDK se font sous le verrou
+                awaitCompilation(job);
+                long lockStart = System.nanoTime();
+                printer.semaphore.acquire();
+                job.addTiming(PrintMetrics.PHASE_LOCK_WAIT, lockStart);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            printer.markBusy();
+            try {
+                if (!job.markStarted()) {
+                    // Annulé ou expiré entre-temps
+                    continue;
+                }
+                if (job.isExpired(System.currentTimeMillis())) {
+                    failJob(printer, job, createDeadlineError(job));
+                    continue;
+                }
+                if (job.logo != null) {
+                    runLogoUpload(printer, job);
+                } else {
+                    runPrintJob(printer, job);
+                }
+            } catch (Exception e) {
+                // Ne jamais laisser mourir le thread de dispatch
+                failJob(printer, job, createUnexpectedError(e, job.context()));
+            } finally {
+                printer.markIdle();
+                printer.currentJob = null;
+                printer.semaphore.release();
+            }
+        }
+    }
+
+    /**
+     * Compile les tickets du travail sur le pool de compilation, pendant son attente en file
+     */
+    private void startCompilation(final PrintJob job) {
+        if (job.compiled.length == 0) {
+            return;
+        }
+        try {
+            job.compilation = compileExecutor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    compileJob(job);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Plugin détruit : le thread de dispatch compilera lui-même
+        }
+    }
+
+    private static void cancelCompilation(PrintJob job) {
+        Future<?> compilation = job.compilation;
+        if (compilation != null) {
+            compilation.cancel(false);
+        }
+    }
+
+    /**
+     * Compile les tickets qui ne le sont pas encore ; rien pour un travail déjà terminé (annulé, expiré)
+     */
+    private void compileJob(PrintJob job) {
+        long start = System.nanoTime();
+        boolean compiled = false;
+        for (int i = 0; i < job.compiled.length; i++) {
+            if (job.getState() == PrintJob.STATE_DONE) {
+                return;
+            }
+            if (job.compiled[i] == null) {
+                job.compiled[i] = compileReceipt(job.receipts.get(i));
+                compiled = true;
+            }
+        }
+        if (compiled) {
+            job.addTiming(PrintMetrics.PHASE_COMPILE, start);
+        }
+    }
+
+    private CompiledReceipt compileReceipt(Receipt receipt) {
+        boolean escpos = COMMANDS_ESCPOS.equals(commandMode);
+        String markup = receipt.markup();
+        try {
+            // Ticket long : validé ici, compilé partie par partie pendant l'impression et jamais mis en cache
+            ReceiptStream stream = ReceiptStream.open(receipt, imageSource, streamChunkBytes, escpos);
+            if (stream != null) {
+                return CompiledReceipt.streaming(stream);
+            }
+            // Ticket déjà encodé : ni analyse ni encodage (seul un ticket balisé est mis en cache)
+            if (escpos && markup != null) {
+                CompiledReceipt cached = escPosCache.get(markup);
+                if (cached != null) {
+                    return cached;
+                }
+            }
+            CompiledReceipt compiled = CompiledReceipt.compile(receipt, imageSource);
+            if (escpos) {
+                compiled = compiled.withRaw();
+                if (markup != null) {
+                    escPosCache.put(markup, compiled);
+                }
+            }
+            return compiled;
+        } catch (MarkupException e) {
+            return CompiledReceipt.failed(createMarkupError(e, "markup"));
+        } catch (IllegalArgumentException e) {
+            return CompiledReceipt.failed(createImageError(e));
+        } catch (RuntimeException e) {
+            // Jamais d'exception vers le thread de dispatch, qui compile lui-même en dernier recours
+            return CompiledReceipt.failed(createUnexpectedError(e, "compile"));
+        }
+    }
+
+    /**
+     * Attend la compilation du travail (thread de dispatch, avant le verrou de l'imprimante)
+     * Les tickets restants (compilation en échec ou pool arrêté) sont compilés ici
+     */
+    private void awaitCompilation(PrintJob job) throws InterruptedException {
+        Future<?> compilation = job.compilation;
+        if (compilation != null) {
+            long waitStart = System.nanoTime();
+            boolean ready = compilation.isDone();
+            try {
+                compilation.get();
+            } catch (ExecutionException e) {
+                // Tickets restants compilés ci-dessous
+            }
+            if (!ready) {
+                job.addTiming(PrintMetrics.PHASE_COMPILE_WAIT, waitStart);
+            }
+        }
+        compileJob(job);
+    }
+
+    /**
+     * Place un travail (ticket unique ou lot) dans la file d'impression
+     */
+    private void enqueueJob(final CallbackContext callbackContext, List<Receipt> receipts, boolean batch, JSONObject options) {
+        enqueueJob(callbackContext, receipts, batch, null, options);
+    }
+
+    private void enqueueJob(CallbackContext jsCallback, List<Receipt> receipts, boolean batch, LogoUpload logo, JSONObject options) {
+        final PooledPrinter printer = resolvePrinter(options, jsCallback);
+        if (printer == null) {
+            return;
+        }
+        // Nouvelle tentative d'un travail déjà connu : résultat mémorisé ou attente du travail en cours
+        final CallbackContext callbackContext;
+        String idempotencyKey = options.optString("idempotencyKey", "");
+        if (!idempotencyKey.isEmpty()) {
+            IdempotencyCache.Duplicate duplicate = idempotencyCache.reserve(idempotencyKey, jsCallback);
+            if (duplicate != null) {
+                if (duplicate.outcome != null) {
+                    sendDuplicate(jsCallback, duplicate.outcome, duplicate.success);
+                }
+                return;
+            }
+            callbackContext = new IdempotentCallback(idempotencyKey, jsCallback);
+        } else {
+            callbackContext = jsCallback;
+        }
+        final PrintJob job = new PrintJob(
+                options.optString("jobId", ""),
+                receipts,
+                batch,
+                logo,
+                PrintJob.parsePriority(options.optString("priority", "normal")),
+                options.optLong("deadlineMs", 0) > 0 ? System.currentTimeMillis() + options.optLong("deadlineMs", 0) : 0,
+                options.optBoolean("events", false),
+                callbackContext);
+
+        // Travail durable : journalisé avant d'entrer dans la file (écriture disque différée, hors du chemin d'impression)
+        if (logo == null && spool != null && options.optBoolean("durable", spoolEnabled)) {
+            job.spoolId = spool.append(job, printer.name, printer.getTarget());
+        }
+
+        // Compilation lancée avant l'entrée en file : le thread de dispatch trouve toujours la tâche
+        startCompilation(job);
+
+        // Délestage : rejet immédiat si la file est pleine, avec une estimation de l'attente
+        // Verrou du travail : l'événement "queued" part avant ceux du thread de dispatch
+        boolean queued;
+        synchronized (job) {
+            queued = printer.jobQueue.offer(job);
+            if (queued && job.reportEvents) {
+                int position = Math.max(1, printer.jobQueue.positionOf(job));
+                job.lastReportedPosition = position;
+                JSONObject event = new JSONObject();
+                try {
+                    event.put("position", position);
+                    event.put("queueDepth", printer.jobQueue.size());
+                    event.put("estimatedWaitMs", printer.jobQueue.estimateWaitMs(position - 1 + (printer.currentJob != null ? 1 : 0)));
+                } catch (JSONException e) {
+                    // Ignore JSON error
+                }
+                sendJobEvent(printer, job, "queued", event);
+            }
+        }
+        if (!queued) {
+            cancelCompilation(job);
+            int depth = printer.jobQueue.size();
+            JSONObject error = new JSONObject();
+            try {
+                error.put("code", PrinterResponses.ERR_PROCESSING);
+                error.put("message", "File d'impression pleine : réessayez plus tard");
+                error.put("context", "queueFull");
+                error.put("jobId", job.id);
+                error.put("printer", printer.name);
+                error.put("queueDepth", depth);
+                error.put("estimatedWaitMs", printer.jobQueue.estimateWaitMs(depth + (printer.currentJob != null ? 1 : 0)));
+            } catch (JSONException e) {
+                // Ignore JSON error
+            }
+            recordError(error);
+            discardSpooled(job);
+            callbackContext.error(error);
+            return;
+        }
+
+        // Date limite : retirer le travail de la file s'il n'a pas démarré à temps
+        if (job.deadline > 0) {
+            try {
+                timeoutExecutor.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (printer.jobQueue.remove(job) && job.markDone()) {
+                            JSONObject error = createDeadlineError(job);
+                            try {
+                                error.put("jobId", job.id);
+                            } catch (JSONException e) {
+                                // Ignore JSON error
+                            }
+                            recordError(error);
+                            discardSpooled(job);
+                            job.callbackContext.error(error);
+                            notifyQueuePositions(printer);
+                        }
+                    }
+                }, job.deadline - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+            } catch (Exception e) {
+                // Executor arrêté : le dispatch vérifiera la date limite
+            }
+        }
+    }
+
+    private static void sendDuplicate(CallbackContext callbackContext, JSONObject outcome, boolean success) {
+        JSONObject response = IdempotencyCache.duplicateResponse(outcome);
+        if (success) {
+            callbackContext.success(response);
+        } else {
+            callbackContext.error(response);
+        }
+    }
+
+    /**
+     * Callback d'un travail avec clé d'idempotence : le résultat final est mémorisé puis transmis
+     * au JavaScript et aux nouvelles tentatives arrivées pendant le travail ; les événements passent tels quels
+     */
+    private class IdempotentCallback extends CallbackContext {
+        private final String key;
+        private final CallbackContext target;
+
+        IdempotentCallback(String key, CallbackContext target) {
+            super(target.getCallbackId(), webView);
+            this.key = key;
+            this.target = target;
+        }
+
+        @Override
+        public void success(JSONObject message) {
+            finish(message, true);
+        }
+
+        @Override
+        public void error(JSONObject message) {
+            finish(message, false);
+        }
+
+        @Override
+        public void sendPluginResult(PluginResult pluginResult) {
+            target.sendPluginResult(pluginResult);
+        }
+
+        private void finish(JSONObject message, boolean success) {
+            List<CallbackContext> waiters = idempotencyCache.complete(key, message, success);
+            if (success) {
+                target.success(message);
+            } else {
+                target.error(message);
+            }
+            for (CallbackContext waiter : waiters) {
+                sendDuplicate(waiter, message, success);
+            }
+        }
+    }
+
+    /**
+     * Événement de progression d'un travail demandé avec l'option events : résultat intermédiaire
+     * (keepCallback) du callback de succès, { event, jobId, printer, ... }
+     * Événements : queued, position, connecting, sent ; le résultat final reste le callback habituel
+     */
+    private void sendJobEvent(PooledPrinter printer, PrintJob job, String event, JSONObject details) {
+        if (job == null || !job.reportEvents) {
+            return;
+        }
+        synchronized (job) {
+            if (job.getState() == PrintJob.STATE_DONE) {
+                return;
+            }
+            JSONObject json = details != null ? details : new JSONObject();
+            try {
+                json.put("event", event);
+                json.put("jobId", job.id);
+                json.put("printer", printer.name);
+            } catch (JSONException e) {
+                // Ignore JSON error
+            }
+            PluginResult result = new PluginResult(PluginResult.Status.OK, json);
+            result.setKeepCallback(true);
+            job.callbackContext.sendPluginResult(result);
+        }
+    }
+
+    /**
+     * Envoie leur nouvelle position aux travaux en attente qui suivent leur progression
+     * (un travail a quitté la file : dispatch, annulation ou expiration)
+     */
+    private void notifyQueuePositions(PooledPrinter printer) {
+        List<PrintJob> waiting = printer.jobQueue.snapshot();
+        int ahead = printer.currentJob != null ? 1 : 0;
+        for (int i = 0; i < waiting.size(); i++) {
+            PrintJob job = waiting.get(i);
+            if (!job.reportEvents) {
+                continue;
+            }
+            synchronized (job) {
+                if (job.lastReportedPosition == i + 1) {
+                    continue;
+                }
+                job.lastReportedPosition = i + 1;
+                JSONObject event = new JSONObject();
+                try {
+                    event.put("position", i + 1);
+                    event.put("estimatedWaitMs", printer.jobQueue.estimateWaitMs(i + ahead));
+                } catch (JSONException e) {
+                    // Ignore JSON error
+                }
+                sendJobEvent(printer, job, "position", event);
+            }
+        }
+    }
+
+    private JSONObject createDeadlineError(PrintJob job) {
+        JSONObject error = PrinterResponses.createErrorResponse(PrinterResponses.ERR_TIMEOUT, "queueDeadline");
+        try {
+            error.put("message", "Délai dépassé : l'impression n'a pas pu démarrer avant sa date limite");
+            error.put("waitedMs", System.currentTimeMillis() - job.enqueuedAt);
+        } catch (JSONException e) {
+            // Ignore JSON error
+        }
+        return error;
+    }
+
+    /**
+     * Enregistre un logo dans la mémoire NV de l'imprimante, via la file d'impression
+     * Options : { key: deux caractères, image: base64 ou URL data:, dither, width, force, priority, deadlineMs }
+     */
+    private void uploadLogo(CallbackContext callbackContext, JSONObject options) {
+        String key = options.optString("key", "");
+        String image = options.optString("image", "");
+        int widthDots = options.optInt("width", 0);
+        if (!NvGraphics.isValidKey(key) || image.isEmpty()
+                || (widthDots != 0 && (widthDots < ImageRasterizer.MIN_WIDTH_DOTS || widthDots > ImageRasterizer.MAX_WIDTH_DOTS))) {
+            callbackContext.error(PrinterResponses.createErrorResponse(PrinterResponses.ERR_PARAM, "uploadLogo"));
+            return;
+        }
+        int dither = "ordered".equals(options.optString("dither", "floyd"))
+                ? ImageRasterizer.DITHER_ORDERED : ImageRasterizer.DITHER_FLOYD_STEINBERG;
+        LogoUpload logo = new LogoUpload(key, image, dither, widthDots, options.optBoolean("force", false));
+        this.enqueueJob(callbackContext, Collections.<Receipt>emptyList(), false, logo, options);
+    }
+
+    /**
+     * Identifiant de l'imprimante, clé du manifeste des logos NV
+     * Cible "USB:" : l'imprimante Epson branchée ; cible USB explicite : ce périphérique ;
+     * autre port : la cible elle-même
+     * @return null si l'imprimante USB n'est pas branchée
+     */
+    private String getPrinterId(PooledPrinter printer) {
+        String target = printer.getTarget();
+        if (PrinterPool.DEFAULT_TARGET.equals(target)) {
+            return usbRegistry.getPrinterId();
+        }
+        if (target.startsWith(PrinterPool.DEFAULT_TARGET)) {
+            return usbRegistry.getPrinterId(target.substring(PrinterPool.DEFAULT_TARGET.length()));
+        }
+        return target;
+    }
+
+    /**
+     * Identifiant à conserver dans le manifeste des logos : imprimante réseau ou Bluetooth (sa cible),
+     * ou imprimante USB dont le numéro de série est lisible
+     */
+    private static boolean isPersistentPrinterId(PooledPrinter printer, String printerId) {
+        return !printer.getTarget().startsWith(PrinterPool.DEFAULT_TARGET) || UsbDeviceRegistry.hasSerial(printerId);
+    }
+
+    /**
+     * Logos enregistrés sur l'imprimante, d'après le manifeste local
+     */
+    private void listLogos(CallbackContext callbackContext, JSONObject options) {
+        PooledPrinter printer = resolvePrinter(options, callbackContext);
+        if (printer == null) {
+            return;
+        }
+        String printerId = getPrinterId(printer);
+        if (printerId == null) {
+            JSONObject error = PrinterResponses.createErrorResponse(PrinterResponses.ERR_NOT_FOUND, "listLogos");
+            PrinterResponses.mergeJson(error, getDiagnostics(printer));
+            callbackContext.error(error);
+            return;
+        }
+        JSONObject response = new JSONObject();
+        try {
+            response.put("printerId", printerId);
+            response.put("logos", logoManifest.snapshot(printerId));
+        } catch (JSONException e) {
+            // Ignore JSON error
+        }
+        callbackContext.success(response);
+    }
+
+    /**
+     * Imprime une image seule (suivie d'une coupe)
+     * Options : { image: base64 ou URL data:, dither: "floyd"|"ordered", width: points, align, jobId, priority, deadlineMs }
+     */
+    private void printImage(CallbackContext callbackContext, JSONObject options) {
+        String image = options.optString("image", "");
+        int widthDots = options.optInt("width", 0);
+        if (image.isEmpty() || (widthDots != 0 && (widthDots < ImageRasterizer.MIN_WIDTH_DOTS || widthDots > ImageRasterizer.MAX_WIDTH_DOTS))) {
+            callbackContext.error(PrinterResponses.createErrorResponse(PrinterResponses.ERR_PARAM, "printImage"));
+            return;
+        }
+        int dither = "ordered".equals(options.optString("dither", "floyd"))
+                ? ImageRasterizer.DITHER_ORDERED : ImageRasterizer.DITHER_FLOYD_STEINBERG;
+        String align = options.optString("align", "center");
+        int imageAlign = "left".equals(align) ? ReceiptSegment.ALIGN_LEFT
+                : "right".equals(align) ? ReceiptSegment.ALIGN_RIGHT : ReceiptSegment.ALIGN_CENTER;
+        ReceiptSegment segment = new ReceiptSegment(ReceiptSegment.IMAGE, image, false, false, imageAlign, 1, 1,
+                ReceiptSegment.FONT_A, ReceiptSegment.imageArg(dither, widthDots));
+        this.enqueueJob(callbackContext, Collections.singletonList(Receipt.fromSegments(Collections.singletonList(segment))), false, options);
+    }
+
+    /**
+     * Imprime un travail au format binaire (BinaryJob) : texte, images et trames sans échappement JSON
+     * ni base64 dans le balisage ; plusieurs tickets sont imprimés comme un lot (printBatch)
+     * Options : { jobId, priority, deadlineMs, ... } comme printText
+     *
+     * Le décodage base64 et l'analyse de la charge utile (plusieurs Mo pour des images) sont faits sur le pool
+     * de compilation, pas sur le thread du pont Cordova : le travail entre en file une fois analysé, il peut donc
+     * y passer après un appel d'impression plus récent.
+     * @param args chaîne contenant la charge utile en base64 entre start et end (arguments bruts du pont)
+     */
+    private void printBinary(final CallbackContext callbackContext, final String args, final int start, final int end,
+                             JSONObject options) {
+        final JSONObject jobOptions = options != null ? options : new JSONObject();
+        Runnable parse = new Runnable() {
+            @Override
+            public void run() {
+                List<Receipt> receipts;
+                try {
+                    receipts = BinaryJob.parse(Base64.decode(args.substring(start, end), Base64.DEFAULT), templateCache);
+                } catch (BinaryJob.TemplateMissingException e) {
+                    callbackContext.error(createTemplateMissingError(e.name, e.version));
+                    return;
+                } catch (IllegalArgumentException e) {
+                    callbackContext.error(createBinaryJobError(e));
+                    return;
+                }
+                enqueueJob(callbackContext, receipts, receipts.size() > 1, jobOptions);
+            }
+        };
+        try {
+            compileExecutor.execute(parse);
+        } catch (RejectedExecutionException e) {
+            // Plugin détruit : analyse sur le thread appelant
+            parse.run();
+        }
+    }
+
+    /**
+     * Enregistre un modèle de ticket : le balisage est compilé une seule fois par nom et version
+     * Sans balisage, vérifie seulement que le modèle est encore en cache
+     */
+    private void registerTemplate(CallbackContext callbackContext, String name, String version, String markup) {
+        ReceiptTemplate template = templateCache.get(name, version);
+        boolean cached = template != null;
+        if (template == null) {
+            if (markup == null) {
+                callbackContext.error(createTemplateMissingError(name, version));
+                return;
+            }
+            try {
+                template = new ReceiptTemplate(name, version, markup);
+            } catch (MarkupException e) {
+                callbackContext.error(createMarkupError(e, "registerTemplate"));
+                return;
+            }
+            templateCache.put(template);
+        }
+
+        JSONObject response = new JSONObject();
+        try {
+            response.put("name", template.name);
+            response.put("version", template.version);
+            response.put("cached", cached);
+            response.put("segments", template.segmentCount());
+            response.put("fields", new JSONArray(template.getFieldNames()));
+        } catch (JSONException e) {
+            // Ignore JSON error
+        }
+        callbackContext.success(response);
+    }
+
+    /**
+     * Imprime un modèle enregistré : seules les valeurs des champs traversent le pont Cordova
+     */
+    private void printTemplate(CallbackContext callbackContext, JSONObject options) {
+        String name = options.optString("name", "");
+        String version = options.optString("version", "");
+        ReceiptTemplate template = templateCache.get(name, version);
+        if (template == null) {
+            callbackContext.error(createTemplateMissingError(name, version));
+            return;
+        }
+        Receipt receipt = template.render(options.optJSONObject("data"));
+        enqueueJob(callbackContext, Collections.singletonList(receipt), false, options);
+    }
+
+    /**
+     * Image illisible (base64 ou fichier PNG/JPEG invalide, largeur hors limites)
+     */
+    private JSONObject createImageError(IllegalArgumentException e) {
+        JSONObject error = new JSONObject();
+        try {
+            error.put("code", PrinterResponses.ERR_PARAM);
+            error.put("message", "Image invalide : " + e.getMessage());
+            error.put("context", "image");
+        } catch (JSONException ex) {
+            // Ignore JSON error
+        }
+        return error;
+    }
+
+    /**
+     * Charge utile de printBinary invalide (en-tête, enregistrement tronqué ou inconnu)
+     */
+    private JSONObject createBinaryJobError(IllegalArgumentException e) {
+        JSONObject error = new JSONObject();
+        try {
+            error.put("code", PrinterResponses.ERR_PARAM);
+            error.put("message", "Travail binaire invalide : " + e.getMessage());
+            error.put("context", "printBinary");
+        } catch (JSONException ex) {
+            // Ignore JSON error
+        }
+        return error;
+    }
+
+    /**
+     * Erreur de balisage avec la position fautive dans le texte
+     */
+    private JSONObject createMarkupError(MarkupException e, String context) {
+        JSONObject error = new JSONObject();
+        try {
+            error.put("code", PrinterResponses.ERR_PARAM);
+            error.put("message", "Balisage invalide : " + e.getMessage());
+            error.put("context", context);
+            error.put("offset", e.getOffset());
+        } catch (JSONException ex) {
+            // Ignore JSON error
+        }
+        return error;
+    }
+
+    private JSONObject createTemplateMissingError(String name, String version) {
+        JSONObject error = new JSONObject();
+        try {
+            error.put("code", -1);
+            error.put("message", "Modèle de ticket inconnu ou d'une autre version : il doit être enregistré à nouveau");
+            error.put("context", "templateMissing");
+            error.put("name", name);
+            error.put("version", version);
+        } catch (JSONException e) {
+            // Ignore JSON error
+        }
+        return error;
+    }
+
+    /**
+     * Compteurs de commandes SDK émises et évitées par le CommandBuilder depuis le démarrage
+     */
+    private void getCommandStats(CallbackContext callbackContext) {
+        long emitted = 0;
+        long suppressed = 0;
+        for (PooledPrinter printer : printerPool.all()) {
+            emitted += printer.commandBuilder.getEmittedCount();
+            suppressed += printer.commandBuilder.getSuppressedCount();
+        }
+        JSONObject response = new JSONObject();
+        try {
+            response.put("emitted", emitted);
+            response.put("suppressed", suppressed);
+            response.put("suppressedRatio", emitted + suppressed > 0 ? (double) suppressed / (emitted + suppressed) : 0);
+            JSONObject rasters = new JSONObject();
+            rasters.put("size", rasterCache.size());
+            rasters.put("bytes", rasterCache.byteSize());
+            rasters.put("hits", rasterCache.getHits());
+            rasters.put("misses", rasterCache.getMisses());
+            response.put("rasterCache", rasters);
+            JSONObject escpos = new JSONObject();
+            escpos.put("mode", commandMode);
+            escpos.put("size", escPosCache.size());
+            escpos.put("bytes", escPosCache.byteSize());
+            escpos.put("hits", escPosCache.getHits());
+            escpos.put("misses", escPosCache.getMisses());
+            response.put("escposCache", escpos);
+        } catch (JSONException e) {
+            // Ignore JSON error
+        }
+        callbackContext.success(response);
+    }
+
+    /**
+     * Retourne l'état de la file d'une imprimante : travail en cours et travaux en attente dans l'ordre de dispatch
+     */
+    private void getQueue(CallbackContext callbackContext, JSONObject options) {
+        PooledPrinter printer = resolvePrinter(options, callbackContext);
+        if (printer == null) {
+            return;
+        }
+        PrintJobQueue jobQueue = printer.jobQueue;
+        List<PrintJob> jobs = jobQueue.snapshot();
+        PrintJob running = printer.currentJob;
+        int ahead = running != null ? 1 : 0;
+        long now = System.currentTimeMillis();
+
+        JSONObject response = new JSONObject();
+        try {
+            JSONArray queued = new JSONArray();
+            for (int i = 0; i < jobs.size(); i++) {
+                PrintJob job = jobs.get(i);
+                JSONObject item = new JSONObject();
+                item.put("jobId", job.id);
+                item.put("priority", PrintJob.priorityName(job.priority));
+                item.put("tickets", job.receipts.size());
+                item.put("position", i + 1);
+                item.put("waitedMs", now - job.enqueuedAt);
+                item.put("estimatedWaitMs", jobQueue.estimateWaitMs(ahead + i));
+                if (job.deadline > 0) {
+                    item.put("deadlineInMs", job.deadline - now);
+                }
+                queued.put(item);
+            }
+            response.put("printer", printer.name);
+            response.put("running", running != null ? running.id : JSONObject.NULL);
+            response.put("depth", jobs.size());
+            response.put("maxDepth", jobQueue.getMaxDepth());
+            response.put("estimatedWaitMs", jobQueue.estimateWaitMs(ahead + jobs.size()));
+            response.put("jobs", queued);
+        } catch (JSONException e) {
+            // Ignore JSON error
+        }
+        callbackContext.success(response);
+    }
+
+    /**
+     * Annule un travail encore en attente, quelle que soit son imprimante ;
+     * un travail déjà envoyé à l'imprimante ne peut plus l'être
+     */
+    private void cancelJob(CallbackContext callbackContext, String jobId) {
+        List<PooledPrinter> printers = printerPool.all();
+        PrintJob job = null;
+        PooledPrinter owner = null;
+        for (PooledPrinter printer : printers) {
+            job = printer.jobQueue.find(jobId);
+            if (job != null) {
+                owner = printer;
+                break;
+            }
+        }
+        if (job != null && owner.jobQueue.remove(job) && job.markDone()) {
+            JSONObject cancelled = new JSONObject();
+            try {
+                cancelled.put("code", -1);
+                cancelled.put("message", "Impression annulée");
+                cancelled.put("context", "cancelled");
+                cancelled.put("jobId", job.id);
+            } catch (JSONException e) {
+                // Ignore JSON error
+            }
+            discardSpooled(job);
+            job.callbackContext.error(cancelled);
+            notifyQueuePositions(owner);
+
+            JSONObject response = new JSONObject();
+            try {
+                response.put("jobId", jobId);
+                response.put("cancelled", true);
+            } catch (JSONException e) {
+                // Ignore JSON error
+            }
+            callbackContext.success(response);
+            return;
+        }
+
+        boolean isRunning = false;
+        for (PooledPrinter printer : printers) {
+            PrintJob running = printer.currentJob;
+            isRunning |= running != null && running.id.equals(jobId);
+        }
+        JSONObject error = new JSONObject();
+        try {
+            error.put("code", -1);
+            error.put("context", "cancelJob");
+            error.put("jobId", jobId);
+            if (isRunning) {
+                error.put("message", "Impossible d'annuler : l'impression est déjà en cours");
+                error.put("state", "running");
+            } else {
+                error.put("message", "Travail introuvable dans la file d'impression");
+                error.put("state", "unknown");
+            }
+        } catch (JSONException e) {
+            // Ignore JSON error
+        }
+        callbackContext.error(error);
+    }
+
+    /**
+     * Configure la file d'impression de chaque imprimante
+     * Options : { maxQueueDepth: number }
+     */
+    private void configureQueue(CallbackContext callbackContext, JSONObject options) {
+        if (options.has("maxQueueDepth")) {
+            int depth = options.optInt("maxQueueDepth", PrintJobQueue.DEFAULT_MAX_DEPTH);
+            if (depth <= 0) {
+                callbackContext.error(PrinterResponses.createErrorResponse(PrinterResponses.ERR_PARAM, "configureQueue"));
+                return;
+            }
+            maxQueueDepth = depth;
+        }
+        int queued = 0;
+        for (PooledPrinter printer : printerPool.all()) {
+            printer.jobQueue.setMaxDepth(maxQueueDepth);
+            queued += printer.jobQueue.size();
+        }
+        JSONObject response = new JSONObject();
+        try {
+            response.put("maxQueueDepth", maxQueueDepth);
+            response.put("depth", queued);
+        } catch (JSONException e) {
+            // Ignore JSON error
+        }
+        callbackContext.success(response);
+    }
+    
+    /**
+     * Imprime un travail (ticket unique ou lot) ; appelé par le thread de dispatch, sémaphore acquis
+     * Les tickets sont regroupés en aussi peu de transactions/sendData que le permet le buffer du SDK
+     */
+    private void runPrintJob(PooledPrinter printer, PrintJob job) {
+        Context context = cordova.getActivity().getApplicationContext();
+        String jobContext = job.context();
+        int count = job.receipts.size();
+        JSONObject[] results = new JSONObject[count];
+        
+        // La session persistante est réutilisée : annuler la déconnexion programmée
+        printer.cancelIdleDisconnect();
+        
+        JSONObject sessionError = openPrintSession(printer, context, jobContext, job);
+        if (sessionError != null) {
+            fillResults(results, 0, sessionError);
+            completeJob(printer, job, results);
+            return;
+        }
+        
+        boolean success = true;
+        int index = 0;
+        while (index < count) {
+            if (job.compiled[index].stream != null) {
+                // Ticket long : envoyé en continu, partie par partie, dans sa propre transaction
+                JSONObject outcome = streamReceipt(printer, job, index, results);
+                if (outcome == null) {
+                    success = false;
+                    index++;
+                    continue;
+                }
+                results[index] = outcome;
+                if (!"printed".equals(outcome.optString("status"))) {
+                    fillResults(results, index + 1, createSkippedResult());
+                    success = false;
+                    break;
+                }
+                printer.endPrintTransaction(index + 1 < count || (isKeepAlive(printer) && success));
+                index++;
+                continue;
+            }
+            int end = nextGroupEnd(job, index);
+            
+            // Vider le buffer AVANT de démarrer la transaction (selon Epson SDK)
+            try {
+                printer.driver.clearCommandBuffer();
+            } catch (Exception e) {
+                // Continue anyway
+            }
+            
+            // Démarrer la transaction APRÈS clearCommandBuffer et vérification statut
+            long beginStart = System.nanoTime();
+            try {
+                printer.driver.beginTransaction();
+                printer.isTransactionActive = true;
+                job.addTiming(PrintMetrics.PHASE_BEGIN, beginStart);
+            } catch (Epos2Exception e) {
+                fillResults(results, index, PrinterResponses.createErrorResponse(e.getErrorStatus(), "beginTransaction"));
+                printer.release();
+                success = false;
+                break;
+            }
+            
+            // Préparer les commandes d'impression du groupe (buffer vide : état de l'imprimante inconnu)
+            printer.commandBuilder.reset(printer.driver);
+            long buildStart = System.nanoTime();
+            List<Integer> included = addGroupCommands(printer, job, index, end, results);
+            job.addTiming(PrintMetrics.PHASE_BUILD, buildStart);
+            long groupBytes = 0;
+            for (int i : included) {
+                groupBytes += estimateReceiptBytes(job.receipts.get(i));
+            }
+            job.bytes += groupBytes;
+            if (included.isEmpty()) {
+                // Aucun ticket valide dans ce groupe : rien à envoyer
+                printer.endPrintTransaction(true);
+                success = false;
+                index = end;
+                continue;
+            }
+            
+            // Envoyer les données et attendre le résultat (onPtrReceive)
+            long printStart = System.nanoTime();
+            JSONObject outcome = sendAndAwait(printer, groupBytes);
+            job.addTiming(PrintMetrics.PHASE_PRINT, printStart);
+            fillResults(results, included, outcome);
+            if (!"printed".equals(outcome.optString("status"))) {
+                // Erreur imprimante (papier, capot...) : les tickets suivants ne sont pas envoyés
+                fillResults(results, end, createSkippedResult());
+                success = false;
+                break;
+            }
+            // Conserver la connexion entre deux groupes du lot, et en fin de travail en mode keep-alive
+            printer.endPrintTransaction(end < count || (isKeepAlive(printer) && success));
+            index = end;
+        }
+        
+        if (printer.isConnected && isKeepAlive(printer)) {
+            // Programmer la déconnexion après inactivité AVANT de libérer le sémaphore
+            printer.scheduleIdleDisconnect(idleTimeoutMs);
+        } else if (printer.isConnected) {
+            printer.disconnect();
+        }
+        
+        completeJob(printer, job, results);
+    }
+    
+    /**
+     * Enregistre un logo en mémoire NV ; appelé par le thread de dispatch, sémaphore acquis
+     * Rien n'est envoyé si le manifeste indique que ce logo (même trame) est déjà sur cette imprimante
+     */
+    private void runLogoUpload(PooledPrinter printer, PrintJob job) {
+        LogoUpload logo = job.logo;
+        String printerId = getPrinterId(printer);
+        if (printerId == null) {
+            JSONObject error = PrinterResponses.createErrorResponse(PrinterResponses.ERR_NOT_FOUND, "uploadLogo");
+            PrinterResponses.mergeJson(error, getDiagnostics(printer));
+            failJob(printer, job, error);
+            return;
+        }
+        
+        RasterImage raster;
+        try {
+            raster = getRaster(logo.image, logo.dither, logo.widthDots);
+        } catch (IllegalArgumentException e) {
+            failJob(printer, job, createImageError(e));
+            return;
+        }
+        String hash = RasterCache.key(logo.image, logo.dither, logo.widthDots);
+        
+        JSONObject response = new JSONObject();
+        try {
+            response.put("key", logo.key);
+            response.put("printerId", printerId);
+            response.put("width", raster.width);
+            response.put("height", raster.height);
+            response.put("jobId", job.id);
+        } catch (JSONException e) {
+            // Ignore JSON error
+        }
+        
+        if (!logo.force && logoManifest.contains(printerId, logo.key, hash)) {
+            try {
+                response.put("status", "alreadyStored");
+            } catch (JSONException e) {
+                // Ignore JSON error
+            }
+            if (finishJob(printer, job, true)) {
+                job.callbackContext.success(response);
+            }
+            return;
+        }
+        
+        printer.cancelIdleDisconnect();
+        Context context = cordova.getActivity().getApplicationContext();
+        JSONObject error = openPrintSession(printer, context, "uploadLogo", job);
+        if (error == null) {
+            try {
+                printer.driver.clearCommandBuffer();
+            } catch (Exception e) {
+                // Continue anyway
+            }
+            try {
+                long beginStart = System.nanoTime();
+                printer.driver.beginTransaction();
+                printer.isTransactionActive = true;
+                job.addTiming(PrintMetrics.PHASE_BEGIN, beginStart);
+                long buildStart = System.nanoTime();
+                byte[] command = NvGraphics.defineCommand(logo.key, raster);
+                printer.driver.addCommand(command);
+                job.bytes = command.length;
+                job.addTiming(PrintMetrics.PHASE_BUILD, buildStart);
+                long printStart = System.nanoTime();
+                JSONObject outcome = sendAndAwait(printer, command.length);
+                job.addTiming(PrintMetrics.PHASE_PRINT, printStart);
+                if ("printed".equals(outcome.optString("status"))) {
+                    printer.endPrintTransaction(isKeepAlive(printer));
+                } else {
+                    error = outcome;
+                }
+            } catch (Epos2Exception e) {
+                error = PrinterResponses.createErrorResponse(e.getErrorStatus(), "uploadLogo");
+                printer.release();
+            }
+        }
+        
+        if (printer.isConnected && isKeepAlive(printer)) {
+            printer.scheduleIdleDisconnect(idleTimeoutMs);
+        } else if (printer.isConnected) {
+            printer.disconnect();
+        }
+        
+        if (error != null) {
+            PrinterResponses.mergeJson(error, getDiagnostics(printer));
+            failJob(printer, job, error);
+            return;
+        }
+        if (!isPersistentPrinterId(printer, printerId)) {
+            // Le numéro de série a pu devenir lisible pendant la connexion (permission USB accordée)
+            String connectedId = getPrinterId(printer);
+            if (connectedId != null) {
+                printerId = connectedId;
+            }
+        }
+        logoManifest.record(printerId, logo.key, hash, isPersistentPrinterId(printer, printerId));
+        if (finishJob(printer, job, true)) {
+            try {
+                response.put("status", "stored");
+                response.put("printerId", printerId);
+                response.put("timings", PrintMetrics.timingsToJson(job.timings));
+            } catch (JSONException e) {
+                // Ignore JSON error
+            }
+            job.callbackContext.success(response);
+        }
+    }
+
+    /**
+     * Envoie un ticket long (CompiledReceipt.stream) : une transaction, puis pour chaque partie le buffer est vidé,
+     * la partie rejouée et envoyée ; la suivante part dès le résultat de la précédente
+     * Le buffer du SDK ne contient jamais plus d'une partie, et l'impression commence dès la première.
+     * Le SDK n'accepte pas de nouveau sendData avant onPtrReceive : l'imprimante marque un bref arrêt entre deux
+     * parties. Pour le réduire, la partie suivante est compilée (pool de compilation) pendant l'impression de la
+     * partie en cours ; sous le verrou, seuls son attente éventuelle et son replay restent.
+     * @return le résultat ({ status: "printed", printJobId, chunks } ou l'erreur avec la partie en cause),
+     *         null si le ticket n'a pas été envoyé (erreur de compilation ou logo absent, placée dans results)
+     */
+    private JSONObject streamReceipt(PooledPrinter printer, PrintJob job, int index, JSONObject[] results) {
+        CompiledReceipt receipt = job.compiled[index];
+        String missingLogo = findMissingLogo(printer, receipt.logos);
+        if (missingLogo != null) {
+            results[index] = createLogoMissingError(missingLogo);
+            return null;
+        }
+        ReceiptStream stream = receipt.stream;
+        CompiledReceipt chunk = nextChunk(stream);
+        if (chunk.error != null) {
+            results[index] = chunk.error;
+            return null;
+        }
+
+        try {
+            printer.driver.clearCommandBuffer();
+        } catch (Exception e) {
+            // Continue anyway
+        }
+        long beginStart = System.nanoTime();
+        try {
+            printer.driver.beginTransaction();
+            printer.isTransactionActive = true;
+            job.addTiming(PrintMetrics.PHASE_BEGIN, beginStart);
+        } catch (Epos2Exception e) {
+            printer.release();
+            return PrinterResponses.createErrorResponse(e.getErrorStatus(), "beginTransaction");
+        }
+
+        JSONObject outcome;
+        int i = 0;
+        while (true) {
+            // Partie suivante compilée pendant l'envoi et l'impression de celle-ci
+            Future<CompiledReceipt> next = chunk.cut ? null : prefetchChunk(stream);
+            if (i > 0) {
+                try {
+                    printer.driver.clearCommandBuffer();
+                } catch (Exception e) {
+                    // Continue anyway
+                }
+            }
+            printer.commandBuilder.reset(printer.driver);
+            long buildStart = System.nanoTime();
+            try {
+                printer.commandBuilder.replay(chunk);
+            } catch (Epos2Exception e) {
+                // Les parties précédentes sont imprimées : le ticket est incomplet, sans coupe
+                cancelChunk(next);
+                printer.endPrintTransaction(true);
+                return addChunkInfo(PrinterResponses.createErrorResponse(e.getErrorStatus(), "addPrintCommands"), i);
+            }
+            job.addTiming(PrintMetrics.PHASE_BUILD, buildStart);
+            job.bytes += chunk.estimatedBytes;
+
+            long printStart = System.nanoTime();
+            outcome = sendAndAwait(printer, chunk.estimatedBytes, i, chunk.cut);
+            job.addTiming(PrintMetrics.PHASE_PRINT, printStart);
+            if (!"printed".equals(outcome.optString("status"))) {
+                cancelChunk(next);
+                return addChunkInfo(outcome, i);
+            }
+            if (chunk.cut) {
+                break;
+            }
+            chunk = awaitChunk(job, stream, next);
+            i++;
+            if (chunk.error != null) {
+                // Image illisible : les parties précédentes sont imprimées, le ticket est incomplet, sans coupe
+                printer.endPrintTransaction(true);
+                return addChunkInfo(chunk.error, i);
+            }
+        }
+        try {
+            outcome.put("chunks", i + 1);
+        } catch (JSONException e) {
+            // Ignore JSON error
+        }
+        return outcome;
+    }
+
+    /**
+     * Compile la partie suivante d'un ticket long sur le pool de compilation
+     * @return null si le pool est arrêté (plugin détruit) : le thread de dispatch la compilera lui-même
+     */
+    private Future<CompiledReceipt> prefetchChunk(final ReceiptStream stream) {
+        try {
+            return compileExecutor.submit(new Callable<CompiledReceipt>() {
+                @Override
+                public CompiledReceipt call() {
+                    return nextChunk(stream);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Attend la partie compilée pendant l'impression de la précédente (thread de dispatch)
+     */
+    private CompiledReceipt awaitChunk(PrintJob job, ReceiptStream stream, Future<CompiledReceipt> next) {
+        if (next == null) {
+            return nextChunk(stream);
+        }
+        long waitStart = System.nanoTime();
+        boolean ready = next.isDone();
+        try {
+            CompiledReceipt chunk = next.get();
+            if (!ready) {
+                job.addTiming(PrintMetrics.PHASE_COMPILE_WAIT, waitStart);
+            }
+            return chunk;
+        } catch (ExecutionException e) {
+            return CompiledReceipt.failed(createUnexpectedError(e, "compile"));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return CompiledReceipt.failed(createUnexpectedError(e, "compile"));
+        }
+    }
+
+    private static void cancelChunk(Future<CompiledReceipt> next) {
+        if (next != null) {
+            next.cancel(false);
+        }
+    }
+
+    /**
+     * Partie suivante d'un ticket long, ou la partie en échec (image illisible) ; jamais d'exception
+     */
+    private CompiledReceipt nextChunk(ReceiptStream stream) {
+        try {
+            return stream.next();
+        } catch (MarkupException e) {
+            return CompiledReceipt.failed(createMarkupError(e, "markup"));
+        } catch (IllegalArgumentException e) {
+            return CompiledReceipt.failed(createImageError(e));
+        } catch (RuntimeException e) {
+            return CompiledReceipt.failed(createUnexpectedError(e, "compile"));
+        }
+    }
+
+    private static JSONObject addChunkInfo(JSONObject response, int chunk) {
+        try {
+            response.put("chunk", chunk);
+        } catch (JSONException e) {
+            // Ignore JSON error
+        }
+        return response;
+    }
+
+    private JSONObject sendAndAwait(PooledPrinter printer, long bytes) {
+        return sendAndAwait(printer, bytes, -1, true);
+    }
+
+    /**
+     * Envoie le buffer de commandes (sendData) et attend onPtrReceive avec un timeout de sécurité
+     * En cas d'échec, le nettoyage est déjà effectué (connexion fermée) ; en cas de succès,
+     * la transaction reste à terminer par l'appelant (endPrintTransaction)
+     * Le timeout dépend des durées déjà observées sur cette imprimante pour des envois de même taille
+     * @param bytes taille estimée des commandes envoyées
+     * @param chunk partie envoyée d'un ticket long (à partir de 0), -1 pour un envoi unique
+     * @param lastChunk dernière partie du ticket : son nombre de parties est alors connu
+     * @return { status: "printed", printJobId } ou l'erreur (contexte sendData, callbackTimeout ou onPtrReceive)
+     */
+    private JSONObject sendAndAwait(PooledPrinter printer, long bytes, int chunk, boolean lastChunk) {
+        // IMPORTANT: enregistrer l'attente AVANT sendData
+        PooledPrinter.PendingReceive receive = new PooledPrinter.PendingReceive();
+        printer.pendingReceive = receive;
+        printer.lastSendDataTimestamp = System.currentTimeMillis();
+        try {
+            printer.driver.sendData(Printer.PARAM_DEFAULT);
+        } catch (Epos2Exception e) {
+            printer.pendingReceive = null;
+            printer.release();
+            return PrinterResponses.createErrorResponse(e.getErrorStatus(), "sendData");
+        }
+        PrintJob job = printer.currentJob;
+        JSONObject sent = new JSONObject();
+        try {
+            sent.put("bytes", job != null ? job.bytes : 0);
+            if (chunk >= 0) {
+                sent.put("chunk", chunk);
+                if (lastChunk) {
+                    sent.put("chunks", chunk + 1);
+                }
+            }
+        } catch (JSONException e) {
+            // Ignore JSON error
+        }
+        sendJobEvent(printer, job, "sent", sent);
+        
+        // Attendre onPtrReceive avec un timeout de sécurité (recommandation Epson)
+        long timeoutMs = callbackTimeout.timeoutMs(printer.callbackModel, bytes);
+        boolean received = false;
+        try {
+            received = receive.latch.await(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!received) {
+            printer.pendingReceive = null;
+            // Le callback a pu arriver entre la fin de l'attente et la remise à zéro
+            received = receive.latch.getCount() == 0;
+        }
+        
+        if (!received) {
+            long elapsed = System.currentTimeMillis() - printer.lastSendDataTimestamp;
+            printer.callbackModel.recordTimeout(bytes);
+            
+            // Forcer le nettoyage même sans callback
+            printer.forceCleanupAfterTimeout();
+            
+            JSONObject error = PrinterResponses.createErrorResponse(PrinterResponses.ERR_TIMEOUT, "callbackTimeout");
+            try {
+                error.put("message", "Timeout: le callback d'impression n'a pas été reçu après " + (timeoutMs / 1000.0) + " secondes. Nettoyage forcé effectué.");
+                error.put("elapsedMs", elapsed);
+                error.put("timeoutMs", timeoutMs);
+            } catch (JSONException ex) {
+                // Ignore JSON error
+            }
+            return error;
+        }
+        
+        if (receive.code != 0) {
+            JSONObject error = new JSONObject();
+            try {
+                error.put("code", receive.code);
+                error.put("context", "onPtrReceive");
+            } catch (JSONException e) {
+                // Ignore JSON error
+            }
+            printer.endPrintTransaction(false);
+            return error;
+        }
+        
+        printer.callbackModel.record(bytes, System.currentTimeMillis() - printer.lastSendDataTimestamp);
+        JSONObject printed = new JSONObject();
+        try {
+            printed.put("status", "printed");
+            printed.put("printJobId", receive.printJobId);
+        } catch (JSONException e) {
+            // Ignore JSON error
+        }
+        return printed;
+    }
+    
+    /**
+     * Vérifie qu'une connexion a une chance d'aboutir avant de la tenter
+     * Imprimante USB : elle doit être branchée ; sans permission USB, seule la première tentative est faite
+     * (le SDK peut demander la permission), les suivantes attendent la permission.
+     * Imprimante Bluetooth : la permission BLUETOOTH_CONNECT (Android 12 et plus) est demandée si elle manque.
+     * Puis le disjoncteur de la cible doit autoriser une tentative
+     * @return null si la connexion peut être tentée, sinon l'erreur (avec l'état du disjoncteur)
+     */
+    private JSONObject checkConnectable(PooledPrinter printer, String context) {
+        String target = printer.getTarget();
+        if ("USB".equals(PrinterPool.portOf(target)) && usbRegistry.canEnumerate()) {
+            UsbDevice device = usbRegistry.findEpsonDevice(target.substring(target.indexOf(':') + 1));
+            if (device == null) {
+                return createUnreachableError(printer, "printerNotFound", "Aucune imprimante Epson branchée en USB", context);
+            }
+            if (!usbRegistry.hasPermission(device) && !printer.breaker.isClosed()) {
+                return createUnreachableError(printer, "usbPermission", "Permission USB non accordée pour l'imprimante", context);
+            }
+        }
+        if ("BT".equals(PrinterPool.portOf(target))) {
+            String[] missing = BluetoothPermissions.missing(cordova.getActivity().getApplicationContext(), false);
+            if (missing.length > 0) {
+                // Demande affichée pour la tentative suivante : la connexion échouerait sans la permission
+                requestBluetoothPermissions();
+                return createUnreachableError(printer, "btPermission",
+                        "Permission Bluetooth non accordée : " + Arrays.toString(missing), context);
+            }
+        }
+        if (!printer.breaker.allowAttempt()) {
+            return createUnreachableError(printer, "circuitOpen",
+                    "Imprimante injoignable lors des dernières tentatives : prochain essai dans " + printer.breaker.retryInMs() + " ms", context);
+        }
+        return null;
+    }
+
+    private JSONObject createUnreachableError(PooledPrinter printer, String reason, String message, String context) {
+        JSONObject error = PrinterResponses.createErrorResponse(PrinterResponses.ERR_CONNECT, context);
+        try {
+            error.put("message", message);
+            error.put("reason", reason);
+            error.put("circuit", printer.breaker.toJson());
         } catch (JSONException e) {
             // Ignore JSON error
         }
@@ -136,684 +2117,792 @@ public class EpsonPrinterPlugin extends CordovaPlugin implements ReceiveListener
     }
 
     /**
-     * Callback de réception de l'imprimante (ReceiveListener)
-     * Appelé après que sendData ait terminé l'impression
-     * ATTENTION: Ce callback est appelé sur un thread DIFFÉRENT du thread appelant
-     * 
-     * IMPORTANT (recommandation support Epson): Le nettoyage doit TOUJOURS être effectué
-     * dans cet ordre, même en cas d'erreur :
-     * 1. endTransaction()
-     * 2. disconnect()
-     * 3. clearCommandBuffer()
+     * Prépare l'imprimante pour un travail : initialisation, connexion et vérification du statut
+     * @return null si l'imprimante est prête, sinon l'erreur à retourner
      */
-    @Override
-    public void onPtrReceive(Printer printer, int code, PrinterStatusInfo status, String printJobId) {
-        // Marquer que le callback a été reçu (pour éviter double nettoyage par le timeout)
-        if (!callbackReceived.compareAndSet(false, true)) {
-            // Le callback a déjà été traité (probablement par le timeout)
-            return;
+    private JSONObject openPrintSession(PooledPrinter printer, Context context, String jobContext, PrintJob job) {
+        try {
+            // Réinitialiser l'état si l'imprimante est dans un état incohérent
+            // (connexion perdue mais objet non nettoyé, ou transaction précédente non terminée)
+            // En mode session persistante, une connexion saine est conservée :
+            // connect() se contente alors de vérifier qu'elle est vivante via getStatus()
+            if (printer.driver != null) {
+                if (printer.isTransactionActive || !printer.isConnected) {
+                    printer.release();
+                }
+            }
+            
+            // Initialiser l'imprimante si nécessaire
+            if (!printer.initialize(driverFactory, context)) {
+                JSONObject error = new JSONObject();
+                try {
+                    error.put("code", PrinterResponses.ERR_FAILURE);
+                    error.put("message", "Impossible d'initialiser l'imprimante");
+                    error.put("context", jobContext);
+                } catch (JSONException e) {
+                    // Ignore JSON error
+                }
+                return error;
+            }
+            
+            // Connecter l'imprimante (après un changement de cible, jamais sur la session de l'ancienne)
+            printer.closeRetargetedSession();
+            JSONObject connecting = new JSONObject();
+            try {
+                connecting.put("sessionReused", printer.isConnected);
+            } catch (JSONException e) {
+                // Ignore JSON error
+            }
+            sendJobEvent(printer, job, "connecting", connecting);
+            if (!printer.isConnected) {
+                // Imprimante absente ou injoignable depuis plusieurs tentatives : échouer sans attendre le timeout de connexion
+                JSONObject unreachable = checkConnectable(printer, jobContext);
+                if (unreachable != null) {
+                    return unreachable;
+                }
+            }
+            long connectStart = System.nanoTime();
+            boolean connected = printer.connect(discovery.resolveTarget(printer.getTarget()),
+                    (int) connectTimeout.timeoutMs(printer.connectModel, 0));
+            job.addTiming(PrintMetrics.PHASE_CONNECT, connectStart);
+            if (!connected) {
+                printer.release();
+                if (PrinterPool.isNetworkTarget(printer.getTarget())) {
+                    // L'adresse de l'imprimante a pu changer (DHCP) : rafraîchir la recherche pour la prochaine impression
+                    discovery.refreshLater();
+                }
+                return PrinterResponses.createErrorResponse(PrinterResponses.ERR_CONNECT, jobContext);
+            }
+            
+            // Vérifier le statut de l'imprimante AVANT la transaction
+            try {
+                long statusStart = System.nanoTime();
+                PrinterDriver.Status status = printer.driver.getStatus();
+                job.addTiming(PrintMetrics.PHASE_STATUS, statusStart);
+                printer.updateStatusCache(status, "connect");
+                boolean isOnline = status != null && status.connection == Printer.TRUE && status.online == Printer.TRUE;
+                
+                if (!isOnline) {
+                    // NOTE (Support Epson): Ne PAS utiliser forceRecover() dans le flux normal.
+                    // forceRecover() est réservé aux situations de récupération après erreur persistante.
+                    // En cas d'imprimante hors ligne, retourner une erreur claire à l'utilisateur.
+                    JSONObject error = new JSONObject();
+                    try {
+                        error.put("code", -1);
+                        error.put("message", "Imprimante hors ligne : vérifiez le papier, le capot et l'état de l'imprimante");
+                        error.put("context", jobContext);
+                        error.put("printerStatus", status != null ? "connection=" + status.connection + ", online=" + status.online : "null");
+                    } catch (JSONException ex) {
+                        // Ignore JSON error
+                    }
+                    printer.release();
+                    return error;
+                }
+            } catch (Exception e) {
+                // Continuer malgré l'erreur - on essaiera d'imprimer quand même
+            }
+            
+            // Session persistante : le moniteur du SDK tient le cache de statut à jour
+            if (isKeepAlive(printer)) {
+                printer.startStatusMonitor();
+            }
+            return null;
+            
+        } catch (Exception e) {
+            printer.release();
+            return createUnexpectedError(e, jobContext);
         }
-        
-        // Annuler le timeout de sécurité car le callback est arrivé
-        if (callbackTimeoutFuture != null) {
-            callbackTimeoutFuture.cancel(false);
-            callbackTimeoutFuture = null;
+    }
+    
+    /**
+     * Détermine la fin (exclue) du groupe de tickets envoyé en un seul sendData
+     * Un ticket plus gros que la limite forme un groupe à lui seul ; un ticket découpé (envoi en continu) clôt le groupe
+     */
+    private int nextGroupEnd(PrintJob job, int start) {
+        List<Receipt> receipts = job.receipts;
+        int bytes = estimateReceiptBytes(receipts.get(start));
+        int end = start + 1;
+        while (end < receipts.size()) {
+            if (job.compiled[end].stream != null) {
+                break;
+            }
+            bytes += estimateReceiptBytes(receipts.get(end));
+            if (bytes > MAX_SEND_DATA_BYTES) {
+                break;
+            }
+            end++;
         }
-        
-        // Sauvegarder les références localement car elles peuvent être modifiées par un autre thread
-        CallbackContext callback = pendingCallbackContext;
-        pendingCallbackContext = null;
-        boolean shouldRelease = shouldReleaseSemaphoreInCallback;
-        shouldReleaseSemaphoreInCallback = false;
-        
-        // ============================================================
-        // NETTOYAGE OBLIGATOIRE (même en cas d'erreur) - Ordre Epson SDK
-        // ============================================================
-        
-        // 1. Fin de la transaction - DOIT être fait EN PREMIER
-        try {
-            if (isTransactionActive && printer != null) {
-                printer.endTransaction();
+        return end;
+    }
+    
+    /**
+     * Estimation de la taille des commandes d'un ticket dans le buffer du SDK
+     */
+    private int estimateReceiptBytes(Receipt receipt) {
+        return receipt.estimatedLength() + RECEIPT_COMMAND_OVERHEAD_BYTES;
+    }
+    
+    /**
+     * Rejoue dans le buffer les tickets compilés [start, end[ du travail
+     * Si un ticket échoue, le buffer est vidé et le groupe reconstruit sans lui,
+     * afin qu'un ticket invalide ne laisse pas de commandes partielles dans le buffer
+     * @return les index des tickets effectivement ajoutés
+     */
+    private List<Integer> addGroupCommands(PooledPrinter printer, PrintJob job, int start, int end, JSONObject[] results) {
+        List<Integer> included = new ArrayList<Integer>(end - start);
+        boolean rebuild = true;
+        while (rebuild) {
+            rebuild = false;
+            included.clear();
+            for (int i = start; i < end; i++) {
+                if (results[i] != null) {
+                    continue;
+                }
+                CompiledReceipt receipt = job.compiled[i];
+                if (receipt.error != null) {
+                    // Erreur de balisage ou d'image détectée à la compilation : le buffer n'est pas modifié
+                    results[i] = receipt.error;
+                    continue;
+                }
+                String missingLogo = findMissingLogo(printer, receipt.logos);
+                if (missingLogo != null) {
+                    results[i] = createLogoMissingError(missingLogo);
+                    continue;
+                }
+                try {
+                    printer.commandBuilder.replay(receipt);
+                    included.add(i);
+                } catch (Epos2Exception e) {
+                    results[i] = PrinterResponses.createErrorResponse(e.getErrorStatus(), "addPrintCommands");
+                    try {
+                        printer.driver.clearCommandBuffer();
+                    } catch (Exception ex) {
+                        // Continue anyway
+                    }
+                    printer.commandBuilder.reset(printer.driver);
+                    rebuild = true;
+                    break;
+                }
             }
-        } catch (Epos2Exception e) {
-            // Continue cleanup
-        } finally {
-            isTransactionActive = false;
+        }
+        return included;
+    }
+    
+    /**
+     * Vérifie que les logos du ticket sont enregistrés sur l'imprimante branchée (manifeste local)
+     * @return la première clé absente, null si tous les logos sont disponibles
+     */
+    private String findMissingLogo(PooledPrinter printer, List<String> keys) {
+        String printerId = null;
+        for (String key : keys) {
+            if (printerId == null) {
+                printerId = getPrinterId(printer);
+                if (printerId == null) {
+                    return key;
+                }
+            }
+            if (!logoManifest.contains(printerId, key, null)) {
+                return key;
+            }
+        }
+        return null;
+    }
+
+    private JSONObject createLogoMissingError(String key) {
+        JSONObject error = new JSONObject();
+        try {
+            error.put("code", -1);
+            error.put("message", "Logo non enregistré sur cette imprimante : appelez uploadLogo avec la clé " + key);
+            error.put("context", "logoMissing");
+            error.put("key", key);
+        } catch (JSONException e) {
+            // Ignore JSON error
+        }
+        return error;
+    }
+
+    private RasterImage getRaster(String data, int dither, int widthDots) {
+        String key = RasterCache.key(data, dither, widthDots);
+        RasterImage raster = rasterCache.get(key);
+        if (raster != null) {
+            return raster;
         }
         
-        // 2. Déconnexion
+        // Données base64, éventuellement sous forme d'URL data:image/png;base64,...
+        int comma = data.startsWith("data:") ? data.indexOf(',') : -1;
+        byte[] bytes;
         try {
-            if (printer != null && isConnected) {
-                printer.disconnect();
+            bytes = Base64.decode(data.substring(comma + 1).trim(), Base64.DEFAULT);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("base64 invalide");
+        }
+        raster = rasterize(bytes, dither, widthDots);
+        rasterCache.put(key, raster);
+        return raster;
+    }
+
+    /**
+     * Trame d'une image transmise en binaire (printBinary) : fichier PNG ou JPEG, sans base64
+     */
+    private RasterImage getRaster(byte[] data, int dither, int widthDots) {
+        String key = RasterCache.key(data, dither, widthDots);
+        RasterImage raster = rasterCache.get(key);
+        if (raster != null) {
+            return raster;
+        }
+        raster = rasterize(data, dither, widthDots);
+        rasterCache.put(key, raster);
+        return raster;
+    }
+
+    /**
+     * Décode l'image à une résolution proche de la trame : dimensions lues d'abord (inJustDecodeBounds),
+     * puis décodage sous-échantillonné (une photo de 12 Mpx décodée en entier occuperait 48 Mo)
+     */
+    private RasterImage rasterize(byte[] bytes, int dither, int widthDots) {
+        Bitmap bitmap = null;
+        if (bytes != null) {
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inJustDecodeBounds = true;
+            BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options);
+            if (options.outWidth > 0 && options.outHeight > 0) {
+                options.inJustDecodeBounds = false;
+                options.inSampleSize = ImageRasterizer.sampleSize(options.outWidth, widthDots);
+                bitmap = BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options);
             }
-        } catch (Epos2Exception e) {
-            // Continue cleanup
-        } finally {
-            isConnected = false;
         }
+        if (bitmap == null) {
+            throw new IllegalArgumentException("format non reconnu (PNG ou JPEG attendu)");
+        }
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        int[] pixels = new int[width * height];
+        bitmap.getPixels(pixels, 0, width, 0, 0, width, height);
+        bitmap.recycle();
         
-        // 3. Vider le buffer de commandes - EN DERNIER (nettoie l'état interne du SDK)
+        return ImageRasterizer.rasterize(pixels, width, height, widthDots, dither, rasterExecutor, RASTER_THREADS);
+    }
+
+    /**
+     * Attribue un résultat aux tickets sans résultat à partir de l'index "from"
+     */
+    private void fillResults(JSONObject[] results, int from, JSONObject result) {
+        for (int i = from; i < results.length; i++) {
+            if (results[i] == null) {
+                results[i] = result;
+            }
+        }
+    }
+    
+    private void fillResults(JSONObject[] results, List<Integer> indexes, JSONObject result) {
+        for (int i : indexes) {
+            results[i] = result;
+        }
+    }
+    
+    private JSONObject createSkippedResult() {
+        JSONObject skipped = new JSONObject();
+        try {
+            skipped.put("status", "skipped");
+            skipped.put("message", "Ticket non envoyé suite à une erreur sur un ticket précédent");
+        } catch (JSONException e) {
+            // Ignore JSON error
+        }
+        return skipped;
+    }
+    
+    private JSONObject createUnexpectedError(Exception e, String context) {
+        JSONObject error = new JSONObject();
         try {
-            if (printer != null) {
-                printer.clearCommandBuffer();
+            error.put("code", PrinterResponses.ERR_FAILURE);
+            error.put("message", "Erreur inattendue: " + e.getMessage());
+            error.put("context", context);
+        } catch (JSONException ex) {
+            // Ignore JSON error
+        }
+        return error;
+    }
+    
+    /**
+     * Notifie le résultat d'un travail au JavaScript
+     * Ticket unique : même format qu'avant ; lot : statut de chaque ticket dans "tickets"
+     */
+    private void completeJob(PooledPrinter printer, PrintJob job, JSONObject[] results) {
+        boolean allPrinted = true;
+        for (JSONObject result : results) {
+            if (!"printed".equals(result.optString("status"))) {
+                allPrinted = false;
+                if (!"skipped".equals(result.optString("status"))) {
+                    recordError(result);
+                }
             }
-        } catch (Exception e) {
-            // Continue cleanup
         }
-        
-        // ============================================================
-        // FIN DU NETTOYAGE
-        // ============================================================
-        
-        // Libérer le sémaphore si nécessaire
-        // Le Semaphore peut être libéré par n'importe quel thread (contrairement à ReentrantLock)
-        if (shouldRelease) {
-            printerSemaphore.release();
+        if (!finishJob(printer, job, allPrinted)) {
+            return;
         }
+        boolean spooled = updateSpool(job, results);
         
-        // Notifier le résultat au JavaScript
-        if (callback != null) {
-            if (code == 0) {
+        if (!job.batch) {
+            JSONObject result = results[0];
+            if ("printed".equals(result.optString("status"))) {
                 JSONObject success = new JSONObject();
                 try {
                     success.put("status", "printed");
                     success.put("message", "Impression réussie");
-                    success.put("printJobId", printJobId);
+                    success.put("printJobId", result.opt("printJobId"));
+                    success.put("jobId", job.id);
+                    success.put("timings", PrintMetrics.timingsToJson(job.timings));
                 } catch (JSONException e) {
                     // Ignore JSON error
                 }
-                callback.success(success);
+                job.callbackContext.success(success);
             } else {
                 JSONObject error = new JSONObject();
+                PrinterResponses.mergeJson(error, result);
                 try {
-                    error.put("code", code);
-                    error.put("context", "onPtrReceive");
+                    error.put("jobId", job.id);
+                    if (spooled) {
+                        error.put("spooled", true);
+                    }
+                    if (!"onPtrReceive".equals(result.optString("context"))) {
+                        PrinterResponses.mergeJson(error, getDiagnostics(printer));
+                    }
                 } catch (JSONException e) {
                     // Ignore JSON error
                 }
-                callback.error(error);
+                job.callbackContext.error(error);
             }
+            return;
         }
-    }
-
-
-    @Override
-    public boolean execute(String action, JSONArray args, CallbackContext callbackContext) throws JSONException {
-        if (action.equals("printText")) {
-            String toPrint = args.getJSONObject(0).getString("text");
-            this.printText(callbackContext, toPrint);
-            return true;
+        
+        int printed = 0;
+        JSONObject firstFailure = null;
+        JSONArray tickets = new JSONArray();
+        try {
+            for (int i = 0; i < results.length; i++) {
+                JSONObject ticket = new JSONObject();
+                ticket.put("index", i);
+                if ("printed".equals(results[i].optString("status"))) {
+                    printed++;
+                } else if (!"skipped".equals(results[i].optString("status"))) {
+                    ticket.put("status", "failed");
+                    if (firstFailure == null) {
+                        firstFailure = results[i];
+                    }
+                }
+                PrinterResponses.mergeJson(ticket, results[i]);
+                tickets.put(ticket);
+            }
+        } catch (JSONException e) {
+            // Ignore JSON error
         }
-        if (action.equals("isPrinterAvailable")) {
-            this.isPrinterAvailable(callbackContext);
-            return true;
+        
+        JSONObject response = new JSONObject();
+        try {
+            response.put("jobId", job.id);
+            response.put("printedCount", printed);
+            response.put("failedCount", results.length - printed);
+            response.put("tickets", tickets);
+        } catch (JSONException e) {
+            // Ignore JSON error
+        }
+        
+        if (printed == results.length) {
+            try {
+                response.put("status", "printed");
+                response.put("message", "Impression réussie");
+                response.put("timings", PrintMetrics.timingsToJson(job.timings));
+            } catch (JSONException e) {
+                // Ignore JSON error
+            }
+            job.callbackContext.success(response);
+        } else {
+            try {
+                response.put("status", printed > 0 ? "partial" : "failed");
+                response.put("code", firstFailure != null ? firstFailure.optInt("code", PrinterResponses.ERR_FAILURE) : PrinterResponses.ERR_FAILURE);
+                response.put("message", printed > 0
+                        ? "Impression partielle : certains tickets n'ont pas été imprimés"
+                        : "Aucun ticket n'a été imprimé");
+                response.put("context", "printBatch");
+                if (spooled) {
+                    response.put("spooled", true);
+                }
+                PrinterResponses.mergeJson(response, getDiagnostics(printer));
+            } catch (JSONException e) {
+                // Ignore JSON error
+            }
+            job.callbackContext.error(response);
         }
-        return false;
     }
-
+    
     /**
-     * Initialise l'imprimante si nécessaire
+     * Met à jour le spool à la fin d'une impression : l'entrée est retirée si tout est imprimé ou si aucun
+     * ticket ne peut réussir à nouveau (balisage invalide, logo absent), sinon elle est conservée
+     * avec les seuls tickets restants pour le prochain rejeu
+     * Un ticket peut-être imprimé (voir isUncertain) rend l'entrée incertaine : elle n'est plus rejouée
+     * automatiquement, seulement par replaySpool
+     * @return true si le travail reste dans le spool
      */
-    private boolean initializePrinter(Context context) {
-        if (mPrinter != null) {
-            return true;
+    private boolean updateSpool(PrintJob job, JSONObject[] results) {
+        if (job.spoolId == 0 || spool == null) {
+            return false;
         }
-        
-        try {
-            mPrinter = new Printer(Printer.TM_T88, Printer.MODEL_ANK, context);
-            // Enregistrer le listener AVANT toute opération
-            mPrinter.setReceiveEventListener(this);
-            return true;
-        } catch (Epos2Exception e) {
-            mPrinter = null;
+        List<Receipt> remaining = new ArrayList<Receipt>();
+        boolean uncertain = false;
+        for (int i = 0; i < results.length; i++) {
+            String status = results[i].optString("status");
+            if ("printed".equals(status)) {
+                continue;
+            }
+            if ("skipped".equals(status) || isRetriable(results[i])) {
+                remaining.add(job.receipts.get(i));
+                uncertain |= isUncertain(results[i]);
+            }
+        }
+        if (remaining.isEmpty()) {
+            spool.complete(job.spoolId);
             return false;
         }
+        spool.retain(job.spoolId, remaining.size() < job.receipts.size() ? remaining : null, uncertain);
+        return true;
     }
-    
+
     /**
-     * Connecte l'imprimante
+     * Erreur qui peut disparaître d'elle-même (imprimante absente, capot ouvert, papier...) ;
+     * une erreur du ticket lui-même se reproduirait à chaque rejeu
      */
-    private boolean connectPrinter() {
-        if (mPrinter == null) {
-            return false;
+    private static boolean isRetriable(JSONObject error) {
+        return error.optInt("code", PrinterResponses.ERR_FAILURE) != PrinterResponses.ERR_PARAM
+                && !"logoMissing".equals(error.optString("context"));
+    }
+
+    /**
+     * Échec après un sendData accepté sans réponse de l'imprimante (callbackTimeout), ou après une partie
+     * déjà imprimée d'un ticket envoyé en continu : le ticket a pu sortir, un rejeu automatique ferait un doublon
+     */
+    private static boolean isUncertain(JSONObject error) {
+        return "callbackTimeout".equals(error.optString("context")) || error.optInt("chunk", 0) > 0;
+    }
+
+    /**
+     * Remet en file les travaux spoolés qui ne sont pas en cours, sur l'imprimante qui les avait reçus
+     * Le résultat n'est plus attendu par le JavaScript : il est conservé dans le spool (getSpool)
+     * @param includeUncertain true pour replaySpool (demande explicite) : les travaux peut-être imprimés
+     *                         sont aussi rejoués ; false au démarrage et au branchement de l'imprimante
+     * @return le nombre de travaux remis en file
+     */
+    private int replaySpool(boolean includeUncertain) {
+        PrintSpool current = spool;
+        if (current == null) {
+            return 0;
         }
-        
-        if (isConnected) {
-            // Vérifier que la connexion est toujours valide
-            try {
-                PrinterStatusInfo status = mPrinter.getStatus();
-                if (status != null && status.getConnection() == Printer.TRUE) {
-                    return true;
-                }
-                // La connexion semble perdue, réinitialiser le flag
-                isConnected = false;
-            } catch (Exception e) {
-                isConnected = false;
+        int replayed = 0;
+        for (PrintSpool.Entry entry : current.takeReplayable(spoolMaxAgeMs, includeUncertain)) {
+            // Imprimante nommée pas encore déclarée (configurePrinter après un redémarrage) : rejoué à sa déclaration
+            PooledPrinter printer = printerPool.resolve(entry.printerName);
+            if (printer == null) {
+                current.release(entry.id);
+                continue;
             }
-        }
-        
-        // Tentative de connexion avec retry
-        int maxRetries = 2;
-        for (int attempt = 1; attempt <= maxRetries; attempt++) {
-            try {
-                // Timeout de connexion augmenté pour plus de stabilité
-                mPrinter.connect("USB:", 15000);
-                isConnected = true;
-                return true;
-            } catch (Epos2Exception e) {
-                int errorCode = e.getErrorStatus();
-                
-                // Si déjà connecté, considérer comme OK
-                if (errorCode == ERR_ALREADY_OPENED) {
-                    isConnected = true;
-                    return true;
-                }
-                
-                // Si c'est une erreur récupérable et qu'on a des retries restants
-                if (attempt < maxRetries && (errorCode == ERR_CONNECT || errorCode == ERR_TIMEOUT)) {
-                    try {
-                        // Petit délai avant de réessayer
-                        Thread.sleep(500);
-                    } catch (InterruptedException ie) {
-                        Thread.currentThread().interrupt();
-                    }
-                }
+            startDispatch(printer);
+            PrintJob job = new PrintJob(entry.jobId, entry.receipts, entry.batch, null, entry.priority, 0, false,
+                    new SpoolReplayCallback(current, entry.jobId));
+            job.spoolId = entry.id;
+            startCompilation(job);
+            if (!printer.jobQueue.offer(job)) {
+                cancelCompilation(job);
+                current.release(entry.id);
+                continue;
             }
+            replayed++;
         }
-        return false;
+        return replayed;
     }
-    
+
     /**
-     * Déconnecte l'imprimante proprement
+     * Callback d'un travail rejoué : le résultat est enregistré dans le spool au lieu d'être envoyé au JavaScript
      */
-    private void disconnectPrinter() {
-        if (mPrinter == null || !isConnected) {
-            return;
+    private class SpoolReplayCallback extends CallbackContext {
+        private final PrintSpool target;
+        private final String jobId;
+
+        SpoolReplayCallback(PrintSpool target, String jobId) {
+            super("spool-" + jobId, webView);
+            this.target = target;
+            this.jobId = jobId;
         }
-        
-        try {
-            mPrinter.disconnect();
-            isConnected = false;
-        } catch (Exception e) {
-            isConnected = false;
+
+        @Override
+        public void success(JSONObject message) {
+            target.recordReplay(jobId, true, message);
+        }
+
+        @Override
+        public void error(JSONObject message) {
+            target.recordReplay(jobId, false, message);
+        }
+
+        @Override
+        public void sendPluginResult(PluginResult pluginResult) {
+            // Aucun destinataire JavaScript
         }
     }
-    
+
     /**
-     * Libère complètement les ressources de l'imprimante
+     * Configure le calcul des timeouts
+     * Options : { callback: { adaptive, defaultMs, floorMs, ceilingMs }, connect: { ... } }
      */
-    private void releasePrinter() {
-        if (mPrinter == null) {
+    private void configureTimeouts(CallbackContext callbackContext, JSONObject options) {
+        JSONObject callback = options.optJSONObject("callback");
+        JSONObject connect = options.optJSONObject("connect");
+        // Limites du SDK pour le timeout de connexion : de 1 à 300 s
+        if (connect != null && (connect.optLong("floorMs", 1000) < 1000 || connect.optLong("ceilingMs", 300000) > 300000)) {
+            callbackContext.error(PrinterResponses.createErrorResponse(PrinterResponses.ERR_PARAM, "configureTimeouts"));
             return;
         }
-        
-        try {
-            mPrinter.clearCommandBuffer();
-        } catch (Exception e) {
-            // Ignore error
-        }
-        
-        if (isTransactionActive) {
-            try {
-                mPrinter.endTransaction();
-                isTransactionActive = false;
-            } catch (Exception e) {
-                // Ignore error
-            }
+        if ((callback != null && !callbackTimeout.configure(callback)) || (connect != null && !connectTimeout.configure(connect))) {
+            callbackContext.error(PrinterResponses.createErrorResponse(PrinterResponses.ERR_PARAM, "configureTimeouts"));
+            return;
         }
-        
-        disconnectPrinter();
-        
+        callbackContext.success(timeoutsJson());
+    }
+
+    /**
+     * Réglages des timeouts et, pour chaque imprimante, valeurs courantes et mesures par taille d'envoi
+     */
+    private JSONObject timeoutsJson() {
+        JSONObject json = new JSONObject();
         try {
-            mPrinter.setReceiveEventListener(null);
-        } catch (Exception e) {
-            // Ignore error
+            json.put("callback", callbackTimeout.toJson());
+            json.put("connect", connectTimeout.toJson());
+            JSONObject printers = new JSONObject();
+            for (PooledPrinter printer : printerPool.all()) {
+                JSONObject item = new JSONObject();
+                item.put("connectMs", connectTimeout.timeoutMs(printer.connectModel, 0));
+                item.put("connectSamples", printer.connectModel.toJson());
+                item.put("callbackMs", callbackTimeout.timeoutMs(printer.callbackModel, 0));
+                item.put("callbackSamples", printer.callbackModel.toJson());
+                printers.put(printer.name, item);
+            }
+            json.put("printers", printers);
+        } catch (JSONException e) {
+            // Ignore JSON error
         }
-        
-        mPrinter = null;
+        return json;
     }
-    
+
     /**
-     * Nettoyage forcé après timeout du callback (recommandation support Epson)
-     * Appelé quand onPtrReceive n'est pas reçu dans le délai imparti
-     * DOIT effectuer le même nettoyage que onPtrReceive pour éviter ERR_CONNECT
+     * Configure le spool persistant
+     * Options : { enabled: boolean (valeur par défaut de l'option durable), maxAgeMs: number }
      */
-    private void forceCleanupAfterTimeout() {
-        Printer printer = mPrinter;
-        
-        // 1. Fin de la transaction
-        try {
-            if (isTransactionActive && printer != null) {
-                printer.endTransaction();
+    private void configureSpool(CallbackContext callbackContext, JSONObject options) {
+        if (options.has("maxAgeMs")) {
+            long maxAgeMs = options.optLong("maxAgeMs", PrintSpool.DEFAULT_MAX_AGE_MS);
+            if (maxAgeMs <= 0) {
+                callbackContext.error(PrinterResponses.createErrorResponse(PrinterResponses.ERR_PARAM, "configureSpool"));
+                return;
             }
-        } catch (Exception e) {
-            // Continue cleanup
-        } finally {
-            isTransactionActive = false;
+            spoolMaxAgeMs = maxAgeMs;
         }
-        
-        // 2. Déconnexion
-        try {
-            if (printer != null && isConnected) {
-                printer.disconnect();
-            }
-        } catch (Exception e) {
-            // Continue cleanup
-        } finally {
-            isConnected = false;
+        if (options.has("enabled")) {
+            spoolEnabled = options.optBoolean("enabled", false);
         }
-        
-        // 3. Vider le buffer de commandes (nettoie l'état interne du SDK)
+        callbackContext.success(spoolJson());
+    }
+
+    private JSONObject spoolJson() {
+        JSONObject json = spool != null ? spool.toJson() : new JSONObject();
         try {
-            if (printer != null) {
-                printer.clearCommandBuffer();
-            }
-        } catch (Exception e) {
-            // Continue cleanup
+            json.put("enabled", spoolEnabled);
+            json.put("maxAgeMs", spoolMaxAgeMs);
+            json.put("maxEntries", PrintSpool.MAX_ENTRIES);
+        } catch (JSONException e) {
+            // Ignore JSON error
         }
-        
-        // 4. forceRecover() - UNIQUEMENT en cas de timeout (recommandation Support Epson)
-        // forceRecover() est réservé aux situations de récupération après erreur persistante
-        // Le timeout du callback est exactement ce type de situation
-        try {
-            if (printer != null) {
-                printer.forceRecover(3000);
-            }
-        } catch (Exception e) {
-            // Continue cleanup
+        return json;
+    }
+
+    /**
+     * Abonne le JavaScript aux changements de statut (papier, capot, en ligne, connexion)
+     * Le callback est conservé : un premier message donne le statut courant, puis un message par changement
+     * Options : { printer } (imprimante par défaut si absent)
+     */
+    private void subscribeStatus(CallbackContext callbackContext, JSONObject options) {
+        PooledPrinter printer = resolvePrinter(options, callbackContext);
+        if (printer == null) {
+            return;
         }
+        printer.statusSubscribers.add(callbackContext);
+        PluginResult result = new PluginResult(PluginResult.Status.OK, printer.statusJson());
+        result.setKeepCallback(true);
+        callbackContext.sendPluginResult(result);
         
-        // Libérer le sémaphore si nécessaire
-        if (shouldReleaseSemaphoreInCallback) {
-            shouldReleaseSemaphoreInCallback = false;
-            printerSemaphore.release();
+        // Statut inconnu ou périmé : le rafraîchir, le résultat sera poussé aux abonnés
+        if (!printer.statusCache.isFresh(printer.isMonitoring ? Long.MAX_VALUE : STATUS_CACHE_TTL_MS) && printer.currentJob == null) {
+            startStatusProbe(printer, null);
         }
-        
-        // Nettoyer les références
-        pendingCallbackContext = null;
     }
-    
+
     /**
-     * Collecte les informations de diagnostic USB
+     * Termine tous les abonnements aux changements de statut, toutes imprimantes confondues
      */
-    private JSONObject getUsbDiagnostics(Context context) {
-        JSONObject diag = new JSONObject();
-        UsbManager usbManager = (UsbManager) context.getSystemService(Context.USB_SERVICE);
-        
-        boolean epsonFound = false;
-        boolean hasPermission = false;
-        String usbDiagnostic = "";
-        int usbDeviceCount = 0;
-        int epsonProductId = 0;
-        String epsonDeviceName = "";
-        boolean isKnownTmT88 = false;
-        
-        if (usbManager == null) {
-            usbDiagnostic = "UsbManager non disponible";
-        } else if (usbManager.getDeviceList() == null) {
-            usbDiagnostic = "Liste USB null";
-        } else {
-            usbDeviceCount = usbManager.getDeviceList().size();
-            for (UsbDevice device : usbManager.getDeviceList().values()) {
-                usbDiagnostic += String.format("[VID:%04X PID:%04X] ", device.getVendorId(), device.getProductId());
-                if (device.getVendorId() == EPSON_VENDOR_ID) {
-                    epsonFound = true;
-                    epsonProductId = device.getProductId();
-                    epsonDeviceName = device.getDeviceName();
-                    hasPermission = usbManager.hasPermission(device);
-                    for (int knownPid : KNOWN_TM_T88_PIDS) {
-                        if (epsonProductId == knownPid) {
-                            isKnownTmT88 = true;
-                            break;
-                        }
-                    }
-                }
-            }
+    private void unsubscribeStatus(CallbackContext callbackContext) {
+        List<CallbackContext> subscribers = new ArrayList<CallbackContext>();
+        for (PooledPrinter printer : printerPool.all()) {
+            subscribers.addAll(printer.statusSubscribers);
+            printer.statusSubscribers.clear();
         }
-        
-        if (usbDiagnostic.isEmpty()) {
-            usbDiagnostic = "Aucun périphérique USB détecté";
+        for (CallbackContext subscriber : subscribers) {
+            // Résultat final sans données : libère le callback côté JavaScript
+            subscriber.sendPluginResult(new PluginResult(PluginResult.Status.NO_RESULT));
         }
-        
+        JSONObject response = new JSONObject();
         try {
-            diag.put("epsonDetected", epsonFound);
-            diag.put("usbPermission", hasPermission);
-            diag.put("usbDevices", usbDiagnostic);
-            diag.put("usbDeviceCount", usbDeviceCount);
-            diag.put("epsonProductId", String.format("0x%04X", epsonProductId));
-            diag.put("epsonDeviceName", epsonDeviceName);
-            diag.put("isKnownTmT88", isKnownTmT88);
+            response.put("unsubscribed", subscribers.size());
         } catch (JSONException e) {
             // Ignore JSON error
         }
-        
-        return diag;
+        callbackContext.success(response);
     }
 
-    private void printText(final CallbackContext callbackContext, final String textToPrint) {
-        // Exécuter sur un thread séparé car connect/disconnect ne doivent pas être sur le main thread
-        cordova.getThreadPool().execute(new Runnable() {
-            @Override
-            public void run() {
-                printTextInternal(callbackContext, textToPrint);
-            }
-        });
-    }
-    
-    private void printTextInternal(CallbackContext callbackContext, String textToPrint) {
-        Context context = cordova.getActivity().getApplicationContext();
-        JSONObject diagnostics = getUsbDiagnostics(context);
-        
-        // Essayer d'acquérir le sémaphore avec timeout
-        boolean semaphoreAcquired = false;
-        try {
-            semaphoreAcquired = printerSemaphore.tryAcquire(LOCK_TIMEOUT_SECONDS, TimeUnit.SECONDS);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
+    /**
+     * Disponibilité de l'imprimante : répond depuis le cache de statut s'il est à jour,
+     * sinon lance une sonde partagée par tous les appels concurrents sur cette imprimante
+     * Options : { printer } (imprimante par défaut si absent)
+     */
+    private void isPrinterAvailable(final CallbackContext callbackContext, JSONObject options) {
+        PooledPrinter printer = resolvePrinter(options, callbackContext);
+        if (printer == null) {
+            return;
+        }
+        // Session surveillée par le moniteur du SDK : le cache suit chaque changement de statut
+        if (printer.statusCache.isFresh(printer.isMonitoring ? Long.MAX_VALUE : STATUS_CACHE_TTL_MS)) {
+            sendCachedAvailability(printer, callbackContext);
+            return;
         }
         
-        if (!semaphoreAcquired) {
-            JSONObject error = new JSONObject();
-            try {
-                error.put("code", ERR_PROCESSING);
-                error.put("message", "Une impression est déjà en cours. Veuillez patienter.");
-                error.put("context", "printText");
-                mergeJson(error, diagnostics);
-            } catch (JSONException e) {
-                // Ignore JSON error
-            }
-            callbackContext.error(error);
+        // Impression en cours : répondre immédiatement sans attendre l'imprimante
+        if (printer.currentJob != null) {
+            callbackContext.success(createBusyResponse(printer));
             return;
         }
         
+        startStatusProbe(printer, callbackContext);
+    }
+
+    /**
+     * Répond à isPrinterAvailable à partir du statut en cache, sans accès à l'imprimante
+     */
+    private void sendCachedAvailability(PooledPrinter printer, CallbackContext callbackContext) {
+        boolean isOnline = printer.statusCache.isOnline();
+        JSONObject response = new JSONObject();
         try {
-            // Réinitialiser l'état si l'imprimante est dans un état incohérent
-            // (connexion perdue mais objet non nettoyé, ou transaction précédente non terminée)
-            if (mPrinter != null) {
-                if (isTransactionActive || !isConnected) {
-                    releasePrinter();
-                }
-            }
-            
-            // Initialiser l'imprimante si nécessaire
-            if (!initializePrinter(context)) {
-                JSONObject error = new JSONObject();
-                try {
-                    error.put("code", ERR_FAILURE);
-                    error.put("message", "Impossible d'initialiser l'imprimante");
-                    error.put("context", "printText");
-                    mergeJson(error, diagnostics);
-                } catch (JSONException e) {
-                    // Ignore JSON error
-                }
-                callbackContext.error(error);
-                printerSemaphore.release();
-                return;
-            }
-            
-            // Connecter l'imprimante
-            if (!connectPrinter()) {
-                JSONObject error = new JSONObject();
-                try {
-                    error.put("code", ERR_CONNECT);
-                    error.put("message", getEpsonErrorMessage(ERR_CONNECT));
-                    error.put("context", "printText");
-                    mergeJson(error, diagnostics);
-                } catch (JSONException e) {
-                    // Ignore JSON error
-                }
-                releasePrinter();
-                callbackContext.error(error);
-                printerSemaphore.release();
-                return;
-            }
-            
-            // Vider le buffer AVANT de démarrer la transaction (selon Epson SDK)
-            try {
-                mPrinter.clearCommandBuffer();
-            } catch (Exception e) {
-                // Continue anyway
+            if (isOnline) {
+                response.put("status", "online");
+                response.put("message", "Imprimante disponible et prête");
+            } else {
+                response.put("code", -1);
+                response.put("message", "Imprimante hors ligne : vérifiez qu'elle n'est pas en erreur (papier, capot ouvert, etc.)");
+                response.put("context", "isPrinterAvailable");
             }
-            
-            // Vérifier le statut de l'imprimante AVANT la transaction
-            try {
-                PrinterStatusInfo status = mPrinter.getStatus();
-                boolean isOnline = status != null && status.getConnection() == Printer.TRUE && status.getOnline() == Printer.TRUE;
-                
-                if (!isOnline) {
-                    // NOTE (Support Epson): Ne PAS utiliser forceRecover() dans le flux normal.
-                    // forceRecover() est réservé aux situations de récupération après erreur persistante.
-                    // En cas d'imprimante hors ligne, retourner une erreur claire à l'utilisateur.
-                    JSONObject error = new JSONObject();
-                    try {
-                        error.put("code", -1);
-                        error.put("message", "Imprimante hors ligne : vérifiez le papier, le capot et l'état de l'imprimante");
-                        error.put("context", "printText");
-                        error.put("printerStatus", status != null ? "connection=" + status.getConnection() + ", online=" + status.getOnline() : "null");
-                        mergeJson(error, diagnostics);
-                    } catch (JSONException ex) {
-                        // Ignore JSON error
-                    }
-                    releasePrinter();
-                    callbackContext.error(error);
-                    printerSemaphore.release();
-                    return;
-                }
-            } catch (Exception e) {
-                // Continuer malgré l'erreur - on essaiera d'imprimer quand même
+            if (printer.isConnected && isKeepAlive(printer)) {
+                response.put("session", "keepAlive");
             }
-            
-            // Démarrer la transaction APRÈS clearCommandBuffer et vérification statut
-            try {
-                mPrinter.beginTransaction();
-                isTransactionActive = true;
-            } catch (Epos2Exception e) {
-                int errorCode = e.getErrorStatus();
-                JSONObject error = new JSONObject();
-                try {
-                    error.put("code", errorCode);
-                    error.put("message", getEpsonErrorMessage(errorCode));
-                    error.put("context", "beginTransaction");
-                    mergeJson(error, diagnostics);
-                } catch (JSONException ex) {
-                    // Ignore JSON error
-                }
-                releasePrinter();
-                callbackContext.error(error);
-                printerSemaphore.release();
-                return;
+            response.put("printer", printer.name);
+            response.put("cached", true);
+            response.put("printerState", printer.statusCache.toJson());
+            response.put("circuit", printer.breaker.toJson());
+            if (!isOnline) {
+                PrinterResponses.mergeJson(response, getDiagnostics(printer));
             }
-            
-            // Préparer les commandes d'impression
-            try {
-                Pattern pattern = Pattern.compile("(<BOLD>.*?</BOLD>)|(<QRCODE>.*?</QRCODE>)", Pattern.DOTALL);
-                Matcher matcher = pattern.matcher(textToPrint);
-
-                int lastIndex = 0;
-                while (matcher.find()) {
-                    if (matcher.start() > lastIndex) {
-                        String before = textToPrint.substring(lastIndex, matcher.start());
-                        if (!before.isEmpty()) {
-                            mPrinter.addTextStyle(Printer.FALSE, Printer.FALSE, Printer.FALSE, Printer.COLOR_1);
-                            mPrinter.addTextAlign(Printer.ALIGN_CENTER);
-                            mPrinter.addText(before);
-                        }
-                    }
-
-                    String match = matcher.group();
-                    if (match.startsWith("<BOLD>")) {
-                        String boldText = match.substring(6, match.length() - 7);
-                        mPrinter.addTextStyle(Printer.FALSE, Printer.FALSE, Printer.TRUE, Printer.COLOR_1);
-                        mPrinter.addTextAlign(Printer.ALIGN_CENTER);
-                        mPrinter.addText(boldText);
-                    } else if (match.startsWith("<QRCODE>")) {
-                        String qrContent = match.substring(8, match.length() - 9);
-                        mPrinter.addTextAlign(Printer.ALIGN_CENTER);
-                        mPrinter.addSymbol(qrContent, Printer.SYMBOL_QRCODE_MODEL_2,
-                                Printer.LEVEL_L, 9, 1, 0);
-                    }
-
-                    lastIndex = matcher.end();
-                }
+        } catch (JSONException e) {
+            // Ignore JSON error
+        }
+        if (isOnline) {
+            callbackContext.success(response);
+        } else {
+            callbackContext.error(response);
+        }
+    }
 
-                if (lastIndex < textToPrint.length()) {
-                    String after = textToPrint.substring(lastIndex);
-                    if (!after.isEmpty()) {
-                        mPrinter.addTextStyle(Printer.FALSE, Printer.FALSE, Printer.FALSE, Printer.COLOR_1);
-                        mPrinter.addTextAlign(Printer.ALIGN_CENTER);
-                        mPrinter.addText(after);
-                    }
-                }
+    private JSONObject createBusyResponse(PooledPrinter printer) {
+        JSONObject response = new JSONObject();
+        try {
+            response.put("status", "busy");
+            response.put("message", "Imprimante occupée - une impression est en cours");
+            response.put("printer", printer.name);
+            response.put("printerState", printer.statusCache.toJson());
+            response.put("circuit", printer.breaker.toJson());
+        } catch (JSONException e) {
+            // Ignore JSON error
+        }
+        return response;
+    }
 
-                mPrinter.addCut(Printer.CUT_FEED);
-                
-            } catch (Epos2Exception e) {
-                int errorCode = e.getErrorStatus();
-                JSONObject error = new JSONObject();
-                try {
-                    error.put("code", errorCode);
-                    error.put("message", getEpsonErrorMessage(errorCode));
-                    error.put("context", "addPrintCommands");
-                    mergeJson(error, diagnostics);
-                } catch (JSONException ex) {
-                    // Ignore JSON error
-                }
-                releasePrinter();
-                callbackContext.error(error);
-                printerSemaphore.release();
+    /**
+     * Lance une sonde de disponibilité, ou rejoint celle déjà en cours (single-flight)
+     * @param waiter appel à notifier du résultat, null pour un simple rafraîchissement du cache
+     */
+    private void startStatusProbe(final PooledPrinter printer, CallbackContext waiter) {
+        synchronized (printer.probeWaiters) {
+            if (waiter != null) {
+                printer.probeWaiters.add(waiter);
+            }
+            if (printer.probeInFlight) {
                 return;
             }
-            
-            // Envoyer les données - le callback sera géré dans onPtrReceive
-            // IMPORTANT: stocker le callback AVANT sendData
-            pendingCallbackContext = callbackContext;
-            
-            // Réinitialiser l'indicateur de callback reçu
-            callbackReceived.set(false);
-            
-            try {
-                // Marquer que le sémaphore doit être libéré dans le callback
-                shouldReleaseSemaphoreInCallback = true;
-                
-                // Démarrer le timeout de sécurité AVANT sendData
-                // Si le callback n'est pas reçu dans CALLBACK_TIMEOUT_SECONDS, forcer le nettoyage
-                final CallbackContext timeoutCallback = callbackContext;
-                final JSONObject timeoutDiagnostics = diagnostics;
-                lastSendDataTimestamp = System.currentTimeMillis();
-                
-                callbackTimeoutFuture = timeoutExecutor.schedule(new Runnable() {
-                    @Override
-                    public void run() {
-                        // Vérifier si le callback n'a pas été reçu
-                        if (callbackReceived.compareAndSet(false, true)) {
-                            long elapsed = System.currentTimeMillis() - lastSendDataTimestamp;
-                            
-                            // Forcer le nettoyage même sans callback
-                            forceCleanupAfterTimeout();
-                            
-                            // Notifier l'erreur au JavaScript
-                            if (timeoutCallback != null) {
-                                JSONObject error = new JSONObject();
-                                try {
-                                    error.put("code", ERR_TIMEOUT);
-                                    error.put("message", "Timeout: le callback d'impression n'a pas été reçu après " + CALLBACK_TIMEOUT_SECONDS + " secondes. Nettoyage forcé effectué.");
-                                    error.put("context", "callbackTimeout");
-                                    error.put("elapsedMs", elapsed);
-                                    mergeJson(error, timeoutDiagnostics);
-                                } catch (JSONException ex) {
-                                    // Ignore JSON error
-                                }
-                                timeoutCallback.error(error);
-                            }
-                        }
+            printer.probeInFlight = true;
+        }
+        try {
+            // Exécuter sur un thread séparé car connect/disconnect ne doivent pas être sur le main thread
+            printer.sessionExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        runStatusProbe(printer);
+                    } catch (Exception e) {
+                        // Ne jamais laisser des appels sans réponse
+                        finishStatusProbe(printer, createUnexpectedError(e, "isPrinterAvailable"), false);
                     }
-                }, CALLBACK_TIMEOUT_SECONDS, TimeUnit.SECONDS);
-                
-                // Timeout augmenté pour l'impression
-                mPrinter.sendData(Printer.PARAM_DEFAULT);
-                // NE PAS appeler callbackContext.success() ici !
-                // Le résultat sera notifié dans onPtrReceive
-                // NE PAS libérer le sémaphore ici, il sera libéré dans onPtrReceive
-                
-            } catch (Epos2Exception e) {
-                int errorCode = e.getErrorStatus();
-                
-                // Annuler le timeout car sendData a échoué immédiatement
-                if (callbackTimeoutFuture != null) {
-                    callbackTimeoutFuture.cancel(false);
-                    callbackTimeoutFuture = null;
-                }
-                callbackReceived.set(true); // Marquer comme traité
-                
-                shouldReleaseSemaphoreInCallback = false;
-                pendingCallbackContext = null;
-                
-                JSONObject error = new JSONObject();
-                try {
-                    error.put("code", errorCode);
-                    error.put("message", getEpsonErrorMessage(errorCode));
-                    error.put("context", "sendData");
-                    mergeJson(error, diagnostics);
-                } catch (JSONException ex) {
-                    // Ignore JSON error
                 }
-                releasePrinter();
-                callbackContext.error(error);
-                printerSemaphore.release();
-            }
-            
-        } catch (Exception e) {
-            JSONObject error = new JSONObject();
-            try {
-                error.put("code", ERR_FAILURE);
-                error.put("message", "Erreur inattendue: " + e.getMessage());
-                error.put("context", "printText");
-                mergeJson(error, diagnostics);
-            } catch (JSONException ex) {
-                // Ignore JSON error
-            }
-            
-            shouldReleaseSemaphoreInCallback = false;
-            pendingCallbackContext = null;
-            releasePrinter();
-            callbackContext.error(error);
-            printerSemaphore.release();
+            });
+        } catch (RejectedExecutionException e) {
+            // Plugin détruit ou imprimante retirée du pool
+            finishStatusProbe(printer, PrinterResponses.createErrorResponse(PrinterResponses.ERR_ILLEGAL, "isPrinterAvailable"), false);
         }
     }
-    
+
     /**
-     * Fusionne deux objets JSON
+     * Transmet le résultat de la sonde à tous les appels en attente
      */
-    private void mergeJson(JSONObject target, JSONObject source) {
+    private void finishStatusProbe(PooledPrinter printer, JSONObject response, boolean available) {
         try {
-            java.util.Iterator<String> keys = source.keys();
-            while (keys.hasNext()) {
-                String key = keys.next();
-                target.put(key, source.get(key));
-            }
+            response.put("circuit", printer.breaker.toJson());
         } catch (JSONException e) {
-            // Ignore merge error
+            // Ignore JSON error
         }
-    }
-
-    private void isPrinterAvailable(final CallbackContext callbackContext) {
-        // Exécuter sur un thread séparé car connect/disconnect ne doivent pas être sur le main thread
-        cordova.getThreadPool().execute(new Runnable() {
-            @Override
-            public void run() {
-                isPrinterAvailableInternal(callbackContext);
+        List<CallbackContext> waiters;
+        synchronized (printer.probeWaiters) {
+            waiters = new ArrayList<CallbackContext>(printer.probeWaiters);
+            printer.probeWaiters.clear();
+            printer.probeInFlight = false;
+        }
+        for (CallbackContext waiter : waiters) {
+            if (available) {
+                waiter.success(response);
+            } else {
+                waiter.error(response);
             }
-        });
+        }
     }
     
-    private void isPrinterAvailableInternal(CallbackContext callbackContext) {
+    private void runStatusProbe(PooledPrinter printer) {
         Context context = cordova.getActivity().getApplicationContext();
-        JSONObject diagnostics = getUsbDiagnostics(context);
         
         // Essayer d'acquérir le sémaphore avec timeout court pour la vérification
         boolean lockAcquired = false;
         try {
-            lockAcquired = printerSemaphore.tryAcquire(5, TimeUnit.SECONDS);
+            lockAcquired = printer.semaphore.tryAcquire(5, TimeUnit.SECONDS);
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
         }
@@ -821,25 +2910,75 @@ public class EpsonPrinterPlugin extends CordovaPlugin implements ReceiveListener
         if (!lockAcquired) {
             // Si on ne peut pas acquérir le verrou, une impression est en cours
             // L'imprimante est donc "disponible" mais occupée
-            JSONObject response = new JSONObject();
+            finishStatusProbe(printer, createBusyResponse(printer), true);
+            return;
+        }
+        
+        // Session persistante ouverte : le port est déjà occupé par le pilote de cette imprimante,
+        // le statut est lu directement sur la connexion existante
+        if (printer.driver != null && printer.isConnected) {
+            try {
+                PrinterDriver.Status status = printer.driver.getStatus();
+                printer.updateStatusCache(status, "probe");
+                if (status != null && status.connection == Printer.TRUE) {
+                    boolean isOnline = status.online == Printer.TRUE;
+                    JSONObject response = new JSONObject();
+                    try {
+                        if (isOnline) {
+                            response.put("status", "online");
+                            response.put("message", "Imprimante disponible et prête");
+                        } else {
+                            response.put("code", -1);
+                            response.put("message", "Imprimante hors ligne : vérifiez qu'elle n'est pas en erreur (papier, capot ouvert, etc.)");
+                            response.put("context", "isPrinterAvailable");
+                        }
+                        response.put("session", "keepAlive");
+                        response.put("printer", printer.name);
+                        response.put("printerState", printer.statusCache.toJson());
+                        if (!isOnline) {
+                            PrinterResponses.mergeJson(response, getDiagnostics(printer));
+                        }
+                    } catch (JSONException e) {
+                        // Ignore JSON error
+                    }
+                    printer.semaphore.release();
+                    finishStatusProbe(printer, response, isOnline);
+                    return;
+                }
+            } catch (Exception e) {
+                // Connexion perdue : continuer avec une vérification complète
+            }
+            printer.release();
+        }
+        
+        // Imprimante absente ou disjoncteur ouvert : répondre sans tenter de connexion
+        JSONObject unreachable = checkConnectable(printer, "isPrinterAvailable");
+        if (unreachable != null) {
             try {
-                response.put("status", "busy");
-                response.put("message", "Imprimante occupée - une impression est en cours");
-                mergeJson(response, diagnostics);
+                unreachable.put("printer", printer.name);
+                PrinterResponses.mergeJson(unreachable, getDiagnostics(printer));
             } catch (JSONException e) {
                 // Ignore JSON error
             }
-            callbackContext.success(response);
+            printer.semaphore.release();
+            finishStatusProbe(printer, unreachable, false);
             return;
         }
         
-        Printer testPrinter = null;
+        PrinterDriver testPrinter = null;
         try {
-            testPrinter = new Printer(Printer.TM_T88, Printer.MODEL_ANK, context);
-            testPrinter.connect("USB:", 10000);
+            testPrinter = driverFactory.create(context);
+            try {
+                testPrinter.connect(discovery.resolveTarget(printer.getTarget()), (int) connectTimeout.timeoutMs(printer.connectModel, 0));
+                printer.breaker.recordSuccess();
+            } catch (Epos2Exception e) {
+                printer.breaker.recordFailure(e.getErrorStatus());
+                throw e;
+            }
             
-            PrinterStatusInfo status = testPrinter.getStatus();
-            boolean isOnline = status != null && status.getConnection() == Printer.TRUE && status.getOnline() == Printer.TRUE;
+            PrinterDriver.Status status = testPrinter.getStatus();
+            printer.updateStatusCache(status, "probe");
+            boolean isOnline = status != null && status.connection == Printer.TRUE && status.online == Printer.TRUE;
             
             // Nettoyage immédiat
             try {
@@ -854,22 +2993,25 @@ public class EpsonPrinterPlugin extends CordovaPlugin implements ReceiveListener
                 try {
                     success.put("status", "online");
                     success.put("message", "Imprimante disponible et prête");
-                    mergeJson(success, diagnostics);
+                    success.put("printer", printer.name);
+                    success.put("printerState", printer.statusCache.toJson());
                 } catch (JSONException e) {
                     // Ignore JSON error
                 }
-                callbackContext.success(success);
+                finishStatusProbe(printer, success, true);
             } else {
                 JSONObject error = new JSONObject();
                 try {
                     error.put("code", -1);
                     error.put("message", "Imprimante hors ligne : vérifiez qu'elle n'est pas en erreur (papier, capot ouvert, etc.)");
                     error.put("context", "isPrinterAvailable");
-                    mergeJson(error, diagnostics);
+                    error.put("printer", printer.name);
+                    error.put("printerState", printer.statusCache.toJson());
+                    PrinterResponses.mergeJson(error, getDiagnostics(printer));
                 } catch (JSONException e) {
                     // Ignore JSON error
                 }
-                callbackContext.error(error);
+                finishStatusProbe(printer, error, false);
             }
 
         } catch (Exception e) {
@@ -890,51 +3032,146 @@ public class EpsonPrinterPlugin extends CordovaPlugin implements ReceiveListener
             JSONObject error = new JSONObject();
             try {
                 error.put("code", errorCode);
-                error.put("message", getEpsonErrorMessage(errorCode));
+                error.put("message", PrinterResponses.getEpsonErrorMessage(errorCode));
                 error.put("context", "isPrinterAvailable");
-                mergeJson(error, diagnostics);
+                error.put("printer", printer.name);
+                PrinterResponses.mergeJson(error, getDiagnostics(printer));
             } catch (JSONException ex) {
                 // Ignore JSON error
             }
-            callbackContext.error(error);
+            finishStatusProbe(printer, error, false);
         } finally {
-            printerSemaphore.release();
+            printer.semaphore.release();
         }
     }
     
+    /**
+     * Appel discover en attente des permissions Bluetooth
+     */
+    private static final class PendingDiscover {
+        final CallbackContext callbackContext;
+        final String port;
+        final boolean refresh;
+        final long maxAgeMs;
+
+        PendingDiscover(CallbackContext callbackContext, String port, boolean refresh, long maxAgeMs) {
+            this.callbackContext = callbackContext;
+            this.port = port;
+            this.refresh = refresh;
+            this.maxAgeMs = maxAgeMs;
+        }
+    }
+
+    /**
+     * Demande à l'utilisateur les permissions Bluetooth manquantes (recherche et connexion : une seule
+     * boîte de dialogue « Appareils à proximité » à partir d'Android 12), sauf si une demande est déjà affichée
+     */
+    private void requestBluetoothPermissions() {
+        String[] missing = BluetoothPermissions.missing(cordova.getActivity().getApplicationContext(), true);
+        synchronized (pendingDiscovers) {
+            if (bluetoothRequestPending) {
+                return;
+            }
+            bluetoothRequestPending = missing.length > 0;
+        }
+        if (missing.length > 0) {
+            cordova.requestPermissions(this, REQUEST_BLUETOOTH_PERMISSIONS, missing);
+        } else {
+            onRequestPermissionResult(REQUEST_BLUETOOTH_PERMISSIONS, missing, new int[0]);
+        }
+    }
+
+    /**
+     * Réponse de l'utilisateur : les recherches en attente sont lancées ; sans les permissions,
+     * une recherche Bluetooth échoue (btPermission) et une recherche sur tous les ports se fait sans Bluetooth
+     */
+    @Override
+    public void onRequestPermissionResult(int requestCode, String[] permissions, int[] grantResults) {
+        if (requestCode != REQUEST_BLUETOOTH_PERMISSIONS) {
+            return;
+        }
+        List<PendingDiscover> pending;
+        synchronized (pendingDiscovers) {
+            bluetoothRequestPending = false;
+            pending = new ArrayList<PendingDiscover>(pendingDiscovers);
+            pendingDiscovers.clear();
+        }
+        String[] missing = BluetoothPermissions.missing(cordova.getActivity().getApplicationContext(), true);
+        for (PendingDiscover request : pending) {
+            if (missing.length > 0 && "BT".equals(request.port)) {
+                request.callbackContext.error(createBluetoothPermissionError(missing));
+            } else {
+                discovery.discover(request.callbackContext, request.port, request.refresh, request.maxAgeMs);
+            }
+        }
+    }
+
+    private static JSONObject createBluetoothPermissionError(String[] missing) {
+        JSONObject error = PrinterResponses.createErrorResponse(PrinterResponses.ERR_CONNECT, "discover");
+        try {
+            error.put("message", "Permission Bluetooth non accordée : " + Arrays.toString(missing));
+            error.put("reason", "btPermission");
+        } catch (JSONException e) {
+            // Ignore JSON error
+        }
+        return error;
+    }
+
     /**
      * Appelé lors de la destruction du plugin pour libérer les ressources
      */
     @Override
     public void onDestroy() {
-        // Annuler tout timeout en attente
-        if (callbackTimeoutFuture != null) {
-            callbackTimeoutFuture.cancel(false);
-            callbackTimeoutFuture = null;
-        }
+        compileExecutor.shutdownNow();
+        rasterExecutor.shutdownNow();
         
         // Arrêter l'executor de timeout
         if (timeoutExecutor != null) {
             timeoutExecutor.shutdownNow();
         }
         
-        releasePrinter();
+        // Pour chaque imprimante : débloquer une éventuelle attente de onPtrReceive, arrêter le dispatch
+        // (les travaux en attente ne seront pas imprimés) et libérer la connexion
+        for (PooledPrinter printer : printerPool.all()) {
+            printer.shutdown();
+        }
+        discovery.shutdown();
+        // Les travaux spoolés non imprimés restent dans le journal pour le prochain démarrage
+        if (spool != null) {
+            spool.shutdown();
+        }
+        usbRegistry.setAttachListener(null);
+        usbRegistry.unregister(cordova.getActivity().getApplicationContext());
         super.onDestroy();
     }
     
     /**
      * Appelé lors de la mise en pause de l'application
+     * Avec pauseSession "release", les connexions sont fermées dès que chaque imprimante est libre
+     * (le travail en cours se termine) ; le pilote est conservé pour la reprise
      */
     @Override
     public void onPause(boolean multitasking) {
         super.onPause(multitasking);
+        if (PAUSE_RELEASE.equals(pauseSession)) {
+            for (PooledPrinter printer : printerPool.all()) {
+                printer.disconnectIdleSessionLater();
+            }
+        }
     }
     
     /**
      * Appelé lors de la reprise de l'application
+     * Prépare à nouveau les imprimantes déjà utilisées : avec "connect", la connexion fermée pendant la pause
+     * est rouverte avant le prochain ticket
      */
     @Override
     public void onResume(boolean multitasking) {
         super.onResume(multitasking);
+        for (PooledPrinter printer : printerPool.all()) {
+            if (printer.isDispatchStarted()) {
+                warmUpLater(printer);
+            }
+        }
     }
 }
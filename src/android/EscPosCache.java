@@ -0,0 +1,84 @@
+package com.eliberty.cordova.plugin.epsonusb;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache borné (LRU) des tickets déjà encodés en ESC/POS (mode "escpos"), indexé par texte balisé
+ * Un ticket réimprimé à l'identique n'est ni réanalysé ni réencodé
+ */
+class EscPosCache {
+
+    static final int DEFAULT_MAX_RECEIPTS = 64;
+    static final int DEFAULT_MAX_BYTES = 1024 * 1024;
+
+    private final int maxReceipts;
+    private final int maxBytes;
+    private final LinkedHashMap<String, CompiledReceipt> receipts = new LinkedHashMap<String, CompiledReceipt>(16, 0.75f, true);
+    private int bytes = 0;
+    private long hits = 0;
+    private long misses = 0;
+
+    EscPosCache(int maxReceipts, int maxBytes) {
+        this.maxReceipts = maxReceipts;
+        this.maxBytes = maxBytes;
+    }
+
+    synchronized CompiledReceipt get(String markup) {
+        CompiledReceipt receipt = receipts.get(markup);
+        if (receipt != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return receipt;
+    }
+
+    synchronized void put(String markup, CompiledReceipt receipt) {
+        int size = byteSize(markup, receipt);
+        if (size > maxBytes) {
+            // Trop volumineux pour être conservé
+            return;
+        }
+        CompiledReceipt previous = receipts.put(markup, receipt);
+        if (previous != null) {
+            bytes -= byteSize(markup, previous);
+        }
+        bytes += size;
+        Iterator<Map.Entry<String, CompiledReceipt>> it = receipts.entrySet().iterator();
+        while ((receipts.size() > maxReceipts || bytes > maxBytes) && it.hasNext()) {
+            Map.Entry<String, CompiledReceipt> eldest = it.next();
+            bytes -= byteSize(eldest.getKey(), eldest.getValue());
+            it.remove();
+        }
+    }
+
+    /**
+     * Taille approximative d'une entrée : commandes encodées et clé (caractères UTF-16)
+     */
+    private static int byteSize(String markup, CompiledReceipt receipt) {
+        return receipt.estimatedBytes + 2 * markup.length();
+    }
+
+    synchronized void clear() {
+        receipts.clear();
+        bytes = 0;
+    }
+
+    synchronized int size() {
+        return receipts.size();
+    }
+
+    synchronized int byteSize() {
+        return bytes;
+    }
+
+    synchronized long getHits() {
+        return hits;
+    }
+
+    synchronized long getMisses() {
+        return misses;
+    }
+}
@@ -0,0 +1,246 @@
+package com.eliberty.cordova.plugin.epsonusb;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Mode de commandes "escpos" : un ticket compilé est traduit directement en commandes ESC/POS,
+ * transmises au SDK en un seul addCommand au lieu d'un appel par texte, style, symbole et coupe
+ *
+ * Le ticket commence par ESC @ (état initial connu) et la page de code WPC1252 (ESC t 16), dans
+ * laquelle le texte est encodé ; il se termine par la coupe. Seuls les changements de style sont émis.
+ * Les parties d'un ticket envoyé en continu sont encodées par un même encodeur (forStream) : ESC @ et la page
+ * de code ne précèdent que la première, l'état des styles est conservé d'une partie à l'autre et seule la
+ * dernière coupe. Mises bout à bout, les parties sont identiques au ticket encodé en un seul envoi.
+ * Les paramètres reprennent ceux du mode SDK (CommandBuilder) : QR code modèle 2, niveau L, module 9 ;
+ * code-barres de hauteur 100, largeur 2, texte HRI en dessous en police A ; coupe avec avance du papier.
+ */
+final class EscPosEncoder {
+
+    private static final byte ESC = 0x1B;
+    private static final byte GS = 0x1D;
+
+    private static final Charset TEXT_CHARSET = Charset.forName("windows-1252");
+    private static final Charset QR_CHARSET = Charset.forName("UTF-8");
+    // Page de code WPC1252 (ESC t)
+    private static final int CODE_PAGE_WPC1252 = 16;
+
+    private static final int QR_MODULE_SIZE = 9;
+    private static final int BARCODE_WIDTH = 2;
+    private static final int BARCODE_HEIGHT = 100;
+
+    private byte[] buffer;
+    private int length = 0;
+    // État après ESC @ : sans gras ni soulignement, aligné à gauche, taille 1, police A
+    private boolean bold = false;
+    private boolean underline = false;
+    private int align = ReceiptSegment.ALIGN_LEFT;
+    private int width = 1;
+    private int height = 1;
+    private int font = ReceiptSegment.FONT_A;
+
+    // En-tête (ESC @, page de code) déjà émis : parties suivantes d'un ticket envoyé en continu
+    private boolean started = false;
+
+    private EscPosEncoder() {
+    }
+
+    /**
+     * Commandes ESC/POS complètes d'un ticket compilé en mode SDK (commandes et trames)
+     */
+    static byte[] encode(CompiledReceipt receipt) {
+        return new EscPosEncoder().encodePart(receipt);
+    }
+
+    /**
+     * Encodeur des parties d'un ticket envoyé en continu, à appeler dans l'ordre des parties (encodePart)
+     */
+    static EscPosEncoder forStream() {
+        return new EscPosEncoder();
+    }
+
+    /**
+     * Commandes ESC/POS d'une partie, à la suite des parties déjà encodées par cet encodeur
+     */
+    byte[] encodePart(CompiledReceipt receipt) {
+        int capacity = 64;
+        for (ReceiptSegment command : receipt.commands) {
+            capacity += command.text.length() + 16;
+        }
+        if (receipt.images != null) {
+            for (RasterImage image : receipt.images) {
+                capacity += image != null ? image.command.length : 0;
+            }
+        }
+        buffer = new byte[capacity];
+        length = 0;
+        if (!started) {
+            write(ESC, '@');
+            write(ESC, 't', CODE_PAGE_WPC1252);
+            started = true;
+        }
+        List<ReceiptSegment> commands = receipt.commands;
+        for (int i = 0; i < commands.size(); i++) {
+            add(commands.get(i), receipt.images != null ? receipt.images[i] : null);
+        }
+        if (receipt.cut) {
+            // Coupe avec avance du papier jusqu'à la position de coupe (GS V 66 0)
+            write(GS, 'V', 66, 0);
+        }
+        byte[] encoded = Arrays.copyOf(buffer, length);
+        buffer = null;
+        return encoded;
+    }
+
+    private void add(ReceiptSegment segment, RasterImage image) {
+        switch (segment.type) {
+            case ReceiptSegment.QRCODE:
+                applyAlign(segment.align);
+                addQrCode(segment.text.getBytes(QR_CHARSET));
+                break;
+            case ReceiptSegment.BARCODE:
+                applyAlign(segment.align);
+                addBarcode(segment.text, segment.arg);
+                break;
+            case ReceiptSegment.FEED:
+                write(ESC, 'd', segment.arg);
+                break;
+            case ReceiptSegment.LOGO:
+                applyAlign(segment.align);
+                write(NvGraphics.printCommand(segment.text));
+                break;
+            case ReceiptSegment.IMAGE:
+                applyAlign(segment.align);
+                write(image.command);
+                break;
+            default:
+                applyTextStyle(segment);
+                write(segment.text.getBytes(TEXT_CHARSET));
+                break;
+        }
+    }
+
+    private void applyTextStyle(ReceiptSegment style) {
+        if (style.bold != bold) {
+            write(ESC, 'E', style.bold ? 1 : 0);
+            bold = style.bold;
+        }
+        if (style.underline != underline) {
+            write(ESC, '-', style.underline ? 1 : 0);
+            underline = style.underline;
+        }
+        if (style.font != font) {
+            write(ESC, 'M', style.font);
+            font = style.font;
+        }
+        if (style.width != width || style.height != height) {
+            write(GS, '!', ((style.width - 1) << 4) | (style.height - 1));
+            width = style.width;
+            height = style.height;
+        }
+        applyAlign(style.align);
+    }
+
+    private void applyAlign(int newAlign) {
+        if (newAlign != align) {
+            write(ESC, 'a', newAlign);
+            align = newAlign;
+        }
+    }
+
+    /**
+     * QR code (GS ( k) : modèle, taille du module, niveau de correction, stockage des données puis impression
+     */
+    private void addQrCode(byte[] data) {
+        write(GS, '(', 'k', 4, 0, 0x31, 0x41, 0x32, 0x00);
+        write(GS, '(', 'k', 3, 0, 0x31, 0x43, QR_MODULE_SIZE);
+        write(GS, '(', 'k', 3, 0, 0x31, 0x45, 0x30);
+        int parameters = data.length + 3;
+        write(GS, '(', 'k', parameters & 0xFF, parameters >> 8, 0x31, 0x50, 0x30);
+        write(data);
+        write(GS, '(', 'k', 3, 0, 0x31, 0x51, 0x30);
+    }
+
+    /**
+     * Code-barres (GS k, format m = 65...) précédé de la position du texte HRI, de sa police et des dimensions
+     * Un CODE128 sans jeu de caractères explicite ("{A", "{B", "{C") est encodé en jeu B ; en jeu C, chaque
+     * paire de chiffres devient un caractère, comme dans addBarcode
+     */
+    private void addBarcode(String data, int type) {
+        write(GS, 'H', 2);
+        write(GS, 'f', 0);
+        write(GS, 'w', BARCODE_WIDTH);
+        write(GS, 'h', BARCODE_HEIGHT);
+        byte[] bytes = type == ReceiptSegment.BARCODE_CODE128 ? code128(data) : data.getBytes(TEXT_CHARSET);
+        int dataLength = Math.min(bytes.length, 255);
+        write(GS, 'k', barcodeSystem(type), dataLength);
+        write(dataLength == bytes.length ? bytes : Arrays.copyOf(bytes, dataLength));
+    }
+
+    private static byte[] code128(String data) {
+        String content = data.startsWith("{") ? data : "{B" + data;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(content.length());
+        boolean codeC = false;
+        int i = 0;
+        while (i < content.length()) {
+            char c = content.charAt(i);
+            if (c == '{' && i + 1 < content.length()) {
+                // Changement de jeu ou caractère de fonction : transmis tel quel
+                char code = content.charAt(i + 1);
+                codeC = code == 'C' || (codeC && code != 'A' && code != 'B');
+                bytes.write(c);
+                bytes.write(code);
+                i += 2;
+            } else if (codeC && i + 1 < content.length() && isDigit(c) && isDigit(content.charAt(i + 1))) {
+                bytes.write((c - '0') * 10 + (content.charAt(i + 1) - '0'));
+                i += 2;
+            } else {
+                bytes.write(c < 256 ? c : '?');
+                i++;
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static int barcodeSystem(int type) {
+        switch (type) {
+            case ReceiptSegment.BARCODE_UPC_A:
+                return 65;
+            case ReceiptSegment.BARCODE_EAN13:
+                return 67;
+            case ReceiptSegment.BARCODE_EAN8:
+                return 68;
+            case ReceiptSegment.BARCODE_CODE39:
+                return 69;
+            case ReceiptSegment.BARCODE_ITF:
+                return 70;
+            default:
+                return 73;
+        }
+    }
+
+    private void write(int... bytes) {
+        ensureCapacity(bytes.length);
+        for (int b : bytes) {
+            buffer[length++] = (byte) b;
+        }
+    }
+
+    private void write(byte[] bytes) {
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, length, bytes.length);
+        length += bytes.length;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (length + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + extra));
+        }
+    }
+}
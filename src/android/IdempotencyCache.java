@@ -0,0 +1,171 @@
+package com.eliberty.cordova.plugin.epsonusb;
+
+import org.apache.cordova.CallbackContext;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Clés d'idempotence des impressions (option idempotencyKey) : table bornée (LRU) et à durée de vie limitée
+ * Seuls les résultats terminés sont évincés : une clé réservée par un travail en cours n'est jamais retirée,
+ * la table peut alors dépasser maxKeys le temps que ces travaux se terminent.
+ * Une clé est réservée à l'entrée en file ; une nouvelle tentative avec la même clé attend le travail en cours
+ * ou reçoit directement son résultat mémorisé, sans imprimer une seconde fois
+ *
+ * Seuls les résultats d'un travail qui a pu atteindre le papier sont mémorisés : imprimé, lot partiel,
+ * callback non reçu (callbackTimeout) ou travail conservé dans le spool. Après une erreur certaine
+ * (connexion, hors ligne, file pleine, annulation), la clé est libérée et la nouvelle tentative imprime.
+ */
+class IdempotencyCache {
+
+    static final int DEFAULT_MAX_KEYS = 1000;
+    static final long DEFAULT_TTL_MS = 10 * 60 * 1000;
+
+    /**
+     * Réponse d'une clé déjà connue : résultat mémorisé, ou null si le travail est encore en cours
+     * (le callback est alors notifié à la fin du travail)
+     */
+    static class Duplicate {
+        final JSONObject outcome;
+        final boolean success;
+
+        Duplicate(JSONObject outcome, boolean success) {
+            this.outcome = outcome;
+            this.success = success;
+        }
+    }
+
+    private static class Entry {
+        // Résultat final, null tant que le travail est en cours
+        JSONObject outcome = null;
+        boolean success = false;
+        long completedAt = 0;
+        // Nouvelles tentatives arrivées pendant le travail
+        final List<CallbackContext> waiters = new ArrayList<CallbackContext>();
+    }
+
+    private final int maxKeys;
+    private final long ttlMs;
+    private final LinkedHashMap<String, Entry> entries;
+    private long duplicates = 0;
+
+    IdempotencyCache(int maxKeys, long ttlMs) {
+        this.maxKeys = maxKeys;
+        this.ttlMs = ttlMs;
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+    }
+
+    /**
+     * Réserve la clé pour un nouveau travail
+     * @return null si la clé est libre (le travail doit être imprimé), sinon le doublon :
+     *         résultat mémorisé, ou attente du travail en cours (outcome null)
+     */
+    synchronized Duplicate reserve(String key, CallbackContext callbackContext) {
+        purgeExpired(System.currentTimeMillis());
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            entries.put(key, new Entry());
+            evictCompleted();
+            return null;
+        }
+        duplicates++;
+        if (entry.outcome == null) {
+            entry.waiters.add(callbackContext);
+            return new Duplicate(null, false);
+        }
+        return new Duplicate(entry.outcome, entry.success);
+    }
+
+    /**
+     * Résultat final du travail : mémorisé s'il a pu imprimer, sinon la clé est libérée
+     * @return les nouvelles tentatives arrivées pendant le travail, à notifier avec le même résultat
+     */
+    synchronized List<CallbackContext> complete(String key, JSONObject outcome, boolean success) {
+        Entry entry = entries.get(key);
+        if (entry == null || entry.outcome != null) {
+            return Collections.emptyList();
+        }
+        if (success || mayHavePrinted(outcome)) {
+            entry.outcome = outcome;
+            entry.success = success;
+            entry.completedAt = System.currentTimeMillis();
+        } else {
+            entries.remove(key);
+        }
+        return new ArrayList<CallbackContext>(entry.waiters);
+    }
+
+    /**
+     * Erreur après laquelle le ticket a pu sortir, ou sortira : une nouvelle impression ferait un doublon
+     */
+    private static boolean mayHavePrinted(JSONObject error) {
+        if (error.optBoolean("spooled", false) || "callbackTimeout".equals(error.optString("context"))) {
+            return true;
+        }
+        return error.optInt("printedCount", 0) > 0;
+    }
+
+    /**
+     * Retire les résultats plus anciens que la durée de vie (les travaux en cours sont conservés)
+     */
+    private void purgeExpired(long now) {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (entry.outcome != null && now - entry.completedAt > ttlMs) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Retire les résultats les moins récemment utilisés au-delà de maxKeys ; les travaux en cours
+     * (et leurs nouvelles tentatives en attente) sont conservés
+     */
+    private void evictCompleted() {
+        int excess = entries.size() - maxKeys;
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (excess > 0 && iterator.hasNext()) {
+            if (iterator.next().outcome != null) {
+                iterator.remove();
+                excess--;
+            }
+        }
+    }
+
+    /**
+     * Copie du résultat mémorisé envoyée à une nouvelle tentative, marquée duplicate: true
+     */
+    static JSONObject duplicateResponse(JSONObject outcome) {
+        JSONObject response = new JSONObject();
+        PrinterResponses.mergeJson(response, outcome);
+        try {
+            response.put("duplicate", true);
+        } catch (JSONException e) {
+            // Ignore JSON error
+        }
+        return response;
+    }
+
+    synchronized JSONObject toJson() {
+        JSONObject json = new JSONObject();
+        try {
+            json.put("keys", entries.size());
+            json.put("maxKeys", maxKeys);
+            json.put("ttlMs", ttlMs);
+            json.put("duplicates", duplicates);
+        } catch (JSONException e) {
+            // Ignore JSON error
+        }
+        return json;
+    }
+
+    synchronized void reset() {
+        duplicates = 0;
+    }
+}
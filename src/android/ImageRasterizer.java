@@ -0,0 +1,205 @@
+package com.eliberty.cordova.plugin.epsonusb;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Conversion d'une image ARGB en trame 1 bit pour l'imprimante
+ *
+ * Mise à l'échelle (moyenne par zone, jamais au-delà de la largeur du papier), puis tramage
+ * Floyd–Steinberg ou ordonné (Bayer 8x8). L'image est découpée en bandes horizontales traitées
+ * en parallèle ; en Floyd–Steinberg l'erreur n'est pas propagée d'une bande à la suivante.
+ * Travaille uniquement sur des tableaux primitifs.
+ */
+final class ImageRasterizer {
+
+    static final int DITHER_FLOYD_STEINBERG = 0;
+    static final int DITHER_ORDERED = 1;
+
+    // Largeur imprimable d'un rouleau de 80 mm sur TM-T88 (en points)
+    static final int MAX_WIDTH_DOTS = 512;
+    static final int MIN_WIDTH_DOTS = 8;
+    // Hauteur minimale d'une bande : en dessous, le parallélisme coûte plus qu'il ne rapporte
+    private static final int MIN_TILE_ROWS = 32;
+
+    private static final int[] BAYER_8X8 = {
+             0, 32,  8, 40,  2, 34, 10, 42,
+            48, 16, 56, 24, 50, 18, 58, 26,
+            12, 44,  4, 36, 14, 46,  6, 38,
+            60, 28, 52, 20, 62, 30, 54, 22,
+             3, 35, 11, 43,  1, 33,  9, 41,
+            51, 19, 59, 27, 49, 17, 57, 25,
+            15, 47,  7, 39, 13, 45,  5, 37,
+            63, 31, 55, 23, 61, 29, 53, 21
+    };
+
+    private ImageRasterizer() {
+    }
+
+    /**
+     * Facteur de sous-échantillonnage du décodage (BitmapFactory.Options.inSampleSize, puissance de 2) :
+     * le plus grand qui laisse l'image décodée au moins aussi large que la trame
+     * @param targetWidth largeur voulue en points, 0 = largeur de l'image limitée à MAX_WIDTH_DOTS
+     */
+    static int sampleSize(int srcWidth, int targetWidth) {
+        int width = Math.min(targetWidth > 0 ? targetWidth : srcWidth, MAX_WIDTH_DOTS);
+        int sample = 1;
+        while (srcWidth / (sample * 2) >= width) {
+            sample *= 2;
+        }
+        return sample;
+    }
+
+    /**
+     * Convertit les pixels ARGB (ligne par ligne) en trame imprimable
+     * @param targetWidth largeur voulue en points, 0 = largeur de l'image limitée à MAX_WIDTH_DOTS
+     * @param executor pool des bandes, null pour tout traiter sur le thread appelant
+     * @param parallelism nombre maximal de bandes traitées simultanément
+     */
+    static RasterImage rasterize(final int[] argb, final int srcWidth, final int srcHeight, int targetWidth,
+                                 final int dither, ExecutorService executor, int parallelism) {
+        if (srcWidth <= 0 || srcHeight <= 0 || argb.length < srcWidth * srcHeight) {
+            throw new IllegalArgumentException("Dimensions d'image invalides");
+        }
+        final int width = Math.min(targetWidth > 0 ? targetWidth : srcWidth, MAX_WIDTH_DOTS);
+        final int height = Math.max(1, (int) ((long) srcHeight * width / srcWidth));
+        final int bytesPerRow = (width + 7) >> 3;
+
+        // Colonnes source couvertes par chaque point (partagées en lecture par toutes les bandes)
+        final int[] colStart = new int[width];
+        final int[] colEnd = new int[width];
+        for (int x = 0; x < width; x++) {
+            colStart[x] = (int) ((long) x * srcWidth / width);
+            colEnd[x] = Math.max(colStart[x] + 1, (int) ((long) (x + 1) * srcWidth / width));
+        }
+
+        final int[] luminance = new int[width * height];
+        final byte[] bits = new byte[bytesPerRow * height];
+
+        int tiles = Math.max(1, Math.min(parallelism, height / MIN_TILE_ROWS));
+        if (executor == null) {
+            tiles = 1;
+        }
+        int rowsPerTile = (height + tiles - 1) / tiles;
+
+        List<Future<?>> futures = new ArrayList<Future<?>>(tiles);
+        int lastStart = 0;
+        for (int start = 0; start < height; start += rowsPerTile) {
+            final int y0 = start;
+            final int y1 = Math.min(height, start + rowsPerTile);
+            if (y1 >= height) {
+                // Dernière bande : traitée par le thread appelant
+                lastStart = y0;
+                break;
+            }
+            futures.add(executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    processTile(argb, srcWidth, srcHeight, colStart, colEnd, luminance, bits, width, height, bytesPerRow, y0, y1, dither);
+                }
+            }));
+        }
+        processTile(argb, srcWidth, srcHeight, colStart, colEnd, luminance, bits, width, height, bytesPerRow, lastStart, height, dither);
+
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Conversion d'image interrompue");
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Échec de la conversion d'image", e.getCause());
+            }
+        }
+
+        return new RasterImage(width, height, bits);
+    }
+
+    /**
+     * Mise à l'échelle puis tramage des lignes [y0, y1)
+     */
+    private static void processTile(int[] argb, int srcWidth, int srcHeight, int[] colStart, int[] colEnd,
+                                    int[] luminance, byte[] bits, int width, int height, int bytesPerRow,
+                                    int y0, int y1, int dither) {
+        for (int y = y0; y < y1; y++) {
+            int rowStart = (int) ((long) y * srcHeight / height);
+            int rowEnd = Math.max(rowStart + 1, (int) ((long) (y + 1) * srcHeight / height));
+            int out = y * width;
+            for (int x = 0; x < width; x++) {
+                int sum = 0;
+                int count = 0;
+                for (int sy = rowStart; sy < rowEnd; sy++) {
+                    int offset = sy * srcWidth;
+                    for (int sx = colStart[x]; sx < colEnd[x]; sx++) {
+                        sum += toLuminance(argb[offset + sx]);
+                        count++;
+                    }
+                }
+                luminance[out + x] = sum / count;
+            }
+        }
+        if (dither == DITHER_ORDERED) {
+            ditherOrdered(luminance, bits, width, bytesPerRow, y0, y1);
+        } else {
+            ditherFloydSteinberg(luminance, bits, width, bytesPerRow, y0, y1);
+        }
+    }
+
+    /**
+     * Luminance 0-255 d'un pixel ARGB, la transparence étant composée sur fond blanc
+     */
+    private static int toLuminance(int pixel) {
+        int a = pixel >>> 24;
+        int r = (pixel >> 16) & 0xFF;
+        int g = (pixel >> 8) & 0xFF;
+        int b = pixel & 0xFF;
+        int l = (r * 77 + g * 150 + b * 29) >> 8;
+        return (l * a + 255 * (255 - a)) / 255;
+    }
+
+    private static void ditherFloydSteinberg(int[] luminance, byte[] bits, int width, int bytesPerRow, int y0, int y1) {
+        for (int y = y0; y < y1; y++) {
+            int row = y * width;
+            boolean hasNext = y + 1 < y1;
+            for (int x = 0; x < width; x++) {
+                int i = row + x;
+                int old = luminance[i];
+                int error;
+                if (old < 128) {
+                    bits[y * bytesPerRow + (x >> 3)] |= (byte) (0x80 >> (x & 7));
+                    error = old;
+                } else {
+                    error = old - 255;
+                }
+                if (x + 1 < width) {
+                    luminance[i + 1] += error * 7 / 16;
+                }
+                if (hasNext) {
+                    if (x > 0) {
+                        luminance[i + width - 1] += error * 3 / 16;
+                    }
+                    luminance[i + width] += error * 5 / 16;
+                    if (x + 1 < width) {
+                        luminance[i + width + 1] += error / 16;
+                    }
+                }
+            }
+        }
+    }
+
+    private static void ditherOrdered(int[] luminance, byte[] bits, int width, int bytesPerRow, int y0, int y1) {
+        for (int y = y0; y < y1; y++) {
+            int row = y * width;
+            int matrixRow = (y & 7) << 3;
+            for (int x = 0; x < width; x++) {
+                int threshold = (BAYER_8X8[matrixRow + (x & 7)] << 2) + 2;
+                if (luminance[row + x] < threshold) {
+                    bits[y * bytesPerRow + (x >> 3)] |= (byte) (0x80 >> (x & 7));
+                }
+            }
+        }
+    }
+}
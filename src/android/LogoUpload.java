@@ -0,0 +1,24 @@
+package com.eliberty.cordova.plugin.epsonusb;
+
+/**
+ * Enregistrement d'un logo dans la mémoire NV de l'imprimante (action uploadLogo)
+ * Exécuté par le thread de dispatch comme un travail d'impression
+ */
+final class LogoUpload {
+
+    final String key;
+    // Image en base64 (ou URL data:)
+    final String image;
+    final int dither;
+    final int widthDots;
+    // Renvoyer le logo même si le manifeste indique qu'il est déjà enregistré
+    final boolean force;
+
+    LogoUpload(String key, String image, int dither, int widthDots, boolean force) {
+        this.key = key;
+        this.image = image;
+        this.dither = dither;
+        this.widthDots = widthDots;
+        this.force = force;
+    }
+}
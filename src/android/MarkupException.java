@@ -0,0 +1,20 @@
+package com.eliberty.cordova.plugin.epsonusb;
+
+/**
+ * Balisage de ticket invalide, avec la position (en caractères) de l'erreur dans le texte
+ */
+class MarkupException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int offset;
+
+    MarkupException(String message, int offset) {
+        super(message + " (offset " + offset + ")");
+        this.offset = offset;
+    }
+
+    int getOffset() {
+        return offset;
+    }
+}
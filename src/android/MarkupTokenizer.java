@@ -0,0 +1,449 @@
+package com.eliberty.cordova.plugin.epsonusb;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Analyseur du balisage des tickets, en une seule passe et sans expression régulière
+ *
+ * Balises supportées (imbricables, sauf le contenu de QRCODE, BARCODE et IMAGE qui est brut) :
+ *   <BOLD>…</BOLD>, <UNDERLINE>…</UNDERLINE>
+ *   <ALIGN LEFT|CENTER|RIGHT>…</ALIGN>
+ *   <SIZE l [h]>…</SIZE> (multiplicateurs de 1 à 8)
+ *   <FONT A|B|C>…</FONT>
+ *   <FEED n> (saut de n lignes, sans balise fermante)
+ *   <QRCODE>données</QRCODE>
+ *   <BARCODE [CODE128|CODE39|EAN13|EAN8|UPC_A|ITF]>données</BARCODE>
+ *   <IMAGE [FLOYD|ORDERED] [largeur]>image PNG/JPEG en base64</IMAGE> (largeur en points, 8 à 512)
+ *   <LOGO kk> (logo enregistré dans la mémoire NV sous la clé kk, sans balise fermante)
+ *
+ * Un '<' qui n'introduit pas une balise connue est imprimé tel quel.
+ * Les balises mal formées (non fermées, mal imbriquées, paramètre invalide) lèvent une MarkupException.
+ */
+final class MarkupTokenizer {
+
+    /**
+     * Reçoit les segments au fur et à mesure de l'analyse
+     */
+    interface Listener {
+        void onSegment(ReceiptSegment segment);
+    }
+
+    private static final int TAG_BOLD = 0;
+    private static final int TAG_UNDERLINE = 1;
+    private static final int TAG_ALIGN = 2;
+    private static final int TAG_SIZE = 3;
+    private static final int TAG_FEED = 4;
+    private static final int TAG_QRCODE = 5;
+    private static final int TAG_BARCODE = 6;
+    private static final int TAG_FONT = 7;
+    private static final int TAG_IMAGE = 8;
+    private static final int TAG_LOGO = 9;
+    private static final String[] TAG_NAMES = {"BOLD", "UNDERLINE", "ALIGN", "SIZE", "FEED", "QRCODE", "BARCODE", "FONT", "IMAGE", "LOGO"};
+
+    private static final int MAX_SIZE = 8;
+    private static final int MAX_FEED_LINES = 255;
+
+    private final String markup;
+    private final int length;
+    private final Listener listener;
+
+    // Style courant
+    private boolean bold = false;
+    private boolean underline = false;
+    private int align = ReceiptSegment.ALIGN_CENTER;
+    private int width = 1;
+    private int height = 1;
+    private int font = ReceiptSegment.FONT_A;
+
+    // Pile des balises ouvertes : balise, valeur à restaurer, position d'ouverture
+    private int[] stackTags = new int[8];
+    private int[] stackSaved = new int[8];
+    private int[] stackOffsets = new int[8];
+    private int depth = 0;
+
+    // Progression de l'analyse : début du texte pas encore transmis, position de reprise de la recherche
+    // et prochaine balise reconnue (readTag déjà appelé, -1 : aucune jusqu'à la fin) une fois la recherche faite
+    private int textStart = 0;
+    private int position = 0;
+    private boolean scanned = false;
+    private int tagAt = -1;
+    private boolean finished = false;
+
+    // Résultat de la dernière balise reconnue
+    private int tag;
+    private boolean closing;
+    private int argsStart;
+    private int argsEnd;
+    private int tagEnd;
+
+    private MarkupTokenizer(String markup, Listener listener) {
+        this.markup = markup;
+        this.length = markup.length();
+        this.listener = listener;
+    }
+
+    static List<ReceiptSegment> parse(String markup) throws MarkupException {
+        final List<ReceiptSegment> segments = new ArrayList<ReceiptSegment>();
+        parse(markup, new Listener() {
+            @Override
+            public void onSegment(ReceiptSegment segment) {
+                segments.add(segment);
+            }
+        });
+        return segments;
+    }
+
+    static void parse(String markup, Listener listener) throws MarkupException {
+        new MarkupTokenizer(markup, listener).run();
+    }
+
+    /**
+     * Analyse incrémentale (envoi en continu) : le balisage est lu étape par étape (advance),
+     * sans que ses segments soient jamais tous en mémoire
+     */
+    static MarkupTokenizer incremental(String markup, Listener listener) {
+        return new MarkupTokenizer(markup, listener);
+    }
+
+    private void run() throws MarkupException {
+        while (advance(Integer.MAX_VALUE)) {
+            // Segments transmis au listener
+        }
+    }
+
+    /**
+     * Étape suivante de l'analyse : le texte jusqu'à la prochaine balise connue, puis cette balise
+     * Un texte plus long que maxText est transmis en plusieurs segments de même style, jamais au milieu d'un caractère
+     * @return false une fois tout le balisage analysé
+     * @throws MarkupException si le balisage est invalide (balise jamais fermée : à la dernière étape)
+     */
+    boolean advance(int maxText) throws MarkupException {
+        if (finished) {
+            return false;
+        }
+        if (!scanned) {
+            tagAt = markup.indexOf('<', position);
+            while (tagAt >= 0 && !readTag(tagAt)) {
+                // Pas une balise connue : '<' littéral
+                tagAt = markup.indexOf('<', tagAt + 1);
+            }
+            scanned = true;
+        }
+        int textEnd = tagAt >= 0 ? tagAt : length;
+        if (textEnd - textStart > maxText) {
+            int cut = textStart + maxText;
+            if (cut - 1 > textStart && Character.isHighSurrogate(markup.charAt(cut - 1))) {
+                cut--;
+            }
+            emitText(textStart, cut);
+            textStart = cut;
+            return true;
+        }
+        emitText(textStart, textEnd);
+        scanned = false;
+        if (tagAt < 0) {
+            finished = true;
+            if (depth > 0) {
+                throw new MarkupException("Balise <" + TAG_NAMES[stackTags[depth - 1]] + "> jamais fermée", stackOffsets[depth - 1]);
+            }
+            return false;
+        }
+        if (closing) {
+            closeTag(tagAt);
+            position = tagEnd;
+        } else {
+            position = openTag(tagAt);
+        }
+        textStart = position;
+        return true;
+    }
+
+    /**
+     * Reconnaît une balise connue à la position lt (qui contient '<')
+     * @return false si ce n'est pas une balise connue
+     */
+    private boolean readTag(int lt) throws MarkupException {
+        int nameStart = lt + 1;
+        closing = nameStart < length && markup.charAt(nameStart) == '/';
+        if (closing) {
+            nameStart++;
+        }
+        tag = -1;
+        int nameEnd = 0;
+        for (int t = 0; t < TAG_NAMES.length; t++) {
+            String name = TAG_NAMES[t];
+            int end = nameStart + name.length();
+            if (end < length && markup.regionMatches(nameStart, name, 0, name.length())) {
+                char next = markup.charAt(end);
+                if (next == '>' || (!closing && next == ' ')) {
+                    tag = t;
+                    nameEnd = end;
+                    break;
+                }
+            }
+        }
+        if (tag < 0) {
+            return false;
+        }
+        int gt = markup.indexOf('>', nameEnd);
+        if (gt < 0) {
+            throw new MarkupException("Balise <" + TAG_NAMES[tag] + " sans '>'", lt);
+        }
+        argsStart = skipSpaces(nameEnd, gt);
+        argsEnd = gt;
+        while (argsEnd > argsStart && markup.charAt(argsEnd - 1) == ' ') {
+            argsEnd--;
+        }
+        tagEnd = gt + 1;
+        return true;
+    }
+
+    /**
+     * Traite une balise ouvrante
+     * @return la position à laquelle reprendre l'analyse
+     */
+    private int openTag(int lt) throws MarkupException {
+        switch (tag) {
+            case TAG_BOLD:
+                requireNoArgs(lt);
+                push(lt, bold ? 1 : 0);
+                bold = true;
+                return tagEnd;
+            case TAG_UNDERLINE:
+                requireNoArgs(lt);
+                push(lt, underline ? 1 : 0);
+                underline = true;
+                return tagEnd;
+            case TAG_ALIGN:
+                push(lt, align);
+                align = parseAlign(lt);
+                return tagEnd;
+            case TAG_SIZE: {
+                int space = indexOfSpace(argsStart, argsEnd);
+                int newWidth = parseInt(argsStart, space, 1, MAX_SIZE, lt);
+                int newHeight = space < argsEnd ? parseInt(skipSpaces(space, argsEnd), argsEnd, 1, MAX_SIZE, lt) : newWidth;
+                push(lt, (width << 8) | height);
+                width = newWidth;
+                height = newHeight;
+                return tagEnd;
+            }
+            case TAG_FONT:
+                push(lt, font);
+                font = parseFont(lt);
+                return tagEnd;
+            case TAG_FEED: {
+                int lines = parseInt(argsStart, argsEnd, 1, MAX_FEED_LINES, lt);
+                listener.onSegment(new ReceiptSegment(ReceiptSegment.FEED, "", bold, underline, align, width, height, font, lines));
+                return tagEnd;
+            }
+            case TAG_QRCODE:
+                requireNoArgs(lt);
+                return emitRawContent(ReceiptSegment.QRCODE, 0, lt);
+            case TAG_IMAGE:
+                return emitRawContent(ReceiptSegment.IMAGE, parseImageArg(lt), lt);
+            case TAG_LOGO: {
+                String key = markup.substring(argsStart, argsEnd);
+                if (!NvGraphics.isValidKey(key)) {
+                    throw new MarkupException("Clé invalide pour <LOGO> (deux caractères ASCII imprimables)", lt);
+                }
+                listener.onSegment(new ReceiptSegment(ReceiptSegment.LOGO, key, bold, underline, align, width, height, font, 0));
+                return tagEnd;
+            }
+            default: {
+                int barcodeType = argsStart < argsEnd ? parseBarcodeType(lt) : ReceiptSegment.BARCODE_CODE128;
+                return emitRawContent(ReceiptSegment.BARCODE, barcodeType, lt);
+            }
+        }
+    }
+
+    private void closeTag(int lt) throws MarkupException {
+        if (argsStart != argsEnd) {
+            throw new MarkupException("Balise fermante </" + TAG_NAMES[tag] + "> avec paramètres", lt);
+        }
+        if (depth == 0 || stackTags[depth - 1] != tag) {
+            String expected = depth == 0 ? "aucune balise ouverte" : "attendu </" + TAG_NAMES[stackTags[depth - 1]] + ">";
+            throw new MarkupException("Balise fermante </" + TAG_NAMES[tag] + "> inattendue, " + expected, lt);
+        }
+        depth--;
+        int saved = stackSaved[depth];
+        switch (tag) {
+            case TAG_BOLD:
+                bold = saved != 0;
+                break;
+            case TAG_UNDERLINE:
+                underline = saved != 0;
+                break;
+            case TAG_ALIGN:
+                align = saved;
+                break;
+            case TAG_FONT:
+                font = saved;
+                break;
+            default:
+                width = saved >> 8;
+                height = saved & 0xFF;
+                break;
+        }
+    }
+
+    /**
+     * Émet un QR code ou un code-barres : le contenu jusqu'à la balise fermante n'est pas analysé
+     */
+    private int emitRawContent(int type, int arg, int lt) throws MarkupException {
+        String name = TAG_NAMES[tag];
+        int close = tagEnd;
+        while (true) {
+            close = markup.indexOf("</", close);
+            if (close < 0) {
+                throw new MarkupException("Balise <" + name + "> jamais fermée", lt);
+            }
+            int end = close + 2 + name.length();
+            if (end < length && markup.regionMatches(close + 2, name, 0, name.length()) && markup.charAt(end) == '>') {
+                listener.onSegment(new ReceiptSegment(type, markup.substring(tagEnd, close), bold, underline, align, width, height, font, arg));
+                return end + 1;
+            }
+            close += 2;
+        }
+    }
+
+    private void emitText(int start, int end) {
+        if (end > start) {
+            listener.onSegment(new ReceiptSegment(ReceiptSegment.TEXT, markup.substring(start, end), bold, underline, align, width, height, font, 0));
+        }
+    }
+
+    private void push(int offset, int saved) {
+        if (depth == stackTags.length) {
+            stackTags = grow(stackTags);
+            stackSaved = grow(stackSaved);
+            stackOffsets = grow(stackOffsets);
+        }
+        stackTags[depth] = tag;
+        stackSaved[depth] = saved;
+        stackOffsets[depth] = offset;
+        depth++;
+    }
+
+    private static int[] grow(int[] array) {
+        int[] copy = new int[array.length * 2];
+        System.arraycopy(array, 0, copy, 0, array.length);
+        return copy;
+    }
+
+    private void requireNoArgs(int lt) throws MarkupException {
+        if (argsStart != argsEnd) {
+            throw new MarkupException("La balise <" + TAG_NAMES[tag] + "> n'accepte pas de paramètre", lt);
+        }
+    }
+
+    private int parseAlign(int lt) throws MarkupException {
+        if (argMatches("LEFT")) {
+            return ReceiptSegment.ALIGN_LEFT;
+        }
+        if (argMatches("CENTER")) {
+            return ReceiptSegment.ALIGN_CENTER;
+        }
+        if (argMatches("RIGHT")) {
+            return ReceiptSegment.ALIGN_RIGHT;
+        }
+        throw new MarkupException("Alignement invalide pour <ALIGN> (LEFT, CENTER ou RIGHT)", lt);
+    }
+
+    private int parseFont(int lt) throws MarkupException {
+        if (argMatches("A")) {
+            return ReceiptSegment.FONT_A;
+        }
+        if (argMatches("B")) {
+            return ReceiptSegment.FONT_B;
+        }
+        if (argMatches("C")) {
+            return ReceiptSegment.FONT_C;
+        }
+        throw new MarkupException("Police invalide pour <FONT> (A, B ou C)", lt);
+    }
+
+    private int parseBarcodeType(int lt) throws MarkupException {
+        if (argMatches("CODE128")) {
+            return ReceiptSegment.BARCODE_CODE128;
+        }
+        if (argMatches("CODE39")) {
+            return ReceiptSegment.BARCODE_CODE39;
+        }
+        if (argMatches("EAN13")) {
+            return ReceiptSegment.BARCODE_EAN13;
+        }
+        if (argMatches("EAN8")) {
+            return ReceiptSegment.BARCODE_EAN8;
+        }
+        if (argMatches("UPC_A")) {
+            return ReceiptSegment.BARCODE_UPC_A;
+        }
+        if (argMatches("ITF")) {
+            return ReceiptSegment.BARCODE_ITF;
+        }
+        throw new MarkupException("Type de code-barres invalide pour <BARCODE>", lt);
+    }
+
+    /**
+     * Paramètres de <IMAGE> : mode de tramage et/ou largeur en points, dans n'importe quel ordre
+     */
+    private int parseImageArg(int lt) throws MarkupException {
+        int dither = ImageRasterizer.DITHER_FLOYD_STEINBERG;
+        int widthDots = 0;
+        int start = argsStart;
+        while (start < argsEnd) {
+            int end = indexOfSpace(start, argsEnd);
+            char first = markup.charAt(start);
+            if (first >= '0' && first <= '9') {
+                widthDots = parseInt(start, end, ImageRasterizer.MIN_WIDTH_DOTS, ImageRasterizer.MAX_WIDTH_DOTS, lt);
+            } else if (end - start == 5 && markup.regionMatches(start, "FLOYD", 0, 5)) {
+                dither = ImageRasterizer.DITHER_FLOYD_STEINBERG;
+            } else if (end - start == 7 && markup.regionMatches(start, "ORDERED", 0, 7)) {
+                dither = ImageRasterizer.DITHER_ORDERED;
+            } else {
+                throw new MarkupException("Paramètre invalide pour <IMAGE> (FLOYD, ORDERED ou largeur)", lt);
+            }
+            start = skipSpaces(end, argsEnd);
+        }
+        return ReceiptSegment.imageArg(dither, widthDots);
+    }
+
+    private boolean argMatches(String value) {
+        return argsEnd - argsStart == value.length() && markup.regionMatches(argsStart, value, 0, value.length());
+    }
+
+    private int parseInt(int start, int end, int min, int max, int lt) throws MarkupException {
+        if (start >= end || end - start > 3) {
+            throw new MarkupException("Paramètre numérique invalide pour <" + TAG_NAMES[tag] + ">", lt);
+        }
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            char c = markup.charAt(i);
+            if (c < '0' || c > '9') {
+                throw new MarkupException("Paramètre numérique invalide pour <" + TAG_NAMES[tag] + ">", lt);
+            }
+            value = value * 10 + (c - '0');
+        }
+        if (value < min || value > max) {
+            throw new MarkupException("Paramètre hors limites pour <" + TAG_NAMES[tag] + "> (" + min + " à " + max + ")", lt);
+        }
+        return value;
+    }
+
+    private int skipSpaces(int start, int end) {
+        while (start < end && markup.charAt(start) == ' ') {
+            start++;
+        }
+        return start;
+    }
+
+    private int indexOfSpace(int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (markup.charAt(i) == ' ') {
+                return i;
+            }
+        }
+        return end;
+    }
+}
@@ -0,0 +1,81 @@
+package com.eliberty.cordova.plugin.epsonusb;
+
+/**
+ * Commandes ESC/POS de la mémoire NV graphique de l'imprimante (GS ( L / GS 8 L)
+ * Le SDK n'expose que l'impression d'un logo enregistré (addLogo) : l'enregistrement passe par addCommand
+ *
+ * Un logo est identifié par deux caractères ASCII imprimables (codes 33 à 126), par exemple "LG".
+ */
+final class NvGraphics {
+
+    private static final int MIN_KEY_CODE = 33;
+    private static final int MAX_KEY_CODE = 126;
+    // Taille maximale du paramètre de longueur de GS ( L ; au-delà, GS 8 L sur 4 octets
+    private static final int MAX_SHORT_LENGTH = 0xFFFF;
+    // Taille de la commande d'impression d'un logo (printCommand)
+    static final int PRINT_COMMAND_BYTES = 11;
+
+    private NvGraphics() {
+    }
+
+    static boolean isValidKey(String key) {
+        return key != null && key.length() == 2 && isKeyCode(key.charAt(0)) && isKeyCode(key.charAt(1));
+    }
+
+    private static boolean isKeyCode(char c) {
+        return c >= MIN_KEY_CODE && c <= MAX_KEY_CODE;
+    }
+
+    /**
+     * Suppression du logo (fn 66) puis enregistrement de la trame en format raster (fn 67)
+     */
+    static byte[] defineCommand(String key, RasterImage raster) {
+        byte[] define = new byte[raster.bits.length + 11];
+        int out = 0;
+        // Paramètres de fn 67 : m fn a kc1 kc2 b xL xH yL yH c
+        define[out++] = 0x30;
+        define[out++] = 0x43;
+        define[out++] = 0x30;
+        define[out++] = (byte) key.charAt(0);
+        define[out++] = (byte) key.charAt(1);
+        define[out++] = 0x01;
+        define[out++] = (byte) (raster.width & 0xFF);
+        define[out++] = (byte) (raster.width >> 8);
+        define[out++] = (byte) (raster.height & 0xFF);
+        define[out++] = (byte) (raster.height >> 8);
+        define[out++] = 0x31;
+        System.arraycopy(raster.bits, 0, define, out, raster.bits.length);
+        int parameters = out + raster.bits.length;
+
+        byte[] delete = {0x1D, 0x28, 0x4C, 0x04, 0x00, 0x30, 0x42, (byte) key.charAt(0), (byte) key.charAt(1)};
+        boolean shortForm = parameters <= MAX_SHORT_LENGTH;
+        int headerLength = shortForm ? 5 : 7;
+        byte[] command = new byte[delete.length + headerLength + parameters];
+        System.arraycopy(delete, 0, command, 0, delete.length);
+        int pos = delete.length;
+        if (shortForm) {
+            command[pos++] = 0x1D;
+            command[pos++] = 0x28;
+            command[pos++] = 0x4C;
+            command[pos++] = (byte) (parameters & 0xFF);
+            command[pos++] = (byte) (parameters >> 8);
+        } else {
+            command[pos++] = 0x1D;
+            command[pos++] = 0x38;
+            command[pos++] = 0x4C;
+            command[pos++] = (byte) (parameters & 0xFF);
+            command[pos++] = (byte) ((parameters >> 8) & 0xFF);
+            command[pos++] = (byte) ((parameters >> 16) & 0xFF);
+            command[pos++] = (byte) (parameters >>> 24);
+        }
+        System.arraycopy(define, 0, command, pos, parameters);
+        return command;
+    }
+
+    /**
+     * Impression du logo enregistré (fn 69) à l'échelle 1, comme addLogo
+     */
+    static byte[] printCommand(String key) {
+        return new byte[]{0x1D, 0x28, 0x4C, 0x06, 0x00, 0x30, 0x45, (byte) key.charAt(0), (byte) key.charAt(1), 0x01, 0x01};
+    }
+}
@@ -0,0 +1,78 @@
+package com.eliberty.cordova.plugin.epsonusb;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Logos déjà enregistrés dans la mémoire NV de chaque imprimante (identifiée par son périphérique USB)
+ * Persisté dans les SharedPreferences : un logo n'est renvoyé qu'après un changement d'imprimante
+ * ou un changement d'image. Une imprimante identifiée sans numéro de série (permission USB pas encore
+ * accordée, modèle sans numéro) n'est suivie qu'en mémoire, pour son branchement en cours : un autre
+ * exemplaire du même modèle ne doit jamais passer pour celle qui a reçu le logo.
+ */
+class NvLogoManifest {
+
+    private static final String PREFERENCES_NAME = "EpsonPrinterPlugin.nvLogos";
+
+    private final SharedPreferences preferences;
+    // Imprimante -> (clé du logo -> empreinte de la trame enregistrée), chargé à la première lecture
+    private final Map<String, JSONObject> printers = new HashMap<String, JSONObject>();
+
+    NvLogoManifest(Context context) {
+        this.preferences = context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+    }
+
+    private JSONObject logos(String printerId) {
+        JSONObject logos = printers.get(printerId);
+        if (logos == null) {
+            try {
+                logos = new JSONObject(preferences.getString(printerId, "{}"));
+            } catch (JSONException e) {
+                logos = new JSONObject();
+            }
+            printers.put(printerId, logos);
+        }
+        return logos;
+    }
+
+    /**
+     * Le logo est enregistré sur cette imprimante avec cette empreinte (hash null = n'importe laquelle)
+     */
+    synchronized boolean contains(String printerId, String key, String hash) {
+        String stored = logos(printerId).optString(key, null);
+        return stored != null && (hash == null || hash.equals(stored));
+    }
+
+    /**
+     * Mémorise un logo enregistré sur l'imprimante
+     * @param persistent false pour un identifiant propre au branchement en cours : conservé en mémoire seulement
+     */
+    synchronized void record(String printerId, String key, String hash, boolean persistent) {
+        JSONObject logos = logos(printerId);
+        try {
+            logos.put(key, hash);
+        } catch (JSONException e) {
+            return;
+        }
+        if (persistent) {
+            preferences.edit().putString(printerId, logos.toString()).apply();
+        }
+    }
+
+    /**
+     * Copie des logos enregistrés sur cette imprimante
+     */
+    synchronized JSONObject snapshot(String printerId) {
+        try {
+            return new JSONObject(logos(printerId).toString());
+        } catch (JSONException e) {
+            return new JSONObject();
+        }
+    }
+}
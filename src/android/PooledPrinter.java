@@ -0,0 +1,697 @@
+package com.eliberty.cordova.plugin.epsonusb;
+
+import android.content.Context;
+
+import com.epson.epos2.Epos2Exception;
+import com.epson.epos2.printer.Printer;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.PluginResult;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Une imprimante du pool : sa connexion, sa file d'attente, son verrou et son thread de dispatch
+ * Deux imprimantes du pool impriment en parallèle ; les travaux d'une même imprimante restent sérialisés
+ * Les champs de connexion (driver, isConnected, isTransactionActive) ne sont modifiés que sémaphore acquis
+ */
+class PooledPrinter implements PrinterDriver.Listener {
+
+    final String name;
+    // Cible de connexion du SDK ("USB:", "USB:/dev/bus/usb/001/002", "TCP:192.168.1.20", "BT:..."...)
+    private volatile String target;
+    // Cible changée (configurePrinter) : la session ouverte sur l'ancienne cible doit être fermée avant le
+    // prochain travail, même si la déconnexion différée n'a pas pu avoir lieu (imprimante occupée)
+    private boolean targetChanged = false;
+    // Session persistante propre à cette imprimante (configurePrinter) ; null : réglage par défaut
+    volatile Boolean keepAlive = null;
+
+    // Pilote de cette imprimante, créé à la première impression
+    PrinterDriver driver = null;
+    // Sémaphore pour synchroniser l'accès à l'imprimante (1 seul permit = mutex)
+    // Contrairement à ReentrantLock, un Semaphore peut être libéré par n'importe quel thread
+    final Semaphore semaphore = new Semaphore(1, true);
+    // Réponse asynchrone attendue par le thread de dispatch (onReceive)
+    volatile PendingReceive pendingReceive = null;
+    // File d'attente des impressions, consommée par le thread de dispatch de cette imprimante
+    final PrintJobQueue jobQueue = new PrintJobQueue();
+    private final ExecutorService dispatchExecutor = Executors.newSingleThreadExecutor();
+    private boolean dispatchStarted = false;
+    // Travail retiré de la file et en cours de traitement
+    volatile PrintJob currentJob = null;
+    // Construction des commandes : l'état émis (style, alignement...) est propre à chaque imprimante
+    final CommandBuilder commandBuilder = new CommandBuilder();
+    volatile boolean isConnected = false;
+    volatile boolean isTransactionActive = false;
+    // Timestamp du dernier sendData
+    volatile long lastSendDataTimestamp = 0;
+    // Durées observées de l'attente du callback (par taille d'envoi) et de la connexion (AdaptiveTimeout)
+    final AdaptiveTimeout.Model callbackModel = new AdaptiveTimeout.Model();
+    final AdaptiveTimeout.Model connectModel = new AdaptiveTimeout.Model();
+    // Échecs de connexion répétés : les travaux échouent immédiatement jusqu'à la prochaine tentative d'essai
+    final CircuitBreaker breaker = new CircuitBreaker();
+    private final Random retryRandom = new Random();
+
+    // Sondes de disponibilité et déconnexion après inactivité, sans bloquer les autres imprimantes
+    final ScheduledExecutorService sessionExecutor = Executors.newSingleThreadScheduledExecutor();
+    private volatile ScheduledFuture<?> idleDisconnectFuture = null;
+
+    // Dernier statut connu (moniteur du SDK, impressions, sondes)
+    final PrinterStatusCache statusCache = new PrinterStatusCache();
+    volatile boolean isMonitoring = false;
+    // Abonnés JavaScript aux changements de statut de cette imprimante
+    final List<CallbackContext> statusSubscribers = new CopyOnWriteArrayList<CallbackContext>();
+    // Appels isPrinterAvailable en attente de la sonde en cours : une seule sonde à la fois
+    final List<CallbackContext> probeWaiters = new ArrayList<CallbackContext>();
+    boolean probeInFlight = false;
+
+    // Occupation : temps passé sémaphore acquis par un travail depuis windowStart
+    private final AtomicLong busyNanos = new AtomicLong(0);
+    private final AtomicLong jobsHandled = new AtomicLong(0);
+    private volatile long busySince = 0;
+    private volatile long windowStart = System.nanoTime();
+
+    PooledPrinter(String name, String target) {
+        this.name = name;
+        this.target = target;
+    }
+
+    String getTarget() {
+        return target;
+    }
+
+    synchronized void setTarget(String target) {
+        this.target = target;
+        targetChanged = true;
+        breaker.reset();
+    }
+
+    /**
+     * Ferme la session ouverte sur l'ancienne cible après un changement de cible (sémaphore acquis)
+     */
+    void closeRetargetedSession() {
+        synchronized (this) {
+            if (!targetChanged) {
+                return;
+            }
+            targetChanged = false;
+        }
+        disconnect();
+    }
+
+    synchronized boolean isDispatchStarted() {
+        return dispatchStarted;
+    }
+
+    /**
+     * Démarre le thread de dispatch (une seule fois)
+     */
+    synchronized void startDispatch(Runnable loop) {
+        if (dispatchStarted) {
+            return;
+        }
+        dispatchStarted = true;
+        dispatchExecutor.execute(loop);
+    }
+
+    /**
+     * Résultat attendu de onReceive pour un sendData
+     */
+    static class PendingReceive {
+        final CountDownLatch latch = new CountDownLatch(1);
+        volatile int code = PrinterResponses.ERR_FAILURE;
+        volatile String printJobId = null;
+    }
+
+    /**
+     * Callback de réception de l'imprimante (ReceiveListener du SDK, via le pilote)
+     * Appelé après que sendData ait terminé l'impression
+     * ATTENTION: Ce callback est appelé sur un thread DIFFÉRENT du thread appelant :
+     * il transmet seulement le résultat au thread de dispatch, qui attend la réponse
+     * puis effectue le nettoyage dans l'ordre recommandé par Epson (voir endPrintTransaction)
+     */
+    @Override
+    public void onReceive(int code, PrinterDriver.Status status, String printJobId) {
+        // Le statut joint au résultat alimente le cache (papier, capot après l'impression)
+        updateStatusCache(status, "printed");
+        PendingReceive receive = pendingReceive;
+        pendingReceive = null;
+        if (receive == null) {
+            // Callback tardif : le timeout de sécurité a déjà effectué le nettoyage
+            return;
+        }
+        receive.code = code;
+        receive.printJobId = printJobId;
+        receive.latch.countDown();
+    }
+
+    /**
+     * Changement de statut signalé par le moniteur du SDK (StatusChangeListener)
+     * Actif uniquement sur la session persistante, voir startStatusMonitor()
+     */
+    @Override
+    public void onStatusChange(int eventType) {
+        boolean changed;
+        switch (eventType) {
+            case Printer.EVENT_ONLINE:
+                changed = statusCache.setOnline(1, "online");
+                break;
+            case Printer.EVENT_OFFLINE:
+                changed = statusCache.setOnline(0, "offline");
+                break;
+            case Printer.EVENT_POWER_OFF:
+                changed = statusCache.setConnection(0, "powerOff") | statusCache.setOnline(0, "powerOff");
+                break;
+            case Printer.EVENT_COVER_OPEN:
+                changed = statusCache.setCoverOpen(1, "coverOpen");
+                break;
+            case Printer.EVENT_COVER_CLOSE:
+                changed = statusCache.setCoverOpen(0, "coverClose");
+                break;
+            case Printer.EVENT_PAPER_OK:
+                changed = statusCache.setPaper(PrinterStatusCache.PAPER_OK, "paperOk");
+                break;
+            case Printer.EVENT_PAPER_NEAR_END:
+                changed = statusCache.setPaper(PrinterStatusCache.PAPER_NEAR_END, "paperNearEnd");
+                break;
+            case Printer.EVENT_PAPER_EMPTY:
+                changed = statusCache.setPaper(PrinterStatusCache.PAPER_EMPTY, "paperEmpty");
+                break;
+            default:
+                // Tiroir-caisse : non suivi
+                return;
+        }
+        if (changed) {
+            notifyStatusSubscribers();
+        }
+    }
+
+    /**
+     * Perte ou rétablissement de la connexion signalé par le SDK (ConnectionListener)
+     */
+    @Override
+    public void onConnectionChange(boolean connected) {
+        boolean changed;
+        if (connected) {
+            changed = statusCache.setConnection(1, "reconnect");
+        } else {
+            changed = statusCache.setConnection(0, "disconnect");
+        }
+        if (changed) {
+            notifyStatusSubscribers();
+        }
+    }
+
+    /**
+     * Met à jour le cache avec un statut lu sur l'imprimante et notifie les abonnés en cas de changement
+     */
+    void updateStatusCache(PrinterDriver.Status status, String event) {
+        if (status == null) {
+            return;
+        }
+        int paper = status.paper;
+        if (paper != Printer.PAPER_OK && paper != Printer.PAPER_NEAR_END && paper != Printer.PAPER_EMPTY) {
+            paper = PrinterStatusCache.UNKNOWN;
+        }
+        boolean changed = statusCache.update(
+                toStatusValue(status.connection),
+                toStatusValue(status.online),
+                toStatusValue(status.coverOpen),
+                paper,
+                event);
+        if (changed) {
+            notifyStatusSubscribers();
+        }
+    }
+
+    private static int toStatusValue(int value) {
+        if (value == Printer.TRUE) {
+            return 1;
+        }
+        if (value == Printer.FALSE) {
+            return 0;
+        }
+        return PrinterStatusCache.UNKNOWN;
+    }
+
+    /**
+     * Statut courant pour le JavaScript, avec le nom de l'imprimante
+     */
+    JSONObject statusJson() {
+        JSONObject status = statusCache.toJson();
+        try {
+            status.put("printer", name);
+        } catch (JSONException e) {
+            // Ignore JSON error
+        }
+        return status;
+    }
+
+    /**
+     * Pousse le statut courant à tous les abonnés (callback conservé)
+     */
+    void notifyStatusSubscribers() {
+        if (statusSubscribers.isEmpty()) {
+            return;
+        }
+        JSONObject status = statusJson();
+        for (CallbackContext subscriber : statusSubscribers) {
+            PluginResult result = new PluginResult(PluginResult.Status.OK, status);
+            result.setKeepCallback(true);
+            subscriber.sendPluginResult(result);
+        }
+    }
+
+    /**
+     * Démarre le moniteur de statut du SDK sur la connexion ouverte (session persistante)
+     */
+    void startStatusMonitor() {
+        if (isMonitoring || driver == null || !isConnected) {
+            return;
+        }
+        try {
+            driver.startMonitor();
+            isMonitoring = true;
+        } catch (Epos2Exception e) {
+            // Sans moniteur, le cache est rafraîchi par les impressions et les sondes
+        }
+    }
+
+    /**
+     * Arrête le moniteur de statut ; DOIT être appelé avant disconnect()
+     */
+    void stopStatusMonitor() {
+        if (!isMonitoring) {
+            return;
+        }
+        isMonitoring = false;
+        try {
+            if (driver != null) {
+                driver.stopMonitor();
+            }
+        } catch (Exception e) {
+            // Ignore error
+        }
+    }
+
+    /**
+     * Nettoyage après le résultat d'un sendData (ou après un échec dans la transaction)
+     *
+     * IMPORTANT (recommandation support Epson): Le nettoyage doit TOUJOURS être effectué
+     * dans cet ordre, même en cas d'erreur :
+     * 1. endTransaction()
+     * 2. disconnect() - sauf si la connexion est conservée (lot en cours, session persistante)
+     * 3. clearCommandBuffer()
+     */
+    void endPrintTransaction(boolean keepConnection) {
+        PrinterDriver printer = driver;
+
+        // 1. Fin de la transaction - DOIT être fait EN PREMIER
+        try {
+            if (isTransactionActive && printer != null) {
+                printer.endTransaction();
+            }
+        } catch (Epos2Exception e) {
+            // Continue cleanup
+        } finally {
+            isTransactionActive = false;
+        }
+
+        // 2. Déconnexion (moniteur de statut arrêté au préalable)
+        if (!keepConnection) {
+            stopStatusMonitor();
+            try {
+                if (printer != null && isConnected) {
+                    printer.disconnect();
+                }
+            } catch (Epos2Exception e) {
+                // Continue cleanup
+            } finally {
+                isConnected = false;
+            }
+        }
+
+        // 3. Vider le buffer de commandes - EN DERNIER (nettoie l'état interne du SDK)
+        try {
+            if (printer != null) {
+                printer.clearCommandBuffer();
+            }
+        } catch (Exception e) {
+            // Continue cleanup
+        }
+    }
+
+    /**
+     * Initialise le pilote si nécessaire
+     */
+    boolean initialize(PrinterDriver.Factory factory, Context context) {
+        if (driver != null) {
+            return true;
+        }
+
+        try {
+            driver = factory.create(context);
+            // Enregistrer le listener AVANT toute opération
+            driver.setListener(this);
+            return true;
+        } catch (Epos2Exception e) {
+            driver = null;
+            return false;
+        }
+    }
+
+    /**
+     * Connecte l'imprimante sur sa cible
+     * @param address cible passée au SDK (adresse IP en cache pour une cible TCP désignée par adresse MAC)
+     * @param timeoutMs timeout de chaque tentative de connexion
+     */
+    boolean connect(String address, int timeoutMs) {
+        if (driver == null) {
+            return false;
+        }
+
+        // Jamais de réutilisation d'une session ouverte sur une autre cible
+        closeRetargetedSession();
+        if (isConnected) {
+            // Vérifier que la connexion est toujours valide
+            try {
+                PrinterDriver.Status status = driver.getStatus();
+                updateStatusCache(status, "connect");
+                if (status != null && status.connection == Printer.TRUE) {
+                    return true;
+                }
+                // La connexion semble perdue, réinitialiser le flag
+                stopStatusMonitor();
+                isConnected = false;
+            } catch (Exception e) {
+                stopStatusMonitor();
+                isConnected = false;
+            }
+        }
+
+        // Tentative de connexion avec retry
+        int maxRetries = 2;
+        int errorCode = PrinterResponses.ERR_FAILURE;
+        for (int attempt = 1; attempt <= maxRetries; attempt++) {
+            long start = System.currentTimeMillis();
+            try {
+                driver.connect(address, timeoutMs);
+                connectModel.record(0, System.currentTimeMillis() - start);
+                breaker.recordSuccess();
+                isConnected = true;
+                return true;
+            } catch (Epos2Exception e) {
+                errorCode = e.getErrorStatus();
+                if (errorCode == PrinterResponses.ERR_TIMEOUT) {
+                    connectModel.recordTimeout(0);
+                }
+
+                // Si déjà connecté, considérer comme OK
+                if (errorCode == PrinterResponses.ERR_ALREADY_OPENED) {
+                    breaker.recordSuccess();
+                    isConnected = true;
+                    return true;
+                }
+
+                // Si c'est une erreur récupérable et qu'on a des retries restants
+                if (attempt < maxRetries && (errorCode == PrinterResponses.ERR_CONNECT || errorCode == PrinterResponses.ERR_TIMEOUT)) {
+                    try {
+                        // Délai exponentiel avec gigue avant de réessayer
+                        Thread.sleep(CircuitBreaker.backoffMs(retryRandom, attempt, 250, 2000));
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        }
+        breaker.recordFailure(errorCode);
+        return false;
+    }
+
+    /**
+     * Déconnecte l'imprimante proprement
+     */
+    void disconnect() {
+        if (driver == null || !isConnected) {
+            return;
+        }
+
+        stopStatusMonitor();
+        try {
+            driver.disconnect();
+            isConnected = false;
+        } catch (Exception e) {
+            isConnected = false;
+        }
+    }
+
+    /**
+     * Libère complètement les ressources du pilote
+     */
+    void release() {
+        if (driver == null) {
+            return;
+        }
+
+        try {
+            driver.clearCommandBuffer();
+        } catch (Exception e) {
+            // Ignore error
+        }
+
+        if (isTransactionActive) {
+            try {
+                driver.endTransaction();
+                isTransactionActive = false;
+            } catch (Exception e) {
+                // Ignore error
+            }
+        }
+
+        disconnect();
+
+        try {
+            driver.setListener(null);
+        } catch (Exception e) {
+            // Ignore error
+        }
+
+        driver = null;
+    }
+
+    /**
+     * Nettoyage forcé après timeout du callback (recommandation support Epson)
+     * Appelé quand onReceive n'est pas reçu dans le délai imparti
+     * DOIT effectuer le même nettoyage que endPrintTransaction pour éviter ERR_CONNECT
+     */
+    void forceCleanupAfterTimeout() {
+        PrinterDriver printer = driver;
+
+        // 1. à 3. endTransaction, disconnect, clearCommandBuffer
+        endPrintTransaction(false);
+
+        // 4. forceRecover() - UNIQUEMENT en cas de timeout (recommandation Support Epson)
+        // forceRecover() est réservé aux situations de récupération après erreur persistante
+        // Le timeout du callback est exactement ce type de situation
+        try {
+            if (printer != null) {
+                printer.forceRecover(3000);
+            }
+        } catch (Exception e) {
+            // Continue cleanup
+        }
+    }
+
+    /**
+     * Programme la déconnexion de la session persistante après idleTimeoutMs d'inactivité
+     */
+    void scheduleIdleDisconnect(long idleTimeoutMs) {
+        cancelIdleDisconnect();
+        try {
+            idleDisconnectFuture = sessionExecutor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    disconnectIdleSession();
+                }
+            }, idleTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            // Executor arrêté (imprimante retirée) : la session est fermée par release()
+        }
+    }
+
+    /**
+     * Annule la déconnexion programmée (une nouvelle impression réutilise la session)
+     */
+    void cancelIdleDisconnect() {
+        ScheduledFuture<?> future = idleDisconnectFuture;
+        idleDisconnectFuture = null;
+        if (future != null) {
+            future.cancel(false);
+        }
+    }
+
+    /**
+     * Ferme la session sans attendre le délai d'inactivité (keep-alive désactivé, cible modifiée)
+     */
+    void disconnectIdleSessionLater() {
+        cancelIdleDisconnect();
+        try {
+            sessionExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    disconnectIdleSession();
+                }
+            });
+        } catch (Exception e) {
+            // Executor arrêté : la session est fermée par release()
+        }
+    }
+
+    /**
+     * Ferme la session persistante si aucune impression n'est en cours
+     * Si le sémaphore est pris, l'impression en cours reprogrammera la déconnexion à sa fin
+     */
+    private void disconnectIdleSession() {
+        if (!semaphore.tryAcquire()) {
+            return;
+        }
+        try {
+            if (driver != null && isConnected && !isTransactionActive) {
+                disconnect();
+                try {
+                    driver.clearCommandBuffer();
+                } catch (Exception e) {
+                    // Ignore error
+                }
+            }
+        } finally {
+            semaphore.release();
+        }
+    }
+
+    /**
+     * Début d'un travail sur l'imprimante (sémaphore acquis par le thread de dispatch)
+     */
+    void markBusy() {
+        busySince = System.nanoTime();
+    }
+
+    /**
+     * Fin d'un travail : le temps d'occupation est ajouté au compteur
+     */
+    void markIdle() {
+        long since = busySince;
+        busySince = 0;
+        if (since != 0) {
+            busyNanos.addAndGet(System.nanoTime() - Math.max(since, windowStart));
+            jobsHandled.incrementAndGet();
+        }
+    }
+
+    /**
+     * Remet à zéro la période de mesure de l'occupation (resetMetrics)
+     */
+    void resetUtilization() {
+        windowStart = System.nanoTime();
+        busyNanos.set(0);
+        jobsHandled.set(0);
+    }
+
+    /**
+     * Occupation de l'imprimante depuis le début de la période de mesure
+     * utilization : part du temps passée à traiter un travail (0 à 1)
+     */
+    JSONObject utilizationJson() {
+        long now = System.nanoTime();
+        long start = windowStart;
+        long busy = busyNanos.get();
+        long since = busySince;
+        if (since != 0) {
+            busy += now - Math.max(since, start);
+        }
+        long elapsed = Math.max(1, now - start);
+        JSONObject json = new JSONObject();
+        try {
+            json.put("jobs", jobsHandled.get());
+            json.put("busyMs", busy / 1000000);
+            json.put("utilization", Math.min(1.0, (double) busy / elapsed));
+        } catch (JSONException e) {
+            // Ignore JSON error
+        }
+        return json;
+    }
+
+    /**
+     * État de l'imprimante pour getPrinters
+     */
+    JSONObject toJson() {
+        JSONObject json = utilizationJson();
+        PrintJob running = currentJob;
+        try {
+            json.put("name", name);
+            json.put("target", target);
+            json.put("port", PrinterPool.portOf(target));
+            json.put("connected", isConnected);
+            json.put("running", running != null ? running.id : JSONObject.NULL);
+            json.put("queueDepth", jobQueue.size());
+            json.put("online", statusCache.isOnline());
+            json.put("circuit", breaker.toJson());
+        } catch (JSONException e) {
+            // Ignore JSON error
+        }
+        return json;
+    }
+
+    /**
+     * Ferme la file : le thread de dispatch s'arrête après le travail en cours
+     * @return les travaux qui n'ont pas été dispatchés
+     */
+    List<PrintJob> close() {
+        cancelIdleDisconnect();
+        return jobQueue.close();
+    }
+
+    /**
+     * Retrait de l'imprimante du pool : appelé par son thread de dispatch une fois la file fermée
+     */
+    void retire() {
+        semaphore.acquireUninterruptibly();
+        try {
+            release();
+        } finally {
+            semaphore.release();
+        }
+        statusSubscribers.clear();
+        sessionExecutor.shutdown();
+        dispatchExecutor.shutdown();
+    }
+
+    /**
+     * Arrêt immédiat (destruction du plugin) : débloque l'attente de onReceive et libère le pilote
+     */
+    void shutdown() {
+        PendingReceive receive = pendingReceive;
+        pendingReceive = null;
+        if (receive != null) {
+            receive.latch.countDown();
+        }
+        statusSubscribers.clear();
+        close();
+        dispatchExecutor.shutdownNow();
+        sessionExecutor.shutdownNow();
+        release();
+    }
+}
@@ -0,0 +1,141 @@
+package com.eliberty.cordova.plugin.epsonusb;
+
+import org.apache.cordova.CallbackContext;
+
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Travail d'impression en attente dans la file du plugin : un ticket (printText), un lot (printBatch)
+ * ou l'enregistrement d'un logo en mémoire NV (uploadLogo)
+ */
+class PrintJob {
+
+    // Files de priorité (FIFO à l'intérieur de chaque file)
+    static final int PRIORITY_HIGH = 0;
+    static final int PRIORITY_NORMAL = 1;
+    static final int PRIORITY_LOW = 2;
+    static final int PRIORITY_COUNT = 3;
+
+    // États du travail
+    static final int STATE_QUEUED = 0;
+    static final int STATE_RUNNING = 1;
+    static final int STATE_DONE = 2;
+
+    private static final AtomicInteger sequence = new AtomicInteger(0);
+
+    final String id;
+    final List<Receipt> receipts;
+    final boolean batch;
+    // Enregistrement de logo, null pour une impression
+    final LogoUpload logo;
+    final int priority;
+    // Date limite de démarrage (epoch ms), 0 = aucune
+    final long deadline;
+    final long enqueuedAt;
+    final long enqueuedNanos;
+    final CallbackContext callbackContext;
+    // Événements de progression (queued, position, connecting, sent) envoyés avant le résultat final
+    final boolean reportEvents;
+    // Dernière position envoyée dans un événement, écrite par le thread de dispatch
+    int lastReportedPosition = 0;
+    // Entrée du spool persistant (PrintSpool), 0 si le travail n'est pas spoolé
+    volatile long spoolId = 0;
+    // Tickets compilés (même indice que receipts), remplis par le pool de compilation pendant l'attente
+    // en file ; lus par le thread de dispatch après la fin de "compilation"
+    final CompiledReceipt[] compiled;
+    volatile Future<?> compilation = null;
+
+    private final AtomicInteger state = new AtomicInteger(STATE_QUEUED);
+    private volatile long startedAt = 0;
+    // Durée de chaque phase en microsecondes (PrintMetrics.PHASE_*), écrites par le thread de dispatch
+    final long[] timings = new long[PrintMetrics.PHASE_COUNT];
+    // Taille estimée des commandes envoyées
+    long bytes = 0;
+
+    PrintJob(String id, List<Receipt> receipts, boolean batch, LogoUpload logo, int priority, long deadline, boolean reportEvents, CallbackContext callbackContext) {
+        this.id = id != null && !id.isEmpty() ? id : "job-" + sequence.incrementAndGet();
+        this.receipts = receipts;
+        this.compiled = new CompiledReceipt[receipts != null ? receipts.size() : 0];
+        this.batch = batch;
+        this.logo = logo;
+        this.priority = priority;
+        this.deadline = deadline;
+        this.enqueuedAt = System.currentTimeMillis();
+        this.enqueuedNanos = System.nanoTime();
+        this.reportEvents = reportEvents;
+        this.callbackContext = callbackContext;
+    }
+
+    /**
+     * Convertit le nom de priorité JavaScript ("high", "normal", "low") en file
+     */
+    static int parsePriority(String name) {
+        if ("high".equals(name)) {
+            return PRIORITY_HIGH;
+        }
+        if ("low".equals(name)) {
+            return PRIORITY_LOW;
+        }
+        return PRIORITY_NORMAL;
+    }
+
+    static String priorityName(int priority) {
+        switch (priority) {
+            case PRIORITY_HIGH:
+                return "high";
+            case PRIORITY_LOW:
+                return "low";
+            default:
+                return "normal";
+        }
+    }
+
+    /**
+     * Passe le travail à l'état "en cours" ; échoue s'il a été annulé ou expiré entre-temps
+     */
+    boolean markStarted() {
+        if (state.compareAndSet(STATE_QUEUED, STATE_RUNNING)) {
+            startedAt = System.currentTimeMillis();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Termine le travail ; retourne false s'il était déjà terminé (évite les doubles notifications)
+     */
+    boolean markDone() {
+        return state.getAndSet(STATE_DONE) != STATE_DONE;
+    }
+
+    /**
+     * Ajoute la durée d'une phase depuis startNanos (cumulée sur les groupes d'un lot)
+     */
+    void addTiming(int phase, long startNanos) {
+        timings[phase] += (System.nanoTime() - startNanos) / 1000;
+    }
+
+    /**
+     * Contexte des erreurs retournées pour ce travail
+     */
+    String context() {
+        if (logo != null) {
+            return "uploadLogo";
+        }
+        return batch ? "printBatch" : "printText";
+    }
+
+    boolean isExpired(long now) {
+        return deadline > 0 && now > deadline;
+    }
+
+    int getState() {
+        return state.get();
+    }
+
+    long getStartedAt() {
+        return startedAt;
+    }
+}
@@ -0,0 +1,162 @@
+package com.eliberty.cordova.plugin.epsonusb;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * File d'attente des impressions : une file FIFO par priorité, profondeur bornée
+ * Les travaux sont consommés par un unique thread de dispatch du plugin
+ */
+class PrintJobQueue {
+
+    // Profondeur maximale par défaut au-delà de laquelle les nouveaux travaux sont rejetés
+    static final int DEFAULT_MAX_DEPTH = 20;
+    // Durée estimée d'un ticket tant qu'aucune mesure n'est disponible (en millisecondes)
+    private static final long INITIAL_SERVICE_TIME_MS = 3000;
+    // Poids de la dernière mesure dans la moyenne mobile exponentielle
+    private static final double SERVICE_TIME_ALPHA = 0.2;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private final ArrayDeque<PrintJob>[] lanes = new ArrayDeque[PrintJob.PRIORITY_COUNT];
+    private int size = 0;
+    private int maxDepth = DEFAULT_MAX_DEPTH;
+    private double averageServiceTimeMs = INITIAL_SERVICE_TIME_MS;
+    private boolean closed = false;
+
+    PrintJobQueue() {
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i] = new ArrayDeque<PrintJob>();
+        }
+    }
+
+    /**
+     * Ajoute un travail en fin de sa file de priorité
+     * @return false si la file est pleine (délestage) ou fermée
+     */
+    synchronized boolean offer(PrintJob job) {
+        if (closed || size >= maxDepth) {
+            return false;
+        }
+        lanes[job.priority].addLast(job);
+        size++;
+        notifyAll();
+        return true;
+    }
+
+    /**
+     * Retire le prochain travail (priorité la plus haute, puis ordre d'arrivée)
+     * Bloque tant que la file est vide
+     * @return null si la file a été fermée
+     */
+    synchronized PrintJob take() throws InterruptedException {
+        while (size == 0 && !closed) {
+            wait();
+        }
+        if (closed) {
+            return null;
+        }
+        for (ArrayDeque<PrintJob> lane : lanes) {
+            PrintJob job = lane.pollFirst();
+            if (job != null) {
+                size--;
+                return job;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Retire un travail encore en attente (annulation ou expiration)
+     */
+    synchronized boolean remove(PrintJob job) {
+        if (lanes[job.priority].remove(job)) {
+            size--;
+            return true;
+        }
+        return false;
+    }
+
+    synchronized PrintJob find(String jobId) {
+        for (ArrayDeque<PrintJob> lane : lanes) {
+            for (PrintJob job : lane) {
+                if (job.id.equals(jobId)) {
+                    return job;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Position du travail dans l'ordre de dispatch (1 = prochain travail), 0 s'il n'est plus en attente
+     */
+    synchronized int positionOf(PrintJob job) {
+        int position = 0;
+        for (ArrayDeque<PrintJob> lane : lanes) {
+            for (PrintJob queued : lane) {
+                position++;
+                if (queued == job) {
+                    return position;
+                }
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Copie des travaux en attente dans l'ordre de dispatch
+     */
+    synchronized List<PrintJob> snapshot() {
+        List<PrintJob> jobs = new ArrayList<PrintJob>(size);
+        for (ArrayDeque<PrintJob> lane : lanes) {
+            jobs.addAll(lane);
+        }
+        return jobs;
+    }
+
+    /**
+     * Vide la file et retourne les travaux qui n'ont pas été dispatchés
+     */
+    synchronized List<PrintJob> close() {
+        closed = true;
+        List<PrintJob> pending = new ArrayList<PrintJob>(size);
+        for (ArrayDeque<PrintJob> lane : lanes) {
+            Iterator<PrintJob> it = lane.iterator();
+            while (it.hasNext()) {
+                pending.add(it.next());
+                it.remove();
+            }
+        }
+        size = 0;
+        notifyAll();
+        return pending;
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    synchronized int getMaxDepth() {
+        return maxDepth;
+    }
+
+    synchronized void setMaxDepth(int maxDepth) {
+        this.maxDepth = maxDepth;
+    }
+
+    /**
+     * Met à jour la durée moyenne d'un ticket (de la prise de l'imprimante jusqu'au résultat)
+     */
+    synchronized void recordServiceTime(long durationMs) {
+        averageServiceTimeMs += SERVICE_TIME_ALPHA * (durationMs - averageServiceTimeMs);
+    }
+
+    /**
+     * Estime l'attente d'un travail ayant "jobsAhead" travaux devant lui (impression en cours comprise)
+     */
+    synchronized long estimateWaitMs(int jobsAhead) {
+        return Math.round(averageServiceTimeMs * jobsAhead);
+    }
+}
@@ -0,0 +1,141 @@
+package com.eliberty.cordova.plugin.epsonusb;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Métriques d'impression : latence par phase, taille des travaux, erreurs par code et par contexte
+ * Enregistrement sans verrou, lu par getMetrics
+ */
+class PrintMetrics {
+
+    // Phases d'un travail (durées en microsecondes)
+    static final int PHASE_QUEUE_WAIT = 0;
+    static final int PHASE_LOCK_WAIT = 1;
+    static final int PHASE_CONNECT = 2;
+    static final int PHASE_STATUS = 3;
+    static final int PHASE_BEGIN = 4;
+    static final int PHASE_BUILD = 5;
+    static final int PHASE_PRINT = 6;
+    // Compilation des tickets (pool de compilation, pendant l'attente en file) et attente de sa fin
+    // par le thread de dispatch, nulle si le travail était compilé à temps
+    static final int PHASE_COMPILE = 7;
+    static final int PHASE_COMPILE_WAIT = 8;
+    static final int PHASE_TOTAL = 9;
+    static final int PHASE_COUNT = 10;
+    static final String[] PHASE_NAMES = {"queueWait", "lockWait", "connect", "getStatus", "beginTransaction", "buildCommands", "sendData",
+            "compile", "compileWait", "total"};
+
+    private final Histogram[] phases = new Histogram[PHASE_COUNT];
+    private final Histogram jobBytes = new Histogram();
+    private final AtomicLong jobsPrinted = new AtomicLong(0);
+    private final AtomicLong jobsFailed = new AtomicLong(0);
+    private final ConcurrentHashMap<Integer, AtomicLong> errorsByCode = new ConcurrentHashMap<Integer, AtomicLong>();
+    private final ConcurrentHashMap<String, AtomicLong> errorsByContext = new ConcurrentHashMap<String, AtomicLong>();
+    private volatile long since = System.currentTimeMillis();
+
+    PrintMetrics() {
+        for (int i = 0; i < PHASE_COUNT; i++) {
+            phases[i] = new Histogram();
+        }
+    }
+
+    /**
+     * Enregistre les durées d'un travail terminé (phases non mesurées à 0 ignorées, sauf attente et total)
+     */
+    void recordJob(long[] timings, long bytes, boolean success) {
+        for (int i = 0; i < PHASE_COUNT; i++) {
+            if (timings[i] > 0 || i == PHASE_QUEUE_WAIT || i == PHASE_TOTAL) {
+                phases[i].record(timings[i]);
+            }
+        }
+        if (bytes > 0) {
+            jobBytes.record(bytes);
+        }
+        if (success) {
+            jobsPrinted.incrementAndGet();
+        } else {
+            jobsFailed.incrementAndGet();
+        }
+    }
+
+    void recordError(int code, String context) {
+        increment(errorsByCode, code);
+        if (context != null) {
+            increment(errorsByContext, context);
+        }
+    }
+
+    private static <K> void increment(ConcurrentHashMap<K, AtomicLong> counters, K key) {
+        AtomicLong counter = counters.get(key);
+        if (counter == null) {
+            AtomicLong created = new AtomicLong();
+            counter = counters.putIfAbsent(key, created);
+            if (counter == null) {
+                counter = created;
+            }
+        }
+        counter.incrementAndGet();
+    }
+
+    void reset() {
+        for (Histogram histogram : phases) {
+            histogram.reset();
+        }
+        jobBytes.reset();
+        jobsPrinted.set(0);
+        jobsFailed.set(0);
+        errorsByCode.clear();
+        errorsByContext.clear();
+        since = System.currentTimeMillis();
+    }
+
+    /**
+     * Durées d'un travail en millisecondes, pour la réponse au JavaScript
+     */
+    static JSONObject timingsToJson(long[] timings) {
+        JSONObject json = new JSONObject();
+        try {
+            for (int i = 0; i < PHASE_COUNT; i++) {
+                json.put(PHASE_NAMES[i] + "Ms", timings[i] / 1000.0);
+            }
+        } catch (JSONException e) {
+            // Ignore JSON error
+        }
+        return json;
+    }
+
+    JSONObject toJson() {
+        JSONObject json = new JSONObject();
+        try {
+            json.put("since", since);
+            json.put("jobsPrinted", jobsPrinted.get());
+            json.put("jobsFailed", jobsFailed.get());
+            JSONObject phasesJson = new JSONObject();
+            for (int i = 0; i < PHASE_COUNT; i++) {
+                phasesJson.put(PHASE_NAMES[i], phases[i].toJson(1000.0));
+            }
+            json.put("phasesMs", phasesJson);
+            json.put("bytesPerJob", jobBytes.toJson(1.0));
+            JSONObject byCode = new JSONObject();
+            for (Map.Entry<Integer, AtomicLong> entry : errorsByCode.entrySet()) {
+                byCode.put(String.valueOf(entry.getKey()), entry.getValue().get());
+            }
+            JSONObject byContext = new JSONObject();
+            for (Map.Entry<String, AtomicLong> entry : errorsByContext.entrySet()) {
+                byContext.put(entry.getKey(), entry.getValue().get());
+            }
+            JSONObject errors = new JSONObject();
+            errors.put("byCode", byCode);
+            errors.put("byContext", byContext);
+            json.put("errors", errors);
+        } catch (JSONException e) {
+            // Ignore JSON error
+        }
+        return json;
+    }
+}
@@ -0,0 +1,737 @@
+package com.eliberty.cordova.plugin.epsonusb;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.BufferedInputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Spool persistant des impressions : un travail reste dans le journal tant qu'il n'est pas imprimé,
+ * et est rejoué au redémarrage de l'application ou au rebranchement de l'imprimante
+ *
+ * Journal en ajout seul : en-tête (MAGIC, VERSION) puis enregistrements
+ * [type:1][longueur:4][contenu][crc32:4]. ADD contient le travail (tickets en balisage ou en segments),
+ * DONE son identifiant ; un ADD plus récent remplace le précédent (tickets restants d'un lot, état incertain).
+ * Un travail incertain (données transmises sans confirmation de l'imprimante) n'est rejoué que par
+ * replaySpool : il a pu être imprimé, un rejeu automatique risquerait un doublon.
+ * Les écritures sont regroupées sur un thread dédié avec un seul fsync par fenêtre de FSYNC_DELAY_MS :
+ * le chemin d'impression ne touche jamais au disque. Le journal est réécrit avec les seules entrées
+ * vivantes lorsqu'il est majoritairement composé d'entrées terminées.
+ */
+class PrintSpool {
+
+    static final long DEFAULT_MAX_AGE_MS = 24 * 60 * 60 * 1000L;
+    // Au-delà, les nouveaux travaux sont imprimés sans être spoolés
+    static final int MAX_ENTRIES = 500;
+
+    private static final int MAGIC = 0x45505350;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 5;
+    private static final byte RECORD_ADD = 1;
+    private static final byte RECORD_DONE = 2;
+    // Taille maximale d'un enregistrement (images en base64 comprises)
+    private static final int MAX_RECORD_BYTES = 16 * 1024 * 1024;
+    private static final byte RECEIPT_MARKUP = 0;
+    private static final byte RECEIPT_SEGMENTS = 1;
+    // Tickets image de printBinary : segment IMAGE suivi du fichier PNG ou JPEG, ou de la trame
+    private static final byte RECEIPT_IMAGE = 2;
+    private static final byte RECEIPT_RASTER = 3;
+    // Fenêtre de regroupement des écritures : un seul fsync pour tous les enregistrements de la fenêtre
+    private static final long FSYNC_DELAY_MS = 20;
+    // Compaction quand le journal dépasse cette taille et que les entrées vivantes en occupent moins du quart
+    private static final long COMPACT_MIN_BYTES = 256 * 1024;
+    // Derniers rejeux conservés pour getSpool
+    private static final int MAX_RECENT_REPLAYS = 20;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Travail spoolé, tel qu'il sera rejoué
+     */
+    static class Entry {
+        final long id;
+        final String jobId;
+        final String printerName;
+        final String target;
+        final boolean batch;
+        final int priority;
+        final long enqueuedAt;
+        final List<Receipt> receipts;
+        // Taille de l'enregistrement ADD dans le journal
+        int recordBytes;
+        // Tentatives d'impression terminées sans succès
+        int attempts;
+        // Dans la file d'une imprimante (travail d'origine ou rejeu) : ne pas rejouer
+        boolean queued;
+        // Peut-être imprimé (données transmises sans confirmation) : rejeu explicite seulement
+        boolean uncertain;
+
+        Entry(long id, String jobId, String printerName, String target, boolean batch, int priority, long enqueuedAt, List<Receipt> receipts) {
+            this.id = id;
+            this.jobId = jobId;
+            this.printerName = printerName;
+            this.target = target;
+            this.batch = batch;
+            this.priority = priority;
+            this.enqueuedAt = enqueuedAt;
+            this.receipts = receipts;
+        }
+    }
+
+    private final File journal;
+    private final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor();
+
+    // Entrées vivantes par identifiant, dans l'ordre d'arrivée
+    private final Map<Long, Entry> entries = new LinkedHashMap<Long, Entry>();
+    private long nextId = 1;
+    private boolean loaded = false;
+    // Enregistrements en attente du prochain fsync
+    private ByteArrayOutputStream pendingWrites = new ByteArrayOutputStream();
+    private boolean flushScheduled = false;
+    // Fichier du journal, utilisé uniquement par le thread d'écriture
+    private FileOutputStream output = null;
+    private long journalBytes = 0;
+    private long liveBytes = 0;
+    private String lastError = null;
+
+    // Compteurs pour getSpool
+    private long appended = 0;
+    private long fsyncs = 0;
+    private long compactions = 0;
+    private long expired = 0;
+    private long replayed = 0;
+    private final LinkedList<JSONObject> recentReplays = new LinkedList<JSONObject>();
+
+    PrintSpool(File directory) {
+        this.journal = new File(directory, "journal.bin");
+    }
+
+    /**
+     * Charge le journal sur le thread d'écriture, puis appelle onLoaded (rejeu des travaux en attente)
+     */
+    void start(final Runnable onLoaded) {
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                load();
+                onLoaded.run();
+            }
+        });
+    }
+
+    /**
+     * Relit le journal ; un enregistrement tronqué ou corrompu (arrêt brutal pendant une écriture)
+     * termine la lecture et le fichier est coupé à la fin du dernier enregistrement valide
+     */
+    private void load() {
+        Map<Long, Entry> found = new LinkedHashMap<Long, Entry>();
+        long maxId = 0;
+        long validBytes = 0;
+        try {
+            File directory = journal.getParentFile();
+            if (directory != null && !directory.exists()) {
+                directory.mkdirs();
+            }
+            if (journal.exists() && journal.length() >= HEADER_BYTES) {
+                DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(journal)));
+                try {
+                    if (in.readInt() == MAGIC && in.readByte() == VERSION) {
+                        validBytes = HEADER_BYTES;
+                        CRC32 crc = new CRC32();
+                        while (true) {
+                            byte type;
+                            try {
+                                type = in.readByte();
+                            } catch (EOFException e) {
+                                break;
+                            }
+                            int length = in.readInt();
+                            if (length < 0 || length > MAX_RECORD_BYTES) {
+                                break;
+                            }
+                            byte[] payload = new byte[length];
+                            in.readFully(payload);
+                            int checksum = in.readInt();
+                            crc.reset();
+                            crc.update(type);
+                            crc.update(payload, 0, length);
+                            if ((int) crc.getValue() != checksum) {
+                                break;
+                            }
+                            int recordBytes = 9 + length;
+                            if (type == RECORD_ADD) {
+                                Entry entry = decodeEntry(payload);
+                                entry.recordBytes = recordBytes;
+                                found.put(entry.id, entry);
+                                maxId = Math.max(maxId, entry.id);
+                            } else if (type == RECORD_DONE) {
+                                long id = new DataInputStream(new java.io.ByteArrayInputStream(payload)).readLong();
+                                found.remove(id);
+                                maxId = Math.max(maxId, id);
+                            }
+                            validBytes += recordBytes;
+                        }
+                    }
+                } catch (EOFException e) {
+                    // Enregistrement tronqué : ignoré
+                } finally {
+                    in.close();
+                }
+            }
+            if (validBytes == 0) {
+                writeHeader(journal);
+                validBytes = HEADER_BYTES;
+            } else if (journal.length() > validBytes) {
+                RandomAccessFile file = new RandomAccessFile(journal, "rw");
+                try {
+                    file.setLength(validBytes);
+                } finally {
+                    file.close();
+                }
+            }
+            output = new FileOutputStream(journal, true);
+        } catch (IOException e) {
+            lastError = e.getMessage();
+        }
+        synchronized (this) {
+            for (Entry entry : found.values()) {
+                entries.put(entry.id, entry);
+                liveBytes += entry.recordBytes;
+            }
+            nextId = Math.max(nextId, maxId + 1);
+            journalBytes = validBytes;
+            loaded = output != null;
+        }
+    }
+
+    private static void writeHeader(File file) throws IOException {
+        FileOutputStream out = new FileOutputStream(file, false);
+        try {
+            DataOutputStream data = new DataOutputStream(out);
+            data.writeInt(MAGIC);
+            data.writeByte(VERSION);
+            data.flush();
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Spoole un travail avant son entrée dans la file
+     * @return identifiant de l'entrée, 0 si le spool n'est pas disponible ou plein
+     */
+    synchronized long append(PrintJob job, String printerName, String target) {
+        if (!loaded || entries.size() >= MAX_ENTRIES) {
+            return 0;
+        }
+        Entry entry = new Entry(nextId++, job.id, printerName, target, job.batch, job.priority, job.enqueuedAt, job.receipts);
+        entry.queued = true;
+        if (!writeAdd(entry)) {
+            return 0;
+        }
+        entries.put(entry.id, entry);
+        liveBytes += entry.recordBytes;
+        appended++;
+        return entry.id;
+    }
+
+    /**
+     * Travail terminé (imprimé, annulé ou refusé définitivement) : retiré du spool
+     */
+    synchronized void complete(long id) {
+        Entry entry = entries.remove(id);
+        if (entry == null) {
+            return;
+        }
+        liveBytes -= entry.recordBytes;
+        ByteArrayOutputStream payload = new ByteArrayOutputStream(8);
+        try {
+            new DataOutputStream(payload).writeLong(id);
+        } catch (IOException e) {
+            // Écriture en mémoire
+        }
+        writeRecord(RECORD_DONE, payload.toByteArray());
+    }
+
+    /**
+     * Impression échouée : l'entrée reste en attente du prochain rejeu
+     * @param remaining tickets restant à imprimer (lot partiellement imprimé), null si inchangés
+     * @param uncertain un ticket a pu être imprimé malgré l'échec : rejeu explicite seulement (enregistré)
+     */
+    synchronized void retain(long id, List<Receipt> remaining, boolean uncertain) {
+        Entry entry = entries.get(id);
+        if (entry == null) {
+            return;
+        }
+        if (remaining != null || uncertain != entry.uncertain) {
+            Entry updated = new Entry(entry.id, entry.jobId, entry.printerName, entry.target, entry.batch, entry.priority, entry.enqueuedAt,
+                    remaining != null ? remaining : entry.receipts);
+            updated.attempts = entry.attempts;
+            updated.uncertain = uncertain;
+            if (writeAdd(updated)) {
+                liveBytes += updated.recordBytes - entry.recordBytes;
+                entries.put(id, updated);
+                entry = updated;
+            }
+        }
+        entry.attempts++;
+        entry.queued = false;
+    }
+
+    /**
+     * Rejeu impossible pour l'instant (imprimante pas encore déclarée, file pleine) : l'entrée reste
+     * en attente sans compter de tentative
+     */
+    synchronized void release(long id) {
+        Entry entry = entries.get(id);
+        if (entry != null) {
+            entry.queued = false;
+        }
+    }
+
+    /**
+     * Entrées à rejouer (hors file) ; celles plus anciennes que maxAgeMs sont abandonnées
+     * Les entrées retournées sont marquées "en file" jusqu'à complete() ou retain()
+     * @param includeUncertain true pour un rejeu demandé explicitement (replaySpool), qui reprend
+     *                         aussi les travaux peut-être imprimés
+     */
+    synchronized List<Entry> takeReplayable(long maxAgeMs, boolean includeUncertain) {
+        List<Entry> replayable = new ArrayList<Entry>();
+        List<Long> tooOld = new ArrayList<Long>();
+        long now = System.currentTimeMillis();
+        for (Entry entry : entries.values()) {
+            if (entry.queued || (entry.uncertain && !includeUncertain)) {
+                continue;
+            }
+            if (now - entry.enqueuedAt > maxAgeMs) {
+                tooOld.add(entry.id);
+                continue;
+            }
+            entry.queued = true;
+            replayable.add(entry);
+        }
+        for (Long id : tooOld) {
+            complete(id);
+            expired++;
+        }
+        return replayable;
+    }
+
+    /**
+     * Abandonne les entrées en attente (hors file)
+     * @return le nombre d'entrées abandonnées
+     */
+    synchronized int clear() {
+        List<Long> idle = new ArrayList<Long>();
+        for (Entry entry : entries.values()) {
+            if (!entry.queued) {
+                idle.add(entry.id);
+            }
+        }
+        for (Long id : idle) {
+            complete(id);
+        }
+        return idle.size();
+    }
+
+    /**
+     * Résultat d'un rejeu, conservé pour getSpool
+     */
+    synchronized void recordReplay(String jobId, boolean printed, JSONObject result) {
+        replayed++;
+        JSONObject replay = new JSONObject();
+        try {
+            replay.put("jobId", jobId);
+            replay.put("printed", printed);
+            replay.put("at", System.currentTimeMillis());
+            if (!printed && result != null) {
+                replay.put("context", result.optString("context", null));
+                replay.put("code", result.optInt("code", PrinterResponses.ERR_FAILURE));
+            }
+        } catch (JSONException e) {
+            // Ignore JSON error
+        }
+        recentReplays.addFirst(replay);
+        if (recentReplays.size() > MAX_RECENT_REPLAYS) {
+            recentReplays.removeLast();
+        }
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * État du spool pour getSpool
+     */
+    synchronized JSONObject toJson() {
+        JSONObject json = new JSONObject();
+        try {
+            JSONArray pending = new JSONArray();
+            for (Entry entry : entries.values()) {
+                JSONObject item = new JSONObject();
+                item.put("jobId", entry.jobId);
+                item.put("printer", entry.printerName);
+                item.put("target", entry.target);
+                item.put("tickets", entry.receipts.size());
+                item.put("enqueuedAt", entry.enqueuedAt);
+                item.put("attempts", entry.attempts);
+                item.put("queued", entry.queued);
+                item.put("uncertain", entry.uncertain);
+                pending.put(item);
+            }
+            json.put("available", loaded);
+            json.put("pending", pending);
+            json.put("journalBytes", journalBytes + pendingWrites.size());
+            json.put("liveBytes", liveBytes);
+            json.put("appended", appended);
+            json.put("fsyncs", fsyncs);
+            json.put("compactions", compactions);
+            json.put("expired", expired);
+            json.put("replayed", replayed);
+            json.put("recentReplays", new JSONArray(recentReplays));
+            if (lastError != null) {
+                json.put("lastError", lastError);
+            }
+        } catch (JSONException e) {
+            // Ignore JSON error
+        }
+        return json;
+    }
+
+    private boolean writeAdd(Entry entry) {
+        byte[] payload;
+        try {
+            payload = encodeEntry(entry);
+        } catch (IOException e) {
+            return false;
+        }
+        if (payload.length > MAX_RECORD_BYTES) {
+            return false;
+        }
+        entry.recordBytes = 9 + payload.length;
+        writeRecord(RECORD_ADD, payload);
+        return true;
+    }
+
+    /**
+     * Ajoute l'enregistrement au prochain lot d'écriture (appelé verrou pris)
+     */
+    private void writeRecord(byte type, byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        crc.update(payload, 0, payload.length);
+        DataOutputStream out = new DataOutputStream(pendingWrites);
+        try {
+            out.writeByte(type);
+            out.writeInt(payload.length);
+            out.write(payload);
+            out.writeInt((int) crc.getValue());
+        } catch (IOException e) {
+            // Écriture en mémoire
+        }
+        if (!flushScheduled) {
+            flushScheduled = true;
+            try {
+                writer.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        flush();
+                    }
+                }, FSYNC_DELAY_MS, TimeUnit.MILLISECONDS);
+            } catch (Exception e) {
+                // Spool arrêté : écrit par shutdown()
+                flushScheduled = false;
+            }
+        }
+    }
+
+    /**
+     * Écrit les enregistrements en attente puis fsync (thread d'écriture)
+     */
+    private void flush() {
+        byte[] bytes;
+        synchronized (this) {
+            flushScheduled = false;
+            if (pendingWrites.size() == 0 || output == null) {
+                return;
+            }
+            bytes = pendingWrites.toByteArray();
+            pendingWrites = new ByteArrayOutputStream();
+        }
+        try {
+            output.write(bytes);
+            output.getFD().sync();
+        } catch (IOException e) {
+            synchronized (this) {
+                lastError = e.getMessage();
+            }
+            return;
+        }
+        boolean compact;
+        synchronized (this) {
+            journalBytes += bytes.length;
+            fsyncs++;
+            compact = journalBytes > COMPACT_MIN_BYTES && liveBytes * 4 < journalBytes;
+        }
+        if (compact) {
+            compact();
+        }
+    }
+
+    /**
+     * Réécrit le journal avec les seules entrées vivantes (thread d'écriture)
+     * Les enregistrements écrits pendant la compaction sont ajoutés ensuite au nouveau journal :
+     * ADD et DONE étant idempotents, un doublon est sans effet à la relecture
+     */
+    private void compact() {
+        List<Entry> live;
+        synchronized (this) {
+            live = new ArrayList<Entry>(entries.values());
+        }
+        File compacted = new File(journal.getPath() + ".tmp");
+        long bytes = HEADER_BYTES;
+        try {
+            FileOutputStream out = new FileOutputStream(compacted, false);
+            try {
+                DataOutputStream data = new DataOutputStream(new java.io.BufferedOutputStream(out));
+                data.writeInt(MAGIC);
+                data.writeByte(VERSION);
+                CRC32 crc = new CRC32();
+                for (Entry entry : live) {
+                    byte[] payload = encodeEntry(entry);
+                    crc.reset();
+                    crc.update(RECORD_ADD);
+                    crc.update(payload, 0, payload.length);
+                    data.writeByte(RECORD_ADD);
+                    data.writeInt(payload.length);
+                    data.write(payload);
+                    data.writeInt((int) crc.getValue());
+                    bytes += 9 + payload.length;
+                }
+                data.flush();
+                out.getFD().sync();
+            } finally {
+                out.close();
+            }
+            output.close();
+            if (!compacted.renameTo(journal)) {
+                throw new IOException("Renommage du journal impossible");
+            }
+            output = new FileOutputStream(journal, true);
+        } catch (IOException e) {
+            compacted.delete();
+            synchronized (this) {
+                lastError = e.getMessage();
+            }
+            try {
+                output = new FileOutputStream(journal, true);
+            } catch (IOException ex) {
+                output = null;
+            }
+            return;
+        }
+        synchronized (this) {
+            journalBytes = bytes;
+            compactions++;
+        }
+    }
+
+    /**
+     * Arrêt du plugin : écrit les derniers enregistrements avant de fermer le journal
+     */
+    void shutdown() {
+        try {
+            writer.execute(new Runnable() {
+                @Override
+                public void run() {
+                    flush();
+                    try {
+                        if (output != null) {
+                            output.close();
+                        }
+                    } catch (IOException e) {
+                        // Ignore error
+                    }
+                }
+            });
+        } catch (Exception e) {
+            // Déjà arrêté
+        }
+        writer.shutdown();
+        try {
+            writer.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static byte[] encodeEntry(Entry entry) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeLong(entry.id);
+        writeString(out, entry.jobId);
+        writeString(out, entry.printerName);
+        writeString(out, entry.target);
+        out.writeBoolean(entry.batch);
+        out.writeByte(entry.priority);
+        out.writeLong(entry.enqueuedAt);
+        out.writeInt(entry.receipts.size());
+        for (Receipt receipt : entry.receipts) {
+            String markup = receipt.markup();
+            if (markup != null) {
+                out.writeByte(RECEIPT_MARKUP);
+                writeString(out, markup);
+                continue;
+            }
+            List<ReceiptSegment> segments;
+            try {
+                segments = receipt.segments();
+            } catch (MarkupException e) {
+                throw new IOException(e.getMessage());
+            }
+            if (receipt.imageData() != null) {
+                out.writeByte(RECEIPT_IMAGE);
+                writeSegment(out, segments.get(0));
+                writeBytes(out, receipt.imageData());
+                continue;
+            }
+            if (receipt.raster() != null) {
+                out.writeByte(RECEIPT_RASTER);
+                writeSegment(out, segments.get(0));
+                out.writeInt(receipt.raster().width);
+                out.writeInt(receipt.raster().height);
+                writeBytes(out, receipt.raster().bits);
+                continue;
+            }
+            out.writeByte(RECEIPT_SEGMENTS);
+            out.writeInt(segments.size());
+            for (ReceiptSegment segment : segments) {
+                writeSegment(out, segment);
+            }
+        }
+        // Ajouté en fin d'enregistrement : absent des journaux plus anciens (travail certain)
+        out.writeBoolean(entry.uncertain);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static Entry decodeEntry(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new java.io.ByteArrayInputStream(payload));
+        long id = in.readLong();
+        String jobId = readString(in);
+        String printerName = readString(in);
+        String target = readString(in);
+        boolean batch = in.readBoolean();
+        int priority = in.readByte();
+        long enqueuedAt = in.readLong();
+        int count = in.readInt();
+        List<Receipt> receipts = new ArrayList<Receipt>(count);
+        for (int i = 0; i < count; i++) {
+            byte kind = in.readByte();
+            if (kind == RECEIPT_MARKUP) {
+                receipts.add(Receipt.fromMarkup(readString(in)));
+                continue;
+            }
+            if (kind == RECEIPT_IMAGE) {
+                ReceiptSegment segment = readSegment(in);
+                receipts.add(Receipt.fromImage(segment, readBytes(in)));
+                continue;
+            }
+            if (kind == RECEIPT_RASTER) {
+                ReceiptSegment segment = readSegment(in);
+                int width = in.readInt();
+                int height = in.readInt();
+                receipts.add(Receipt.fromRaster(segment, new RasterImage(width, height, readBytes(in))));
+                continue;
+            }
+            int segmentCount = in.readInt();
+            List<ReceiptSegment> segments = new ArrayList<ReceiptSegment>(segmentCount);
+            for (int s = 0; s < segmentCount; s++) {
+                segments.add(readSegment(in));
+            }
+            receipts.add(Receipt.fromSegments(segments));
+        }
+        Entry entry = new Entry(id, jobId, printerName, target, batch, priority, enqueuedAt, receipts);
+        entry.uncertain = in.available() > 0 && in.readBoolean();
+        return entry;
+    }
+
+    private static void writeSegment(DataOutputStream out, ReceiptSegment segment) throws IOException {
+        out.writeByte(segment.type);
+        writeString(out, segment.text);
+        out.writeByte((segment.bold ? 1 : 0) | (segment.underline ? 2 : 0));
+        out.writeByte(segment.align);
+        out.writeByte(segment.width);
+        out.writeByte(segment.height);
+        out.writeByte(segment.font);
+        out.writeInt(segment.arg);
+    }
+
+    private static ReceiptSegment readSegment(DataInputStream in) throws IOException {
+        int type = in.readByte();
+        String text = readString(in);
+        int flags = in.readByte();
+        int align = in.readByte();
+        int width = in.readByte();
+        int height = in.readByte();
+        int font = in.readByte();
+        int arg = in.readInt();
+        return new ReceiptSegment(type, text, (flags & 1) != 0, (flags & 2) != 0, align, width, height, font, arg);
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] value) throws IOException {
+        out.writeInt(value.length);
+        out.write(value);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > MAX_RECORD_BYTES) {
+            throw new IOException("Longueur invalide : " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, UTF_8);
+    }
+}
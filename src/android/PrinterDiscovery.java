@@ -0,0 +1,328 @@
+package com.eliberty.cordova.plugin.epsonusb;
+
+import android.content.Context;
+
+import com.epson.epos2.Epos2Exception;
+import com.epson.epos2.discovery.DeviceInfo;
+import com.epson.epos2.discovery.Discovery;
+import com.epson.epos2.discovery.DiscoveryListener;
+import com.epson.epos2.discovery.FilterOption;
+
+import org.apache.cordova.CallbackContext;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Imprimantes Epson trouvées par la recherche du SDK (réseau, Bluetooth, USB), gardées en cache
+ * Une recherche dure plusieurs secondes : elle tourne sur son propre thread et n'est jamais attendue
+ * par une impression. Un résultat plus ancien que maxAgeMs est renvoyé tel quel puis rafraîchi en arrière-plan
+ */
+class PrinterDiscovery {
+
+    static final long DEFAULT_MAX_AGE_MS = 5 * 60 * 1000;
+    // Durée d'écoute des réponses pendant une recherche
+    static final long SCAN_DURATION_MS = 5000;
+    // Discovery.stop() répond ERR_PROCESSING tant qu'un résultat est en cours de traitement
+    private static final int STOP_ATTEMPTS = 20;
+    // Intervalle minimal entre deux recherches déclenchées par une cible introuvable ou une connexion échouée
+    private static final long MIN_RESCAN_MS = 30000;
+    private static final Pattern MAC_ADDRESS = Pattern.compile("([0-9A-Fa-f]{2}:){5}[0-9A-Fa-f]{2}");
+
+    // Une seule recherche à la fois : Discovery est global dans le SDK
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+    private volatile Context context = null;
+
+    // Résultat de la dernière recherche terminée, par cible
+    private Map<String, JSONObject> devices = new LinkedHashMap<String, JSONObject>();
+    private long scannedAt = 0;
+    // Bluetooth compris dans la dernière recherche (permissions accordées)
+    private boolean scannedBluetooth = false;
+    // Appareils de la recherche en cours (null si aucune recherche)
+    private Map<String, JSONObject> found = null;
+    private boolean foundBluetooth = false;
+    // Appels discover qui attendent la fin de la recherche en cours
+    private final List<Waiter> waiters = new ArrayList<Waiter>();
+
+    private static class Waiter {
+        final CallbackContext callbackContext;
+        final String port;
+
+        Waiter(CallbackContext callbackContext, String port) {
+            this.callbackContext = callbackContext;
+            this.port = port;
+        }
+    }
+
+    void setContext(Context context) {
+        this.context = context;
+    }
+
+    /**
+     * Répond avec les imprimantes en cache, en lançant une recherche si nécessaire
+     * Sans résultat en cache (ou avec refresh), la réponse attend la fin de la recherche
+     * @param port "TCP", "BT", "USB" ; vide pour tous les ports
+     */
+    void discover(CallbackContext callbackContext, String port, boolean refresh, long maxAgeMs) {
+        JSONObject cached = null;
+        synchronized (this) {
+            if (refresh || scannedAt == 0) {
+                waiters.add(new Waiter(callbackContext, port));
+                startScan();
+                return;
+            }
+            if (System.currentTimeMillis() - scannedAt > maxAgeMs) {
+                startScan();
+            }
+            cached = snapshot(port);
+        }
+        callbackContext.success(cached);
+    }
+
+    /**
+     * Cible à passer au SDK : une cible TCP désignée par l'adresse MAC de l'imprimante est remplacée
+     * par l'adresse IP trouvée lors de la dernière recherche, pour que connect() ne relance pas de recherche
+     * Ne bloque jamais : si l'adresse n'est pas en cache ou trop ancienne, une recherche est lancée
+     * en arrière-plan et la cible est rendue telle quelle
+     */
+    String resolveTarget(String target) {
+        String port = PrinterPool.portOf(target);
+        if (!"TCP".equals(port) && !"TCPS".equals(port)) {
+            return target;
+        }
+        String address = target.substring(port.length() + 1);
+        if (!MAC_ADDRESS.matcher(address).matches()) {
+            return target;
+        }
+        synchronized (this) {
+            long age = System.currentTimeMillis() - scannedAt;
+            for (JSONObject device : devices.values()) {
+                String ipAddress = device.optString("ipAddress", "");
+                if (address.equalsIgnoreCase(device.optString("macAddress", "")) && !ipAddress.isEmpty()) {
+                    if (age > DEFAULT_MAX_AGE_MS) {
+                        startScan();
+                    }
+                    return port + ":" + ipAddress;
+                }
+            }
+            if (age > MIN_RESCAN_MS) {
+                startScan();
+            }
+        }
+        return target;
+    }
+
+    /**
+     * Relance une recherche en arrière-plan (connexion réseau échouée : l'adresse IP a pu changer)
+     */
+    synchronized void refreshLater() {
+        if (System.currentTimeMillis() - scannedAt > MIN_RESCAN_MS) {
+            startScan();
+        }
+    }
+
+    /**
+     * Ce que la dernière recherche sait de la cible (diagnostic des erreurs d'une imprimante réseau)
+     */
+    synchronized JSONObject describe(String target) {
+        JSONObject json = new JSONObject();
+        try {
+            json.put("target", target);
+            json.put("port", PrinterPool.portOf(target));
+            JSONObject device = devices.get(target);
+            if (device == null) {
+                String address = target.substring(target.indexOf(':') + 1);
+                for (JSONObject candidate : devices.values()) {
+                    if (address.equalsIgnoreCase(candidate.optString("macAddress", ""))
+                            || address.equalsIgnoreCase(candidate.optString("bdAddress", ""))) {
+                        device = candidate;
+                        break;
+                    }
+                }
+            }
+            json.put("discovered", device != null ? device : JSONObject.NULL);
+            json.put("discoveryAgeMs", scannedAt > 0 ? System.currentTimeMillis() - scannedAt : JSONObject.NULL);
+        } catch (JSONException e) {
+            // Ignore JSON error
+        }
+        return json;
+    }
+
+    /**
+     * Imprimantes en cache pour un port : { devices: [...], scannedAt, ageMs, refreshing, bluetooth }
+     */
+    private JSONObject snapshot(String port) {
+        JSONObject json = new JSONObject();
+        try {
+            JSONArray list = new JSONArray();
+            for (JSONObject device : devices.values()) {
+                if (port.isEmpty() || port.equals(device.optString("port"))) {
+                    list.put(device);
+                }
+            }
+            json.put("devices", list);
+            json.put("scannedAt", scannedAt);
+            json.put("ageMs", System.currentTimeMillis() - scannedAt);
+            json.put("refreshing", found != null);
+            json.put("bluetooth", scannedBluetooth);
+        } catch (JSONException e) {
+            // Ignore JSON error
+        }
+        return json;
+    }
+
+    /**
+     * Lance une recherche si aucune n'est en cours (appelé verrou pris)
+     */
+    private void startScan() {
+        if (found != null || context == null) {
+            return;
+        }
+        found = new LinkedHashMap<String, JSONObject>();
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    scan();
+                }
+            });
+        } catch (Exception e) {
+            // Executor arrêté (destruction du plugin)
+            found = null;
+        }
+    }
+
+    private void scan() {
+        // Sans les permissions Bluetooth, la recherche sur tous les ports échouerait : réseau puis USB
+        boolean bluetooth = BluetoothPermissions.missing(context, true).length == 0;
+        synchronized (this) {
+            foundBluetooth = bluetooth;
+        }
+        scan(bluetooth ? new int[]{Discovery.PORTTYPE_ALL} : new int[]{Discovery.PORTTYPE_TCP, Discovery.PORTTYPE_USB}, 0);
+    }
+
+    /**
+     * Recherche sur portTypes[phase], puis sur les types suivants ; la durée est partagée entre eux
+     */
+    private void scan(final int[] portTypes, final int phase) {
+        FilterOption filter = new FilterOption();
+        filter.setPortType(portTypes[phase]);
+        filter.setDeviceType(Discovery.TYPE_PRINTER);
+        filter.setEpsonFilter(Discovery.FILTER_NAME);
+        try {
+            Discovery.start(context, filter, new DiscoveryListener() {
+                @Override
+                public void onDiscovery(DeviceInfo info) {
+                    addDevice(info);
+                }
+            });
+        } catch (Epos2Exception e) {
+            finishScan(e.getErrorStatus());
+            return;
+        }
+        executor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                stopDiscovery();
+                if (phase + 1 < portTypes.length) {
+                    scan(portTypes, phase + 1);
+                } else {
+                    finishScan(PrinterResponses.ERR_SUCCESS);
+                }
+            }
+        }, SCAN_DURATION_MS / portTypes.length, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Appelé sur un thread du SDK pour chaque imprimante qui répond
+     */
+    private synchronized void addDevice(DeviceInfo info) {
+        if (found == null || info.getTarget() == null) {
+            return;
+        }
+        JSONObject device = new JSONObject();
+        try {
+            device.put("target", info.getTarget());
+            device.put("port", PrinterPool.portOf(info.getTarget()));
+            device.put("deviceName", info.getDeviceName());
+            device.put("ipAddress", info.getIpAddress());
+            device.put("macAddress", info.getMacAddress());
+            device.put("bdAddress", info.getBdAddress());
+        } catch (JSONException e) {
+            // Ignore JSON error
+        }
+        found.put(info.getTarget(), device);
+    }
+
+    private static void stopDiscovery() {
+        for (int attempt = 0; attempt < STOP_ATTEMPTS; attempt++) {
+            try {
+                Discovery.stop();
+                return;
+            } catch (Epos2Exception e) {
+                if (e.getErrorStatus() != PrinterResponses.ERR_PROCESSING) {
+                    return;
+                }
+            }
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Publie le résultat de la recherche (le cache précédent est conservé en cas d'erreur)
+     * et répond aux appels discover en attente
+     */
+    private void finishScan(int errorCode) {
+        List<Waiter> pending;
+        List<JSONObject> responses = new ArrayList<JSONObject>();
+        synchronized (this) {
+            if (errorCode == PrinterResponses.ERR_SUCCESS && found != null) {
+                devices = found;
+                scannedAt = System.currentTimeMillis();
+                scannedBluetooth = foundBluetooth;
+            }
+            found = null;
+            pending = new ArrayList<Waiter>(waiters);
+            waiters.clear();
+            for (Waiter waiter : pending) {
+                responses.add(errorCode == PrinterResponses.ERR_SUCCESS ? snapshot(waiter.port) : null);
+            }
+        }
+        for (int i = 0; i < pending.size(); i++) {
+            if (responses.get(i) != null) {
+                pending.get(i).callbackContext.success(responses.get(i));
+            } else {
+                pending.get(i).callbackContext.error(PrinterResponses.createErrorResponse(errorCode, "discover"));
+            }
+        }
+    }
+
+    /**
+     * Destruction du plugin : arrête la recherche en cours
+     */
+    void shutdown() {
+        boolean scanning;
+        synchronized (this) {
+            scanning = found != null;
+            found = null;
+        }
+        executor.shutdownNow();
+        if (scanning) {
+            stopDiscovery();
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.eliberty.cordova.plugin.epsonusb;
+
+import android.content.Context;
+
+import com.epson.epos2.Epos2Exception;
+
+/**
+ * Accès à l'imprimante utilisé par le plugin : connexion, transaction, buffer de commandes, envoi, statut
+ *
+ * Reprend le contrat du SDK Epson ePOS2 : les erreurs sont des Epos2Exception avec les codes du SDK,
+ * les paramètres et les événements sont les constantes de Printer, et le résultat d'un sendData
+ * arrive sur un autre thread (Listener.onReceive).
+ * Implémentations : EpsonPrinterDriver (SDK, imprimante USB) et le simulateur des tests de charge
+ */
+interface PrinterDriver {
+
+    /**
+     * Crée un pilote non connecté (une instance par connexion USB)
+     */
+    interface Factory {
+        PrinterDriver create(Context context) throws Epos2Exception;
+    }
+
+    /**
+     * Événements de l'imprimante, appelés sur un thread du pilote
+     */
+    interface Listener {
+        /**
+         * Résultat d'un sendData (code Epos2CallbackCode, 0 = imprimé)
+         */
+        void onReceive(int code, Status status, String printJobId);
+
+        /**
+         * Changement signalé par le moniteur de statut (Printer.EVENT_*)
+         */
+        void onStatusChange(int eventType);
+
+        /**
+         * Perte (false) ou rétablissement (true) de la connexion
+         */
+        void onConnectionChange(boolean connected);
+    }
+
+    /**
+     * Statut lu sur l'imprimante (valeurs Printer.TRUE / Printer.FALSE / Printer.PAPER_*, Printer.UNKNOWN si inconnu)
+     */
+    final class Status {
+        final int connection;
+        final int online;
+        final int coverOpen;
+        final int paper;
+
+        Status(int connection, int online, int coverOpen, int paper) {
+            this.connection = connection;
+            this.online = online;
+            this.coverOpen = coverOpen;
+            this.paper = paper;
+        }
+    }
+
+    void setListener(Listener listener);
+
+    void connect(String target, int timeout) throws Epos2Exception;
+
+    void disconnect() throws Epos2Exception;
+
+    /**
+     * @return null si le statut n'a pas pu être lu
+     */
+    Status getStatus();
+
+    void startMonitor() throws Epos2Exception;
+
+    void stopMonitor() throws Epos2Exception;
+
+    void beginTransaction() throws Epos2Exception;
+
+    void endTransaction() throws Epos2Exception;
+
+    void forceRecover(int timeout) throws Epos2Exception;
+
+    void clearCommandBuffer();
+
+    void addText(String data) throws Epos2Exception;
+
+    void addTextStyle(int reverse, int ul, int em, int color) throws Epos2Exception;
+
+    void addTextAlign(int align) throws Epos2Exception;
+
+    void addTextSize(int width, int height) throws Epos2Exception;
+
+    void addTextFont(int font) throws Epos2Exception;
+
+    void addFeedLine(int line) throws Epos2Exception;
+
+    void addSymbol(String data, int type, int level, int width, int height, int size) throws Epos2Exception;
+
+    void addBarcode(String data, int type, int hri, int font, int width, int height) throws Epos2Exception;
+
+    void addLogo(int key1, int key2) throws Epos2Exception;
+
+    void addCommand(byte[] data) throws Epos2Exception;
+
+    void addCut(int type) throws Epos2Exception;
+
+    /**
+     * Envoie le buffer ; le résultat arrive par Listener.onReceive
+     */
+    void sendData(int timeout) throws Epos2Exception;
+}
@@ -0,0 +1,131 @@
+package com.eliberty.cordova.plugin.epsonusb;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Imprimantes nommées du plugin, chacune avec sa connexion, sa file et son verrou
+ * L'imprimante "default" (cible "USB:") existe toujours ; l'option "printer" d'une impression
+ * désigne une imprimante configurée ou directement une cible du SDK ("USB:/dev/bus/usb/001/002",
+ * "TCP:192.168.1.20", "BT:00:01:90:C2:A1:3F"),
+ * ajoutée au pool à la première utilisation
+ */
+class PrinterPool {
+
+    static final String DEFAULT_NAME = "default";
+    static final String DEFAULT_TARGET = "USB:";
+    // Chaque imprimante occupe deux threads : le pool est borné
+    static final int MAX_PRINTERS = 8;
+
+    // Imprimantes par nom (ordre de création)
+    private final Map<String, PooledPrinter> printers = new LinkedHashMap<String, PooledPrinter>();
+
+    PrinterPool() {
+        printers.put(DEFAULT_NAME, new PooledPrinter(DEFAULT_NAME, DEFAULT_TARGET));
+    }
+
+    // Types de port acceptés dans une cible du SDK
+    private static final String[] PORTS = {"USB", "TCP", "TCPS", "BT"};
+
+    /**
+     * Une cible du SDK commence par son type de port ("USB:", "TCP:192.168.1.20", "BT:00:01:90:C2:A1:3F")
+     */
+    static boolean isTarget(String key) {
+        return portOf(key) != null;
+    }
+
+    /**
+     * @return le type de port de la cible ("USB", "TCP", "TCPS", "BT"), null si ce n'est pas une cible
+     */
+    static String portOf(String target) {
+        int colon = target.indexOf(':');
+        if (colon <= 0) {
+            return null;
+        }
+        String port = target.substring(0, colon);
+        for (String candidate : PORTS) {
+            if (candidate.equals(port)) {
+                return port;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Imprimante réseau ou Bluetooth : la connexion coûte plusieurs secondes et doit être réutilisée
+     */
+    static boolean isNetworkTarget(String target) {
+        String port = portOf(target);
+        return port != null && !"USB".equals(port);
+    }
+
+    synchronized PooledPrinter getDefault() {
+        return printers.get(DEFAULT_NAME);
+    }
+
+    /**
+     * Imprimante désignée par l'option "printer" : nom configuré, cible du SDK, ou imprimante par défaut
+     * @return null si le nom est inconnu ou si le pool est plein
+     */
+    synchronized PooledPrinter resolve(String key) {
+        if (key == null || key.isEmpty()) {
+            return printers.get(DEFAULT_NAME);
+        }
+        PooledPrinter printer = printers.get(key);
+        if (printer != null || !isTarget(key)) {
+            return printer;
+        }
+        // Cible déjà configurée sous un autre nom : même connexion, même file
+        for (PooledPrinter candidate : printers.values()) {
+            if (key.equals(candidate.getTarget())) {
+                return candidate;
+            }
+        }
+        if (printers.size() >= MAX_PRINTERS) {
+            return null;
+        }
+        printer = new PooledPrinter(key, key);
+        printers.put(key, printer);
+        return printer;
+    }
+
+    /**
+     * Ajoute une imprimante nommée, ou change la cible d'une imprimante existante
+     * @return l'imprimante, null si le pool est plein
+     */
+    synchronized PooledPrinter configure(String name, String target) {
+        PooledPrinter printer = printers.get(name);
+        if (printer != null) {
+            if (!target.equals(printer.getTarget())) {
+                printer.setTarget(target);
+                // La connexion ouverte sur l'ancienne cible est fermée dès que l'imprimante est libre, au plus tard
+                // avant son prochain travail (closeRetargetedSession)
+                printer.disconnectIdleSessionLater();
+            }
+            return printer;
+        }
+        if (printers.size() >= MAX_PRINTERS) {
+            return null;
+        }
+        printer = new PooledPrinter(name, target);
+        printers.put(name, printer);
+        return printer;
+    }
+
+    /**
+     * Retire une imprimante du pool (l'imprimante par défaut ne peut pas l'être)
+     * @return l'imprimante retirée, null si inconnue
+     */
+    synchronized PooledPrinter remove(String name) {
+        if (DEFAULT_NAME.equals(name)) {
+            return null;
+        }
+        return printers.remove(name);
+    }
+
+    synchronized List<PooledPrinter> all() {
+        return new ArrayList<PooledPrinter>(printers.values());
+    }
+}
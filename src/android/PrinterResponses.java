@@ -0,0 +1,109 @@
+package com.eliberty.cordova.plugin.epsonusb;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Iterator;
+
+/**
+ * Construction des réponses JSON renvoyées au JavaScript : codes d'erreur du SDK, messages, fusion
+ * Sans dépendance à Cordova ni à l'imprimante (utilisé aussi par les benchmarks)
+ */
+final class PrinterResponses {
+
+    // Codes d'erreur Epson ePOS2 SDK
+    static final int ERR_SUCCESS = 0;
+    static final int ERR_PARAM = 1;
+    static final int ERR_CONNECT = 2;
+    static final int ERR_TIMEOUT = 3;
+    static final int ERR_MEMORY = 4;
+    static final int ERR_ILLEGAL = 5;
+    static final int ERR_PROCESSING = 6;
+    static final int ERR_NOT_FOUND = 7;
+    static final int ERR_IN_USE = 8;
+    static final int ERR_TYPE_INVALID = 9;
+    static final int ERR_DISCONNECT = 10;
+    static final int ERR_ALREADY_OPENED = 11;
+    static final int ERR_ALREADY_USED = 12;
+    static final int ERR_BOX_COUNT_OVER = 13;
+    static final int ERR_BOX_CLIENT_OVER = 14;
+    static final int ERR_UNSUPPORTED = 15;
+    static final int ERR_FAILURE = 16;
+
+    /**
+     * Convertit un code d'erreur Epson en message compréhensible
+     */
+    static String getEpsonErrorMessage(int errorCode) {
+        switch (errorCode) {
+            case ERR_SUCCESS:
+                return "Opération réussie";
+            case ERR_PARAM:
+                return "Paramètre invalide : un des paramètres passés à la fonction est incorrect";
+            case ERR_CONNECT:
+                return "Erreur de connexion : impossible de se connecter à l'imprimante. Vérifiez que l'imprimante est allumée, connectée via USB et que les permissions USB sont accordées";
+            case ERR_TIMEOUT:
+                return "Délai d'attente dépassé : l'imprimante n'a pas répondu dans le temps imparti. Vérifiez la connexion et réessayez";
+            case ERR_MEMORY:
+                return "Mémoire insuffisante : l'appareil n'a pas assez de mémoire disponible pour effectuer l'opération";
+            case ERR_ILLEGAL:
+                return "État illégal : une opération a été appelée dans un ordre incorrect (ex: impression sans connexion préalable)";
+            case ERR_PROCESSING:
+                return "Traitement en cours : une autre opération est déjà en cours d'exécution. Attendez la fin de l'opération précédente";
+            case ERR_NOT_FOUND:
+                return "Imprimante non trouvée : aucune imprimante Epson compatible n'a été détectée sur le port USB";
+            case ERR_IN_USE:
+                return "Imprimante occupée : l'imprimante est déjà utilisée par une autre application ou un autre processus";
+            case ERR_TYPE_INVALID:
+                return "Type d'imprimante invalide : le modèle d'imprimante spécifié n'est pas compatible";
+            case ERR_DISCONNECT:
+                return "Erreur de déconnexion : impossible de fermer proprement la connexion avec l'imprimante";
+            case ERR_ALREADY_OPENED:
+                return "Déjà connecté : une connexion avec l'imprimante est déjà établie";
+            case ERR_ALREADY_USED:
+                return "Déjà utilisé : la ressource demandée est déjà en cours d'utilisation";
+            case ERR_BOX_COUNT_OVER:
+                return "Limite de boîtes dépassée : le nombre maximum de boîtes de connexion est atteint";
+            case ERR_BOX_CLIENT_OVER:
+                return "Limite de clients dépassée : le nombre maximum de clients connectés est atteint";
+            case ERR_UNSUPPORTED:
+                return "Fonctionnalité non supportée : cette fonction n'est pas disponible sur ce modèle d'imprimante";
+            case ERR_FAILURE:
+                return "Échec général : une erreur interne s'est produite. Redémarrez l'imprimante et l'application";
+            default:
+                return "Erreur inconnue (code: " + errorCode + ")";
+        }
+    }
+
+    /**
+     * Crée un objet JSON d'erreur détaillé
+     */
+    static JSONObject createErrorResponse(int errorCode, String context) {
+        JSONObject error = new JSONObject();
+        try {
+            error.put("code", errorCode);
+            error.put("message", getEpsonErrorMessage(errorCode));
+            error.put("context", context);
+        } catch (JSONException e) {
+            // Ignore JSON error
+        }
+        return error;
+    }
+
+    /**
+     * Fusionne deux objets JSON
+     */
+    static void mergeJson(JSONObject target, JSONObject source) {
+        try {
+            Iterator<String> keys = source.keys();
+            while (keys.hasNext()) {
+                String key = keys.next();
+                target.put(key, source.get(key));
+            }
+        } catch (JSONException e) {
+            // Ignore merge error
+        }
+    }
+
+    private PrinterResponses() {
+    }
+}
@@ -0,0 +1,117 @@
+package com.eliberty.cordova.plugin.epsonusb;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Dernier statut connu de l'imprimante, alimenté par le moniteur du SDK, les impressions et les sondes
+ * Permet de répondre à isPrinterAvailable sans ouvrir de connexion
+ */
+class PrinterStatusCache {
+
+    static final int UNKNOWN = -1;
+
+    // Valeurs du papier (mêmes valeurs que Printer.PAPER_*)
+    static final int PAPER_OK = 0;
+    static final int PAPER_NEAR_END = 1;
+    static final int PAPER_EMPTY = 2;
+
+    private int connection = UNKNOWN;
+    private int online = UNKNOWN;
+    private int coverOpen = UNKNOWN;
+    private int paper = UNKNOWN;
+    private String lastEvent = null;
+    private long updatedAt = 0;
+
+    /**
+     * Met à jour le statut complet (getStatus, onPtrReceive)
+     * @return true si une valeur a changé
+     */
+    synchronized boolean update(int connection, int online, int coverOpen, int paper, String event) {
+        boolean changed = this.connection != connection || this.online != online
+                || this.coverOpen != coverOpen || this.paper != paper;
+        this.connection = connection;
+        this.online = online;
+        this.coverOpen = coverOpen;
+        this.paper = paper;
+        touch(event);
+        return changed;
+    }
+
+    synchronized boolean setConnection(int connection, String event) {
+        boolean changed = this.connection != connection;
+        this.connection = connection;
+        touch(event);
+        return changed;
+    }
+
+    synchronized boolean setOnline(int online, String event) {
+        boolean changed = this.online != online;
+        this.online = online;
+        touch(event);
+        return changed;
+    }
+
+    synchronized boolean setCoverOpen(int coverOpen, String event) {
+        boolean changed = this.coverOpen != coverOpen;
+        this.coverOpen = coverOpen;
+        touch(event);
+        return changed;
+    }
+
+    synchronized boolean setPaper(int paper, String event) {
+        boolean changed = this.paper != paper;
+        this.paper = paper;
+        touch(event);
+        return changed;
+    }
+
+    private void touch(String event) {
+        lastEvent = event;
+        updatedAt = System.currentTimeMillis();
+    }
+
+    /**
+     * Le statut est connu et date de moins de maxAgeMs
+     */
+    synchronized boolean isFresh(long maxAgeMs) {
+        return updatedAt > 0 && online != UNKNOWN && System.currentTimeMillis() - updatedAt <= maxAgeMs;
+    }
+
+    synchronized boolean isOnline() {
+        return connection != 0 && online == 1;
+    }
+
+    synchronized JSONObject toJson() {
+        JSONObject json = new JSONObject();
+        try {
+            json.put("available", isOnline());
+            json.put("connection", toJsonBoolean(connection));
+            json.put("online", toJsonBoolean(online));
+            json.put("coverOpen", toJsonBoolean(coverOpen));
+            json.put("paper", paperName(paper));
+            json.put("event", lastEvent != null ? lastEvent : JSONObject.NULL);
+            json.put("ageMs", updatedAt > 0 ? System.currentTimeMillis() - updatedAt : JSONObject.NULL);
+        } catch (JSONException e) {
+            // Ignore JSON error
+        }
+        return json;
+    }
+
+    private static Object toJsonBoolean(int value) {
+        return value == UNKNOWN ? JSONObject.NULL : Boolean.valueOf(value == 1);
+    }
+
+    private static Object paperName(int paper) {
+        switch (paper) {
+            case PAPER_OK:
+                return "ok";
+            case PAPER_NEAR_END:
+                return "nearEnd";
+            case PAPER_EMPTY:
+                return "empty";
+            default:
+                return JSONObject.NULL;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.eliberty.cordova.plugin.epsonusb;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Cache borné (LRU) des images déjà converties en trame, indexé par empreinte du contenu
+ * Borné en nombre d'images et en octets : une image réimprimée n'est pas reconvertie
+ */
+class RasterCache {
+
+    static final int DEFAULT_MAX_IMAGES = 16;
+    static final int DEFAULT_MAX_BYTES = 2 * 1024 * 1024;
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    private final int maxImages;
+    private final int maxBytes;
+    private final LinkedHashMap<String, RasterImage> rasters = new LinkedHashMap<String, RasterImage>(16, 0.75f, true);
+    private int bytes = 0;
+    private long hits = 0;
+    private long misses = 0;
+
+    RasterCache(int maxImages, int maxBytes) {
+        this.maxImages = maxImages;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Clé de cache : empreinte SHA-256 des données de l'image et paramètres de conversion
+     */
+    static String key(String data, int dither, int width) {
+        return key(data.getBytes(ASCII), dither, width);
+    }
+
+    /**
+     * Clé de cache d'une image transmise en binaire (printBinary) : empreinte du fichier lui-même
+     */
+    static String key(byte[] data, int dither, int width) {
+        StringBuilder key = new StringBuilder(72);
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(data);
+            for (byte b : digest) {
+                key.append(HEX_DIGITS[(b >> 4) & 0xF]).append(HEX_DIGITS[b & 0xF]);
+            }
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 est toujours disponible sur Android
+            key.append(data.length).append('-').append(Arrays.hashCode(data));
+        }
+        return key.append(':').append(dither).append(':').append(width).toString();
+    }
+
+    synchronized RasterImage get(String key) {
+        RasterImage raster = rasters.get(key);
+        if (raster != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return raster;
+    }
+
+    synchronized void put(String key, RasterImage raster) {
+        if (raster.byteSize() > maxBytes) {
+            // Trop volumineuse pour être conservée
+            return;
+        }
+        RasterImage previous = rasters.put(key, raster);
+        if (previous != null) {
+            bytes -= previous.byteSize();
+        }
+        bytes += raster.byteSize();
+        Iterator<RasterImage> it = rasters.values().iterator();
+        while ((rasters.size() > maxImages || bytes > maxBytes) && it.hasNext()) {
+            bytes -= it.next().byteSize();
+            it.remove();
+        }
+    }
+
+    synchronized int size() {
+        return rasters.size();
+    }
+
+    synchronized int byteSize() {
+        return bytes;
+    }
+
+    synchronized long getHits() {
+        return hits;
+    }
+
+    synchronized long getMisses() {
+        return misses;
+    }
+}
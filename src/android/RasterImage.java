@@ -0,0 +1,56 @@
+package com.eliberty.cordova.plugin.epsonusb;
+
+/**
+ * Image convertie en trame 1 bit (8 points par octet, bit de poids fort à gauche, 1 = noir)
+ * Immuable : partagée entre les impressions via le RasterCache
+ */
+final class RasterImage {
+
+    // Hauteur maximale d'une commande GS v 0
+    private static final int MAX_ROWS_PER_COMMAND = 256;
+    private static final int GS_V0_HEADER_BYTES = 8;
+
+    final int width;
+    final int height;
+    final int bytesPerRow;
+    // Trame brute, ligne par ligne
+    final byte[] bits;
+    // Commandes ESC/POS complètes (en-têtes GS v 0 et données), transmises par addCommand
+    final byte[] command;
+
+    RasterImage(int width, int height, byte[] bits) {
+        this.width = width;
+        this.height = height;
+        this.bytesPerRow = (width + 7) >> 3;
+        this.bits = bits;
+        this.command = toEscPos(bits, bytesPerRow, height);
+    }
+
+    int byteSize() {
+        return bits.length + command.length;
+    }
+
+    /**
+     * Trame découpée en commandes GS v 0 (mode normal) de MAX_ROWS_PER_COMMAND lignes au plus
+     */
+    private static byte[] toEscPos(byte[] bits, int bytesPerRow, int height) {
+        int commands = (height + MAX_ROWS_PER_COMMAND - 1) / MAX_ROWS_PER_COMMAND;
+        byte[] command = new byte[commands * GS_V0_HEADER_BYTES + bits.length];
+        int out = 0;
+        for (int y = 0; y < height; y += MAX_ROWS_PER_COMMAND) {
+            int rows = Math.min(MAX_ROWS_PER_COMMAND, height - y);
+            command[out++] = 0x1D;
+            command[out++] = 0x76;
+            command[out++] = 0x30;
+            command[out++] = 0x00;
+            command[out++] = (byte) (bytesPerRow & 0xFF);
+            command[out++] = (byte) (bytesPerRow >> 8);
+            command[out++] = (byte) (rows & 0xFF);
+            command[out++] = (byte) (rows >> 8);
+            int length = rows * bytesPerRow;
+            System.arraycopy(bits, y * bytesPerRow, command, out, length);
+            out += length;
+        }
+        return command;
+    }
+}
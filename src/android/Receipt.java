@@ -0,0 +1,99 @@
+package com.eliberty.cordova.plugin.epsonusb;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Ticket à imprimer : texte balisé (analysé à la demande, sur le thread de dispatch)
+ * ou segments déjà compilés (modèle enregistré), image ou trame transmise en binaire (printBinary)
+ */
+class Receipt {
+
+    private final String markup;
+    private List<ReceiptSegment> segments;
+    private MarkupException markupError;
+    private final int estimatedLength;
+    // Fichier PNG ou JPEG du segment IMAGE, ou sa trame déjà convertie (printBinary), sinon null
+    private final byte[] imageData;
+    private final RasterImage raster;
+
+    private Receipt(String markup, List<ReceiptSegment> segments, int estimatedLength, byte[] imageData, RasterImage raster) {
+        this.markup = markup;
+        this.segments = segments;
+        this.estimatedLength = estimatedLength;
+        this.imageData = imageData;
+        this.raster = raster;
+    }
+
+    static Receipt fromMarkup(String markup) {
+        return new Receipt(markup, null, markup.length(), null, null);
+    }
+
+    static Receipt fromSegments(List<ReceiptSegment> segments) {
+        int length = 0;
+        for (ReceiptSegment segment : segments) {
+            length += segment.text.length();
+        }
+        return new Receipt(null, Collections.unmodifiableList(segments), length, null, null);
+    }
+
+    /**
+     * Ticket d'une seule image (segment IMAGE), à convertir à partir du fichier PNG ou JPEG
+     */
+    static Receipt fromImage(ReceiptSegment segment, byte[] data) {
+        return new Receipt(null, Collections.singletonList(segment), data.length, data, null);
+    }
+
+    /**
+     * Ticket d'une seule image (segment IMAGE) déjà convertie en trame
+     */
+    static Receipt fromRaster(ReceiptSegment segment, RasterImage raster) {
+        return new Receipt(null, Collections.singletonList(segment), raster.command.length, null, raster);
+    }
+
+    /**
+     * Segments du ticket ; le balisage est analysé (une seule fois) au premier appel
+     */
+    synchronized List<ReceiptSegment> segments() throws MarkupException {
+        if (markupError != null) {
+            throw markupError;
+        }
+        if (segments == null) {
+            try {
+                segments = Collections.unmodifiableList(MarkupTokenizer.parse(markup));
+            } catch (MarkupException e) {
+                markupError = e;
+                throw e;
+            }
+        }
+        return segments;
+    }
+
+    /**
+     * Texte balisé d'origine, null pour un ticket compilé (spool)
+     */
+    String markup() {
+        return markup;
+    }
+
+    /**
+     * Fichier PNG ou JPEG d'un ticket image (fromImage), sinon null
+     */
+    byte[] imageData() {
+        return imageData;
+    }
+
+    /**
+     * Trame d'un ticket image (fromRaster), sinon null
+     */
+    RasterImage raster() {
+        return raster;
+    }
+
+    /**
+     * Longueur du contenu, utilisée pour estimer la taille des commandes dans le buffer du SDK
+     */
+    int estimatedLength() {
+        return estimatedLength;
+    }
+}
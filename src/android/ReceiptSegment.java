@@ -0,0 +1,87 @@
+package com.eliberty.cordova.plugin.epsonusb;
+
+/**
+ * Segment d'un ticket après analyse du balisage, avec le style actif au moment du segment
+ */
+class ReceiptSegment {
+
+    // Types de segment
+    static final int TEXT = 0;
+    static final int QRCODE = 1;
+    static final int BARCODE = 2;
+    static final int FEED = 3;
+    static final int IMAGE = 4;
+    static final int LOGO = 5;
+
+    // Alignements (mêmes valeurs que Printer.ALIGN_*)
+    static final int ALIGN_LEFT = 0;
+    static final int ALIGN_CENTER = 1;
+    static final int ALIGN_RIGHT = 2;
+
+    // Polices (mêmes valeurs que Printer.FONT_*)
+    static final int FONT_A = 0;
+    static final int FONT_B = 1;
+    static final int FONT_C = 2;
+
+    // Types de code-barres (mêmes valeurs que Printer.BARCODE_*)
+    static final int BARCODE_UPC_A = 0;
+    static final int BARCODE_EAN13 = 2;
+    static final int BARCODE_EAN8 = 4;
+    static final int BARCODE_CODE39 = 6;
+    static final int BARCODE_ITF = 7;
+    static final int BARCODE_CODE128 = 10;
+
+    final int type;
+    final String text;
+    final boolean bold;
+    final boolean underline;
+    final int align;
+    final int width;
+    final int height;
+    final int font;
+    // Paramètre du segment : nombre de lignes (FEED), type de code-barres (BARCODE)
+    // ou tramage et largeur en points (IMAGE, voir imageArg)
+    final int arg;
+
+    ReceiptSegment(int type, String text, boolean bold, boolean underline, int align, int width, int height, int font, int arg) {
+        this.type = type;
+        this.text = text;
+        this.bold = bold;
+        this.underline = underline;
+        this.align = align;
+        this.width = width;
+        this.height = height;
+        this.font = font;
+        this.arg = arg;
+    }
+
+    /**
+     * Paramètre d'un segment IMAGE : tramage (ImageRasterizer.DITHER_*) et largeur en points (0 = automatique)
+     */
+    static int imageArg(int dither, int widthDots) {
+        return (widthDots << 4) | dither;
+    }
+
+    int imageDither() {
+        return arg & 0xF;
+    }
+
+    int imageWidth() {
+        return arg >> 4;
+    }
+
+    /**
+     * Même style de texte : deux textes consécutifs peuvent être émis par un seul addText
+     */
+    boolean sameTextStyle(ReceiptSegment other) {
+        return bold == other.bold && underline == other.underline && align == other.align
+                && width == other.width && height == other.height && font == other.font;
+    }
+
+    /**
+     * Copie du segment avec un autre contenu (substitution des champs d'un modèle)
+     */
+    ReceiptSegment withText(String newText) {
+        return new ReceiptSegment(type, newText, bold, underline, align, width, height, font, arg);
+    }
+}
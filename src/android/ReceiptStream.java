@@ -0,0 +1,254 @@
+package com.eliberty.cordova.plugin.epsonusb;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Ticket long envoyé en continu (streamChunkBytes) : compilé partie par partie, à la demande
+ *
+ * Chaque partie est analysée à partir de la position atteinte par la précédente (MarkupTokenizer.advance),
+ * ses textes de même style fusionnés, ses images converties et, en mode "escpos", elle est encodée à la suite
+ * des précédentes (EscPosEncoder.forStream, parties bout à bout identiques au ticket encodé d'un bloc) :
+ * seules la partie en cours d'impression et la suivante existent en mémoire, quelle que soit la longueur
+ * du document. Une partie commence toujours en début de ligne (après un saut de ligne, une avance, un symbole
+ * ou une image) ; une ligne plus longue qu'une partie n'est pas coupée, seule la dernière partie coupe le papier.
+ *
+ * Le balisage est validé en entier à l'ouverture, sans en conserver les segments : une erreur de balisage
+ * n'imprime jamais le début du ticket. Une image illisible n'est détectée qu'à la compilation de sa partie.
+ * Non thread-safe : les parties sont demandées l'une après l'autre (pool de compilation, thread de dispatch).
+ */
+final class ReceiptStream {
+
+    // Texte transmis au plus par étape d'analyse : une longue suite de lignes sans balise
+    // n'est jamais copiée d'un bloc
+    private static final int MAX_TEXT_STEP = 4096;
+
+    // Clés des logos NV utilisés (validation à l'ouverture), vérifiées sur l'imprimante avant la première partie
+    final List<String> logos;
+
+    private final CompiledReceipt.ImageSource imageSource;
+    // Mode "escpos" : encodeur commun aux parties (null en mode SDK)
+    private final EscPosEncoder encoder;
+    private final ChunkWriter writer;
+    // Source des segments : balisage analysé au fil de l'eau, ou segments d'un ticket compilé (modèle)
+    private final MarkupTokenizer tokenizer;
+    private final Iterator<ReceiptSegment> segments;
+    // Première partie, compilée dès l'ouverture (pool de compilation, pendant l'attente en file)
+    private CompiledReceipt first = null;
+    private boolean finished = false;
+
+    private ReceiptStream(Receipt receipt, CompiledReceipt.ImageSource imageSource, int chunkBytes, boolean escpos,
+                          List<String> logos) throws MarkupException {
+        this.imageSource = imageSource;
+        this.encoder = escpos ? EscPosEncoder.forStream() : null;
+        this.logos = logos;
+        this.writer = new ChunkWriter(chunkBytes);
+        if (receipt.markup() != null) {
+            this.tokenizer = MarkupTokenizer.incremental(receipt.markup(), writer);
+            this.segments = null;
+        } else {
+            this.tokenizer = null;
+            this.segments = receipt.segments().iterator();
+        }
+    }
+
+    /**
+     * Ouvre l'envoi en continu d'un ticket dont les commandes dépassent chunkBytes
+     * @param chunkBytes taille visée d'une partie, 0 pour ne jamais découper
+     * @return null si le ticket part en un seul envoi (court, image seule ou envoi en continu désactivé)
+     * @throws MarkupException si le balisage est invalide
+     * @throws IllegalArgumentException si une image de la première partie est illisible
+     */
+    static ReceiptStream open(Receipt receipt, CompiledReceipt.ImageSource imageSource, int chunkBytes, boolean escpos)
+            throws MarkupException {
+        // Une commande hors texte est estimée au plus au double de sa balise : inutile d'analyser un ticket court
+        if (chunkBytes <= 0 || receipt.imageData() != null || receipt.raster() != null
+                || 2L * receipt.estimatedLength() + CompiledReceipt.CUT_BYTES <= chunkBytes) {
+            return null;
+        }
+        Estimate estimate = new Estimate();
+        if (receipt.markup() != null) {
+            MarkupTokenizer scan = MarkupTokenizer.incremental(receipt.markup(), estimate);
+            while (scan.advance(MAX_TEXT_STEP)) {
+                // Validation seule : les segments ne sont pas conservés
+            }
+        } else {
+            for (ReceiptSegment segment : receipt.segments()) {
+                estimate.onSegment(segment);
+            }
+        }
+        if (estimate.bytes <= chunkBytes) {
+            return null;
+        }
+        ReceiptStream stream = new ReceiptStream(receipt, imageSource, chunkBytes, escpos, estimate.logos);
+        stream.first = stream.next();
+        return stream;
+    }
+
+    /**
+     * Compile la partie suivante
+     * @return la partie (coupe comprise pour la dernière, cut), null une fois la dernière rendue
+     * @throws MarkupException si le balisage est invalide (déjà validé à l'ouverture)
+     * @throws IllegalArgumentException si une image de la partie est illisible
+     */
+    CompiledReceipt next() throws MarkupException {
+        if (first != null) {
+            CompiledReceipt part = first;
+            first = null;
+            return part;
+        }
+        while (writer.parts.isEmpty() && !finished) {
+            boolean more;
+            if (tokenizer != null) {
+                more = tokenizer.advance(MAX_TEXT_STEP);
+            } else {
+                more = segments.hasNext();
+                if (more) {
+                    writer.onSegment(segments.next());
+                }
+            }
+            if (!more) {
+                writer.finish();
+                finished = true;
+            }
+        }
+        CompiledReceipt part = writer.parts.poll();
+        return part != null && encoder != null ? part.withRaw(encoder) : part;
+    }
+
+    /**
+     * Taille estimée des commandes et logos du ticket, images comptées sans leur trame (pas encore convertie)
+     */
+    private static final class Estimate implements MarkupTokenizer.Listener {
+
+        private long bytes = CompiledReceipt.CUT_BYTES;
+        private List<String> logos = Collections.emptyList();
+
+        @Override
+        public void onSegment(ReceiptSegment segment) {
+            bytes += CompiledReceipt.commandBytes(segment, null);
+            if (segment.type == ReceiptSegment.LOGO) {
+                if (logos.isEmpty()) {
+                    logos = new ArrayList<String>(2);
+                }
+                logos.add(segment.text);
+            }
+        }
+    }
+
+    /**
+     * Accumule les segments en parties bornées ; le texte en cours (textes consécutifs de même style, comme
+     * CompiledReceipt.compile) n'est coupé qu'à un saut de ligne, éventuellement reçu avec un segment suivant
+     */
+    private final class ChunkWriter implements MarkupTokenizer.Listener {
+
+        private final int chunkBytes;
+        // Parties closes, pas encore demandées (une étape d'analyse peut en clore plusieurs)
+        private final ArrayDeque<CompiledReceipt> parts = new ArrayDeque<CompiledReceipt>();
+        private List<ReceiptSegment> commands = new ArrayList<ReceiptSegment>();
+        private List<RasterImage> images = new ArrayList<RasterImage>();
+        private boolean hasImages = false;
+        private int mergedTexts = 0;
+        // Taille des commandes de la partie, hors texte en cours
+        private int bytes = 0;
+        // Fin des commandes de la partie en début de ligne : la partie peut être close avant la suivante
+        private boolean lineStart = true;
+        // Texte en cours et son style (premier segment fusionné)
+        private final StringBuilder run = new StringBuilder();
+        private ReceiptSegment runStyle = null;
+
+        ChunkWriter(int chunkBytes) {
+            this.chunkBytes = chunkBytes;
+        }
+
+        @Override
+        public void onSegment(ReceiptSegment segment) {
+            if (segment.type != ReceiptSegment.TEXT) {
+                flushRun();
+                RasterImage image = segment.type == ReceiptSegment.IMAGE ? imageSource.raster(segment) : null;
+                int size = CompiledReceipt.commandBytes(segment, image);
+                if (lineStart && bytes > 0 && bytes + size > chunkBytes) {
+                    close(false);
+                }
+                append(segment, image, size);
+                lineStart = true;
+                return;
+            }
+            if (runStyle != null && runStyle.sameTextStyle(segment)) {
+                // Même style que le texte précédent : fusionné au lieu d'un addText de plus
+                mergedTexts++;
+            } else {
+                flushRun();
+                runStyle = segment;
+            }
+            run.append(segment.text);
+            while (bytes + run.length() > chunkBytes) {
+                // Dernier saut de ligne qui tient dans la place restante de la partie
+                int limit = chunkBytes - bytes;
+                int newline = run.lastIndexOf("\n", limit - 1);
+                if (newline < 0) {
+                    if (lineStart && bytes > 0) {
+                        // Rien ne tient : le texte commence une nouvelle partie
+                        close(false);
+                        continue;
+                    }
+                    // Ligne plus longue qu'une partie : conservée entière, jusqu'à son saut de ligne
+                    newline = run.indexOf("\n", limit);
+                    if (newline < 0) {
+                        break;
+                    }
+                }
+                append(runStyle.withText(run.substring(0, newline + 1)), null, newline + 1);
+                run.delete(0, newline + 1);
+                close(false);
+            }
+        }
+
+        /**
+         * Texte en cours ajouté à la partie comme une seule commande
+         */
+        private void flushRun() {
+            if (run.length() > 0) {
+                append(runStyle.withText(run.toString()), null, run.length());
+                lineStart = run.charAt(run.length() - 1) == '\n';
+                run.setLength(0);
+            }
+            runStyle = null;
+        }
+
+        private void append(ReceiptSegment command, RasterImage image, int size) {
+            commands.add(command);
+            images.add(image);
+            hasImages |= image != null;
+            bytes += size;
+        }
+
+        private void close(boolean last) {
+            RasterImage[] partImages = hasImages ? images.toArray(new RasterImage[images.size()]) : null;
+            parts.add(CompiledReceipt.part(Collections.unmodifiableList(commands), partImages, mergedTexts, last));
+            commands = new ArrayList<ReceiptSegment>();
+            images = new ArrayList<RasterImage>();
+            hasImages = false;
+            mergedTexts = 0;
+            bytes = 0;
+            lineStart = true;
+        }
+
+        /**
+         * Dernière partie, avec la coupe ; si le ticket finit en fin de partie et que celle-ci est déjà rendue,
+         * la dernière ne contient que la coupe
+         */
+        void finish() {
+            flushRun();
+            if (commands.isEmpty() && !parts.isEmpty()) {
+                CompiledReceipt last = parts.pollLast();
+                parts.add(CompiledReceipt.part(last.commands, last.images, last.mergedTexts, true));
+            } else {
+                close(true);
+            }
+        }
+    }
+}
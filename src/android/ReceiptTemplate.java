@@ -0,0 +1,94 @@
+package com.eliberty.cordova.plugin.epsonusb;
+
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Modèle de ticket compilé une seule fois : le balisage est analysé à l'enregistrement
+ * et les champs {{nom}} sont pré-découpés, l'impression ne fait plus que des substitutions
+ */
+class ReceiptTemplate {
+
+    private static final String FIELD_OPEN = "{{";
+    private static final String FIELD_CLOSE = "}}";
+
+    final String name;
+    final String version;
+    // Pour chaque segment : littéraux et champs alternés (literals.length == fields.length + 1)
+    private final ReceiptSegment[] prototypes;
+    private final String[][] literals;
+    private final String[][] fields;
+    private final Set<String> fieldNames = new LinkedHashSet<String>();
+
+    ReceiptTemplate(String name, String version, String markup) throws MarkupException {
+        this.name = name;
+        this.version = version;
+
+        List<ReceiptSegment> segments = MarkupTokenizer.parse(markup);
+        prototypes = segments.toArray(new ReceiptSegment[0]);
+        literals = new String[prototypes.length][];
+        fields = new String[prototypes.length][];
+        for (int i = 0; i < prototypes.length; i++) {
+            compileSegment(i, prototypes[i].text);
+        }
+    }
+
+    private void compileSegment(int index, String text) {
+        List<String> segmentLiterals = new ArrayList<String>();
+        List<String> segmentFields = new ArrayList<String>();
+        int position = 0;
+        while (true) {
+            int open = text.indexOf(FIELD_OPEN, position);
+            int close = open < 0 ? -1 : text.indexOf(FIELD_CLOSE, open + FIELD_OPEN.length());
+            if (close < 0) {
+                segmentLiterals.add(text.substring(position));
+                break;
+            }
+            segmentLiterals.add(text.substring(position, open));
+            String field = text.substring(open + FIELD_OPEN.length(), close).trim();
+            segmentFields.add(field);
+            fieldNames.add(field);
+            position = close + FIELD_CLOSE.length();
+        }
+        literals[index] = segmentLiterals.toArray(new String[0]);
+        fields[index] = segmentFields.toArray(new String[0]);
+    }
+
+    /**
+     * Produit le ticket avec les valeurs des champs ; un champ absent est remplacé par une chaîne vide
+     * Les valeurs ne sont pas interprétées comme du balisage
+     */
+    Receipt render(JSONObject data) {
+        List<ReceiptSegment> segments = new ArrayList<ReceiptSegment>(prototypes.length);
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < prototypes.length; i++) {
+            String[] segmentLiterals = literals[i];
+            String[] segmentFields = fields[i];
+            builder.setLength(0);
+            builder.append(segmentLiterals[0]);
+            for (int f = 0; f < segmentFields.length; f++) {
+                Object value = data != null ? data.opt(segmentFields[f]) : null;
+                if (value != null && value != JSONObject.NULL) {
+                    builder.append(value.toString());
+                }
+                builder.append(segmentLiterals[f + 1]);
+            }
+            if (builder.length() > 0 || prototypes[i].type == ReceiptSegment.FEED) {
+                segments.add(segmentFields.length == 0 ? prototypes[i] : prototypes[i].withText(builder.toString()));
+            }
+        }
+        return Receipt.fromSegments(segments);
+    }
+
+    int segmentCount() {
+        return prototypes.length;
+    }
+
+    Set<String> getFieldNames() {
+        return fieldNames;
+    }
+}
@@ -0,0 +1,55 @@
+package com.eliberty.cordova.plugin.epsonusb;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache borné (LRU) des modèles de tickets compilés, indexé par nom
+ * Un modèle évincé ou d'une autre version doit être ré-enregistré par le JavaScript
+ */
+class TemplateCache {
+
+    static final int DEFAULT_MAX_TEMPLATES = 32;
+
+    private final int maxTemplates;
+    private final LinkedHashMap<String, ReceiptTemplate> templates;
+
+    TemplateCache(int maxTemplates) {
+        this.maxTemplates = maxTemplates;
+        this.templates = new LinkedHashMap<String, ReceiptTemplate>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ReceiptTemplate> eldest) {
+                return size() > TemplateCache.this.maxTemplates;
+            }
+        };
+    }
+
+    /**
+     * Retourne le modèle déjà compilé pour ce nom et cette version, s'il existe
+     */
+    synchronized ReceiptTemplate get(String name, String version) {
+        ReceiptTemplate template = templates.get(name);
+        if (template == null) {
+            return null;
+        }
+        if (version != null && !version.isEmpty() && !version.equals(template.version)) {
+            return null;
+        }
+        return template;
+    }
+
+    /**
+     * Enregistre un modèle ; une nouvelle version remplace l'ancienne
+     */
+    synchronized void put(ReceiptTemplate template) {
+        templates.put(template.name, template);
+    }
+
+    synchronized boolean remove(String name) {
+        return templates.remove(name) != null;
+    }
+
+    synchronized int size() {
+        return templates.size();
+    }
+}
@@ -0,0 +1,362 @@
+package com.eliberty.cordova.plugin.epsonusb;
+
+import android.app.PendingIntent;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.hardware.usb.UsbDevice;
+import android.hardware.usb.UsbManager;
+import android.os.Build;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Périphériques USB branchés, tenus à jour par les broadcasts de branchement/débranchement
+ * Évite d'énumérer le bus USB à chaque impression ; le diagnostic n'est construit qu'à la demande
+ */
+class UsbDeviceRegistry {
+
+    static final int EPSON_VENDOR_ID = 0x04B8;
+    // Réponse de l'utilisateur à une demande de permission USB (requestPermission)
+    static final String ACTION_USB_PERMISSION = "com.eliberty.cordova.plugin.epsonusb.USB_PERMISSION";
+
+    // Product IDs connus pour les imprimantes TM-T88
+    private static final Set<Integer> KNOWN_TM_T88_PIDS = Collections.unmodifiableSet(new HashSet<Integer>(
+            Arrays.asList(0x0202, 0x0e03, 0x0e15, 0x0e27, 0x0e28, 0x0e2a)));
+
+    /**
+     * Notifié lors du branchement d'une imprimante Epson, ou quand l'accès USB à une imprimante
+     * est accordé (thread principal)
+     */
+    interface AttachListener {
+        void onPrinterAttached(UsbDevice device);
+    }
+
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    // Périphériques par nom (ordre de branchement)
+    private final Map<String, UsbDevice> devices = new LinkedHashMap<String, UsbDevice>();
+    // Identifiants d'imprimante déjà calculés, par nom de périphérique
+    private final Map<String, String> identities = new HashMap<String, String>();
+    // Périphériques pour lesquels une demande de permission est affichée : une seule boîte de dialogue à la fois
+    private final Set<String> permissionRequests = new HashSet<String>();
+    private UsbManager usbManager = null;
+    private BroadcastReceiver receiver = null;
+    // Liste initiale chargée : sans broadcasts (enregistrement impossible), la liste est relue à chaque diagnostic
+    private boolean tracking = false;
+    // Cause de l'échec d'enregistrement des broadcasts, affichée dans le diagnostic
+    private String receiverError = null;
+    private volatile AttachListener attachListener = null;
+
+    /**
+     * Charge la liste initiale des périphériques et s'abonne aux broadcasts USB
+     */
+    synchronized void register(Context context) {
+        if (receiver != null) {
+            return;
+        }
+        usbManager = (UsbManager) context.getSystemService(Context.USB_SERVICE);
+        receiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                UsbDevice device = intent.getParcelableExtra(UsbManager.EXTRA_DEVICE);
+                if (device == null) {
+                    return;
+                }
+                if (UsbManager.ACTION_USB_DEVICE_ATTACHED.equals(intent.getAction())) {
+                    onAttached(device);
+                } else if (ACTION_USB_PERMISSION.equals(intent.getAction())) {
+                    onPermissionResult(device, intent.getBooleanExtra(UsbManager.EXTRA_PERMISSION_GRANTED, false));
+                } else if (UsbManager.ACTION_USB_DEVICE_DETACHED.equals(intent.getAction())) {
+                    onDetached(device);
+                }
+            }
+        };
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(UsbManager.ACTION_USB_DEVICE_ATTACHED);
+        filter.addAction(UsbManager.ACTION_USB_DEVICE_DETACHED);
+        filter.addAction(ACTION_USB_PERMISSION);
+        try {
+            // Android 13+ : ACTION_USB_PERMISSION n'est envoyé que par notre PendingIntent, le récepteur n'est pas
+            // exporté (obligatoire pour une application ciblant Android 14) ; les broadcasts USB système arrivent quand même
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
+                context.registerReceiver(receiver, filter, Context.RECEIVER_NOT_EXPORTED);
+            } else {
+                context.registerReceiver(receiver, filter);
+            }
+            tracking = true;
+            receiverError = null;
+        } catch (Exception e) {
+            // Repli : liste relue à chaque recherche d'imprimante et demandes de permission sans suivi de la réponse
+            receiver = null;
+            receiverError = e.toString();
+        }
+        reload();
+    }
+
+    synchronized void unregister(Context context) {
+        if (receiver == null) {
+            return;
+        }
+        try {
+            context.unregisterReceiver(receiver);
+        } catch (Exception e) {
+            // Ignore error
+        }
+        receiver = null;
+        tracking = false;
+    }
+
+    void setAttachListener(AttachListener listener) {
+        attachListener = listener;
+    }
+
+    void onAttached(UsbDevice device) {
+        synchronized (this) {
+            devices.put(device.getDeviceName(), device);
+        }
+        AttachListener listener = attachListener;
+        if (listener != null && device.getVendorId() == EPSON_VENDOR_ID) {
+            listener.onPrinterAttached(device);
+        }
+    }
+
+    synchronized void onDetached(UsbDevice device) {
+        devices.remove(device.getDeviceName());
+        identities.remove(device.getDeviceName());
+        permissionRequests.remove(device.getDeviceName());
+    }
+
+    /**
+     * Demande à l'utilisateur l'accès USB à l'imprimante, sans attendre la réponse
+     * (reçue par le broadcast ACTION_USB_PERMISSION) ; ne fait rien si une demande est déjà affichée
+     * Sans broadcasts (enregistrement refusé), la demande est affichée à chaque appel : la réponse
+     * n'est pas reçue, l'accès accordé est vu à la tentative d'impression suivante
+     * @return true si une demande a été affichée
+     */
+    synchronized boolean requestPermission(Context context, UsbDevice device) {
+        if (usbManager == null || usbManager.hasPermission(device)
+                || (receiver != null && !permissionRequests.add(device.getDeviceName()))) {
+            return false;
+        }
+        // Intent explicite et modifiable : le système y ajoute le périphérique et la réponse
+        Intent intent = new Intent(ACTION_USB_PERMISSION).setPackage(context.getPackageName());
+        int flags = Build.VERSION.SDK_INT >= Build.VERSION_CODES.S ? PendingIntent.FLAG_MUTABLE : 0;
+        try {
+            usbManager.requestPermission(device, PendingIntent.getBroadcast(context, 0, intent, flags));
+            return true;
+        } catch (Exception e) {
+            permissionRequests.remove(device.getDeviceName());
+            return false;
+        }
+    }
+
+    void onPermissionResult(UsbDevice device, boolean granted) {
+        synchronized (this) {
+            permissionRequests.remove(device.getDeviceName());
+            // Le numéro de série devient lisible : recalculer l'identifiant
+            identities.remove(device.getDeviceName());
+        }
+        AttachListener listener = attachListener;
+        if (granted && listener != null && device.getVendorId() == EPSON_VENDOR_ID) {
+            listener.onPrinterAttached(device);
+        }
+    }
+
+    /**
+     * Relit la liste complète des périphériques (une seule énumération)
+     */
+    private void reload() {
+        devices.clear();
+        if (usbManager == null) {
+            return;
+        }
+        Map<String, UsbDevice> list = usbManager.getDeviceList();
+        if (list != null) {
+            devices.putAll(list);
+        }
+    }
+
+    static boolean isKnownTmT88(int productId) {
+        return KNOWN_TM_T88_PIDS.contains(productId);
+    }
+
+    /**
+     * Imprimante Epson branchée, null si aucune
+     */
+    synchronized UsbDevice findEpsonDevice() {
+        if (!tracking) {
+            reload();
+        }
+        UsbDevice epson = null;
+        for (UsbDevice device : devices.values()) {
+            if (device.getVendorId() == EPSON_VENDOR_ID) {
+                epson = device;
+            }
+        }
+        return epson;
+    }
+
+    /**
+     * Imprimante Epson désignée par l'adresse d'une cible USB du SDK
+     * ("" : la première branchée, "/dev/bus/usb/001/002" ou numéro de série), null si elle n'est pas branchée
+     */
+    synchronized UsbDevice findEpsonDevice(String address) {
+        if (address.isEmpty()) {
+            return findEpsonDevice();
+        }
+        if (!tracking) {
+            reload();
+        }
+        for (UsbDevice device : devices.values()) {
+            if (device.getVendorId() == EPSON_VENDOR_ID
+                    && (address.equals(device.getDeviceName()) || identify(device).endsWith(":" + address))) {
+                return device;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Liste des périphériques disponible : sans UsbManager, l'absence d'imprimante n'est pas une information
+     */
+    synchronized boolean canEnumerate() {
+        return usbManager != null;
+    }
+
+    synchronized boolean hasPermission(UsbDevice device) {
+        return usbManager != null && usbManager.hasPermission(device);
+    }
+
+    /**
+     * Identifiant stable de l'imprimante Epson branchée : "VID:PID:numéro de série"
+     * Sans permission USB, le numéro de série n'est pas lisible : "VID:PID@nom du périphérique" (voir hasSerial)
+     * @return null si aucune imprimante Epson n'est branchée
+     */
+    synchronized String getPrinterId() {
+        UsbDevice epson = findEpsonDevice();
+        if (epson == null) {
+            return null;
+        }
+        return identify(epson);
+    }
+
+    /**
+     * Identifiant de l'imprimante Epson désignée par une cible USB du SDK
+     * ("USB:/dev/bus/usb/001/002" ou "USB:numéro de série")
+     * @return null si elle n'est pas branchée
+     */
+    synchronized String getPrinterId(String address) {
+        if (!tracking) {
+            reload();
+        }
+        for (UsbDevice device : devices.values()) {
+            if (device.getVendorId() != EPSON_VENDOR_ID) {
+                continue;
+            }
+            String id = identify(device);
+            if (address.equals(device.getDeviceName()) || id.endsWith(":" + address)) {
+                return id;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * L'identifiant contient le numéro de série, propre à l'imprimante ; sinon ("VID:PID@nom du périphérique"),
+     * il ne désigne que le branchement en cours et ne doit pas être conservé d'un lancement à l'autre
+     */
+    static boolean hasSerial(String printerId) {
+        return printerId.length() > 9 && printerId.charAt(9) == ':';
+    }
+
+    private String identify(UsbDevice epson) {
+        String id = identities.get(epson.getDeviceName());
+        if (id != null) {
+            return id;
+        }
+        StringBuilder sb = new StringBuilder(32);
+        appendHex(sb, epson.getVendorId()).append(':');
+        appendHex(sb, epson.getProductId());
+        String serial = null;
+        try {
+            serial = epson.getSerialNumber();
+        } catch (SecurityException e) {
+            // Permission USB pas encore accordée
+        }
+        if (serial == null || serial.isEmpty()) {
+            // Nom du périphérique : nouveau à chaque branchement, un autre exemplaire du même modèle ne le reprend pas
+            return sb.append('@').append(epson.getDeviceName()).toString();
+        }
+        id = sb.append(':').append(serial).toString();
+        identities.put(epson.getDeviceName(), id);
+        return id;
+    }
+
+    /**
+     * Construit les informations de diagnostic USB (appelé uniquement en cas d'erreur ou sur demande)
+     */
+    synchronized JSONObject buildDiagnostics() {
+        JSONObject diag = new JSONObject();
+        String usbDiagnostic;
+        UsbDevice epson = null;
+
+        if (usbManager == null) {
+            usbDiagnostic = "UsbManager non disponible";
+        } else {
+            if (!tracking) {
+                reload();
+            }
+            StringBuilder sb = new StringBuilder(devices.size() * 20);
+            for (UsbDevice device : devices.values()) {
+                sb.append("[VID:");
+                appendHex(sb, device.getVendorId());
+                sb.append(" PID:");
+                appendHex(sb, device.getProductId());
+                sb.append("] ");
+                if (device.getVendorId() == EPSON_VENDOR_ID) {
+                    epson = device;
+                }
+            }
+            usbDiagnostic = sb.length() > 0 ? sb.toString() : "Aucun périphérique USB détecté";
+        }
+
+        int epsonProductId = epson != null ? epson.getProductId() : 0;
+        try {
+            diag.put("epsonDetected", epson != null);
+            diag.put("usbPermission", epson != null && usbManager.hasPermission(epson));
+            diag.put("usbDevices", usbDiagnostic);
+            diag.put("usbDeviceCount", devices.size());
+            diag.put("epsonProductId", appendHex(new StringBuilder(6).append("0x"), epsonProductId).toString());
+            diag.put("epsonDeviceName", epson != null ? epson.getDeviceName() : "");
+            diag.put("isKnownTmT88", epson != null && isKnownTmT88(epsonProductId));
+            diag.put("usbBroadcasts", tracking);
+            if (receiverError != null) {
+                diag.put("usbBroadcastsError", receiverError);
+            }
+        } catch (JSONException e) {
+            // Ignore JSON error
+        }
+        return diag;
+    }
+
+    /**
+     * Équivalent de String.format("%04X", value) sans analyse de format
+     */
+    private static StringBuilder appendHex(StringBuilder sb, int value) {
+        for (int shift = 12; shift >= 0; shift -= 4) {
+            sb.append(HEX_DIGITS[(value >> shift) & 0xF]);
+        }
+        return sb;
+    }
+}
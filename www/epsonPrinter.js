@@ -1,5 +1,79 @@
 (function (cordova) {
-  var EpsonPrinter = function () {};
+  // Méthodes disponibles dans l'API Promise (subscribeStatus, qui rappelle plusieurs fois, n'en fait pas partie)
+  var ASYNC_METHODS = [
+    "printText",
+    "printBatch",
+    "printImage",
+    "uploadLogo",
+    "listLogos",
+    "registerTemplate",
+    "printTemplate",
+    "printBinary",
+    "isPrinterAvailable",
+    "unsubscribeStatus",
+    "getDiagnostics",
+    "configureSession",
+    "configureCommands",
+    "getCommandStats",
+    "getMetrics",
+    "resetMetrics",
+    "getQueue",
+    "cancelJob",
+    "configureQueue",
+    "configurePrinter",
+    "removePrinter",
+    "getPrinters",
+    "discover",
+    "configureTimeouts",
+    "getTimeouts",
+    "configureSpool",
+    "getSpool",
+    "replaySpool",
+    "clearSpool",
+  ];
+
+  var EpsonPrinter = function () {
+    var self = this;
+    // Modèles enregistrés, conservés pour les ré-enregistrer si le cache natif les a évincés
+    this.templates = {};
+
+    // API Promise : EpsonPrinter.async.printText(options, onEvent) est résolue avec la réponse
+    // finale et rejetée avec l'erreur. Avec onEvent, l'option events est activée et les événements
+    // de progression ({ event: "queued" | "position" | "connecting" | "sent", jobId, ... }) lui sont passés ;
+    // avec events: true sans onEvent, ils sont ignorés
+    this.async = {};
+    ASYNC_METHODS.forEach(function (method) {
+      self.async[method] = function (options, onEvent) {
+        var args = options;
+        if (typeof onEvent === "function") {
+          args = {};
+          for (var key in options) {
+            if (Object.prototype.hasOwnProperty.call(options, key)) {
+              args[key] = options[key];
+            }
+          }
+          args.events = true;
+        }
+        return new Promise(function (resolve, reject) {
+          self[method](
+            function (result) {
+              // Avec l'option events (onEvent ou options.events), seule la réponse finale résout la Promise ;
+              // les événements sont ignorés sans onEvent
+              if (args && args.events && result && result.event) {
+                if (typeof onEvent === "function") {
+                  onEvent(result);
+                }
+                return;
+              }
+              resolve(result);
+            },
+            reject,
+            args
+          );
+        });
+      };
+    });
+  };
 
   EpsonPrinter.prototype.printText = function (success, fail, options) {
     return cordova.exec(
@@ -15,7 +89,293 @@
     );
   };
 
-  EpsonPrinter.prototype.isPrinterAvailable = function (success, fail) {
+  EpsonPrinter.prototype.printBatch = function (success, fail, options) {
+    return cordova.exec(
+      function (args) {
+        success(args);
+      },
+      function (args) {
+        fail(args);
+      },
+      "EpsonPrinterPlugin",
+      "printBatch",
+      [options]
+    );
+  };
+
+  EpsonPrinter.prototype.printImage = function (success, fail, options) {
+    return cordova.exec(
+      function (args) {
+        success(args);
+      },
+      function (args) {
+        fail(args);
+      },
+      "EpsonPrinterPlugin",
+      "printImage",
+      [options]
+    );
+  };
+
+  EpsonPrinter.prototype.uploadLogo = function (success, fail, options) {
+    return cordova.exec(
+      function (args) {
+        success(args);
+      },
+      function (args) {
+        fail(args);
+      },
+      "EpsonPrinterPlugin",
+      "uploadLogo",
+      [options]
+    );
+  };
+
+  EpsonPrinter.prototype.listLogos = function (success, fail, options) {
+    return cordova.exec(
+      function (args) {
+        success(args);
+      },
+      function (args) {
+        fail(args);
+      },
+      "EpsonPrinterPlugin",
+      "listLogos",
+      [options || {}]
+    );
+  };
+
+  EpsonPrinter.prototype.registerTemplate = function (success, fail, options) {
+    var self = this;
+    return cordova.exec(
+      function (args) {
+        // Conservé seulement une fois enregistré côté natif : un modèle refusé n'est jamais ré-enregistré
+        if (options.markup !== undefined) {
+          self.templates[options.name] = {
+            markup: options.markup,
+            version: options.version || "",
+          };
+        }
+        success(args);
+      },
+      function (args) {
+        fail(args);
+      },
+      "EpsonPrinterPlugin",
+      "registerTemplate",
+      [options]
+    );
+  };
+
+  EpsonPrinter.prototype.printTemplate = function (success, fail, options) {
+    var self = this;
+    var template = this.templates[options.name];
+    // Toutes les options de l'appel (jobId, priority, idempotencyKey, durable...) sauf le balisage du modèle
+    var request = {};
+    for (var key in options) {
+      if (key !== "markup" && Object.prototype.hasOwnProperty.call(options, key)) {
+        request[key] = options[key];
+      }
+    }
+    request.version = options.version || (template ? template.version : "");
+    request.data = options.data || {};
+    var print = function (retry) {
+      cordova.exec(
+        function (args) {
+          success(args);
+        },
+        function (args) {
+          // Modèle évincé du cache natif : le ré-enregistrer une fois puis réessayer
+          if (retry && template && args && args.context === "templateMissing") {
+            cordova.exec(
+              function () {
+                print(false);
+              },
+              function (err) {
+                fail(err);
+              },
+              "EpsonPrinterPlugin",
+              "registerTemplate",
+              [{ name: options.name, version: template.version, markup: template.markup }]
+            );
+            return;
+          }
+          fail(args);
+        },
+        "EpsonPrinterPlugin",
+        "printTemplate",
+        [request]
+      );
+    };
+    print(true);
+  };
+
+  // Format binaire des travaux (printBinary, voir BinaryJob.java) : en-tête "EPJ" + version, puis
+  // enregistrements type (1 octet), longueur (4 octets, big-endian), données
+  var BINARY_MAGIC = [0x45, 0x50, 0x4a, 0x01];
+  var BINARY_TEXT = 1;
+  var BINARY_IMAGE = 2;
+  var BINARY_RASTER = 3;
+  var BINARY_TEMPLATE = 4;
+  var ALIGNS = { left: 0, center: 1, right: 2 };
+
+  var encodeUtf8 = function (text) {
+    if (typeof TextEncoder !== "undefined") {
+      return new TextEncoder().encode(text);
+    }
+    var binary = unescape(encodeURIComponent(text));
+    var bytes = new Uint8Array(binary.length);
+    for (var i = 0; i < binary.length; i++) {
+      bytes[i] = binary.charCodeAt(i);
+    }
+    return bytes;
+  };
+
+  var toBytes = function (data) {
+    if (data instanceof Uint8Array) {
+      return data;
+    }
+    if (data instanceof ArrayBuffer) {
+      return new Uint8Array(data);
+    }
+    if (ArrayBuffer.isView(data)) {
+      return new Uint8Array(data.buffer, data.byteOffset, data.byteLength);
+    }
+    throw new TypeError("ArrayBuffer ou Uint8Array attendu");
+  };
+
+  // Chaîne préfixée par sa longueur sur 4 octets
+  var stringParts = function (value) {
+    var bytes = encodeUtf8(String(value));
+    var length = new Uint8Array(4);
+    new DataView(length.buffer).setUint32(0, bytes.length);
+    return [length, bytes];
+  };
+
+  var recordParts = function (item, templates) {
+    var header;
+    if (item.text !== undefined) {
+      return { type: BINARY_TEXT, parts: [encodeUtf8(item.text)] };
+    }
+    if (item.image !== undefined) {
+      header = new Uint8Array(4);
+      header[0] = item.dither === "ordered" ? 1 : 0;
+      header[1] = ALIGNS[item.align || "center"];
+      new DataView(header.buffer).setUint16(2, item.width || 0);
+      return { type: BINARY_IMAGE, parts: [header, toBytes(item.image)] };
+    }
+    if (item.raster !== undefined) {
+      header = new Uint8Array(6);
+      header[0] = ALIGNS[item.align || "center"];
+      new DataView(header.buffer).setUint16(2, item.width);
+      new DataView(header.buffer).setUint16(4, item.height);
+      return { type: BINARY_RASTER, parts: [header, toBytes(item.raster)] };
+    }
+    if (item.template !== undefined) {
+      var template = templates[item.template];
+      var data = item.data || {};
+      var keys = Object.keys(data);
+      var count = new Uint8Array(2);
+      new DataView(count.buffer).setUint16(0, keys.length);
+      var parts = stringParts(item.template)
+        .concat(stringParts(item.version || (template ? template.version : "")))
+        .concat([count]);
+      keys.forEach(function (key) {
+        parts = parts.concat(stringParts(key), stringParts(data[key] === null || data[key] === undefined ? "" : data[key]));
+      });
+      return { type: BINARY_TEMPLATE, parts: parts };
+    }
+    throw new TypeError("Élément de travail inconnu : text, image, raster ou template attendu");
+  };
+
+  /**
+   * Encode un travail pour printBinary, un ticket par élément :
+   * { text }, { image: PNG/JPEG, dither, width, align }, { raster: trame 1 bit, width, height, align }
+   * ou { template, version, data }
+   */
+  EpsonPrinter.prototype.encodeJob = function (items) {
+    var self = this;
+    var records = items.map(function (item) {
+      return recordParts(item, self.templates);
+    });
+    var total = BINARY_MAGIC.length;
+    records.forEach(function (record) {
+      record.length = 0;
+      record.parts.forEach(function (part) {
+        record.length += part.length;
+      });
+      total += 5 + record.length;
+    });
+    var buffer = new ArrayBuffer(total);
+    var view = new DataView(buffer);
+    var bytes = new Uint8Array(buffer);
+    bytes.set(BINARY_MAGIC, 0);
+    var offset = BINARY_MAGIC.length;
+    records.forEach(function (record) {
+      view.setUint8(offset, record.type);
+      view.setUint32(offset + 1, record.length);
+      offset += 5;
+      record.parts.forEach(function (part) {
+        bytes.set(part, offset);
+        offset += part.length;
+      });
+    });
+    return buffer;
+  };
+
+  /**
+   * Imprime un travail binaire : options.payload est le résultat d'encodeJob ou la liste de ses éléments
+   * L'ArrayBuffer est passé en argument de premier niveau : le pont Cordova Android le convertit tout de même
+   * en base64 (un tiers de plus), une seule fois pour tout le travail
+   */
+  EpsonPrinter.prototype.printBinary = function (success, fail, options) {
+    var self = this;
+    var payload = options.payload;
+    if (Array.isArray(payload)) {
+      payload = this.encodeJob(payload);
+    } else if (!(payload instanceof ArrayBuffer)) {
+      var view = toBytes(payload);
+      payload = view.buffer.slice(view.byteOffset, view.byteOffset + view.byteLength);
+    }
+    var rest = {};
+    for (var key in options) {
+      if (key !== "payload" && Object.prototype.hasOwnProperty.call(options, key)) {
+        rest[key] = options[key];
+      }
+    }
+    var print = function (retry) {
+      cordova.exec(
+        function (args) {
+          success(args);
+        },
+        function (args) {
+          // Modèle évincé du cache natif : le ré-enregistrer une fois puis réessayer
+          var template = args && args.context === "templateMissing" ? self.templates[args.name] : null;
+          if (retry && template) {
+            cordova.exec(
+              function () {
+                print(false);
+              },
+              function (err) {
+                fail(err);
+              },
+              "EpsonPrinterPlugin",
+              "registerTemplate",
+              [{ name: args.name, version: template.version, markup: template.markup }]
+            );
+            return;
+          }
+          fail(args);
+        },
+        "EpsonPrinterPlugin",
+        "printBinary",
+        [payload, rest]
+      );
+    };
+    print(true);
+  };
+
+  EpsonPrinter.prototype.isPrinterAvailable = function (success, fail, options) {
     return cordova.exec(
       function (args) {
         success(args);
@@ -25,6 +385,300 @@
       },
       "EpsonPrinterPlugin",
       "isPrinterAvailable",
+      [options || {}]
+    );
+  };
+
+  EpsonPrinter.prototype.subscribeStatus = function (onStatus, fail, options) {
+    return cordova.exec(
+      function (args) {
+        onStatus(args);
+      },
+      function (args) {
+        fail(args);
+      },
+      "EpsonPrinterPlugin",
+      "subscribeStatus",
+      [options || {}]
+    );
+  };
+
+  EpsonPrinter.prototype.unsubscribeStatus = function (success, fail) {
+    return cordova.exec(
+      function (args) {
+        success(args);
+      },
+      function (args) {
+        fail(args);
+      },
+      "EpsonPrinterPlugin",
+      "unsubscribeStatus",
+      []
+    );
+  };
+
+  EpsonPrinter.prototype.getDiagnostics = function (success, fail) {
+    return cordova.exec(
+      function (args) {
+        success(args);
+      },
+      function (args) {
+        fail(args);
+      },
+      "EpsonPrinterPlugin",
+      "getDiagnostics",
+      []
+    );
+  };
+
+  EpsonPrinter.prototype.configureSession = function (success, fail, options) {
+    return cordova.exec(
+      function (args) {
+        success(args);
+      },
+      function (args) {
+        fail(args);
+      },
+      "EpsonPrinterPlugin",
+      "configureSession",
+      [options || {}]
+    );
+  };
+
+  EpsonPrinter.prototype.configureCommands = function (success, fail, options) {
+    return cordova.exec(
+      function (args) {
+        success(args);
+      },
+      function (args) {
+        fail(args);
+      },
+      "EpsonPrinterPlugin",
+      "configureCommands",
+      [options || {}]
+    );
+  };
+
+  EpsonPrinter.prototype.getCommandStats = function (success, fail) {
+    return cordova.exec(
+      function (args) {
+        success(args);
+      },
+      function (args) {
+        fail(args);
+      },
+      "EpsonPrinterPlugin",
+      "getCommandStats",
+      []
+    );
+  };
+
+  EpsonPrinter.prototype.getMetrics = function (success, fail) {
+    return cordova.exec(
+      function (args) {
+        success(args);
+      },
+      function (args) {
+        fail(args);
+      },
+      "EpsonPrinterPlugin",
+      "getMetrics",
+      []
+    );
+  };
+
+  EpsonPrinter.prototype.resetMetrics = function (success, fail) {
+    return cordova.exec(
+      function (args) {
+        success(args);
+      },
+      function (args) {
+        fail(args);
+      },
+      "EpsonPrinterPlugin",
+      "resetMetrics",
+      []
+    );
+  };
+
+  EpsonPrinter.prototype.getQueue = function (success, fail, options) {
+    return cordova.exec(
+      function (args) {
+        success(args);
+      },
+      function (args) {
+        fail(args);
+      },
+      "EpsonPrinterPlugin",
+      "getQueue",
+      [options || {}]
+    );
+  };
+
+  EpsonPrinter.prototype.cancelJob = function (success, fail, jobId) {
+    return cordova.exec(
+      function (args) {
+        success(args);
+      },
+      function (args) {
+        fail(args);
+      },
+      "EpsonPrinterPlugin",
+      "cancelJob",
+      [{ jobId: jobId }]
+    );
+  };
+
+  EpsonPrinter.prototype.configureQueue = function (success, fail, options) {
+    return cordova.exec(
+      function (args) {
+        success(args);
+      },
+      function (args) {
+        fail(args);
+      },
+      "EpsonPrinterPlugin",
+      "configureQueue",
+      [options || {}]
+    );
+  };
+
+  EpsonPrinter.prototype.configurePrinter = function (success, fail, options) {
+    return cordova.exec(
+      function (args) {
+        success(args);
+      },
+      function (args) {
+        fail(args);
+      },
+      "EpsonPrinterPlugin",
+      "configurePrinter",
+      [options]
+    );
+  };
+
+  EpsonPrinter.prototype.removePrinter = function (success, fail, name) {
+    return cordova.exec(
+      function (args) {
+        success(args);
+      },
+      function (args) {
+        fail(args);
+      },
+      "EpsonPrinterPlugin",
+      "removePrinter",
+      [{ name: name }]
+    );
+  };
+
+  EpsonPrinter.prototype.getPrinters = function (success, fail) {
+    return cordova.exec(
+      function (args) {
+        success(args);
+      },
+      function (args) {
+        fail(args);
+      },
+      "EpsonPrinterPlugin",
+      "getPrinters",
+      []
+    );
+  };
+
+  EpsonPrinter.prototype.discover = function (success, fail, options) {
+    return cordova.exec(
+      function (args) {
+        success(args);
+      },
+      function (args) {
+        fail(args);
+      },
+      "EpsonPrinterPlugin",
+      "discover",
+      [options || {}]
+    );
+  };
+
+  EpsonPrinter.prototype.configureTimeouts = function (success, fail, options) {
+    return cordova.exec(
+      function (args) {
+        success(args);
+      },
+      function (args) {
+        fail(args);
+      },
+      "EpsonPrinterPlugin",
+      "configureTimeouts",
+      [options || {}]
+    );
+  };
+
+  EpsonPrinter.prototype.getTimeouts = function (success, fail) {
+    return cordova.exec(
+      function (args) {
+        success(args);
+      },
+      function (args) {
+        fail(args);
+      },
+      "EpsonPrinterPlugin",
+      "getTimeouts",
+      []
+    );
+  };
+
+  EpsonPrinter.prototype.configureSpool = function (success, fail, options) {
+    return cordova.exec(
+      function (args) {
+        success(args);
+      },
+      function (args) {
+        fail(args);
+      },
+      "EpsonPrinterPlugin",
+      "configureSpool",
+      [options || {}]
+    );
+  };
+
+  EpsonPrinter.prototype.getSpool = function (success, fail) {
+    return cordova.exec(
+      function (args) {
+        success(args);
+      },
+      function (args) {
+        fail(args);
+      },
+      "EpsonPrinterPlugin",
+      "getSpool",
+      []
+    );
+  };
+
+  EpsonPrinter.prototype.replaySpool = function (success, fail) {
+    return cordova.exec(
+      function (args) {
+        success(args);
+      },
+      function (args) {
+        fail(args);
+      },
+      "EpsonPrinterPlugin",
+      "replaySpool",
+      []
+    );
+  };
+
+  EpsonPrinter.prototype.clearSpool = function (success, fail) {
+    return cordova.exec(
+      function (args) {
+        success(args);
+      },
+      function (args) {
+        fail(args);
+      },
+      "EpsonPrinterPlugin",
+      "clearSpool",
       []
     );
   };